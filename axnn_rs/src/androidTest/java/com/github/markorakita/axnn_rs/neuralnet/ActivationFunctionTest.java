@@ -42,64 +42,64 @@ public class ActivationFunctionTest
     @Test
     public void testApplyReLUActivation_By1()
     {
-        testApplyActivation(c_bufferSizeBy1, ActivationFunction.ActivationFunctionType.ReLU, 0.000001f);
+        testApplyActivation(c_bufferSizeBy1, ActivationFunctionType.ReLU, 0.000001f);
     }
 
     @Test
     public void testApplyReLUActivation_By4()
     {
-        testApplyActivation(c_bufferSizeBy4, ActivationFunction.ActivationFunctionType.ReLU, 0.000001f);
+        testApplyActivation(c_bufferSizeBy4, ActivationFunctionType.ReLU, 0.000001f);
     }
 
     @Test
     public void testApplyELUActivation_By1()
     {
-        testApplyActivation(c_bufferSizeBy1, ActivationFunction.ActivationFunctionType.ELU, 0.00001f);
+        testApplyActivation(c_bufferSizeBy1, ActivationFunctionType.ELU, 0.00001f);
     }
 
     @Test
     public void testApplyELUActivation_By4()
     {
-        testApplyActivation(c_bufferSizeBy4, ActivationFunction.ActivationFunctionType.ELU, 0.00001f);
+        testApplyActivation(c_bufferSizeBy4, ActivationFunctionType.ELU, 0.00001f);
     }
 
     @Test
     public void testApplyLeakyReLUActivation_By1()
     {
-        testApplyActivation(c_bufferSizeBy1, ActivationFunction.ActivationFunctionType.LeakyReLU, 0.000001f);
+        testApplyActivation(c_bufferSizeBy1, ActivationFunctionType.LeakyReLU, 0.000001f);
     }
 
     @Test
     public void testApplyLeakyReLUActivation_By4()
     {
-        testApplyActivation(c_bufferSizeBy4, ActivationFunction.ActivationFunctionType.LeakyReLU, 0.000001f);
+        testApplyActivation(c_bufferSizeBy4, ActivationFunctionType.LeakyReLU, 0.000001f);
     }
 
     @Test
     public void testApplySigmoidActivation()
     {
-        testApplyActivation(c_bufferSizeBy1, ActivationFunction.ActivationFunctionType.Sigmoid, 0.0005f);
+        testApplyActivation(c_bufferSizeBy1, ActivationFunctionType.Sigmoid, 0.0005f);
     }
 
     @Test
     public void testApplySigmoidActivation_By4()
     {
-        testApplyActivation(c_bufferSizeBy4, ActivationFunction.ActivationFunctionType.Sigmoid, 0.0005f);
+        testApplyActivation(c_bufferSizeBy4, ActivationFunctionType.Sigmoid, 0.0005f);
     }
 
     @Test
     public void testApplyTanhActivation()
     {
-        testApplyActivation(c_bufferSizeBy1, ActivationFunction.ActivationFunctionType.Tanh, 0.0008f);
+        testApplyActivation(c_bufferSizeBy1, ActivationFunctionType.Tanh, 0.0008f);
     }
 
     @Test
     public void testApplyTanhActivation_By4()
     {
-        testApplyActivation(c_bufferSizeBy4, ActivationFunction.ActivationFunctionType.Tanh, 0.0006f);
+        testApplyActivation(c_bufferSizeBy4, ActivationFunctionType.Tanh, 0.0006f);
     }
 
-    private void testApplyActivation(int bufferSize, ActivationFunction.ActivationFunctionType activationFunctionType, float comparisonDelta)
+    private void testApplyActivation(int bufferSize, ActivationFunctionType activationFunctionType, float comparisonDelta)
     {
         allocateBuffers(bufferSize);
 
@@ -140,33 +140,33 @@ public class ActivationFunctionTest
         m_preactivationDataBuffer.copyFrom(m_preactivationDataBF);
     }
 
-    private void applyActivation(int bufferSize, ActivationFunction activationFunction, ActivationFunction.ActivationFunctionType activationFunctionType)
+    private void applyActivation(int bufferSize, ActivationFunction activationFunction, ActivationFunctionType activationFunctionType)
     {
         m_activationDataBuffer = activationFunction.applyActivation(m_preactivationDataBuffer, m_activationDataBuffer, bufferSize);
 
         for (int i = 0; i < bufferSize; ++i)
         {
-            if (activationFunctionType == ActivationFunction.ActivationFunctionType.ReLU)
+            if (activationFunctionType == ActivationFunctionType.ReLU)
             {
                 m_activationDataBF[i] = Math.max(m_preactivationDataBF[i], 0.f);
             }
-            else if (activationFunctionType == ActivationFunction.ActivationFunctionType.ELU)
+            else if (activationFunctionType == ActivationFunctionType.ELU)
             {
                 m_activationDataBF[i] = m_preactivationDataBF[i] >= 0.f ? m_preactivationDataBF[i] :
                         c_activationAlpha * ((float)Math.exp(m_preactivationDataBF[i]) - 1.f);
             }
-            else if (activationFunctionType == ActivationFunction.ActivationFunctionType.LeakyReLU)
+            else if (activationFunctionType == ActivationFunctionType.LeakyReLU)
             {
                 m_activationDataBF[i] = m_preactivationDataBF[i] >= 0.f ? m_preactivationDataBF[i] :
                         c_activationAlpha * m_preactivationDataBF[i];
             }
-            else if (activationFunctionType == ActivationFunction.ActivationFunctionType.Sigmoid)
+            else if (activationFunctionType == ActivationFunctionType.Sigmoid)
             {
                 m_activationDataBF[i] = m_preactivationDataBF[i] >= 0.f ?
                         1.f / (1.f + (float)Math.exp(-m_preactivationDataBF[i])) :
                         (1.f - 1.f / (1.f + (float)Math.exp(m_preactivationDataBF[i])));
             }
-            else if (activationFunctionType == ActivationFunction.ActivationFunctionType.Tanh)
+            else if (activationFunctionType == ActivationFunctionType.Tanh)
             {
                 m_activationDataBF[i] = m_preactivationDataBF[i] >= 0.f ?
                         (2.f / (1.f + (float)Math.exp(-2.f * m_preactivationDataBF[i])) - 1.f) :
@@ -0,0 +1,306 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConcatLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.DropoutLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.ImageInputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.QuantizedStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.SparseStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DropoutFoldingPassTest
+{
+    private static final int c_imageSize = 16;
+    private static final int c_numFilters = 8;
+    private static final int c_numNeurons = 10;
+
+    private RenderScript m_rsContext;
+
+    private Bitmap m_image;
+
+    @Before
+    public void setupRS()
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+
+        Random random = new Random(0);
+        int[] pixels = new int[c_imageSize * c_imageSize];
+        for (int i = 0; i < pixels.length; ++i)
+        {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        m_image = Bitmap.createBitmap(pixels, c_imageSize, c_imageSize, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void testFoldingIntoProducers() throws Exception
+    {
+        // Dropouts after half precision convolution and quantized standard layer, both with activations which commute with scaling.
+        checkDropoutFolding(createProducerFoldingNetwork(), createProducerFoldingNetwork(), 2);
+    }
+
+    @Test
+    public void testFoldingIntoReaders() throws Exception
+    {
+        // Dropouts after layers with activations which don't commute with scaling, read by quantized, half precision and sparse layers.
+        checkDropoutFolding(createReaderFoldingNetwork(), createReaderFoldingNetwork(), 3);
+    }
+
+    @Test
+    public void testFoldingInBranchingNetwork() throws Exception
+    {
+        checkDropoutFolding(createBranchingNetwork(), createBranchingNetwork(), 2);
+    }
+
+    @Test
+    public void testModelReloadRejected() throws Exception
+    {
+        NeuralNetRS neuralNet = createProducerFoldingNetwork();
+        byte[] model = new byte[4 * getNumModelParameters(neuralNet)];
+        neuralNet.loadModel(new ByteArrayInputStream(model), false);
+        assertTrue(neuralNet.optimize(new DropoutFoldingPass()));
+
+        // Weights next to bypassed dropouts are already scaled, so reloading them would silently give wrong results.
+        try
+        {
+            neuralNet.loadModel(new ByteArrayInputStream(model), false);
+            fail("Model loaded into optimized network.");
+        }
+        catch (IOException expected)
+        {
+        }
+
+        File modelFile = File.createTempFile("model", ".bin");
+        ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+        try
+        {
+            try (FileOutputStream modelOutputStream = new FileOutputStream(modelFile))
+            {
+                modelOutputStream.write(model);
+            }
+
+            try
+            {
+                neuralNet.loadModel(modelFile, false);
+                fail("Model loaded into optimized network.");
+            }
+            catch (IOException expected)
+            {
+            }
+
+            try
+            {
+                neuralNet.loadModelAsync(modelFile, false, loadExecutor, null, null).get();
+                fail("Model loaded into optimized network.");
+            }
+            catch (ExecutionException expected)
+            {
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        }
+        finally
+        {
+            loadExecutor.shutdown();
+            modelFile.delete();
+        }
+    }
+
+    /**
+     * Input -> half precision conv (ReLU) -> dropout -> quantized standard (LeakyReLU) -> dropout -> standard.
+     */
+    private NeuralNetRS createProducerFoldingNetwork()
+    {
+        Random random = new Random(0);
+        NeuralNetRS neuralNet = new NeuralNetRS(m_rsContext);
+        neuralNet.addLayer(new ImageInputLayerRS(m_rsContext, c_imageSize, c_imageSize));
+        neuralNet.addLayer(createConvolutionalLayer(random, ActivationFunctionType.ReLU, true));
+        neuralNet.addLayer(new DropoutLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize, 0.3f));
+
+        QuantizedStandardLayerRS quantizedStandardLayer = new QuantizedStandardLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize,
+                c_numNeurons, ActivationFunctionType.LeakyReLU, 0.01f);
+        quantizedStandardLayer.loadWeights(generateBuffer(random, quantizedStandardLayer.getWeightsBufferSize(), 0.f, 0.01f));
+        quantizedStandardLayer.loadBiases(generateBuffer(random, c_numNeurons, 0.f, 1.f));
+        neuralNet.addLayer(quantizedStandardLayer);
+        neuralNet.addLayer(new DropoutLayerRS(m_rsContext, 1, c_numNeurons, 1, 0.5f));
+
+        neuralNet.addLayer(createStandardLayer(random, c_numNeurons, ActivationFunctionType.Linear, false));
+
+        return neuralNet;
+    }
+
+    /**
+     * Input -> conv (Tanh) -> dropout -> quantized standard (Sigmoid) -> dropout -> half precision standard (Tanh) -> dropout -> sparse standard.
+     */
+    private NeuralNetRS createReaderFoldingNetwork()
+    {
+        Random random = new Random(0);
+        NeuralNetRS neuralNet = new NeuralNetRS(m_rsContext);
+        neuralNet.addLayer(new ImageInputLayerRS(m_rsContext, c_imageSize, c_imageSize));
+        neuralNet.addLayer(createConvolutionalLayer(random, ActivationFunctionType.Tanh, false));
+        neuralNet.addLayer(new DropoutLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize, 0.3f));
+
+        QuantizedStandardLayerRS quantizedStandardLayer = new QuantizedStandardLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize,
+                c_numNeurons, ActivationFunctionType.Sigmoid);
+        quantizedStandardLayer.loadWeights(generateBuffer(random, quantizedStandardLayer.getWeightsBufferSize(), 0.f, 0.01f));
+        quantizedStandardLayer.loadBiases(generateBuffer(random, c_numNeurons, 0.f, 1.f));
+        neuralNet.addLayer(quantizedStandardLayer);
+        neuralNet.addLayer(new DropoutLayerRS(m_rsContext, 1, c_numNeurons, 1, 0.5f));
+
+        neuralNet.addLayer(createStandardLayer(random, c_numNeurons, ActivationFunctionType.Tanh, true));
+        neuralNet.addLayer(new DropoutLayerRS(m_rsContext, 1, c_numNeurons, 1, 0.2f));
+
+        SparseStandardLayerRS sparseStandardLayer = new SparseStandardLayerRS(m_rsContext, 1, c_numNeurons, 1, c_numNeurons,
+                ActivationFunctionType.Linear, 0.05f);
+        sparseStandardLayer.loadWeights(generateBuffer(random, sparseStandardLayer.getWeightsBufferSize(), 0.f, 0.1f));
+        sparseStandardLayer.loadBiases(generateBuffer(random, c_numNeurons, 0.f, 1.f));
+        neuralNet.addLayer(sparseStandardLayer);
+
+        return neuralNet;
+    }
+
+    /**
+     * Input -> conv A (ReLU) -> conv B (ReLU), with dropout taking explicitly conv A, so that conv A can't take its scale,
+     * and the layer after dropout taking it implicitly, so that bypassing dropout has to make its input explicit.
+     * Second dropout in front of the concatenation has only explicit readers.
+     */
+    private NeuralNetRS createBranchingNetwork()
+    {
+        Random random = new Random(0);
+        NeuralNetRS neuralNet = new NeuralNetRS(m_rsContext);
+        neuralNet.addLayer(new ImageInputLayerRS(m_rsContext, c_imageSize, c_imageSize));
+        ConvolutionalLayerRS convolutionalLayerA = createConvolutionalLayer(random, ActivationFunctionType.ReLU, false);
+        neuralNet.addLayer(convolutionalLayerA);
+        ConvolutionalLayerRS convolutionalLayerB = createConvolutionalLayer(random, c_numFilters, ActivationFunctionType.ReLU, true);
+        neuralNet.addLayer(convolutionalLayerB);
+
+        neuralNet.addLayer(new DropoutLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize, 0.3f), convolutionalLayerA);
+        ConvolutionalLayerRS convolutionalLayerC = createConvolutionalLayer(random, c_numFilters, ActivationFunctionType.Linear, false);
+        neuralNet.addLayer(convolutionalLayerC);
+
+        DropoutLayerRS dropoutLayer = new DropoutLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize, 0.5f);
+        neuralNet.addLayer(dropoutLayer, convolutionalLayerB);
+        neuralNet.addLayer(new ConcatLayerRS(m_rsContext, new int[] { c_numFilters, c_numFilters }, c_imageSize, c_imageSize),
+                dropoutLayer, convolutionalLayerC);
+
+        return neuralNet;
+    }
+
+    private ConvolutionalLayerRS createConvolutionalLayer(Random random, ActivationFunctionType activationFunctionType, boolean halfPrecisionFilters)
+    {
+        // Image input layer gives four channels.
+        return createConvolutionalLayer(random, 4, activationFunctionType, halfPrecisionFilters);
+    }
+
+    private ConvolutionalLayerRS createConvolutionalLayer(Random random, int inputNumChannels, ActivationFunctionType activationFunctionType,
+                                                         boolean halfPrecisionFilters)
+    {
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, c_imageSize, c_imageSize, c_numFilters,
+                3, 3, 1, 1, 1, activationFunctionType, 0.f, halfPrecisionFilters);
+        convolutionalLayer.loadFilters(generateBuffer(random, convolutionalLayer.getFiltersBufferSize(), 0.f, 0.01f));
+        convolutionalLayer.loadBiases(generateBuffer(random, c_numFilters, 0.f, 0.1f));
+
+        return convolutionalLayer;
+    }
+
+    private StandardLayerRS createStandardLayer(Random random, int inputDataSize, ActivationFunctionType activationFunctionType,
+                                                boolean halfPrecisionWeights)
+    {
+        StandardLayerRS standardLayer = new StandardLayerRS(m_rsContext, 1, inputDataSize, 1, c_numNeurons, activationFunctionType, 0.f,
+                halfPrecisionWeights);
+        standardLayer.loadWeights(generateBuffer(random, standardLayer.getWeightsBufferSize(), 0.f, 0.1f));
+        standardLayer.loadBiases(generateBuffer(random, c_numNeurons, 0.f, 1.f));
+
+        return standardLayer;
+    }
+
+    /**
+     * Optimizes one of two identical networks, and checks that dropout layers are removed while outputs stay the same.
+     */
+    private void checkDropoutFolding(NeuralNetRS neuralNet, NeuralNetRS optimizedNeuralNet, int numDropoutLayers) throws Exception
+    {
+        int numLayers = neuralNet.getLayers().size();
+        assertTrue(optimizedNeuralNet.optimize(new DropoutFoldingPass()));
+        assertEquals(numLayers - numDropoutLayers, optimizedNeuralNet.getLayers().size());
+        for (LayerRS layer : optimizedNeuralNet.getLayers())
+        {
+            assertFalse(layer instanceof DropoutLayerRS);
+        }
+
+        float[] expectedFeatures = neuralNet.extractFeatures(m_image);
+        float[] features = optimizedNeuralNet.extractFeatures(m_image);
+
+        // Scaling reduced precision parameters rounds them once more.
+        float maxFeature = 0.f;
+        for (float feature : expectedFeatures)
+        {
+            maxFeature = Math.max(maxFeature, Math.abs(feature));
+        }
+        assertTrue(maxFeature > 0.f);
+        assertArrayEquals(expectedFeatures, features, 0.005f * maxFeature);
+    }
+
+    /**
+     * Gets number of parameters in raw model of the network.
+     */
+    private static int getNumModelParameters(NeuralNetRS neuralNet)
+    {
+        int numParameters = 0;
+        for (LayerRS layer : neuralNet.getLayers())
+        {
+            int[] weightsShape = ModelContainer.getWeightsShape(layer);
+            if (weightsShape != null)
+            {
+                numParameters += getNumElements(weightsShape) + getNumElements(ModelContainer.getBiasesShape(layer));
+            }
+        }
+
+        return numParameters;
+    }
+
+    private static int getNumElements(int[] shape)
+    {
+        int numElements = 1;
+        for (int dimension : shape)
+        {
+            numElements *= dimension;
+        }
+
+        return numElements;
+    }
+
+    private static float[] generateBuffer(Random random, int size, float mean, float stDev)
+    {
+        float[] buffer = new float[size];
+        for (int i = 0; i < size; ++i)
+        {
+            buffer[i] = mean + stDev * (float)random.nextGaussian();
+        }
+
+        return buffer;
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.ImageInputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.InputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class InputNormalizationFoldingPassTest
+{
+    private static final int c_imageSize = 16;
+    private static final int c_numFilters = 8;
+    private static final int c_numNeurons = 10;
+
+    private RenderScript m_rsContext;
+
+    private Bitmap m_image;
+
+    private File m_containerFile;
+
+    @Before
+    public void setupRS() throws Exception
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+
+        Random random = new Random(0);
+        int[] pixels = new int[c_imageSize * c_imageSize];
+        for (int i = 0; i < pixels.length; ++i)
+        {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        m_image = Bitmap.createBitmap(pixels, c_imageSize, c_imageSize, Bitmap.Config.ARGB_8888);
+
+        NeuralNetRS neuralNet = createNetwork();
+        ByteBuffer rawModelBuffer = ByteBuffer.allocate(4 * getNumModelParameters(neuralNet)).order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer rawModel = rawModelBuffer.asFloatBuffer();
+        while (rawModel.hasRemaining())
+        {
+            rawModel.put(0.05f * (float)random.nextGaussian());
+        }
+        m_containerFile = File.createTempFile("model", ".axnm");
+        ModelContainerWriter.convertRawModel(neuralNet, new ByteArrayInputStream(rawModelBuffer.array()), false, m_containerFile);
+    }
+
+    @After
+    public void deleteContainer()
+    {
+        m_containerFile.delete();
+    }
+
+    @Test
+    public void testFolding() throws Exception
+    {
+        NeuralNetRS neuralNet = createNetwork();
+        NeuralNetRS optimizedNeuralNet = createNetwork();
+        try (ModelContainer modelContainer = ModelContainer.open(m_containerFile))
+        {
+            neuralNet.loadModel(modelContainer);
+            optimizedNeuralNet.loadModel(modelContainer);
+        }
+
+        assertTrue(optimizedNeuralNet.optimize(new InputNormalizationFoldingPass()));
+        assertFalse(((InputLayerRS)optimizedNeuralNet.getLayer(0)).isNormalizingInputData());
+
+        checkFeatures(neuralNet.extractFeatures(m_image), optimizedNeuralNet.extractFeatures(m_image));
+    }
+
+    @Test
+    public void testModelReloadRejected() throws Exception
+    {
+        NeuralNetRS neuralNet = createNetwork();
+        try (ModelContainer modelContainer = ModelContainer.open(m_containerFile))
+        {
+            neuralNet.loadModel(modelContainer);
+            assertTrue(neuralNet.optimize(new InputNormalizationFoldingPass()));
+            float[] features = neuralNet.extractFeatures(m_image);
+
+            // Reloaded filters and biases wouldn't have normalization folded, so the first layer would run on unnormalized input data.
+            try
+            {
+                neuralNet.loadModel(modelContainer);
+                fail("Model loaded into optimized network.");
+            }
+            catch (IOException expected)
+            {
+            }
+            try
+            {
+                neuralNet.loadLayerModel(modelContainer, 1);
+                fail("Layer model loaded into optimized network.");
+            }
+            catch (IOException expected)
+            {
+            }
+
+            assertArrayEquals(features, neuralNet.extractFeatures(m_image), 0.f);
+        }
+    }
+
+    /**
+     * Input (normalized) -> conv (ReLU) -> standard.
+     */
+    private NeuralNetRS createNetwork()
+    {
+        NeuralNetRS neuralNet = new NeuralNetRS(m_rsContext);
+        neuralNet.addLayer(new ImageInputLayerRS(m_rsContext, c_imageSize, c_imageSize, new float[] { 120.f, 110.f, 100.f },
+                new float[] { 60.f, 55.f, 50.f }));
+        // Image input layer gives four channels.
+        neuralNet.addLayer(new ConvolutionalLayerRS(m_rsContext, 4, c_imageSize, c_imageSize, c_numFilters, 3, 3, 1, 1, 1,
+                ActivationFunctionType.ReLU, 0.f, false));
+        neuralNet.addLayer(new StandardLayerRS(m_rsContext, c_numFilters, c_imageSize, c_imageSize, c_numNeurons, ActivationFunctionType.Linear,
+                0.f, false));
+
+        return neuralNet;
+    }
+
+    /**
+     * Checks that features of the optimized network match, up to float rounding of the folded parameters.
+     */
+    private static void checkFeatures(float[] expectedFeatures, float[] features)
+    {
+        float maxFeature = 0.f;
+        for (float feature : expectedFeatures)
+        {
+            maxFeature = Math.max(maxFeature, Math.abs(feature));
+        }
+        assertTrue(maxFeature > 0.f);
+        assertArrayEquals(expectedFeatures, features, 0.001f * maxFeature);
+    }
+
+    /**
+     * Gets number of parameters in raw model of the network.
+     */
+    private static int getNumModelParameters(NeuralNetRS neuralNet)
+    {
+        int numParameters = 0;
+        for (LayerRS layer : neuralNet.getLayers())
+        {
+            int[] weightsShape = ModelContainer.getWeightsShape(layer);
+            if (weightsShape != null)
+            {
+                numParameters += getNumElements(weightsShape) + getNumElements(ModelContainer.getBiasesShape(layer));
+            }
+        }
+
+        return numParameters;
+    }
+
+    private static int getNumElements(int[] shape)
+    {
+        int numElements = 1;
+        for (int dimension : shape)
+        {
+            numElements *= dimension;
+        }
+
+        return numElements;
+    }
+}
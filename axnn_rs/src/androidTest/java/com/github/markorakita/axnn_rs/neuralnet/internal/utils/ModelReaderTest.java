@@ -0,0 +1,118 @@
+package com.github.markorakita.axnn_rs.neuralnet.internal.utils;
+
+import android.content.Context;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class ModelReaderTest
+{
+    // More than one chunk, with the last chunk partial.
+    private static final int c_numValues = ModelReader.c_defaultChunkSize + 1000;
+
+    private RenderScript m_rsContext;
+
+    private short[] m_halfs;
+
+    private ByteBuffer m_halfModelBuffer;
+
+    @Before
+    public void setupRS()
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+
+        Random random = new Random(0);
+        m_halfs = new short[c_numValues];
+        for (int i = 0; i < c_numValues; ++i)
+        {
+            m_halfs[i] = HalfUtils.floatToHalf((float)random.nextGaussian());
+        }
+        // NaN with payload which widening and narrowing back wouldn't keep bit exact, and negative zero.
+        m_halfs[0] = (short)0x7c01;
+        m_halfs[1] = (short)0x8000;
+
+        m_halfModelBuffer = ByteBuffer.allocate(2 * c_numValues).order(ByteOrder.LITTLE_ENDIAN);
+        m_halfModelBuffer.asShortBuffer().put(m_halfs);
+    }
+
+    @Test
+    public void testHalfModelCopiedIntoHalfAllocation() throws Exception
+    {
+        Allocation allocation = Allocation.createSized(m_rsContext, Element.F16_4(m_rsContext), c_numValues / 4);
+        ModelReader.fromBuffer(m_halfModelBuffer, true).readToAllocation(allocation, c_numValues);
+
+        short[] allocationHalfs = new short[c_numValues];
+        allocation.copyTo(allocationHalfs);
+        assertArrayEquals(m_halfs, allocationHalfs);
+        assertEquals(0, m_halfModelBuffer.remaining());
+    }
+
+    @Test
+    public void testHalfModelWidenedIntoFloatAllocation() throws Exception
+    {
+        Allocation allocation = Allocation.createSized(m_rsContext, Element.F32_4(m_rsContext), c_numValues / 4);
+        ModelReader.fromBuffer(m_halfModelBuffer, true).readToAllocation(allocation, c_numValues);
+
+        float[] allocationFloats = new float[c_numValues];
+        allocation.copyTo(allocationFloats);
+        for (int i = 0; i < c_numValues; ++i)
+        {
+            assertEquals(Float.floatToRawIntBits(HalfUtils.halfToFloat(m_halfs[i])), Float.floatToRawIntBits(allocationFloats[i]));
+        }
+    }
+
+    @Test
+    public void testHalfModelCopiedIntoPaddedHalfAllocation() throws Exception
+    {
+        // Model holds three channels of each pixel, allocation holds four.
+        final int numPixels = c_numValues / 3;
+        Allocation allocation = Allocation.createSized(m_rsContext, Element.F16_4(m_rsContext), numPixels);
+        ModelReader.fromBuffer(m_halfModelBuffer, true).readPaddedToAllocation(allocation, 4 * numPixels);
+
+        short[] allocationHalfs = new short[4 * numPixels];
+        allocation.copyTo(allocationHalfs);
+        for (int pixel = 0; pixel < numPixels; ++pixel)
+        {
+            for (int channel = 0; channel < 3; ++channel)
+            {
+                assertEquals(m_halfs[pixel * 3 + channel], allocationHalfs[pixel * 4 + channel]);
+            }
+            assertEquals(0, allocationHalfs[pixel * 4 + 3]);
+        }
+    }
+
+    @Test
+    public void testFloatModelNarrowedIntoHalfAllocation() throws Exception
+    {
+        ByteBuffer floatModelBuffer = ByteBuffer.allocate(4 * c_numValues).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 2; i < c_numValues; ++i)
+        {
+            floatModelBuffer.putFloat(4 * i, HalfUtils.halfToFloat(m_halfs[i]));
+        }
+
+        Allocation allocation = Allocation.createSized(m_rsContext, Element.F16_4(m_rsContext), c_numValues / 4);
+        ModelReader.fromBuffer(floatModelBuffer).readToAllocation(allocation, c_numValues);
+
+        short[] allocationHalfs = new short[c_numValues];
+        allocation.copyTo(allocationHalfs);
+        for (int i = 2; i < c_numValues; ++i)
+        {
+            assertEquals(m_halfs[i], allocationHalfs[i]);
+        }
+    }
+}
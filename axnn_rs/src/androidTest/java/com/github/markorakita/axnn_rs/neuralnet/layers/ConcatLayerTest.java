@@ -0,0 +1,66 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.content.Context;
+import android.renderscript.Allocation;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+public class ConcatLayerTest
+{
+    private RenderScript m_rsContext;
+
+    @Before
+    public void setupRS()
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+    }
+
+    @Test
+    public void testForwardPropCorrectness()
+    {
+        final int inputDataWidth = 27;
+        final int inputDataHeight = 27;
+        final int[] inputsNumChannels = { 64, 32, 96 };
+        final int numPixels = inputDataWidth * inputDataHeight;
+
+        int activationNumChannels = 0;
+        for (int inputNumChannels : inputsNumChannels)
+        {
+            activationNumChannels += inputNumChannels;
+        }
+
+        Random random = new Random(0);
+        Allocation[] inputDataBuffers = new Allocation[inputsNumChannels.length];
+        float[] expectedActivations = new float[numPixels * activationNumChannels];
+        int activationChannelOffset = 0;
+        for (int inputIndex = 0; inputIndex < inputsNumChannels.length; ++inputIndex)
+        {
+            float[] inputData = TestUtils.generateBuffer(random, numPixels * inputsNumChannels[inputIndex], 0.f, 0.5f);
+            inputDataBuffers[inputIndex] = TestUtils.createDataAllocation(m_rsContext, inputData);
+
+            for (int pixel = 0; pixel < numPixels; ++pixel)
+            {
+                System.arraycopy(inputData, pixel * inputsNumChannels[inputIndex], expectedActivations,
+                        pixel * activationNumChannels + activationChannelOffset, inputsNumChannels[inputIndex]);
+            }
+            activationChannelOffset += inputsNumChannels[inputIndex];
+        }
+
+        ConcatLayerRS concatLayer = new ConcatLayerRS(m_rsContext, inputsNumChannels, inputDataWidth, inputDataHeight);
+        concatLayer.setInputDataBuffers(inputDataBuffers);
+        concatLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, concatLayer.getActivationDataBuffer(), 0.0001f);
+    }
+}
@@ -1,19 +1,25 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import android.content.Context;
+import android.renderscript.Allocation;
 import android.renderscript.RenderScript;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
-import com.github.markorakita.axnn_rs.neuralnet.ActivationFunction;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.ConvolutionalLayerCPU;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.InputLayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.ConvolutionalLayerCPU;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+import java.util.Random;
+
 @RunWith(AndroidJUnit4.class)
 public class ConvolutionalLayerTest
 {
@@ -27,7 +33,7 @@ public class ConvolutionalLayerTest
     }
 
     @Test
-    public void testForwardPropCorrectness()
+    public void testForwardPropCorrectness() throws Exception
     {
         final int inputDataWidth = 224;
         final int inputDataHeight = 224;
@@ -39,23 +45,388 @@ public class ConvolutionalLayerTest
         final int paddingY = 1;
         final int stride = 4;
 
-        InputLayerCPU inputLayerCPU = new InputLayerCPU(m_rsContext, inputDataWidth, inputDataHeight, inputNumChannels);
-        inputLayerCPU.generateInputsFromUniformDistribution(-128.0f, 127.0f);
-        inputLayerCPU.doForwardProp();
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateUniformBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, -128.0f, 127.0f);
+        float[] filters = generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels);
+        float[] biases = generateBiases(numFilters);
+
+        ConvolutionalLayerCPU convolutionalLayerCPU = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
+                paddingX, paddingY, stride, ActivationFunctionType.Linear);
+        convolutionalLayerCPU.loadFilters(filters);
+        convolutionalLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(convolutionalLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, 1);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.Linear);
+        convolutionalLayer.loadFilters(filters);
+        convolutionalLayer.loadBiases(biases);
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.0001f);
+    }
+
+    @Test
+    public void testFusedMaxPoolForwardPropCorrectness()
+    {
+        final int inputDataWidth = 27;
+        final int inputDataHeight = 27;
+        final int inputNumChannels = 64;
+        final int numFilters = 128;
+        final int filterWidth = 5;
+        final int filterHeight = 5;
+        final int paddingX = 2;
+        final int paddingY = 2;
+        final int stride = 1;
+
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 0.5f);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        convolutionalLayer.loadFilters(generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels));
+        convolutionalLayer.loadBiases(generateBiases(numFilters));
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        convolutionalLayer.doForwardProp();
+
+        MaxPoolLayerRS maxPoolLayer = new MaxPoolLayerRS(m_rsContext, numFilters, convolutionalLayer.getActivationDataWidth(),
+                convolutionalLayer.getActivationDataHeight(), 3, 3, 0, 0, 2);
+        maxPoolLayer.setInputDataBuffer(convolutionalLayer.getActivationDataBuffer());
+        maxPoolLayer.doForwardProp();
+
+        float[] expectedActivations = new float[maxPoolLayer.getActivationDataBufferSize()];
+        maxPoolLayer.getActivationDataBuffer().copyTo(expectedActivations);
+
+        MaxPoolLayerRS fusedMaxPoolLayer = new MaxPoolLayerRS(m_rsContext, numFilters, convolutionalLayer.getActivationDataWidth(),
+                convolutionalLayer.getActivationDataHeight(), 3, 3, 0, 0, 2);
+        assertTrue(convolutionalLayer.canFuseMaxPool(fusedMaxPoolLayer));
+        convolutionalLayer.doForwardPropFusedWithMaxPool(fusedMaxPoolLayer, fusedMaxPoolLayer.getActivationDataBuffer());
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, fusedMaxPoolLayer.getActivationDataBuffer(), 0.0001f);
+    }
+
+    @Test
+    public void testFoldedInputNormalizationForwardPropCorrectness()
+    {
+        final int inputDataWidth = 31;
+        final int inputDataHeight = 31;
+        final int inputNumChannels = 4;
+        final int numFilters = 16;
+        final int filterWidth = 5;
+        final int filterHeight = 5;
+        final int paddingX = 2;
+        final int paddingY = 2;
+        final int stride = 2;
+        final float[] channelMeans = {123.f, 116.f, 103.f, 0.f};
+        final float[] channelStDevs = {58.f, 57.f, 57.f, 1.f};
+
+        Random random = new Random(0);
+        float[] normalizedInputData = TestUtils.generateBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 1.f);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        convolutionalLayer.loadFilters(generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels));
+        convolutionalLayer.loadBiases(generateBiases(numFilters));
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, normalizedInputData));
+        convolutionalLayer.doForwardProp();
+
+        float[] expectedActivations = new float[convolutionalLayer.getActivationDataBufferSize()];
+        convolutionalLayer.getActivationDataBuffer().copyTo(expectedActivations);
+
+        // Unnormalizing generated inputs, which the layer takes once normalization is folded into it.
+        float[] inputData = new float[normalizedInputData.length];
+        for (int i = 0; i < inputData.length; ++i)
+        {
+            inputData[i] = normalizedInputData[i] * channelStDevs[i % inputNumChannels] + channelMeans[i % inputNumChannels];
+        }
+        InputLayerRS inputLayer = new InputLayerRS(m_rsContext, inputDataWidth, inputDataHeight, inputNumChannels);
+        inputLayer.loadPreparedInputData(inputData);
+
+        convolutionalLayer.foldInputNormalization(m_rsContext, channelMeans, channelStDevs);
+        convolutionalLayer.setInputDataBuffer(inputLayer.getActivationDataBuffer());
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.001f);
+    }
+
+    @Test
+    public void testHalfPrecisionForwardPropCorrectness() throws Exception
+    {
+        final int inputDataWidth = 57;
+        final int inputDataHeight = 57;
+        final int inputNumChannels = 4;
+        final int numFilters = 32;
+        final int filterWidth = 5;
+        final int filterHeight = 5;
+        final int paddingX = 2;
+        final int paddingY = 2;
+        final int stride = 2;
+
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 1.f);
+        float[] filters = generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels);
+        float[] biases = generateBiases(numFilters);
+
+        ConvolutionalLayerCPU convolutionalLayerCPU = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
+                paddingX, paddingY, stride, ActivationFunctionType.Linear);
+        convolutionalLayerCPU.loadFilters(filters);
+        convolutionalLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(convolutionalLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, 1);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.Linear, 0.f, true);
+        convolutionalLayer.loadFilters(filters);
+        convolutionalLayer.loadBiases(biases);
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        // Comparing against full precision filters, so filters rounding error is expected.
+        TestUtils.checkRelativeCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.01f);
+    }
+
+    @Test
+    public void testHalfPrecisionFusedMaxPoolForwardPropCorrectness()
+    {
+        final int inputDataWidth = 27;
+        final int inputDataHeight = 27;
+        final int inputNumChannels = 64;
+        final int numFilters = 128;
+        final int filterWidth = 5;
+        final int filterHeight = 5;
+        final int paddingX = 2;
+        final int paddingY = 2;
+        final int stride = 1;
+
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 0.5f);
+        float[] filters = generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels);
+        float[] biases = generateBiases(numFilters);
+        Allocation inputDataBuffer = TestUtils.createDataAllocation(m_rsContext, inputData);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        convolutionalLayer.loadFilters(filters);
+        convolutionalLayer.loadBiases(biases);
+        convolutionalLayer.setInputDataBuffer(inputDataBuffer);
+        convolutionalLayer.doForwardProp();
+
+        MaxPoolLayerRS maxPoolLayer = new MaxPoolLayerRS(m_rsContext, numFilters, convolutionalLayer.getActivationDataWidth(),
+                convolutionalLayer.getActivationDataHeight(), 3, 3, 0, 0, 2);
+        maxPoolLayer.setInputDataBuffer(convolutionalLayer.getActivationDataBuffer());
+        maxPoolLayer.doForwardProp();
+
+        float[] expectedActivations = new float[maxPoolLayer.getActivationDataBufferSize()];
+        maxPoolLayer.getActivationDataBuffer().copyTo(expectedActivations);
+
+        ConvolutionalLayerRS halfConvolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters,
+                filterWidth, filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU, 0.f, true);
+        halfConvolutionalLayer.loadFilters(filters);
+        halfConvolutionalLayer.loadBiases(biases);
+        halfConvolutionalLayer.setInputDataBuffer(inputDataBuffer);
+
+        MaxPoolLayerRS fusedMaxPoolLayer = new MaxPoolLayerRS(m_rsContext, numFilters, halfConvolutionalLayer.getActivationDataWidth(),
+                halfConvolutionalLayer.getActivationDataHeight(), 3, 3, 0, 0, 2);
+        assertTrue(halfConvolutionalLayer.canFuseMaxPool(fusedMaxPoolLayer));
+        halfConvolutionalLayer.doForwardPropFusedWithMaxPool(fusedMaxPoolLayer, fusedMaxPoolLayer.getActivationDataBuffer());
+        m_rsContext.finish();
+
+        // Comparing against full precision filters, so filters rounding error is expected.
+        TestUtils.checkRelativeCorrectness(expectedActivations, fusedMaxPoolLayer.getActivationDataBuffer(), 0.01f);
+    }
+
+    @Test
+    public void testWinogradForwardPropCorrectness() throws Exception
+    {
+        // Odd number of patches, so the last tiles in both dimensions are partial.
+        final int inputDataWidth = 27;
+        final int inputDataHeight = 25;
+        final int inputNumChannels = 64;
+        final int numFilters = 96;
+        final int filterWidth = 3;
+        final int filterHeight = 3;
+        final int paddingX = 1;
+        final int paddingY = 0;
+        final int stride = 1;
+        final int batchSize = 2;
+
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateBuffer(random, batchSize * inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 0.5f);
+        float[] filters = generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels);
+        float[] biases = generateBiases(numFilters);
+
+        ConvolutionalLayerCPU convolutionalLayerCPU = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
+                paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        convolutionalLayerCPU.loadFilters(filters);
+        convolutionalLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(convolutionalLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, batchSize);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        assertEquals(ConvolutionalLayerRS.ConvolutionAlgorithm.Winograd, convolutionalLayer.getConvolutionAlgorithm());
+        convolutionalLayer.setBatchSize(m_rsContext, batchSize);
+        convolutionalLayer.loadFilters(filters);
+        convolutionalLayer.loadBiases(biases);
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.0001f);
+
+        // Filters have to be transformed again when they are changed in place.
+        convolutionalLayer.scaleParameters(m_rsContext, 2.f, 2.f);
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        for (int i = 0; i < expectedActivations.length; ++i)
+        {
+            expectedActivations[i] *= 2.f;
+        }
+        TestUtils.checkCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.0002f);
+    }
+
+    @Test
+    public void testWinogradHalfPrecisionForwardPropCorrectness() throws Exception
+    {
+        final int inputDataWidth = 28;
+        final int inputDataHeight = 28;
+        final int inputNumChannels = 32;
+        final int numFilters = 64;
+        final int filterWidth = 3;
+        final int filterHeight = 3;
+        final int paddingX = 1;
+        final int paddingY = 1;
+        final int stride = 1;
+
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 1.f);
+        float[] filters = generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels);
+        float[] biases = generateBiases(numFilters);
+
+        ConvolutionalLayerCPU convolutionalLayerCPU = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
+                paddingX, paddingY, stride, ActivationFunctionType.Linear);
+        convolutionalLayerCPU.loadFilters(filters);
+        convolutionalLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(convolutionalLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, 1);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.Linear, 0.f, true);
+        assertEquals(ConvolutionalLayerRS.ConvolutionAlgorithm.Winograd, convolutionalLayer.getConvolutionAlgorithm());
+        convolutionalLayer.loadFilters(filters);
+        convolutionalLayer.loadBiases(biases);
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        // Comparing against full precision filters, so rounding error of transformed filters is expected.
+        TestUtils.checkRelativeCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.01f);
+    }
+
+    @Test
+    public void testWinogradFoldedInputNormalizationForwardPropCorrectness()
+    {
+        final int inputDataWidth = 31;
+        final int inputDataHeight = 31;
+        final int inputNumChannels = 4;
+        final int numFilters = 16;
+        final int filterWidth = 3;
+        final int filterHeight = 3;
+        final int paddingX = 1;
+        final int paddingY = 1;
+        final int stride = 1;
+        final float[] channelMeans = {123.f, 116.f, 103.f, 0.f};
+        final float[] channelStDevs = {58.f, 57.f, 57.f, 1.f};
+
+        Random random = new Random(0);
+        float[] normalizedInputData = TestUtils.generateBuffer(random, inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 1.f);
+
+        ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        assertEquals(ConvolutionalLayerRS.ConvolutionAlgorithm.Winograd, convolutionalLayer.getConvolutionAlgorithm());
+        convolutionalLayer.loadFilters(generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels));
+        convolutionalLayer.loadBiases(generateBiases(numFilters));
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, normalizedInputData));
+        convolutionalLayer.doForwardProp();
+
+        float[] expectedActivations = new float[convolutionalLayer.getActivationDataBufferSize()];
+        convolutionalLayer.getActivationDataBuffer().copyTo(expectedActivations);
+
+        // Unnormalizing generated inputs, which the layer takes once normalization is folded into it.
+        float[] inputData = new float[normalizedInputData.length];
+        for (int i = 0; i < inputData.length; ++i)
+        {
+            inputData[i] = normalizedInputData[i] * channelStDevs[i % inputNumChannels] + channelMeans[i % inputNumChannels];
+        }
+        InputLayerRS inputLayer = new InputLayerRS(m_rsContext, inputDataWidth, inputDataHeight, inputNumChannels);
+        inputLayer.loadPreparedInputData(inputData);
+
+        convolutionalLayer.foldInputNormalization(m_rsContext, channelMeans, channelStDevs);
+        convolutionalLayer.setInputDataBuffer(inputLayer.getActivationDataBuffer());
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.001f);
+    }
+
+    @Test
+    public void testSpaceToDepthForwardPropCorrectness() throws Exception
+    {
+        // Shape of the first AlexNet layer, whose filters rearranged into blocks are 3x3.
+        final int inputDataWidth = 67;
+        final int inputDataHeight = 63;
+        final int inputNumChannels = 4;
+        final int numFilters = 32;
+        final int filterWidth = 11;
+        final int filterHeight = 11;
+        final int paddingX = 2;
+        final int paddingY = 1;
+        final int stride = 4;
+        final int batchSize = 2;
+
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateUniformBuffer(random, batchSize * inputDataWidth * inputDataHeight * inputNumChannels, -128.0f, 127.0f);
+        float[] filters = generateFilters(random, numFilters, filterWidth, filterHeight, inputNumChannels);
+        float[] biases = generateBiases(numFilters);
 
         ConvolutionalLayerCPU convolutionalLayerCPU = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
-                paddingX, paddingY, stride);
-        convolutionalLayerCPU.setInputDataFromPerPixelBuffer(inputLayerCPU.getActivationDataBuffer());
-        convolutionalLayerCPU.doForwardProp();
+                paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        convolutionalLayerCPU.loadFilters(filters);
+        convolutionalLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(convolutionalLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, batchSize);
 
         ConvolutionalLayerRS convolutionalLayer = new ConvolutionalLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth,
-                filterHeight, paddingX, paddingY, stride, ActivationFunction.ActivationFunctionType.Linear);
-        convolutionalLayer.loadFilters(convolutionalLayerCPU.getFiltersBufferRS());
-        convolutionalLayer.loadBiases(convolutionalLayerCPU.getBiasesBuffer());
-        convolutionalLayer.setInputDataBuffer(inputLayerCPU.getActivationDataBufferRS());
+                filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+        assertEquals(ConvolutionalLayerRS.ConvolutionAlgorithm.SpaceToDepth, convolutionalLayer.getConvolutionAlgorithm());
+        convolutionalLayer.setBatchSize(m_rsContext, batchSize);
+        convolutionalLayer.loadFilters(filters);
+        convolutionalLayer.loadBiases(biases);
+        convolutionalLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        convolutionalLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkRelativeCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.0001f);
+
+        // Direct convolution of the same layer reads filters as loaded.
+        convolutionalLayer.setConvolutionAlgorithm(m_rsContext, ConvolutionalLayerRS.ConvolutionAlgorithm.Direct);
         convolutionalLayer.doForwardProp();
         m_rsContext.finish();
 
-        TestUtils.checkCorrectness(convolutionalLayerCPU.getActivationDataPerPixelBuffer(), convolutionalLayer.getActivationDataBuffer(), 0.0001f);
+        TestUtils.checkRelativeCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.0001f);
+    }
+
+    static float[] generateFilters(Random random, int numFilters, int filterWidth, int filterHeight, int inputNumChannels)
+    {
+        return TestUtils.generateBuffer(random, numFilters * filterWidth * filterHeight * inputNumChannels, 0.f, 0.01f);
+    }
+
+    static float[] generateBiases(int numFilters)
+    {
+        float[] biases = new float[numFilters];
+        Arrays.fill(biases, 1.0f);
+
+        return biases;
     }
 }
@@ -6,13 +6,14 @@ import android.renderscript.RenderScript;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.DropoutLayerCPU;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.InputLayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.DropoutLayerCPU;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Random;
+
 @RunWith(AndroidJUnit4.class)
 public class DropoutLayerTest
 {
@@ -26,26 +27,23 @@ public class DropoutLayerTest
     }
 
     @Test
-    public void testForwardPropCorrectness()
+    public void testForwardPropCorrectness() throws Exception
     {
         final int inputDataWidth = 55;
         final int inputDataHeight = 55;
         final int inputNumChannels = 64;
         final float dropProbability = 0.7f;
 
-        InputLayerCPU inputLayerCPU = new InputLayerCPU(m_rsContext, inputDataWidth, inputDataHeight, inputNumChannels);
-        inputLayerCPU.generateInputsFromNormalDistribution(0.f, 0.5f);
-        inputLayerCPU.doForwardProp();
+        float[] inputData = TestUtils.generateBuffer(new Random(0), inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 0.5f);
 
         DropoutLayerCPU dropoutLayerCPU = new DropoutLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, dropProbability);
-        dropoutLayerCPU.setInputDataBuffer(inputLayerCPU.getActivationDataBuffer());
-        dropoutLayerCPU.doForwardProp();
+        float[] expectedActivations = TestUtils.propagateCPU(dropoutLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, 1);
 
         DropoutLayerRS dropoutLayer = new DropoutLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, dropProbability);
-        dropoutLayer.setInputDataBuffer(inputLayerCPU.getActivationDataBufferRS());
+        dropoutLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
         dropoutLayer.doForwardProp();
         m_rsContext.finish();
 
-        TestUtils.checkCorrectness(dropoutLayerCPU.getActivationDataBuffer(), dropoutLayer.getActivationDataBuffer(), 0.0001f);
+        TestUtils.checkCorrectness(expectedActivations, dropoutLayer.getActivationDataBuffer(), 0.0001f);
     }
 }
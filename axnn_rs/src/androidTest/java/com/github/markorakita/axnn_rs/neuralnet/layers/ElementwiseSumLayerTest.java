@@ -0,0 +1,57 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.content.Context;
+import android.renderscript.Allocation;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+public class ElementwiseSumLayerTest
+{
+    private RenderScript m_rsContext;
+
+    @Before
+    public void setupRS()
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+    }
+
+    @Test
+    public void testForwardPropCorrectness()
+    {
+        final int inputDataWidth = 27;
+        final int inputDataHeight = 27;
+        final int inputNumChannels = 64;
+        final int numInputs = 3;
+
+        Random random = new Random(0);
+        Allocation[] inputDataBuffers = new Allocation[numInputs];
+        float[] expectedActivations = new float[inputDataWidth * inputDataHeight * inputNumChannels];
+        for (int inputIndex = 0; inputIndex < numInputs; ++inputIndex)
+        {
+            float[] inputData = TestUtils.generateBuffer(random, expectedActivations.length, 0.f, 0.5f);
+            inputDataBuffers[inputIndex] = TestUtils.createDataAllocation(m_rsContext, inputData);
+
+            for (int i = 0; i < expectedActivations.length; ++i)
+            {
+                expectedActivations[i] += inputData[i];
+            }
+        }
+
+        ElementwiseSumLayerRS elementwiseSumLayer = new ElementwiseSumLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numInputs);
+        elementwiseSumLayer.setInputDataBuffers(inputDataBuffers);
+        elementwiseSumLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, elementwiseSumLayer.getActivationDataBuffer(), 0.0001f);
+    }
+}
@@ -6,13 +6,14 @@ import android.renderscript.RenderScript;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.InputLayerCPU;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.MaxPoolLayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.MaxPoolLayerCPU;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Random;
+
 @RunWith(AndroidJUnit4.class)
 public class MaxPoolLayerTest
 {
@@ -26,7 +27,7 @@ public class MaxPoolLayerTest
     }
 
     @Test
-    public void testForwardPropCorrectness()
+    public void testForwardPropCorrectness() throws Exception
     {
         final int inputDataWidth = 55;
         final int inputDataHeight = 55;
@@ -37,21 +38,18 @@ public class MaxPoolLayerTest
         final int paddingY = 0;
         final int unitStride = 2;
 
-        InputLayerCPU inputLayerCPU = new InputLayerCPU(m_rsContext, inputDataWidth, inputDataHeight, inputNumChannels);
-        inputLayerCPU.generateInputsFromNormalDistribution(0.f, 0.5f);
-        inputLayerCPU.doForwardProp();
+        float[] inputData = TestUtils.generateBuffer(new Random(0), inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 0.5f);
 
         MaxPoolLayerCPU maxPoolLayerCPU = new MaxPoolLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, unitWidth, unitHeight,
                 paddingX, paddingY, unitStride);
-        maxPoolLayerCPU.setInputDataFromPerPixelBuffer(inputLayerCPU.getActivationDataBuffer());
-        maxPoolLayerCPU.doForwardProp();
+        float[] expectedActivations = TestUtils.propagateCPU(maxPoolLayerCPU, inputData, inputDataWidth, inputDataHeight, inputNumChannels, 1);
 
         MaxPoolLayerRS maxPoolLayer = new MaxPoolLayerRS(m_rsContext, inputNumChannels, inputDataWidth, inputDataHeight, unitWidth, unitHeight,
                 paddingX, paddingY, unitStride);
-        maxPoolLayer.setInputDataBuffer(inputLayerCPU.getActivationDataBufferRS());
+        maxPoolLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
         maxPoolLayer.doForwardProp();
         m_rsContext.finish();
 
-        TestUtils.checkCorrectness(maxPoolLayerCPU.getActivationDataPerPixelBuffer(), maxPoolLayer.getActivationDataBuffer(), 0.0001f);
+        TestUtils.checkCorrectness(expectedActivations, maxPoolLayer.getActivationDataBuffer(), 0.0001f);
     }
 }
@@ -0,0 +1,126 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.content.Context;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.StandardLayerCPU;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+public class QuantizedStandardLayerTest
+{
+    private RenderScript m_rsContext;
+
+    @Before
+    public void setupRS()
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+    }
+
+    @Test
+    public void testForwardPropCorrectness_By1() throws Exception
+    {
+        testForwardPropCorrectness(113, 32, 1);
+    }
+
+    @Test
+    public void testForwardPropCorrectness_By4() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, 1);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_By1() throws Exception
+    {
+        // Batch size not divisible by four, so that batched kernel also takes its leftover samples path.
+        // Whole input buffer size must not be divisible by four either, to match unvectorized activations of the previous layer.
+        testForwardPropCorrectness(113, 32, 7);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_By4() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, 6);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_FullPasses() throws Exception
+    {
+        // Batch size divisible by four, so that batched kernel takes only its four samples per pass path.
+        testForwardPropCorrectness(128, 30, 8);
+    }
+
+    private void testForwardPropCorrectness(int inputDataSize, int numNeurons, int batchSize) throws Exception
+    {
+        // Nonnegative inputs, like activations after ReLU, so that zero point errors would accumulate instead of cancelling out.
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateUniformBuffer(random, batchSize * inputDataSize, 0.f, 1.f);
+        float[] weights = TestUtils.generateBuffer(random, numNeurons * inputDataSize, 0.f, 0.01f);
+        float[] biases = new float[numNeurons];
+        Arrays.fill(biases, 1.0f);
+
+        StandardLayerCPU standardLayerCPU = new StandardLayerCPU(1, inputDataSize, 1, numNeurons, ActivationFunctionType.Linear);
+        standardLayerCPU.loadWeights(weights);
+        standardLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(standardLayerCPU, inputData, inputDataSize, 1, 1, batchSize);
+
+        QuantizedStandardLayerRS quantizedStandardLayer = new QuantizedStandardLayerRS(m_rsContext, 1, inputDataSize, 1, numNeurons,
+                ActivationFunctionType.Linear);
+        if (batchSize > 1)
+        {
+            quantizedStandardLayer.setBatchSize(m_rsContext, batchSize);
+        }
+        quantizedStandardLayer.loadWeights(weights);
+        quantizedStandardLayer.loadBiases(biases);
+        quantizedStandardLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        quantizedStandardLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, quantizedStandardLayer.getActivationDataBuffer(),
+                getQuantizationErrorBound(inputData, weights, inputDataSize, numNeurons, batchSize));
+    }
+
+    /**
+     * Bounds activation error caused by weights quantization. Each weight is off by at most one quantization step of its neuron,
+     * so activation is off by at most that step times sum of absolute inputs.
+     */
+    private static float getQuantizationErrorBound(float[] inputData, float[] weights, int inputDataSize, int numNeurons, int batchSize)
+    {
+        float maxInputsSum = 0.f;
+        for (int sample = 0; sample < batchSize; ++sample)
+        {
+            float inputsSum = 0.f;
+            for (int i = 0; i < inputDataSize; ++i)
+            {
+                inputsSum += Math.abs(inputData[sample * inputDataSize + i]);
+            }
+            maxInputsSum = Math.max(maxInputsSum, inputsSum);
+        }
+
+        float maxScale = 0.f;
+        for (int neuron = 0; neuron < numNeurons; ++neuron)
+        {
+            float minWeight = 0.f;
+            float maxWeight = 0.f;
+            for (int i = 0; i < inputDataSize; ++i)
+            {
+                minWeight = Math.min(minWeight, weights[neuron * inputDataSize + i]);
+                maxWeight = Math.max(maxWeight, weights[neuron * inputDataSize + i]);
+            }
+            maxScale = Math.max(maxScale, (maxWeight - minWeight) / 255.f);
+        }
+
+        return maxScale * maxInputsSum + 0.0001f;
+    }
+}
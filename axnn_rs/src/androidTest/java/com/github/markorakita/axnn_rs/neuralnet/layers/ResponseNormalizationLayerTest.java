@@ -6,13 +6,14 @@ import android.renderscript.RenderScript;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.InputLayerCPU;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.ResponseNormalizationLayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.ResponseNormalizationLayerCPU;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Random;
+
 @RunWith(AndroidJUnit4.class)
 public class ResponseNormalizationLayerTest
 {
@@ -26,7 +27,7 @@ public class ResponseNormalizationLayerTest
     }
 
     @Test
-    public void testForwardPropCorrectness()
+    public void testForwardPropCorrectness() throws Exception
     {
         final int inputNumChannels = 64;
         final int inputDataWidth = 55;
@@ -36,22 +37,19 @@ public class ResponseNormalizationLayerTest
         final float alphaCoeff = 0.0001f;
         final float betaCoeff = 0.75f;
 
-        InputLayerCPU inputLayerCPU = new InputLayerCPU(m_rsContext, inputDataWidth, inputDataHeight, inputNumChannels);
-        inputLayerCPU.generateInputsFromNormalDistribution(0.f, 0.5f);
-        inputLayerCPU.doForwardProp();
+        float[] inputData = TestUtils.generateBuffer(new Random(0), inputDataWidth * inputDataHeight * inputNumChannels, 0.f, 0.5f);
 
         ResponseNormalizationLayerCPU responseNormalizationLayerCPU = new ResponseNormalizationLayerCPU(inputNumChannels, inputDataWidth,
                 inputDataHeight, depth, bias, alphaCoeff, betaCoeff);
-        responseNormalizationLayerCPU.setInputDataFromPerPixelBuffer(inputLayerCPU.getActivationDataBuffer());
-        responseNormalizationLayerCPU.doForwardProp();
+        float[] expectedActivations = TestUtils.propagateCPU(responseNormalizationLayerCPU, inputData, inputDataWidth, inputDataHeight,
+                inputNumChannels, 1);
 
         ResponseNormalizationLayerRS responseNormalizationLayer = new ResponseNormalizationLayerRS(m_rsContext, inputNumChannels, inputDataWidth,
                 inputDataHeight, depth, bias, alphaCoeff, betaCoeff);
-        responseNormalizationLayer.setInputDataBuffer(inputLayerCPU.getActivationDataBufferRS());
+        responseNormalizationLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
         responseNormalizationLayer.doForwardProp();
         m_rsContext.finish();
 
-        TestUtils.checkCorrectness(responseNormalizationLayerCPU.getActivationDataPerPixelBuffer(),
-                responseNormalizationLayer.getActivationDataBuffer(), 0.0005f);
+        TestUtils.checkCorrectness(expectedActivations, responseNormalizationLayer.getActivationDataBuffer(), 0.0005f);
     }
 }
@@ -0,0 +1,120 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.renderscript.RenderScript;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.StandardLayerCPU;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+public class SparseStandardLayerTest
+{
+    private static final float c_sparsityThreshold = 0.01f;
+
+    private RenderScript m_rsContext;
+
+    @Before
+    public void setupRS()
+    {
+        Context appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        m_rsContext = RenderScript.create(appContext);
+    }
+
+    @Test
+    public void testForwardPropCorrectness_By1() throws Exception
+    {
+        testForwardPropCorrectness(113, 32, 1, c_sparsityThreshold);
+    }
+
+    @Test
+    public void testForwardPropCorrectness_By4() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, 1, c_sparsityThreshold);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_By1() throws Exception
+    {
+        // Whole input buffer size must not be divisible by four, to match unvectorized activations of the previous layer.
+        testForwardPropCorrectness(113, 32, 7, c_sparsityThreshold);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_By4() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, 6, c_sparsityThreshold);
+    }
+
+    @Test
+    public void testAllWeightsPrunedForwardPropCorrectness() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, 1, Float.MAX_VALUE);
+    }
+
+    @Test
+    public void testAllWeightsPrunedBatchForwardPropCorrectness() throws Exception
+    {
+        testForwardPropCorrectness(113, 32, 7, Float.MAX_VALUE);
+    }
+
+    private void testForwardPropCorrectness(int inputDataSize, int numNeurons, int batchSize, float sparsityThreshold) throws Exception
+    {
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateUniformBuffer(random, batchSize * inputDataSize, -128.0f, 127.0f);
+        float[] weights = TestUtils.generateBuffer(random, numNeurons * inputDataSize, 0.f, 0.01f);
+        float[] biases = TestUtils.generateBuffer(random, numNeurons, 1.f, 0.5f);
+
+        // Every third neuron gets only weights which are pruned, to check neurons without kept weights.
+        for (int neuron = 0; neuron < numNeurons; neuron += 3)
+        {
+            for (int i = 0; i < inputDataSize; ++i)
+            {
+                weights[neuron * inputDataSize + i] = Math.max(-c_sparsityThreshold, Math.min(c_sparsityThreshold, weights[neuron * inputDataSize + i]));
+            }
+        }
+
+        // Dense reference layer gets pruned weights zeroed.
+        float[] prunedWeights = new float[weights.length];
+        int numKeptWeights = 0;
+        for (int i = 0; i < weights.length; ++i)
+        {
+            if (Math.abs(weights[i]) > sparsityThreshold)
+            {
+                prunedWeights[i] = weights[i];
+                ++numKeptWeights;
+            }
+        }
+
+        StandardLayerCPU standardLayerCPU = new StandardLayerCPU(1, inputDataSize, 1, numNeurons, ActivationFunctionType.Linear);
+        standardLayerCPU.loadWeights(prunedWeights);
+        standardLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(standardLayerCPU, inputData, inputDataSize, 1, 1, batchSize);
+
+        SparseStandardLayerRS sparseStandardLayer = new SparseStandardLayerRS(m_rsContext, 1, inputDataSize, 1, numNeurons,
+                ActivationFunctionType.Linear, sparsityThreshold);
+        if (batchSize > 1)
+        {
+            sparseStandardLayer.setBatchSize(m_rsContext, batchSize);
+        }
+        sparseStandardLayer.loadWeights(weights);
+        sparseStandardLayer.loadBiases(biases);
+        assertEquals((float)numKeptWeights / weights.length, sparseStandardLayer.getWeightsDensity(), 0.f);
+
+        sparseStandardLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        sparseStandardLayer.doForwardProp();
+        m_rsContext.finish();
+
+        TestUtils.checkCorrectness(expectedActivations, sparseStandardLayer.getActivationDataBuffer(), 0.0001f);
+    }
+}
@@ -6,23 +6,21 @@ import android.renderscript.RenderScript;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
-import com.github.markorakita.axnn_rs.neuralnet.ActivationFunction;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.InputLayerCPU;
-import com.github.markorakita.axnn_rs.neuralnet.layers.cpu.StandardLayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.StandardLayerCPU;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+import java.util.Random;
+
 @RunWith(AndroidJUnit4.class)
 public class StandardLayerTest
 {
     private RenderScript m_rsContext;
 
-    private StandardLayerCPU m_standardLayerCPU;
-
-    private StandardLayerRS m_standardLayer;
-
     @Before
     public void setupRS()
     {
@@ -31,41 +29,114 @@ public class StandardLayerTest
     }
 
     @Test
-    public void testForwardPropCorrectness_By1()
+    public void testForwardPropCorrectness_By1() throws Exception
+    {
+        testForwardPropCorrectness(113, 32, false);
+    }
+
+    @Test
+    public void testForwardPropCorrectness_By4() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, false);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_By1() throws Exception
+    {
+        // Batch size not divisible by four, so that batched kernel also takes its one by one path.
+        // Whole input buffer size must not be divisible by four either, to match unvectorized activations of the previous layer.
+        testBatchForwardPropCorrectness(113, 32, 6, false);
+    }
+
+    @Test
+    public void testBatchForwardPropCorrectness_By4() throws Exception
+    {
+        testBatchForwardPropCorrectness(128, 30, 7, false);
+    }
+
+    @Test
+    public void testHalfPrecisionForwardPropCorrectness_By1() throws Exception
+    {
+        testForwardPropCorrectness(113, 32, true);
+    }
+
+    @Test
+    public void testHalfPrecisionForwardPropCorrectness_By4() throws Exception
+    {
+        testForwardPropCorrectness(128, 30, true);
+    }
+
+    @Test
+    public void testHalfPrecisionBatchForwardPropCorrectness_By1() throws Exception
     {
-        testForwardPropCorrectness(113, 32);
+        testBatchForwardPropCorrectness(113, 32, 6, true);
     }
 
     @Test
-    public void testForwardPropCorrectness_By4()
+    public void testHalfPrecisionBatchForwardPropCorrectness_By4() throws Exception
     {
-        testForwardPropCorrectness(128, 30);
+        testBatchForwardPropCorrectness(128, 30, 7, true);
     }
 
-    private void testForwardPropCorrectness(int inputDataSize, int numNeurons)
+    private void testBatchForwardPropCorrectness(int inputDataSize, int numNeurons, int batchSize, boolean halfPrecisionWeights) throws Exception
     {
-        doForwardProp(inputDataSize, numNeurons);
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateUniformBuffer(random, batchSize * inputDataSize, -128.0f, 127.0f);
+        float[] weights = TestUtils.generateBuffer(random, numNeurons * inputDataSize, 0.f, 0.01f);
+        float[] biases = new float[numNeurons];
+        Arrays.fill(biases, 1.0f);
 
-        TestUtils.checkCorrectness(m_standardLayerCPU.getActivationDataBuffer(), m_standardLayer.getActivationDataBuffer(), 0.0001f);
+        StandardLayerCPU standardLayerCPU = new StandardLayerCPU(1, inputDataSize, 1, numNeurons, ActivationFunctionType.Linear);
+        standardLayerCPU.loadWeights(weights);
+        standardLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(standardLayerCPU, inputData, inputDataSize, 1, 1, batchSize);
+
+        StandardLayerRS standardLayer = new StandardLayerRS(m_rsContext, 1, inputDataSize, 1, numNeurons, ActivationFunctionType.Linear, 0.f,
+                halfPrecisionWeights);
+        standardLayer.setBatchSize(m_rsContext, batchSize);
+        standardLayer.loadWeights(weights);
+        standardLayer.loadBiases(biases);
+        standardLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        standardLayer.doForwardProp();
+        m_rsContext.finish();
+
+        checkCorrectness(expectedActivations, standardLayer, halfPrecisionWeights);
     }
 
-    private void doForwardProp(int inputDataSize, int numNeurons)
+    private void testForwardPropCorrectness(int inputDataSize, int numNeurons, boolean halfPrecisionWeights) throws Exception
     {
-        InputLayerCPU inputLayerCPU = new InputLayerCPU(m_rsContext, inputDataSize, 1, 1);
-        inputLayerCPU.generateInputsFromUniformDistribution(-128.0f, 127.0f);
-        inputLayerCPU.doForwardProp();
-
-        m_standardLayerCPU = new StandardLayerCPU(inputLayerCPU.getActivationDataNumChannels(), inputLayerCPU.getActivationDataWidth(),
-                inputLayerCPU.getActivationDataHeight(), numNeurons);
-        m_standardLayerCPU.setInputDataBuffer(inputLayerCPU.getActivationDataBuffer());
-        m_standardLayerCPU.doForwardProp();
-
-        m_standardLayer = new StandardLayerRS(m_rsContext, inputLayerCPU.getActivationDataNumChannels(), inputLayerCPU.getActivationDataWidth(),
-                inputLayerCPU.getActivationDataHeight(), numNeurons, ActivationFunction.ActivationFunctionType.Linear);
-        m_standardLayer.loadWeights(m_standardLayerCPU.getWeightsBuffer());
-        m_standardLayer.loadBiases(m_standardLayerCPU.getBiasesBuffer());
-        m_standardLayer.setInputDataBuffer(inputLayerCPU.getActivationDataBufferRS());
-        m_standardLayer.doForwardProp();
+        Random random = new Random(0);
+        float[] inputData = TestUtils.generateUniformBuffer(random, inputDataSize, -128.0f, 127.0f);
+        float[] weights = TestUtils.generateBuffer(random, numNeurons * inputDataSize, 0.f, 0.01f);
+        float[] biases = new float[numNeurons];
+        Arrays.fill(biases, 1.0f);
+
+        StandardLayerCPU standardLayerCPU = new StandardLayerCPU(1, inputDataSize, 1, numNeurons, ActivationFunctionType.Linear);
+        standardLayerCPU.loadWeights(weights);
+        standardLayerCPU.loadBiases(biases);
+        float[] expectedActivations = TestUtils.propagateCPU(standardLayerCPU, inputData, inputDataSize, 1, 1, 1);
+
+        StandardLayerRS standardLayer = new StandardLayerRS(m_rsContext, 1, inputDataSize, 1, numNeurons, ActivationFunctionType.Linear, 0.f,
+                halfPrecisionWeights);
+        standardLayer.loadWeights(weights);
+        standardLayer.loadBiases(biases);
+        standardLayer.setInputDataBuffer(TestUtils.createDataAllocation(m_rsContext, inputData));
+        standardLayer.doForwardProp();
         m_rsContext.finish();
+
+        checkCorrectness(expectedActivations, standardLayer, halfPrecisionWeights);
+    }
+
+    private static void checkCorrectness(float[] expectedActivations, StandardLayerRS standardLayer, boolean halfPrecisionWeights)
+    {
+        if (halfPrecisionWeights)
+        {
+            // Comparing against full precision weights, so weights rounding error is expected.
+            TestUtils.checkRelativeCorrectness(expectedActivations, standardLayer.getActivationDataBuffer(), 0.01f);
+        }
+        else
+        {
+            TestUtils.checkCorrectness(expectedActivations, standardLayer.getActivationDataBuffer(), 0.0001f);
+        }
     }
 }
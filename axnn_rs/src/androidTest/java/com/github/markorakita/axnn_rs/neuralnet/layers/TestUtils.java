@@ -4,9 +4,91 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import com.github.markorakita.axnn_rs.neuralnet.cpu.InputLayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.LayerCPU;
+import com.github.markorakita.axnn_rs.neuralnet.cpu.NeuralNetCPU;
+
+import java.util.Arrays;
+import java.util.Random;
 
 class TestUtils
 {
+    public static float[] generateBuffer(Random random, int size, float mean, float stDev)
+    {
+        float[] buffer = new float[size];
+        for (int i = 0; i < size; ++i)
+        {
+            buffer[i] = mean + stDev * (float)random.nextGaussian();
+        }
+
+        return buffer;
+    }
+
+    public static float[] generateUniformBuffer(Random random, int size, float rangeStart, float rangeEnd)
+    {
+        float[] buffer = new float[size];
+        for (int i = 0; i < size; ++i)
+        {
+            buffer[i] = rangeStart + (rangeEnd - rangeStart) * random.nextFloat();
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Creates allocation holding given data, vectorized when its size allows it, same as activations of RS layers.
+     */
+    public static Allocation createDataAllocation(RenderScript rsContext, float[] data)
+    {
+        Type.Builder tb;
+        if (data.length % 4 == 0)
+        {
+            tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+            tb.setX(data.length / 4);
+        }
+        else
+        {
+            tb = new Type.Builder(rsContext, Element.F32(rsContext));
+            tb.setX(data.length);
+        }
+
+        Allocation allocation = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+        allocation.copyFrom(data);
+
+        return allocation;
+    }
+
+    /**
+     * Propagates batch of samples through CPU layer, sample by sample, as reference for RS layers.
+     * @param layer CPU layer, with parameters already loaded.
+     * @param inputData Input data of all samples one after another, in per-pixel data structure.
+     * @param batchSize Number of samples.
+     * @return Activations of all samples one after another.
+     */
+    public static float[] propagateCPU(LayerCPU layer, float[] inputData, int inputDataWidth, int inputDataHeight, int inputNumChannels,
+                                       int batchSize) throws Exception
+    {
+        NeuralNetCPU neuralNet = new NeuralNetCPU();
+        neuralNet.addLayer(new InputLayerCPU(inputDataWidth, inputDataHeight, inputNumChannels));
+        neuralNet.addLayer(layer);
+
+        final int inputDataSize = inputDataWidth * inputDataHeight * inputNumChannels;
+        final int activationDataSize = layer.getActivationDataBufferSize();
+        float[] activations = new float[batchSize * activationDataSize];
+        for (int sampleIndex = 0; sampleIndex < batchSize; ++sampleIndex)
+        {
+            float[] sampleActivations = neuralNet.extractFeatures(Arrays.copyOfRange(inputData, sampleIndex * inputDataSize,
+                    (sampleIndex + 1) * inputDataSize));
+            System.arraycopy(sampleActivations, 0, activations, sampleIndex * activationDataSize, activationDataSize);
+        }
+
+        return activations;
+    }
+
     public static void checkCorrectness(float[] cpuLayerActivationBuffer, Allocation rsLayerActivationBuffer, float threshold)
     {
         float[] rsLayerActivations = new float[cpuLayerActivationBuffer.length];
@@ -26,4 +108,19 @@ class TestUtils
 
         assertTrue(foundValueDifferentFromZero);
     }
+
+    /**
+     * Checks activations of RS layer against CPU layer activations, with threshold relative to the largest CPU layer activation.
+     * Used for layers which keep their parameters in reduced precision.
+     */
+    public static void checkRelativeCorrectness(float[] cpuLayerActivationBuffer, Allocation rsLayerActivationBuffer, float relativeThreshold)
+    {
+        float maxActivation = 0.f;
+        for (float value : cpuLayerActivationBuffer)
+        {
+            maxActivation = Math.max(maxActivation, Math.abs(value));
+        }
+
+        checkCorrectness(cpuLayerActivationBuffer, rsLayerActivationBuffer, relativeThreshold * maxActivation);
+    }
 }
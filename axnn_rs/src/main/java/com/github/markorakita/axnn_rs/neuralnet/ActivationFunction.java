@@ -5,16 +5,6 @@ import android.renderscript.RenderScript;
 
 public class ActivationFunction
 {
-    public enum ActivationFunctionType
-    {
-        Linear,
-        ReLU,
-        ELU,
-        LeakyReLU,
-        Sigmoid,
-        Tanh
-    }
-
     private final ScriptC_activationfunctions m_kernel;
 
     private final ActivationFunctionType m_activationFunctionType;
@@ -28,6 +18,11 @@ public class ActivationFunction
         m_activationAlpha = activationAlpha;
     }
 
+    public ActivationFunctionType getActivationFunctionType()
+    {
+        return m_activationFunctionType;
+    }
+
     public Allocation applyActivation(Allocation preactivationDataBuffer, Allocation activationDataBuffer, int bufferSize)
     {
         if (m_activationFunctionType == ActivationFunctionType.Linear)
@@ -0,0 +1,14 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+/**
+ * Supported activation function types, shared by RenderScript and CPU layers.
+ */
+public enum ActivationFunctionType
+{
+	Linear,
+	ReLU,
+	ELU,
+	LeakyReLU,
+	Sigmoid,
+	Tanh
+}
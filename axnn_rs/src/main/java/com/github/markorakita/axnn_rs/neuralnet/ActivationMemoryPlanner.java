@@ -0,0 +1,243 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.renderscript.Allocation;
+import android.renderscript.AllocationAdapter;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans device memory of layer activation buffers, by placing buffers of different layers into shared allocations whenever their lifetimes don't overlap.
+ *
+ * Layers are propagated one after another in planned execution order, so activation buffer of a layer is alive from its propagation until propagation
+ * of the last layer which reads it, while scratch buffers are alive only during propagation of their layer. Activations which no layer reads
+ * are read after propagation, so they are never shared, and neither are activations of layers requested as outputs.
+ * Buffers are placed from the largest to the smallest into shared allocations of the same element type,
+ * so each shared allocation is sized by the first buffer placed in it, and layers get adapters of their exact buffer types into it.
+ *
+ * Buffers are planned per inference session, so sessions running at the same time never share them.
+ */
+class ActivationMemoryPlanner
+{
+	/**
+	 * Buffer of one layer, with its lifetime expressed in steps of execution order during which it is alive.
+	 */
+	private static class PlannedBuffer
+	{
+		final int m_layerIndex;
+
+		final int m_bufferIndex;
+
+		final Type m_type;
+
+		final int m_firstUse;
+
+		final int m_lastUse;
+
+		PlannedBuffer(int layerIndex, int bufferIndex, @NonNull Type type, int firstUse, int lastUse)
+		{
+			m_layerIndex = layerIndex;
+			m_bufferIndex = bufferIndex;
+			m_type = type;
+			m_firstUse = firstUse;
+			m_lastUse = lastUse;
+		}
+
+		int getBytesSize()
+		{
+			return m_type.getCount() * m_type.getElement().getBytesSize();
+		}
+	}
+
+	/**
+	 * Allocation shared by buffers whose lifetimes don't overlap.
+	 */
+	private static class SharedAllocation
+	{
+		final Type m_type;
+
+		final List<PlannedBuffer> m_buffers = new ArrayList<>();
+
+		Allocation m_allocation;
+
+		SharedAllocation(@NonNull Type type)
+		{
+			m_type = type;
+		}
+
+		boolean canHold(@NonNull PlannedBuffer buffer)
+		{
+			if (!m_type.getElement().isCompatible(buffer.m_type.getElement()) || m_type.getCount() < buffer.m_type.getCount())
+			{
+				return false;
+			}
+
+			for (PlannedBuffer placedBuffer : m_buffers)
+			{
+				if (placedBuffer.m_firstUse <= buffer.m_lastUse && buffer.m_firstUse <= placedBuffer.m_lastUse)
+				{
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Renderscript context.
+	 */
+	private final RenderScript m_rsContext;
+
+	/**
+	 * Shared allocations and adapters created by the last plan.
+	 */
+	private final List<Allocation> m_plannedAllocations;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 */
+	ActivationMemoryPlanner(@NonNull RenderScript rsContext)
+	{
+		m_rsContext = rsContext;
+		m_plannedAllocations = new ArrayList<>();
+	}
+
+	/**
+	 * Plans activation memory of the layers, allocating buffers of given types. Allocations of the previous plan are destroyed.
+	 * @param layerBufferTypes Types of device buffers of each layer, as returned by LayerRS.getActivationBufferTypes.
+	 * @param layerInputs Indices of input layers of each layer, as returned by NeuralNetRS.getLayerInputs.
+	 * @param executionOrder Layer indices in order of propagation.
+	 * @param outputLayers Indices of layers whose activations are read after propagation even though other layers read them too.
+	 * @return Planned buffers of each layer.
+	 */
+	@WorkerThread
+	@NonNull
+	Allocation[][] planActivationMemory(@NonNull Type[][] layerBufferTypes, @NonNull int[][] layerInputs, @NonNull int[] executionOrder,
+										@NonNull int[] outputLayers)
+	{
+		destroyPlannedAllocations();
+
+		int[] layerSteps = new int[executionOrder.length];
+		for (int step = 0; step < executionOrder.length; ++step)
+		{
+			layerSteps[executionOrder[step]] = step;
+		}
+
+		// Activations are alive until propagation of their last reader, or until the end if nobody reads them.
+		int[] activationsLastUse = new int[layerBufferTypes.length];
+		for (int layerIndex = 0; layerIndex < layerBufferTypes.length; ++layerIndex)
+		{
+			activationsLastUse[layerIndex] = -1;
+		}
+		for (int layerIndex = 0; layerIndex < layerBufferTypes.length; ++layerIndex)
+		{
+			for (int inputLayer : layerInputs[layerIndex])
+			{
+				activationsLastUse[inputLayer] = Math.max(activationsLastUse[inputLayer], layerSteps[layerIndex]);
+			}
+		}
+		for (int outputLayer : outputLayers)
+		{
+			activationsLastUse[outputLayer] = Integer.MAX_VALUE;
+		}
+
+		List<PlannedBuffer> buffers = new ArrayList<>();
+		Allocation[][] layerBuffers = new Allocation[layerBufferTypes.length][];
+		for (int layerIndex = 0; layerIndex < layerBufferTypes.length; ++layerIndex)
+		{
+			Type[] bufferTypes = layerBufferTypes[layerIndex];
+			layerBuffers[layerIndex] = new Allocation[bufferTypes.length];
+			for (int bufferIndex = 0; bufferIndex < bufferTypes.length; ++bufferIndex)
+			{
+				int firstUse = layerSteps[layerIndex];
+				int lastUse = firstUse;
+				if (bufferIndex == 0)
+				{
+					lastUse = activationsLastUse[layerIndex] < 0 ? Integer.MAX_VALUE : activationsLastUse[layerIndex];
+				}
+				buffers.add(new PlannedBuffer(layerIndex, bufferIndex, bufferTypes[bufferIndex], firstUse, lastUse));
+			}
+		}
+
+		// Placing larger buffers first, so that smaller ones fit into already created allocations.
+		Collections.sort(buffers, (first, second) -> Integer.compare(second.getBytesSize(), first.getBytesSize()));
+
+		List<SharedAllocation> sharedAllocations = new ArrayList<>();
+		for (PlannedBuffer buffer : buffers)
+		{
+			SharedAllocation bestAllocation = null;
+			for (SharedAllocation sharedAllocation : sharedAllocations)
+			{
+				if (sharedAllocation.canHold(buffer) &&
+					(bestAllocation == null || sharedAllocation.m_type.getCount() < bestAllocation.m_type.getCount()))
+				{
+					bestAllocation = sharedAllocation;
+				}
+			}
+
+			if (bestAllocation == null)
+			{
+				bestAllocation = new SharedAllocation(buffer.m_type);
+				sharedAllocations.add(bestAllocation);
+			}
+			bestAllocation.m_buffers.add(buffer);
+		}
+
+		for (SharedAllocation sharedAllocation : sharedAllocations)
+		{
+			sharedAllocation.m_allocation = Allocation.createTyped(m_rsContext, sharedAllocation.m_type, Allocation.USAGE_SCRIPT);
+			m_plannedAllocations.add(sharedAllocation.m_allocation);
+
+			for (PlannedBuffer buffer : sharedAllocation.m_buffers)
+			{
+				Allocation bufferAllocation = sharedAllocation.m_allocation;
+				if (buffer.m_type.getCount() < sharedAllocation.m_type.getCount())
+				{
+					bufferAllocation = AllocationAdapter.createTyped(m_rsContext, sharedAllocation.m_allocation, buffer.m_type);
+					m_plannedAllocations.add(bufferAllocation);
+				}
+				layerBuffers[buffer.m_layerIndex][buffer.m_bufferIndex] = bufferAllocation;
+			}
+		}
+
+		return layerBuffers;
+	}
+
+	/**
+	 * Gets size in bytes of device memory used by activation buffers of the last plan.
+	 */
+	long getPlannedMemorySize()
+	{
+		long plannedMemorySize = 0;
+		for (Allocation allocation : m_plannedAllocations)
+		{
+			if (!(allocation instanceof AllocationAdapter))
+			{
+				plannedMemorySize += allocation.getBytesSize();
+			}
+		}
+
+		return plannedMemorySize;
+	}
+
+	/**
+	 * Destroys allocations of the last plan.
+	 */
+	void destroyPlannedAllocations()
+	{
+		// Destroying adapters before allocations they point into.
+		for (int i = m_plannedAllocations.size() - 1; i >= 0; --i)
+		{
+			m_plannedAllocations.get(i).destroy();
+		}
+		m_plannedAllocations.clear();
+	}
+}
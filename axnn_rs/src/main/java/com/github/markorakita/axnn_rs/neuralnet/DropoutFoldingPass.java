@@ -0,0 +1,155 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.renderscript.RenderScript;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.DropoutLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.QuantizedStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.SparseStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
+
+import java.util.List;
+
+/**
+ * Optimization pass which removes dropout layers. During inference dropout layer only scales its input by the probability that it won't be dropped,
+ * so the scale is folded into weights and biases of the layer which produces its input, or if that is not possible into weights of the layers
+ * which read its activations.
+ *
+ * Scaling of producer's weights and biases commutes with its activation function only for functions which are positively homogeneous
+ * (linear, ReLU and leaky ReLU), and only when dropout layer is the only reader of its activations.
+ */
+public class DropoutFoldingPass implements OptimizationPass
+{
+	/**
+	 * Runs the pass over the network.
+	 * @param neuralNet Network with loaded model.
+	 * @return True if some dropout layers were removed.
+	 */
+	@WorkerThread
+	@Override
+	public boolean run(@NonNull NeuralNetRS neuralNet)
+	{
+		boolean changed = false;
+		for (int layerIndex = neuralNet.getLayers().size() - 1; layerIndex > 0; --layerIndex)
+		{
+			LayerRS layer = neuralNet.getLayer(layerIndex);
+			if (layer instanceof DropoutLayerRS && foldDropoutLayer(neuralNet, layerIndex, (DropoutLayerRS)layer))
+			{
+				neuralNet.bypassLayer(layerIndex);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Folds scale of the dropout layer into neighbouring layers.
+	 * @return True if scale was folded, so dropout layer can be removed.
+	 */
+	@WorkerThread
+	private static boolean foldDropoutLayer(@NonNull NeuralNetRS neuralNet, int layerIndex, @NonNull DropoutLayerRS dropoutLayer)
+	{
+		int[] inputLayers = neuralNet.getLayerInputs(layerIndex);
+		if (inputLayers.length != 1)
+		{
+			return false;
+		}
+
+		RenderScript rsContext = neuralNet.getRenderScriptContext();
+		float scale = 1.f - dropoutLayer.getDropProbability();
+
+		LayerRS producer = neuralNet.getLayer(inputLayers[0]);
+		ActivationFunctionType producerActivation = getActivationFunctionType(producer);
+		if (scale > 0.f && isPositivelyHomogeneous(producerActivation) && neuralNet.getLayerReaders(inputLayers[0]).size() == 1)
+		{
+			scaleParameters(rsContext, producer, scale, scale);
+			return true;
+		}
+
+		List<Integer> readers = neuralNet.getLayerReaders(layerIndex);
+		if (readers.isEmpty())
+		{
+			return false;
+		}
+		for (int reader : readers)
+		{
+			if (getActivationFunctionType(neuralNet.getLayer(reader)) == null)
+			{
+				return false;
+			}
+		}
+		for (int reader : readers)
+		{
+			scaleParameters(rsContext, neuralNet.getLayer(reader), scale, 1.f);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets activation function of layers whose parameters can be scaled.
+	 * @return Activation function, or null if layer parameters can't be scaled.
+	 */
+	@Nullable
+	private static ActivationFunctionType getActivationFunctionType(@NonNull LayerRS layer)
+	{
+		if (layer instanceof ConvolutionalLayerRS)
+		{
+			return ((ConvolutionalLayerRS)layer).getActivationFunctionType();
+		}
+		else if (layer instanceof StandardLayerRS)
+		{
+			return ((StandardLayerRS)layer).getActivationFunctionType();
+		}
+		else if (layer instanceof QuantizedStandardLayerRS)
+		{
+			return ((QuantizedStandardLayerRS)layer).getActivationFunctionType();
+		}
+		else if (layer instanceof SparseStandardLayerRS)
+		{
+			return ((SparseStandardLayerRS)layer).getActivationFunctionType();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks whether activation function commutes with scaling by positive number.
+	 */
+	private static boolean isPositivelyHomogeneous(@Nullable ActivationFunctionType activationFunctionType)
+	{
+		return activationFunctionType == ActivationFunctionType.Linear ||
+			activationFunctionType == ActivationFunctionType.ReLU ||
+			activationFunctionType == ActivationFunctionType.LeakyReLU;
+	}
+
+	/**
+	 * Scales weights and biases of the layer.
+	 */
+	@WorkerThread
+	private static void scaleParameters(@NonNull RenderScript rsContext, @NonNull LayerRS layer, float weightsScale, float biasesScale)
+	{
+		if (layer instanceof ConvolutionalLayerRS)
+		{
+			((ConvolutionalLayerRS)layer).scaleParameters(rsContext, weightsScale, biasesScale);
+		}
+		else if (layer instanceof StandardLayerRS)
+		{
+			((StandardLayerRS)layer).scaleParameters(rsContext, weightsScale, biasesScale);
+		}
+		else if (layer instanceof QuantizedStandardLayerRS)
+		{
+			((QuantizedStandardLayerRS)layer).scaleParameters(rsContext, weightsScale, biasesScale);
+		}
+		else if (layer instanceof SparseStandardLayerRS)
+		{
+			((SparseStandardLayerRS)layer).scaleParameters(rsContext, weightsScale, biasesScale);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ImageInputLayerRS;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pipelined classification of consecutive frames (for example from camera stream).
+ *
+ * Frames are resized, cropped and normalized on preparation threads into one of the input slots, while previous frames are
+ * propagated through the network on pipeline's inference thread. Preparation of the next frames therefore overlaps with kernels
+ * of the current frame, which gets throughput close to the limit given by kernels alone. Results are delivered in order of submission.
+ *
+ * RenderScript executes kernels in order of submission, so frames in flight share activation buffers of the pipeline's inference session
+ * and only their input data is kept per slot. Network itself can be used by others while pipeline is running.
+ */
+public class ImageClassificationPipeline implements Closeable
+{
+	/**
+	 * Session in which frames are classified.
+	 */
+	private final InferenceSession m_session;
+
+	/**
+	 * Input layer of the network, which prepares frames.
+	 */
+	private final ImageInputLayerRS m_inputLayer;
+
+	/**
+	 * Executor on which frames are prepared.
+	 */
+	private final ExecutorService m_preparationExecutor;
+
+	/**
+	 * Executor on which frames are propagated through the network, one by one in order of submission.
+	 */
+	private final ExecutorService m_inferenceExecutor;
+
+	/**
+	 * Input slots which are not used by any frame in flight.
+	 */
+	private final BlockingQueue<float[]> m_freeInputSlots;
+
+	/**
+	 * Constructor.
+	 * @param neuralNet Network used for classification, with loaded model.
+	 * @param numInputSlots Number of frames which can be in flight at once, at least two for preparation to overlap with inference.
+	 * @param preparationExecutor Executor on which frames are prepared.
+	 * @throws Exception Throws generic exception in case when network doesn't accept images, or number of slots is invalid.
+	 */
+	public ImageClassificationPipeline(@NonNull NeuralNetRS neuralNet, int numInputSlots, @NonNull ExecutorService preparationExecutor)
+			throws Exception
+	{
+		if (!(neuralNet.getInputLayer() instanceof ImageInputLayerRS))
+		{
+			throw new Exception("This network doesn't accept images as input data type.");
+		}
+		if (numInputSlots < 1)
+		{
+			throw new Exception("Pipeline needs at least one input slot.");
+		}
+
+		m_session = neuralNet.createSession();
+		m_inputLayer = (ImageInputLayerRS)neuralNet.getInputLayer();
+		m_preparationExecutor = preparationExecutor;
+		m_inferenceExecutor = Executors.newSingleThreadExecutor();
+
+		m_freeInputSlots = new ArrayBlockingQueue<>(numInputSlots);
+		for (int i = 0; i < numInputSlots; ++i)
+		{
+			m_freeInputSlots.add(new float[m_inputLayer.getActivationDataBufferSize()]);
+		}
+	}
+
+	/**
+	 * Submits frame for classification. Blocks while all input slots are used by frames in flight.
+	 * @param image Frame to classify. It must not be changed until returned future is done.
+	 * @return Future classification result of the frame.
+	 * @throws InterruptedException Throws exception in case when thread is interrupted while waiting for free input slot.
+	 * @throws RejectedExecutionException Throws exception in case when pipeline is closed.
+	 */
+	@WorkerThread
+	@NonNull
+	public Future<ClassificationResult> submitImage(@NonNull final Bitmap image) throws InterruptedException
+	{
+		checkNotClosed();
+		final float[] inputSlot = m_freeInputSlots.take();
+
+		// Pipeline can't get closed between the check and the inference submission, otherwise rejected inference would never free the slot.
+		synchronized (this)
+		{
+			final Future<Boolean> preparation;
+			try
+			{
+				checkNotClosed();
+				preparation = m_preparationExecutor.submit(() -> m_inputLayer.prepareImage(image, inputSlot));
+			}
+			catch (RuntimeException exc)
+			{
+				m_freeInputSlots.add(inputSlot);
+				throw exc;
+			}
+
+			return m_inferenceExecutor.submit(() ->
+			{
+				try
+				{
+					if (!getPreparationResult(preparation))
+					{
+						throw new Exception("Can't load input image.");
+					}
+
+					return m_session.classifyPreparedImage(inputSlot);
+				}
+				finally
+				{
+					m_freeInputSlots.add(inputSlot);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Checks that pipeline is not closed, since frames can't be submitted after that.
+	 */
+	private void checkNotClosed()
+	{
+		if (m_inferenceExecutor.isShutdown())
+		{
+			throw new RejectedExecutionException("Pipeline is closed!");
+		}
+	}
+
+	/**
+	 * Closes the pipeline. Frames already submitted are still classified, but no new frames can be submitted.
+	 */
+	@AnyThread
+	@Override
+	public synchronized void close()
+	{
+		if (!m_inferenceExecutor.isShutdown())
+		{
+			// Session is closed after all submitted frames are classified.
+			m_inferenceExecutor.execute(m_session::close);
+			m_inferenceExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for frame preparation, rethrowing its failure.
+	 */
+	private static boolean getPreparationResult(@NonNull Future<Boolean> preparation) throws Exception
+	{
+		try
+		{
+			return preparation.get();
+		}
+		catch (ExecutionException exc)
+		{
+			Throwable cause = exc.getCause();
+			if (cause instanceof Exception)
+			{
+				throw (Exception)cause;
+			}
+
+			throw exc;
+		}
+	}
+}
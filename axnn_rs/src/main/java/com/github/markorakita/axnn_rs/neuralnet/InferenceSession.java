@@ -0,0 +1,692 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.graphics.Bitmap;
+import android.renderscript.Allocation;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.FeaturesInputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.ImageInputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.InputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.MaxPoolLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.OutputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.SoftMaxLayerRS;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inference session holds per-inference state of the network: input data, activation buffers of all layers and classification results,
+ * while layer parameters are shared by all sessions of the network. Multiple sessions can therefore run inference at the same time
+ * against one loaded model, without multiplying its parameter memory.
+ *
+ * Each layer is locked only while session binds its buffers to it and launches its kernels, so sessions interleave layer by layer,
+ * and session which waits for its results on host doesn't block the others. Session itself serves one inference at a time.
+ *
+ * Layers are propagated in order planned by LayerScheduler, so for networks with multiple branches all device kernels are queued
+ * before layers which wait on host, and activation buffers of a branch are reused once its last reader is propagated.
+ * When features are extracted from intermediate layers, only layers which they depend on are propagated.
+ */
+public class InferenceSession implements Closeable
+{
+	/**
+	 * Network on which inference is run.
+	 */
+	private final NeuralNetRS m_neuralNet;
+
+	/**
+	 * Renderscript context.
+	 */
+	private final RenderScript m_rsContext;
+
+	/**
+	 * Places activation buffers of the layers into shared device memory.
+	 */
+	private final ActivationMemoryPlanner m_activationMemoryPlanner;
+
+	/**
+	 * Activation buffers of each layer, as planned for current batch size and layers of the network.
+	 */
+	private Allocation[][] m_layerBuffers;
+
+	/**
+	 * Indices of input layers of each layer, for layers of the network for which activation buffers are planned.
+	 */
+	private int[][] m_layerInputs;
+
+	/**
+	 * Indices of layers propagated for requested outputs, in order of propagation.
+	 */
+	private int[] m_executionOrder;
+
+	/**
+	 * Indices of layers whose activations are requested as outputs, for which activation buffers are planned,
+	 * or null if the whole network is propagated.
+	 */
+	private int[] m_plannedOutputLayers;
+
+	/**
+	 * Index of max pool layer propagated together with each convolutional layer, or -1 for layers which are not fused.
+	 */
+	private int[] m_fusedPoolLayers;
+
+	/**
+	 * Version of the network layers for which activation buffers are planned.
+	 */
+	private int m_plannedLayersVersion;
+
+	/**
+	 * Number of samples propagated through the network at once.
+	 */
+	private int m_batchSize;
+
+	/**
+	 * Normalized input data of all samples in the batch.
+	 */
+	private float[] m_inputDataBuffer;
+
+	/**
+	 * Classification results of all samples in the batch, from the last propagation.
+	 */
+	private final List<ClassificationResult> m_classificationResults;
+
+	/**
+	 * Constructor.
+	 * @param neuralNet Network on which inference is run.
+	 * @param rsContext Renderscript context.
+	 */
+	InferenceSession(@NonNull NeuralNetRS neuralNet, @NonNull RenderScript rsContext)
+	{
+		m_neuralNet = neuralNet;
+		m_rsContext = rsContext;
+		m_activationMemoryPlanner = new ActivationMemoryPlanner(rsContext);
+		m_batchSize = 0;
+		m_classificationResults = new ArrayList<>();
+	}
+
+	/**
+	 * Gets size in bytes of device memory used by activation buffers of this session, once they are planned before the first inference.
+	 * @return Activation memory size.
+	 */
+	@AnyThread
+	public synchronized long getActivationMemorySize()
+	{
+		return m_activationMemoryPlanner.getPlannedMemorySize();
+	}
+
+	/**
+	 * Classifies image.
+	 * @param image Image to classify.
+	 * @return Classification result.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized ClassificationResult classifyImage(@NonNull final Bitmap image) throws Exception
+	{
+		ImageInputLayerRS inputLayer = getImageInputLayer();
+
+		prepareBatch(1);
+		if (!inputLayer.prepareImage(image, m_inputDataBuffer, 0))
+		{
+			throw new Exception("Can't load input image.");
+		}
+
+		doForwardProp();
+
+		return getClassificationResults().get(0);
+	}
+
+	/**
+	 * Classifies features.
+	 * @param features Features to classify.
+	 * @return Classification result.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized ClassificationResult classifyFeatures(@NonNull final float[] features) throws Exception
+	{
+		FeaturesInputLayerRS inputLayer = getFeaturesInputLayer();
+
+		prepareBatch(1);
+		inputLayer.prepareFeatures(features, m_inputDataBuffer, 0);
+
+		doForwardProp();
+
+		return getClassificationResults().get(0);
+	}
+
+	/**
+	 * Classifies batch of images at once, which is faster than classifying them one by one since layer weights are read once per several images.
+	 * Activation buffers are planned again whenever batch size changes, so it is best to classify batches of the same size.
+	 * @param images Images to classify.
+	 * @return Classification results, in order of images.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized List<ClassificationResult> classifyImages(@NonNull final List<Bitmap> images) throws Exception
+	{
+		ImageInputLayerRS inputLayer = getImageInputLayer();
+		if (images.isEmpty())
+		{
+			return new ArrayList<>();
+		}
+
+		prepareBatch(images.size());
+		for (int sampleIndex = 0; sampleIndex < images.size(); ++sampleIndex)
+		{
+			if (!inputLayer.prepareImage(images.get(sampleIndex), m_inputDataBuffer, sampleIndex))
+			{
+				throw new Exception("Can't load input image " + sampleIndex + ".");
+			}
+		}
+
+		doForwardProp();
+
+		return getClassificationResults();
+	}
+
+	/**
+	 * Classifies batch of features at once, which is faster than classifying them one by one since layer weights are read once per several samples.
+	 * Activation buffers are planned again whenever batch size changes, so it is best to classify batches of the same size.
+	 * @param features Features of each sample to classify.
+	 * @return Classification results, in order of samples.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized List<ClassificationResult> classifyFeatures(@NonNull final float[][] features) throws Exception
+	{
+		FeaturesInputLayerRS inputLayer = getFeaturesInputLayer();
+		if (features.length == 0)
+		{
+			return new ArrayList<>();
+		}
+
+		prepareBatch(features.length);
+		for (int sampleIndex = 0; sampleIndex < features.length; ++sampleIndex)
+		{
+			inputLayer.prepareFeatures(features[sampleIndex], m_inputDataBuffer, sampleIndex);
+		}
+
+		doForwardProp();
+
+		return getClassificationResults();
+	}
+
+	/**
+	 * Extracts features from the image, used for transfer learning.
+	 * @param image Image to extract features from.
+	 * @return Extracted features.
+	 * @throws Exception Throws generic exception in case when features extraction fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized float[] extractFeatures(@NonNull final Bitmap image) throws Exception
+	{
+		ImageInputLayerRS inputLayer = getImageInputLayer();
+
+		prepareBatch(1);
+		if (!inputLayer.prepareImage(image, m_inputDataBuffer, 0))
+		{
+			throw new Exception("Can't load input image.");
+		}
+
+		doForwardProp();
+
+		return readFeatures(m_layerBuffers.length - 1);
+	}
+
+	/**
+	 * Extracts features from the image as activations of the given layer, propagating only layers up to it.
+	 * @param image Image to extract features from.
+	 * @param layerIndex Index of the layer whose activations are extracted.
+	 * @return Extracted features.
+	 * @throws Exception Throws generic exception in case when features extraction fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized float[] extractFeatures(@NonNull final Bitmap image, int layerIndex) throws Exception
+	{
+		return extractFeatures(image, new int[] { layerIndex })[0];
+	}
+
+	/**
+	 * Extracts features from the image as activations of several layers in one propagation, propagating only layers which they depend on.
+	 * Activation buffers are planned again whenever requested layers change, so it is best to request the same layers each time.
+	 * @param image Image to extract features from.
+	 * @param layerIndices Indices of the layers whose activations are extracted.
+	 * @return Extracted features, in order of layer indices.
+	 * @throws Exception Throws generic exception in case when features extraction fails.
+	 */
+	@WorkerThread
+	@NonNull
+	public synchronized float[][] extractFeatures(@NonNull final Bitmap image, @NonNull int[] layerIndices) throws Exception
+	{
+		ImageInputLayerRS inputLayer = getImageInputLayer();
+		int numLayers = m_neuralNet.getLayers().size();
+		for (int layerIndex : layerIndices)
+		{
+			if (layerIndex < 0 || layerIndex >= numLayers)
+			{
+				throw new IllegalArgumentException("Layer index " + layerIndex + " is out of range.");
+			}
+		}
+
+		prepareBatch(1, layerIndices.clone());
+		if (!inputLayer.prepareImage(image, m_inputDataBuffer, 0))
+		{
+			throw new Exception("Can't load input image.");
+		}
+
+		doForwardProp();
+
+		float[][] features = new float[layerIndices.length][];
+		for (int i = 0; i < layerIndices.length; ++i)
+		{
+			features[i] = readFeatures(layerIndices[i]);
+		}
+
+		return features;
+	}
+
+	/**
+	 * Reads activations of the layer after propagation.
+	 * @param layerIndex Index of the layer in the network.
+	 * @return Layer activations.
+	 * @throws Exception Throws generic exception if layer doesn't keep its activations on device.
+	 */
+	@NonNull
+	private float[] readFeatures(int layerIndex) throws Exception
+	{
+		if (m_layerBuffers[layerIndex].length == 0)
+		{
+			throw new Exception("Layer " + layerIndex + " doesn't have activations to extract features from.");
+		}
+
+		float[] featuresBuffer = new float[m_neuralNet.getLayer(layerIndex).getActivationDataBufferSize()];
+		m_layerBuffers[layerIndex][0].copyTo(featuresBuffer);
+
+		return featuresBuffer;
+	}
+
+	/**
+	 * Classifies image already prepared by the input layer, used by inference pipeline.
+	 * @param preparedInputData Normalized input data of the image.
+	 * @return Classification result.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	@WorkerThread
+	@NonNull
+	synchronized ClassificationResult classifyPreparedImage(@NonNull final float[] preparedInputData) throws Exception
+	{
+		prepareBatch(1);
+		System.arraycopy(preparedInputData, 0, m_inputDataBuffer, 0, m_inputDataBuffer.length);
+
+		doForwardProp();
+
+		return getClassificationResults().get(0);
+	}
+
+	/**
+	 * Releases activation buffers of this session. Session plans them again if it is used afterwards.
+	 */
+	@AnyThread
+	@Override
+	public synchronized void close()
+	{
+		m_activationMemoryPlanner.destroyPlannedAllocations();
+		m_layerBuffers = null;
+		m_batchSize = 0;
+	}
+
+	/**
+	 * Gets input layer of the network, checking that it accepts images.
+	 */
+	@NonNull
+	private ImageInputLayerRS getImageInputLayer() throws Exception
+	{
+		InputLayerRS inputLayer = m_neuralNet.getInputLayer();
+		if (!(inputLayer instanceof ImageInputLayerRS))
+		{
+			throw new Exception("This network doesn't accept images as input data type.");
+		}
+
+		return (ImageInputLayerRS)inputLayer;
+	}
+
+	/**
+	 * Gets input layer of the network, checking that it accepts features.
+	 */
+	@NonNull
+	private FeaturesInputLayerRS getFeaturesInputLayer() throws Exception
+	{
+		InputLayerRS inputLayer = m_neuralNet.getInputLayer();
+		if (!(inputLayer instanceof FeaturesInputLayerRS))
+		{
+			throw new Exception("This component doesn't support features as input data type.");
+		}
+
+		return (FeaturesInputLayerRS)inputLayer;
+	}
+
+	/**
+	 * Gets classification results of all samples in the batch, from the last propagation.
+	 */
+	@NonNull
+	private List<ClassificationResult> getClassificationResults() throws Exception
+	{
+		if (m_classificationResults.isEmpty())
+		{
+			throw new Exception("This network doesn't have output layer!");
+		}
+
+		return new ArrayList<>(m_classificationResults);
+	}
+
+	/**
+	 * Prepares session for propagation of given number of samples through the whole network.
+	 * @param batchSize Number of samples.
+	 */
+	@WorkerThread
+	private void prepareBatch(int batchSize) throws Exception
+	{
+		prepareBatch(batchSize, null);
+	}
+
+	/**
+	 * Prepares session for propagation of given number of samples, planning activation buffers again if batch size,
+	 * requested outputs or network layers changed.
+	 * @param batchSize Number of samples.
+	 * @param outputLayers Indices of layers whose activations are requested as outputs, or null to propagate the whole network.
+	 */
+	@WorkerThread
+	private void prepareBatch(int batchSize, @Nullable int[] outputLayers) throws Exception
+	{
+		int layersVersion = m_neuralNet.getLayersVersion();
+		if (batchSize == m_batchSize && layersVersion == m_plannedLayersVersion && Arrays.equals(outputLayers, m_plannedOutputLayers) &&
+			m_layerBuffers != null)
+		{
+			return;
+		}
+
+		List<LayerRS> layers = m_neuralNet.getLayers();
+		Type[][] layerBufferTypes = new Type[layers.size()][];
+		int[][] layerInputs = new int[layers.size()][];
+		boolean[] hostLayers = new boolean[layers.size()];
+		for (int layerIndex = 0; layerIndex < layers.size(); ++layerIndex)
+		{
+			LayerRS layer = layers.get(layerIndex);
+			synchronized (layer)
+			{
+				layer.setBatchSize(batchSize);
+				layerBufferTypes[layerIndex] = layer.getActivationBufferTypes(m_rsContext);
+			}
+			layerInputs[layerIndex] = m_neuralNet.getLayerInputs(layerIndex);
+			hostLayers[layerIndex] = layer instanceof SoftMaxLayerRS || layer instanceof OutputLayerRS;
+		}
+
+		int[] executionOrder = LayerScheduler.scheduleLayers(layerInputs, hostLayers);
+		boolean[] neededLayers = findNeededLayers(layerInputs, outputLayers);
+		m_layerInputs = layerInputs;
+		m_fusedPoolLayers = findFusedPoolLayers(layers, layerInputs, outputLayers);
+
+		// Fused convolutional layers have no activation buffers, and their max pool layers read their inputs instead.
+		int[][] plannedLayerInputs = layerInputs.clone();
+		for (int layerIndex = 0; layerIndex < layers.size(); ++layerIndex)
+		{
+			if (m_fusedPoolLayers[layerIndex] >= 0)
+			{
+				layerBufferTypes[layerIndex] = new Type[0];
+				plannedLayerInputs[m_fusedPoolLayers[layerIndex]] = layerInputs[layerIndex];
+			}
+		}
+
+		// Layers which requested outputs don't depend on are not propagated, so they need no buffers and don't keep their inputs alive.
+		int numNeededLayers = 0;
+		for (int layerIndex = 0; layerIndex < layers.size(); ++layerIndex)
+		{
+			if (neededLayers[layerIndex])
+			{
+				++numNeededLayers;
+			}
+			else
+			{
+				layerBufferTypes[layerIndex] = new Type[0];
+				plannedLayerInputs[layerIndex] = new int[0];
+			}
+		}
+		m_executionOrder = new int[numNeededLayers];
+		for (int step = 0, neededStep = 0; step < executionOrder.length; ++step)
+		{
+			if (neededLayers[executionOrder[step]])
+			{
+				m_executionOrder[neededStep++] = executionOrder[step];
+			}
+		}
+
+		m_layerBuffers = m_activationMemoryPlanner.planActivationMemory(layerBufferTypes, plannedLayerInputs, executionOrder,
+			outputLayers != null ? outputLayers : new int[0]);
+		m_plannedLayersVersion = layersVersion;
+		m_plannedOutputLayers = outputLayers;
+		m_batchSize = batchSize;
+		m_inputDataBuffer = new float[batchSize * m_neuralNet.getInputLayer().getActivationDataBufferSize()];
+	}
+
+	/**
+	 * Does forward propagation of prepared input data through the network.
+	 */
+	@WorkerThread
+	private void doForwardProp()
+	{
+		m_classificationResults.clear();
+
+		for (int layerIndex : m_executionOrder)
+		{
+			if (m_fusedPoolLayers[layerIndex] >= 0)
+			{
+				// Propagated together with its max pool layer.
+				continue;
+			}
+
+			int[] inputLayers = m_layerInputs[layerIndex];
+			if (inputLayers.length == 1 && m_fusedPoolLayers[inputLayers[0]] == layerIndex)
+			{
+				propagateFusedLayers(inputLayers[0], layerIndex);
+			}
+			else
+			{
+				propagateLayer(layerIndex);
+			}
+
+			// Layers which need results on host (soft max, output) synchronize by reading back their inputs,
+			// so otherwise there is no need to wait for kernels to finish.
+			if (m_neuralNet.isLayerSynchronizationEnabled())
+			{
+				m_rsContext.finish();
+			}
+		}
+	}
+
+	/**
+	 * Propagates prepared input data or activations of input layers through the layer.
+	 * @param layerIndex Index of the layer in the network.
+	 */
+	@WorkerThread
+	private void propagateLayer(int layerIndex)
+	{
+		LayerRS layer = m_neuralNet.getLayer(layerIndex);
+		synchronized (layer)
+		{
+			bindLayer(layerIndex);
+			if (layer instanceof InputLayerRS)
+			{
+				((InputLayerRS)layer).loadPreparedInputData(m_inputDataBuffer);
+			}
+			else
+			{
+				layer.doForwardProp();
+			}
+
+			if (layer instanceof OutputLayerRS)
+			{
+				readClassificationResults((OutputLayerRS)layer);
+			}
+		}
+	}
+
+	/**
+	 * Propagates activations of input layers through convolutional layer and max pool layer after it in one pass,
+	 * writing only pooled activations.
+	 * @param convLayerIndex Index of the convolutional layer in the network.
+	 * @param poolLayerIndex Index of the max pool layer in the network.
+	 */
+	@WorkerThread
+	private void propagateFusedLayers(int convLayerIndex, int poolLayerIndex)
+	{
+		ConvolutionalLayerRS convLayer = (ConvolutionalLayerRS)m_neuralNet.getLayer(convLayerIndex);
+		synchronized (convLayer)
+		{
+			convLayer.setBatchSize(m_batchSize);
+			bindInputDataBuffers(convLayerIndex);
+			convLayer.doForwardPropFusedWithMaxPool((MaxPoolLayerRS)m_neuralNet.getLayer(poolLayerIndex), m_layerBuffers[poolLayerIndex][0]);
+		}
+	}
+
+	/**
+	 * Binds batch size and buffers of this session to the layer. Must be called while holding the layer lock.
+	 * @param layerIndex Index of the layer in the network.
+	 */
+	private void bindLayer(int layerIndex)
+	{
+		LayerRS layer = m_neuralNet.getLayer(layerIndex);
+		layer.setBatchSize(m_batchSize);
+		layer.setActivationBuffers(m_layerBuffers[layerIndex]);
+		bindInputDataBuffers(layerIndex);
+	}
+
+	/**
+	 * Binds activation buffers of input layers of this session to the layer. Must be called while holding the layer lock.
+	 * @param layerIndex Index of the layer in the network.
+	 */
+	private void bindInputDataBuffers(int layerIndex)
+	{
+		LayerRS layer = m_neuralNet.getLayer(layerIndex);
+		int[] inputLayers = m_layerInputs[layerIndex];
+		if (inputLayers.length > 0)
+		{
+			Allocation[] inputDataBuffers = new Allocation[inputLayers.length];
+			for (int i = 0; i < inputLayers.length; ++i)
+			{
+				inputDataBuffers[i] = m_layerBuffers[inputLayers[i]][0];
+			}
+			layer.setInputDataBuffers(inputDataBuffers);
+		}
+	}
+
+	/**
+	 * Finds layers which have to be propagated to get activations of requested output layers.
+	 * @param layerInputs Indices of input layers of each layer.
+	 * @param outputLayers Indices of requested output layers, or null if the whole network is propagated.
+	 * @return Which layers have to be propagated.
+	 */
+	@NonNull
+	private static boolean[] findNeededLayers(@NonNull int[][] layerInputs, @Nullable int[] outputLayers)
+	{
+		boolean[] neededLayers = new boolean[layerInputs.length];
+		if (outputLayers == null)
+		{
+			Arrays.fill(neededLayers, true);
+			return neededLayers;
+		}
+
+		// Input layers always precede their readers, so walking backwards visits each reader before its inputs.
+		for (int outputLayer : outputLayers)
+		{
+			neededLayers[outputLayer] = true;
+		}
+		for (int layerIndex = layerInputs.length - 1; layerIndex >= 0; --layerIndex)
+		{
+			if (neededLayers[layerIndex])
+			{
+				for (int inputLayer : layerInputs[layerIndex])
+				{
+					neededLayers[inputLayer] = true;
+				}
+			}
+		}
+
+		return neededLayers;
+	}
+
+	/**
+	 * Finds max pool layers which can be propagated together with convolutional layers, when that is enabled in the network.
+	 * Max pool layer is fused when it is the only reader of convolutional layer activations, and those activations are not requested as output.
+	 * @return Index of max pool layer fused into each convolutional layer, or -1 for layers which are not fused.
+	 */
+	@NonNull
+	private int[] findFusedPoolLayers(@NonNull List<LayerRS> layers, @NonNull int[][] layerInputs, @Nullable int[] outputLayers)
+	{
+		int[] numReaders = new int[layers.size()];
+		for (int[] inputLayers : layerInputs)
+		{
+			for (int inputLayer : inputLayers)
+			{
+				++numReaders[inputLayer];
+			}
+		}
+		if (outputLayers != null)
+		{
+			for (int outputLayer : outputLayers)
+			{
+				++numReaders[outputLayer];
+			}
+		}
+
+		int[] fusedPoolLayers = new int[layers.size()];
+		Arrays.fill(fusedPoolLayers, -1);
+		if (!m_neuralNet.isConvolutionPoolingFusionEnabled())
+		{
+			return fusedPoolLayers;
+		}
+
+		for (int layerIndex = 0; layerIndex < layers.size(); ++layerIndex)
+		{
+			LayerRS layer = layers.get(layerIndex);
+			if (layer instanceof MaxPoolLayerRS && layerInputs[layerIndex].length == 1)
+			{
+				int inputLayer = layerInputs[layerIndex][0];
+				if (layers.get(inputLayer) instanceof ConvolutionalLayerRS && numReaders[inputLayer] == 1 &&
+					((ConvolutionalLayerRS)layers.get(inputLayer)).canFuseMaxPool((MaxPoolLayerRS)layer))
+				{
+					fusedPoolLayers[inputLayer] = layerIndex;
+				}
+			}
+		}
+
+		return fusedPoolLayers;
+	}
+
+	/**
+	 * Reads classification results of all samples in the batch from the output layer. Must be called while holding the layer lock.
+	 */
+	private void readClassificationResults(@NonNull OutputLayerRS outputLayer)
+	{
+		for (int sampleIndex = 0; sampleIndex < m_batchSize; ++sampleIndex)
+		{
+			m_classificationResults.add(new ClassificationResult(outputLayer.getPredictedClass(sampleIndex),
+																 outputLayer.getPredictionProbability(sampleIndex)));
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.InputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Optimization pass which folds normalization of input data into filters and biases of the convolutional layers reading input data,
+ * so input layer just copies input data to device instead of subtracting means and dividing by standard deviations of each input value.
+ */
+public class InputNormalizationFoldingPass implements OptimizationPass
+{
+	/**
+	 * Runs the pass over the network.
+	 * @param neuralNet Network with loaded model.
+	 * @return True if input data normalization was folded.
+	 */
+	@WorkerThread
+	@Override
+	public boolean run(@NonNull NeuralNetRS neuralNet)
+	{
+		if (neuralNet.getLayers().isEmpty() || !(neuralNet.getLayer(0) instanceof InputLayerRS))
+		{
+			return false;
+		}
+
+		InputLayerRS inputLayer = (InputLayerRS)neuralNet.getLayer(0);
+		if (!inputLayer.isNormalizingInputData())
+		{
+			return false;
+		}
+
+		List<Integer> readers = neuralNet.getLayerReaders(0);
+		if (readers.isEmpty())
+		{
+			return false;
+		}
+		for (int reader : readers)
+		{
+			if (!(neuralNet.getLayer(reader) instanceof ConvolutionalLayerRS))
+			{
+				return false;
+			}
+		}
+
+		// Channels without given mean and standard deviation are not normalized, which equals to zero mean and unit standard deviation.
+		int numChannels = inputLayer.getActivationNumChannels();
+		float[] inputDataMeans = inputLayer.getInputDataMeans();
+		float[] inputDataStDevs = inputLayer.getInputDataStDevs();
+		float[] channelMeans = new float[numChannels];
+		float[] channelStDevs = new float[numChannels];
+		Arrays.fill(channelStDevs, 1.f);
+		for (int channel = 0; channel < Math.min(numChannels, inputDataMeans.length); ++channel)
+		{
+			if (inputDataStDevs[channel] == 0.f)
+			{
+				return false;
+			}
+			channelMeans[channel] = inputDataMeans[channel];
+			channelStDevs[channel] = inputDataStDevs[channel];
+		}
+
+		for (int reader : readers)
+		{
+			LayerRS layer = neuralNet.getLayer(reader);
+			((ConvolutionalLayerRS)layer).foldInputNormalization(neuralNet.getRenderScriptContext(), channelMeans, channelStDevs);
+		}
+		inputLayer.removeInputDataNormalization();
+
+		return true;
+	}
+}
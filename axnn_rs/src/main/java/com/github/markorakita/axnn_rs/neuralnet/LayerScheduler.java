@@ -0,0 +1,72 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Schedules propagation of network layers, for networks whose layers form a directed acyclic graph.
+ *
+ * Renderscript executes kernels in order of their submission, so independent branches of the network are issued together by queuing
+ * all layers which run on device before any layer which has to wait for device to finish (layers computed on host, like soft max and output).
+ * Among ready device layers the one added earliest to the network is scheduled first, which keeps plain chains of layers in their order.
+ */
+class LayerScheduler
+{
+	/**
+	 * Schedules propagation of layers.
+	 * @param layerInputs Indices of input layers of each layer, as returned by NeuralNetRS.getLayerInputs.
+	 * @param hostLayers Which layers are computed on host, and therefore wait for all previously queued kernels to finish.
+	 * @return Layer indices in order of propagation.
+	 */
+	@NonNull
+	static int[] scheduleLayers(@NonNull int[][] layerInputs, @NonNull boolean[] hostLayers)
+	{
+		int numLayers = layerInputs.length;
+		int[] numUnscheduledInputs = new int[numLayers];
+		for (int layerIndex = 0; layerIndex < numLayers; ++layerIndex)
+		{
+			numUnscheduledInputs[layerIndex] = layerInputs[layerIndex].length;
+		}
+
+		boolean[] scheduled = new boolean[numLayers];
+		int[] executionOrder = new int[numLayers];
+		for (int step = 0; step < numLayers; ++step)
+		{
+			int nextLayer = -1;
+			for (int layerIndex = 0; layerIndex < numLayers; ++layerIndex)
+			{
+				if (!scheduled[layerIndex] && numUnscheduledInputs[layerIndex] == 0)
+				{
+					if (!hostLayers[layerIndex])
+					{
+						nextLayer = layerIndex;
+						break;
+					}
+					if (nextLayer < 0)
+					{
+						nextLayer = layerIndex;
+					}
+				}
+			}
+
+			if (nextLayer < 0)
+			{
+				throw new IllegalStateException("Network layers contain a cycle.");
+			}
+
+			scheduled[nextLayer] = true;
+			executionOrder[step] = nextLayer;
+			for (int layerIndex = 0; layerIndex < numLayers; ++layerIndex)
+			{
+				for (int inputLayer : layerInputs[layerIndex])
+				{
+					if (inputLayer == nextLayer)
+					{
+						--numUnscheduledInputs[layerIndex];
+					}
+				}
+			}
+		}
+
+		return executionOrder;
+	}
+}
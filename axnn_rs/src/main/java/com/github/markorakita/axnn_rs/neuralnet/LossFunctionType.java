@@ -0,0 +1,12 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+/**
+ * Supported loss function types of output layers, shared by RenderScript and CPU layers.
+ */
+public enum LossFunctionType
+{
+	LogisticRegression,
+
+	// With Cross Entropy loss we always expect that SoftMax layer is added to the network previous to Output layer.
+	CrossEntropy;
+}
@@ -0,0 +1,526 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.QuantizedStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.SparseStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Self-describing indexed model container.
+ *
+ * Unlike raw models, which are just parameters of all layers one after another, container starts with a header describing
+ * each parameter tensor it holds, so tensors can be validated against network topology and loaded in any order, lazily or in parallel.
+ *
+ * Container format (all numbers are in container byte order, described by byte order mark):
+ *      magic           4 bytes, "AXNM"
+ *      byteOrderMark   int32, 0x01020304
+ *      version         int32
+ *      alignment       int32, alignment of tensors data in bytes, relative to container start
+ *      headerSize      int32, size of the whole header in bytes
+ *      numTensors      int32
+ *      numTensors tensor entries:
+ *          layerIndex      int32, index of the layer in the network
+ *          parameterType   int32, see {@link ParameterType}
+ *          dataType        int32, see {@link DataType}
+ *          numDimensions   int32
+ *          dimensions      int32 * numDimensions
+ *          dataOffset      int64, offset of tensor data relative to container start
+ *          dataSize        int64, size of tensor data in bytes
+ *      tensors data
+ */
+public class ModelContainer implements Closeable
+{
+	/**
+	 * Types of parameters stored in container.
+	 */
+	public enum ParameterType
+	{
+		// Filters of convolutional layers, or weights of standard layers.
+		Weights,
+
+		Biases
+	}
+
+	/**
+	 * Data types of parameters stored in container.
+	 */
+	public enum DataType
+	{
+		Float32(4),
+
+		// IEEE 754 half precision floats.
+		Float16(2);
+
+		/**
+		 * Size of one value in bytes.
+		 */
+		private final int m_size;
+
+		DataType(int size)
+		{
+			m_size = size;
+		}
+
+		/**
+		 * Gets size of one value in bytes.
+		 */
+		public int getSize()
+		{
+			return m_size;
+		}
+	}
+
+	/**
+	 * Current container version.
+	 */
+	static final int c_version = 1;
+
+	/**
+	 * Size of the fixed part of the header, before tensor entries.
+	 */
+	static final int c_fixedHeaderSize = 24;
+
+	/**
+	 * Container file channel.
+	 */
+	private final FileChannel m_channel;
+
+	/**
+	 * Offset of the container in the file.
+	 */
+	private final long m_containerOffset;
+
+	/**
+	 * Container byte order.
+	 */
+	private final ByteOrder m_byteOrder;
+
+	/**
+	 * Container tensors, in order in which they are described in header.
+	 */
+	private final List<TensorInfo> m_tensors;
+
+	/**
+	 * Container tensors, mapped by their key.
+	 */
+	private final HashMap<Integer, TensorInfo> m_tensorsMap;
+
+	/**
+	 * Info about parameter tensor stored in container.
+	 */
+	public static class TensorInfo
+	{
+		private final int m_layerIndex;
+
+		private final ParameterType m_parameterType;
+
+		private final DataType m_dataType;
+
+		private final int[] m_dimensions;
+
+		private final long m_dataOffset;
+
+		private final long m_dataSize;
+
+		TensorInfo(int layerIndex, @NonNull ParameterType parameterType, @NonNull DataType dataType, @NonNull int[] dimensions, long dataOffset,
+				   long dataSize)
+		{
+			m_layerIndex = layerIndex;
+			m_parameterType = parameterType;
+			m_dataType = dataType;
+			m_dimensions = dimensions;
+			m_dataOffset = dataOffset;
+			m_dataSize = dataSize;
+		}
+
+		/**
+		 * Gets index of the layer to which tensor belongs.
+		 */
+		public int getLayerIndex()
+		{
+			return m_layerIndex;
+		}
+
+		/**
+		 * Gets tensor parameter type.
+		 */
+		@NonNull
+		public ParameterType getParameterType()
+		{
+			return m_parameterType;
+		}
+
+		/**
+		 * Gets tensor data type.
+		 */
+		@NonNull
+		public DataType getDataType()
+		{
+			return m_dataType;
+		}
+
+		/**
+		 * Gets tensor dimensions.
+		 */
+		@NonNull
+		public int[] getDimensions()
+		{
+			return m_dimensions.clone();
+		}
+
+		/**
+		 * Gets number of values in tensor.
+		 */
+		public long getNumElements()
+		{
+			long numElements = 1;
+			for (int dimension : m_dimensions)
+			{
+				numElements *= dimension;
+			}
+
+			return numElements;
+		}
+
+		/**
+		 * Gets offset of tensor data, relative to container start.
+		 */
+		public long getDataOffset()
+		{
+			return m_dataOffset;
+		}
+
+		/**
+		 * Gets size of tensor data in bytes.
+		 */
+		public long getDataSize()
+		{
+			return m_dataSize;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param channel Container file channel.
+	 * @param containerOffset Offset of the container in the file.
+	 * @param byteOrder Container byte order.
+	 * @param tensors Container tensors.
+	 */
+	private ModelContainer(@NonNull FileChannel channel, long containerOffset, @NonNull ByteOrder byteOrder, @NonNull List<TensorInfo> tensors)
+	{
+		m_channel = channel;
+		m_containerOffset = containerOffset;
+		m_byteOrder = byteOrder;
+		m_tensors = Collections.unmodifiableList(tensors);
+
+		m_tensorsMap = new HashMap<>();
+		for (TensorInfo tensor : tensors)
+		{
+			m_tensorsMap.put(getTensorKey(tensor.getLayerIndex(), tensor.getParameterType()), tensor);
+		}
+	}
+
+	/**
+	 * Opens model container from file. Only the header is read, tensors are mapped on demand.
+	 * @param containerFile Container file.
+	 * @return Opened model container, which needs to be closed after use.
+	 */
+	@WorkerThread
+	@NonNull
+	public static ModelContainer open(@NonNull File containerFile) throws IOException
+	{
+		FileInputStream containerInputStream = new FileInputStream(containerFile);
+		try
+		{
+			FileChannel channel = containerInputStream.getChannel();
+			return open(channel, 0);
+		}
+		catch (IOException | RuntimeException exc)
+		{
+			containerInputStream.close();
+			throw exc;
+		}
+	}
+
+	/**
+	 * Opens model container from file channel. Only the header is read, tensors are mapped on demand.
+	 * Closing the container closes the channel.
+	 * @param channel Channel of the file containing the container.
+	 * @param containerOffset Offset of the container in the file.
+	 * @return Opened model container, which needs to be closed after use.
+	 */
+	@WorkerThread
+	@NonNull
+	public static ModelContainer open(@NonNull FileChannel channel, long containerOffset) throws IOException
+	{
+		return open(channel, containerOffset, channel.size() - containerOffset);
+	}
+
+	/**
+	 * Opens model container from region of file channel. Only the header is read, tensors are mapped on demand.
+	 * Tensors are validated against the region, so it should be used when container is just a part of the file, like asset inside of the APK.
+	 * Closing the container closes the channel.
+	 * @param channel Channel of the file containing the container.
+	 * @param containerOffset Offset of the container in the file.
+	 * @param containerSize Size of the container in bytes.
+	 * @return Opened model container, which needs to be closed after use.
+	 */
+	@WorkerThread
+	@NonNull
+	public static ModelContainer open(@NonNull FileChannel channel, long containerOffset, long containerSize) throws IOException
+	{
+		if (containerOffset < 0 || containerSize < c_fixedHeaderSize || containerOffset + containerSize > channel.size())
+		{
+			throw new IOException("File is not a model container.");
+		}
+
+		ByteBuffer fixedHeader = IOUtils.readBufferFromChannel(channel, containerOffset, c_fixedHeaderSize);
+		if (!IOUtils.isModelContainer(fixedHeader))
+		{
+			throw new IOException("File is not a model container.");
+		}
+
+		ByteOrder byteOrder = IOUtils.getModelContainerByteOrder(fixedHeader);
+		fixedHeader.order(byteOrder);
+		fixedHeader.position(IOUtils.c_modelContainerMagic.length + 4);
+
+		int version = fixedHeader.getInt();
+		if (version != c_version)
+		{
+			throw new IOException("Unsupported model container version: " + version);
+		}
+		int alignment = fixedHeader.getInt();
+		int headerSize = fixedHeader.getInt();
+		int numTensors = fixedHeader.getInt();
+		if (alignment <= 0 || headerSize < c_fixedHeaderSize || headerSize > containerSize || numTensors < 0)
+		{
+			throw new IOException("Corrupted model container header.");
+		}
+
+		ByteBuffer header = IOUtils.readBufferFromChannel(channel, containerOffset + c_fixedHeaderSize, headerSize - c_fixedHeaderSize);
+		header.order(byteOrder);
+
+		List<TensorInfo> tensors = new ArrayList<>(numTensors);
+		try
+		{
+			for (int i = 0; i < numTensors; ++i)
+			{
+				int layerIndex = header.getInt();
+				ParameterType parameterType = ParameterType.values()[header.getInt()];
+				DataType dataType = DataType.values()[header.getInt()];
+				int[] dimensions = new int[header.getInt()];
+				for (int dimension = 0; dimension < dimensions.length; ++dimension)
+				{
+					dimensions[dimension] = header.getInt();
+				}
+				long dataOffset = header.getLong();
+				long dataSize = header.getLong();
+
+				TensorInfo tensor = new TensorInfo(layerIndex, parameterType, dataType, dimensions, dataOffset, dataSize);
+				if (dataOffset % alignment != 0 || dataOffset < headerSize || dataOffset + dataSize > containerSize ||
+					dataSize != tensor.getNumElements() * dataType.getSize())
+				{
+					throw new IOException("Corrupted model container tensor entry for layer " + layerIndex + ".");
+				}
+				tensors.add(tensor);
+			}
+		}
+		catch (RuntimeException exc)
+		{
+			throw new IOException("Corrupted model container header.", exc);
+		}
+
+		List<TensorInfo> tensorsByOffset = new ArrayList<>(tensors);
+		Collections.sort(tensorsByOffset, (first, second) -> Long.compare(first.getDataOffset(), second.getDataOffset()));
+		for (int i = 1; i < tensorsByOffset.size(); ++i)
+		{
+			TensorInfo previousTensor = tensorsByOffset.get(i - 1);
+			if (previousTensor.getDataOffset() + previousTensor.getDataSize() > tensorsByOffset.get(i).getDataOffset())
+			{
+				throw new IOException("Corrupted model container tensor entry for layer " + tensorsByOffset.get(i).getLayerIndex() + ".");
+			}
+		}
+
+		return new ModelContainer(channel, containerOffset, byteOrder, tensors);
+	}
+
+	/**
+	 * Gets container byte order.
+	 */
+	@NonNull
+	public ByteOrder getByteOrder()
+	{
+		return m_byteOrder;
+	}
+
+	/**
+	 * Gets all container tensors.
+	 */
+	@NonNull
+	public List<TensorInfo> getTensors()
+	{
+		return m_tensors;
+	}
+
+	/**
+	 * Gets tensor info.
+	 * @param layerIndex Index of the layer to which tensor belongs.
+	 * @param parameterType Tensor parameter type.
+	 * @return Tensor info, or null if container doesn't contain such tensor.
+	 */
+	@Nullable
+	public TensorInfo getTensor(int layerIndex, @NonNull ParameterType parameterType)
+	{
+		return m_tensorsMap.get(getTensorKey(layerIndex, parameterType));
+	}
+
+	/**
+	 * Maps tensor data into memory.
+	 * @param tensor Tensor to map.
+	 * @return Buffer with tensor data, with byte order set to container byte order.
+	 */
+	@WorkerThread
+	@NonNull
+	public ByteBuffer mapTensor(@NonNull TensorInfo tensor) throws IOException
+	{
+		ByteBuffer tensorBuffer = m_channel.map(FileChannel.MapMode.READ_ONLY, m_containerOffset + tensor.getDataOffset(), tensor.getDataSize());
+		tensorBuffer.order(m_byteOrder);
+
+		return tensorBuffer;
+	}
+
+	/**
+	 * Validates that container contains parameters for each layer of the network, with expected shapes.
+	 * @param neuralNet Neural network to validate against.
+	 * @throws IOException Throws IOException in case when container doesn't match the network.
+	 */
+	public void validate(@NonNull NeuralNetRS neuralNet) throws IOException
+	{
+		List<LayerRS> layers = neuralNet.getLayers();
+		for (int layerIndex = 0; layerIndex < layers.size(); ++layerIndex)
+		{
+			LayerRS layer = layers.get(layerIndex);
+			if (getWeightsShape(layer) != null)
+			{
+				validateTensor(layerIndex, ParameterType.Weights, getWeightsShape(layer));
+				validateTensor(layerIndex, ParameterType.Biases, getBiasesShape(layer));
+			}
+		}
+	}
+
+	/**
+	 * Validates that tensor exists in container with expected shape.
+	 * @param layerIndex Index of the layer to which tensor belongs.
+	 * @param parameterType Tensor parameter type.
+	 * @param expectedShape Expected tensor shape.
+	 */
+	void validateTensor(int layerIndex, @NonNull ParameterType parameterType, @NonNull int[] expectedShape) throws IOException
+	{
+		TensorInfo tensor = getTensor(layerIndex, parameterType);
+		if (tensor == null)
+		{
+			throw new IOException("Model container doesn't contain " + parameterType + " for layer " + layerIndex + ".");
+		}
+		if (!Arrays.equals(tensor.getDimensions(), expectedShape))
+		{
+			throw new IOException("Model container " + parameterType + " for layer " + layerIndex + " have shape " +
+				Arrays.toString(tensor.getDimensions()) + ", but network expects " + Arrays.toString(expectedShape) + ".");
+		}
+	}
+
+	/**
+	 * Gets shape of the weights stored in model for layer.
+	 * @param layer Network layer.
+	 * @return Weights shape, or null if layer doesn't have parameters.
+	 */
+	@Nullable
+	static int[] getWeightsShape(@NonNull LayerRS layer)
+	{
+		if (layer instanceof ConvolutionalLayerRS)
+		{
+			ConvolutionalLayerRS convLayer = (ConvolutionalLayerRS)layer;
+			return new int[] { convLayer.getNumFilters(), convLayer.getFilterHeight(), convLayer.getFilterWidth(), convLayer.getModelFiltersNumChannels() };
+		}
+		else if (layer instanceof StandardLayerRS)
+		{
+			StandardLayerRS standardLayer = (StandardLayerRS)layer;
+			return new int[] { standardLayer.getActivationDataBufferSize(), standardLayer.getWeightsBufferSize() / standardLayer.getActivationDataBufferSize() };
+		}
+		else if (layer instanceof QuantizedStandardLayerRS)
+		{
+			QuantizedStandardLayerRS quantizedLayer = (QuantizedStandardLayerRS)layer;
+			return new int[] { quantizedLayer.getActivationDataBufferSize(), quantizedLayer.getWeightsBufferSize() / quantizedLayer.getActivationDataBufferSize() };
+		}
+		else if (layer instanceof SparseStandardLayerRS)
+		{
+			SparseStandardLayerRS sparseLayer = (SparseStandardLayerRS)layer;
+			return new int[] { sparseLayer.getActivationDataBufferSize(), sparseLayer.getWeightsBufferSize() / sparseLayer.getActivationDataBufferSize() };
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets shape of the biases stored in model for layer.
+	 * @param layer Network layer.
+	 * @return Biases shape, or null if layer doesn't have parameters.
+	 */
+	@Nullable
+	static int[] getBiasesShape(@NonNull LayerRS layer)
+	{
+		if (layer instanceof ConvolutionalLayerRS)
+		{
+			return new int[] { ((ConvolutionalLayerRS)layer).getBiasesBufferSize() };
+		}
+		else if (layer instanceof StandardLayerRS)
+		{
+			return new int[] { ((StandardLayerRS)layer).getBiasesBufferSize() };
+		}
+		else if (layer instanceof QuantizedStandardLayerRS)
+		{
+			return new int[] { ((QuantizedStandardLayerRS)layer).getBiasesBufferSize() };
+		}
+		else if (layer instanceof SparseStandardLayerRS)
+		{
+			return new int[] { ((SparseStandardLayerRS)layer).getBiasesBufferSize() };
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets key under which tensor is mapped.
+	 */
+	private static int getTensorKey(int layerIndex, @NonNull ParameterType parameterType)
+	{
+		return layerIndex * ParameterType.values().length + parameterType.ordinal();
+	}
+
+	/**
+	 * Closes container file channel.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		m_channel.close();
+	}
+}
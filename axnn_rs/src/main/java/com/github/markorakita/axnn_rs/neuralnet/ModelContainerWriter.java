@@ -0,0 +1,232 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.HalfUtils;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes model containers, see {@link ModelContainer} for the format description.
+ */
+public class ModelContainerWriter
+{
+	/**
+	 * Alignment of tensors data in bytes.
+	 */
+	private static final int c_alignment = 64;
+
+	/**
+	 * Size of the chunks in which we copy tensors data.
+	 */
+	private static final int c_copyChunkSize = 1 << 20;
+
+	/**
+	 * Converts raw model into model container, using network topology to describe the tensors.
+	 * Tensors data is copied as is, so container keeps the byte order of the raw model.
+	 * @param neuralNet Neural network which raw model belongs to.
+	 * @param rawModelStream Raw model input stream.
+	 * @param bigEndian Are raw model parameters stored in big endian or small endian.
+	 * @param containerFile File to write the container to.
+	 */
+	@WorkerThread
+	public static void convertRawModel(@NonNull NeuralNetRS neuralNet, @NonNull InputStream rawModelStream, boolean bigEndian,
+									   @NonNull File containerFile) throws IOException
+	{
+		convertRawModel(neuralNet, rawModelStream, bigEndian, containerFile, false);
+	}
+
+	/**
+	 * Converts raw model into model container, using network topology to describe the tensors.
+	 * Tensors data is kept in the byte order of the raw model.
+	 * @param neuralNet Neural network which raw model belongs to.
+	 * @param rawModelStream Raw model input stream.
+	 * @param bigEndian Are raw model parameters stored in big endian or small endian.
+	 * @param containerFile File to write the container to.
+	 * @param halfPrecisionWeights Should weights be converted to half precision, halving their size.
+	 *                             Biases are always kept in full precision.
+	 */
+	@WorkerThread
+	public static void convertRawModel(@NonNull NeuralNetRS neuralNet, @NonNull InputStream rawModelStream, boolean bigEndian,
+									   @NonNull File containerFile, boolean halfPrecisionWeights) throws IOException
+	{
+		ByteOrder byteOrder = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+		// Describing tensors in the same order in which they are stored in the raw model.
+		List<ModelContainer.TensorInfo> tensors = new ArrayList<>();
+		List<LayerRS> layers = neuralNet.getLayers();
+		for (int layerIndex = 0; layerIndex < layers.size(); ++layerIndex)
+		{
+			int[] weightsShape = ModelContainer.getWeightsShape(layers.get(layerIndex));
+			if (weightsShape != null)
+			{
+				tensors.add(new ModelContainer.TensorInfo(layerIndex, ModelContainer.ParameterType.Weights,
+					halfPrecisionWeights ? ModelContainer.DataType.Float16 : ModelContainer.DataType.Float32, weightsShape, 0, 0));
+				tensors.add(new ModelContainer.TensorInfo(layerIndex, ModelContainer.ParameterType.Biases, ModelContainer.DataType.Float32,
+					ModelContainer.getBiasesShape(layers.get(layerIndex)), 0, 0));
+			}
+		}
+
+		writeContainer(tensors, rawModelStream, byteOrder, containerFile);
+	}
+
+	/**
+	 * Writes model container with given tensors, taking their data one after another from the raw model.
+	 * @param tensors Tensors to write, with their data offsets and sizes yet to be placed.
+	 * @param rawModelStream Raw model input stream.
+	 * @param byteOrder Byte order of the raw model and container.
+	 * @param containerFile File to write the container to.
+	 */
+	@WorkerThread
+	static void writeContainer(@NonNull List<ModelContainer.TensorInfo> tensors, @NonNull InputStream rawModelStream, @NonNull ByteOrder byteOrder,
+							   @NonNull File containerFile) throws IOException
+	{
+		int headerSize = ModelContainer.c_fixedHeaderSize;
+		for (ModelContainer.TensorInfo tensor : tensors)
+		{
+			headerSize += 4 * (4 + tensor.getDimensions().length) + 8 + 8;
+		}
+
+		// Placing tensors data.
+		List<ModelContainer.TensorInfo> placedTensors = new ArrayList<>();
+		long dataOffset = alignOffset(headerSize);
+		for (ModelContainer.TensorInfo tensor : tensors)
+		{
+			long dataSize = tensor.getNumElements() * tensor.getDataType().getSize();
+			placedTensors.add(new ModelContainer.TensorInfo(tensor.getLayerIndex(), tensor.getParameterType(), tensor.getDataType(),
+				tensor.getDimensions(), dataOffset, dataSize));
+			dataOffset = alignOffset(dataOffset + dataSize);
+		}
+
+		try (FileOutputStream containerOutputStream = new FileOutputStream(containerFile))
+		{
+			FileChannel channel = containerOutputStream.getChannel();
+			writeHeader(channel, byteOrder, headerSize, placedTensors);
+
+			byte[] copyChunk = new byte[c_copyChunkSize];
+			ByteBuffer halfChunk = null;
+			for (ModelContainer.TensorInfo tensor : placedTensors)
+			{
+				if (tensor.getDataType() == ModelContainer.DataType.Float16)
+				{
+					if (halfChunk == null)
+					{
+						halfChunk = ByteBuffer.allocate(c_copyChunkSize / 2).order(byteOrder);
+					}
+					copyConvertedToHalf(rawModelStream, channel, tensor, copyChunk, byteOrder, halfChunk);
+					continue;
+				}
+
+				long position = tensor.getDataOffset();
+				for (long bytesCopied = 0; bytesCopied < tensor.getDataSize(); )
+				{
+					int bytesToCopy = (int)Math.min(copyChunk.length, tensor.getDataSize() - bytesCopied);
+					IOUtils.readBytesFromStream(copyChunk, bytesToCopy, rawModelStream);
+					writeFully(channel, ByteBuffer.wrap(copyChunk, 0, bytesToCopy), position);
+					position += bytesToCopy;
+					bytesCopied += bytesToCopy;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies tensor data from raw model into container, converting floats to half precision floats.
+	 * @param rawModelStream Raw model input stream.
+	 * @param channel Container file channel.
+	 * @param tensor Tensor to copy.
+	 * @param copyChunk Buffer for raw model chunks.
+	 * @param byteOrder Byte order of the raw model and container.
+	 * @param halfChunk Buffer for converted chunks, half the size of raw model chunks buffer.
+	 */
+	private static void copyConvertedToHalf(@NonNull InputStream rawModelStream, @NonNull FileChannel channel, @NonNull ModelContainer.TensorInfo tensor,
+											@NonNull byte[] copyChunk, @NonNull ByteOrder byteOrder, @NonNull ByteBuffer halfChunk) throws IOException
+	{
+		FloatBuffer floatsView = ByteBuffer.wrap(copyChunk).order(byteOrder).asFloatBuffer();
+		long position = tensor.getDataOffset();
+		for (long valuesCopied = 0; valuesCopied < tensor.getNumElements(); )
+		{
+			int valuesToCopy = (int)Math.min(copyChunk.length / 4, tensor.getNumElements() - valuesCopied);
+			IOUtils.readBytesFromStream(copyChunk, valuesToCopy * 4, rawModelStream);
+
+			floatsView.rewind();
+			halfChunk.clear();
+			for (int i = 0; i < valuesToCopy; ++i)
+			{
+				halfChunk.putShort(HalfUtils.floatToHalf(floatsView.get()));
+			}
+			halfChunk.flip();
+
+			writeFully(channel, halfChunk, position);
+			position += valuesToCopy * 2;
+			valuesCopied += valuesToCopy;
+		}
+	}
+
+	/**
+	 * Writes container header.
+	 * @param channel Container file channel.
+	 * @param byteOrder Container byte order.
+	 * @param headerSize Size of the header in bytes.
+	 * @param tensors Container tensors.
+	 */
+	private static void writeHeader(@NonNull FileChannel channel, @NonNull ByteOrder byteOrder, int headerSize,
+									@NonNull List<ModelContainer.TensorInfo> tensors) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(headerSize).order(byteOrder);
+		header.put(IOUtils.c_modelContainerMagic);
+		header.putInt(IOUtils.c_modelContainerByteOrderMark);
+		header.putInt(ModelContainer.c_version);
+		header.putInt(c_alignment);
+		header.putInt(headerSize);
+		header.putInt(tensors.size());
+		for (ModelContainer.TensorInfo tensor : tensors)
+		{
+			header.putInt(tensor.getLayerIndex());
+			header.putInt(tensor.getParameterType().ordinal());
+			header.putInt(tensor.getDataType().ordinal());
+			int[] dimensions = tensor.getDimensions();
+			header.putInt(dimensions.length);
+			for (int dimension : dimensions)
+			{
+				header.putInt(dimension);
+			}
+			header.putLong(tensor.getDataOffset());
+			header.putLong(tensor.getDataSize());
+		}
+		header.flip();
+
+		writeFully(channel, header, 0);
+	}
+
+	/**
+	 * Writes whole buffer into channel at given position.
+	 */
+	private static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Aligns offset up to the container alignment.
+	 */
+	private static long alignOffset(long offset)
+	{
+		return (offset + c_alignment - 1) / c_alignment * c_alignment;
+	}
+}
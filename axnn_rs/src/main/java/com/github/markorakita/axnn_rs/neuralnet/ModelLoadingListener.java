@@ -0,0 +1,17 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.WorkerThread;
+
+/**
+ * Listener notified about progress of neural network model loading.
+ */
+public interface ModelLoadingListener
+{
+	/**
+	 * Called after parameters of one more layer are loaded into the network, on the thread which loads the model.
+	 * @param numLoadedLayers Number of layers with parameters loaded so far.
+	 * @param numLayersToLoad Total number of layers with parameters to load.
+	 */
+	@WorkerThread
+	void onLayerLoaded(int numLoadedLayers, int numLayersToLoad);
+}
@@ -24,6 +24,17 @@ public class NeuralNetFactory
      */
     @NonNull
     public static NeuralNetRS createAlexNetDnn(@NonNull RenderScript rsContext)
+    {
+        return createAlexNetDnn(rsContext, false);
+    }
+
+    /**
+     * Creates AlexNet deep neural network.
+     * @param halfPrecisionWeights Should weights of convolutional and standard layers be kept in half precision,
+     *                             halving memory taken by the model.
+     */
+    @NonNull
+    public static NeuralNetRS createAlexNetDnn(@NonNull RenderScript rsContext, boolean halfPrecisionWeights)
     {
         NeuralNetRS alexNet = new NeuralNetRS(rsContext);
 
@@ -46,10 +57,10 @@ public class NeuralNetFactory
         final int l2_paddingX = 0;
         final int l2_paddingY = 0;
         final int l2_stride = 4;
-        final ActivationFunction.ActivationFunctionType l2_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l2_activationFunction = ActivationFunctionType.ReLU;
         ConvolutionalLayerRS convLayer1 = new ConvolutionalLayerRS(rsContext, inputLayer.getActivationNumChannels(), inputLayer.getActivationDataWidth(),
                 inputLayer.getActivationDataHeight(), l2_numFilters, l2_filterWidth, l2_filterHeight, l2_paddingX, l2_paddingY, l2_stride,
-                l2_activationFunction);
+                l2_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(convLayer1);
 
         //------------------------------------------|
@@ -84,10 +95,10 @@ public class NeuralNetFactory
         final int l5_paddingX = 2;
         final int l5_paddingY = 2;
         final int l5_stride = 1;
-        final ActivationFunction.ActivationFunctionType l5_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l5_activationFunction = ActivationFunctionType.ReLU;
         ConvolutionalLayerRS convLayer2 = new ConvolutionalLayerRS(rsContext, maxPoolLayer1.getActivationNumChannels(), maxPoolLayer1.getActivationDataWidth(),
                 maxPoolLayer1.getActivationDataHeight(), l5_numFilters, l5_filterWidth, l5_filterHeight, l5_paddingX, l5_paddingY, l5_stride,
-                l5_activationFunction);
+                l5_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(convLayer2);
 
         //------------------------------------------|
@@ -122,10 +133,10 @@ public class NeuralNetFactory
         final int l8_paddingX = 1;
         final int l8_paddingY = 1;
         final int l8_stride = 1;
-        final ActivationFunction.ActivationFunctionType l8_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l8_activationFunction = ActivationFunctionType.ReLU;
         ConvolutionalLayerRS convLayer3 = new ConvolutionalLayerRS(rsContext, maxPoolLayer2.getActivationNumChannels(), maxPoolLayer2.getActivationDataWidth(),
                 maxPoolLayer2.getActivationDataHeight(), l8_numFilters, l8_filterWidth, l8_filterHeight, l8_paddingX, l8_paddingY, l8_stride,
-                l8_activationFunction);
+                l8_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(convLayer3);
 
         //------------------------------------------|
@@ -137,10 +148,10 @@ public class NeuralNetFactory
         final int l9_paddingX = 1;
         final int l9_paddingY = 1;
         final int l9_stride = 1;
-        final ActivationFunction.ActivationFunctionType l9_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l9_activationFunction = ActivationFunctionType.ReLU;
         ConvolutionalLayerRS convLayer4 = new ConvolutionalLayerRS(rsContext, convLayer3.getActivationNumChannels(), convLayer3.getActivationDataWidth(),
                 convLayer3.getActivationDataHeight(), l9_numFilters, l9_filterWidth, l9_filterHeight, l9_paddingX, l9_paddingY, l9_stride,
-                l9_activationFunction);
+                l9_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(convLayer4);
 
         //------------------------------------------|
@@ -152,10 +163,10 @@ public class NeuralNetFactory
         final int l10_paddingX = 1;
         final int l10_paddingY = 1;
         final int l10_stride = 1;
-        final ActivationFunction.ActivationFunctionType l10_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l10_activationFunction = ActivationFunctionType.ReLU;
         ConvolutionalLayerRS convLayer5 = new ConvolutionalLayerRS(rsContext, convLayer4.getActivationNumChannels(), convLayer4.getActivationDataWidth(),
                 convLayer4.getActivationDataHeight(), l10_numFilters, l10_filterWidth, l10_filterHeight, l10_paddingX, l10_paddingY, l10_stride,
-                l10_activationFunction);
+                l10_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(convLayer5);
 
         //------------------------------------------|
@@ -174,9 +185,9 @@ public class NeuralNetFactory
         //		Standard layer 1
         //------------------------------------------|
         final int l12_numNeurons = 4096;
-        final ActivationFunction.ActivationFunctionType l12_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l12_activationFunction = ActivationFunctionType.ReLU;
         StandardLayerRS standardLayer1 = new StandardLayerRS(rsContext, maxPoolLayer3.getActivationNumChannels(), maxPoolLayer3.getActivationDataWidth(),
-                maxPoolLayer3.getActivationDataHeight(), l12_numNeurons, l12_activationFunction);
+                maxPoolLayer3.getActivationDataHeight(), l12_numNeurons, l12_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(standardLayer1);
 
         //------------------------------------------|
@@ -191,9 +202,9 @@ public class NeuralNetFactory
         //		Standard layer 2
         //------------------------------------------|
         final int l14_numNeurons = 4096;
-        final ActivationFunction.ActivationFunctionType l14_activationFunction = ActivationFunction.ActivationFunctionType.ReLU;
+        final ActivationFunctionType l14_activationFunction = ActivationFunctionType.ReLU;
         StandardLayerRS standardLayer2 = new StandardLayerRS(rsContext, dropoutLayer1.getActivationNumChannels(), dropoutLayer1.getActivationDataWidth(),
-                dropoutLayer1.getActivationDataHeight(), l14_numNeurons, l14_activationFunction);
+                dropoutLayer1.getActivationDataHeight(), l14_numNeurons, l14_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(standardLayer2);
 
         //------------------------------------------|
@@ -208,9 +219,9 @@ public class NeuralNetFactory
         //		Standard layer 3
         //------------------------------------------|
         final int l16_numNeurons = 1000;
-        final ActivationFunction.ActivationFunctionType l16_activationFunction = ActivationFunction.ActivationFunctionType.Linear;
+        final ActivationFunctionType l16_activationFunction = ActivationFunctionType.Linear;
         StandardLayerRS standardLayer3 = new StandardLayerRS(rsContext, dropoutLayer2.getActivationNumChannels(), dropoutLayer2.getActivationDataWidth(),
-                dropoutLayer2.getActivationDataHeight(), l16_numNeurons, l16_activationFunction);
+                dropoutLayer2.getActivationDataHeight(), l16_numNeurons, l16_activationFunction, 0.f, halfPrecisionWeights);
         alexNet.addLayer(standardLayer3);
 
         //------------------------------------------|
@@ -222,7 +233,7 @@ public class NeuralNetFactory
         //------------------------------------------|
         //		Output layer
         //------------------------------------------|
-        OutputLayerRS outputLayer = new OutputLayerRS(softMaxLayer.getActivationDataBufferSize(), OutputLayerRS.LossFunctionType.CrossEntropy);
+        OutputLayerRS outputLayer = new OutputLayerRS(softMaxLayer.getActivationDataBufferSize(), LossFunctionType.CrossEntropy);
         alexNet.addLayer(outputLayer);
 
         return alexNet;
@@ -3,19 +3,33 @@ package com.github.markorakita.axnn_rs.neuralnet;
 import android.graphics.Bitmap;
 import android.renderscript.RenderScript;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.ModelReader;
 import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
-import com.github.markorakita.axnn_rs.neuralnet.layers.FeaturesInputLayerRS;
-import com.github.markorakita.axnn_rs.neuralnet.layers.ImageInputLayerRS;
 import com.github.markorakita.axnn_rs.neuralnet.layers.InputLayerRS;
 import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
 import com.github.markorakita.axnn_rs.neuralnet.layers.OutputLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.QuantizedStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.SparseStandardLayerRS;
 import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
 
 /**
@@ -33,6 +47,38 @@ public class NeuralNetRS
 	 */
 	private final ArrayList<LayerRS> m_layers;
 
+	/**
+	 * Layers whose activations are taken as inputs, for layers added with explicit inputs.
+	 * Other layers take activations of the previous layer in the network.
+	 */
+	private final HashMap<LayerRS, LayerRS[]> m_layerInputs;
+
+	/**
+	 * Should we wait for each layer to finish before launching the next one.
+	 */
+	private boolean m_layerSynchronizationEnabled;
+
+	/**
+	 * Should convolutional layers be propagated together with max pool layers after them.
+	 */
+	private boolean m_convolutionPoolingFusionEnabled;
+
+	/**
+	 * Version of the network layers, changed whenever layers are added or removed or their fusion changes,
+	 * so that sessions know to plan their activation buffers again.
+	 */
+	private int m_layersVersion;
+
+	/**
+	 * Have optimization passes changed the network, so that its loaded parameters no longer match the model.
+	 */
+	private boolean m_optimized;
+
+	/**
+	 * Session used for inference through the network itself.
+	 */
+	private final InferenceSession m_defaultSession;
+
 	/**
 	 * Constructor.
 	 * @param rsContext Renderscript context.
@@ -41,21 +87,140 @@ public class NeuralNetRS
 	{
 		m_rsContext = rsContext;
 		m_layers = new ArrayList<>();
+		m_layerInputs = new HashMap<>();
+		m_layerSynchronizationEnabled = false;
+		m_convolutionPoolingFusionEnabled = false;
+		m_layersVersion = 0;
+		m_optimized = false;
+		m_defaultSession = new InferenceSession(this, rsContext);
+	}
+
+	/**
+	 * Sets whether forward propagation should wait for each layer to finish before launching the next one.
+	 * Disabled by default, so all layer kernels are queued back to back and we only wait where results are read back to host.
+	 * Enabling it is useful for debugging and for timing individual layers, but slows down inference.
+	 * @param layerSynchronizationEnabled Should we wait for each layer to finish.
+	 */
+	public void setLayerSynchronizationEnabled(boolean layerSynchronizationEnabled)
+	{
+		m_layerSynchronizationEnabled = layerSynchronizationEnabled;
+	}
+
+	/**
+	 * Checks whether forward propagation waits for each layer to finish before launching the next one.
+	 */
+	public boolean isLayerSynchronizationEnabled()
+	{
+		return m_layerSynchronizationEnabled;
+	}
+
+	/**
+	 * Sets whether convolutional layers should be propagated together with max pool layers which are the only readers of their activations.
+	 * Fused layers convolve patches of each pooling unit and pool them before writing, so full resolution activations are never written
+	 * to memory nor allocated. Patches shared by overlapping pooling units are convolved once per unit, so fusion pays off most with
+	 * non-overlapping pooling, or on devices where memory bandwidth is more limited than compute. Disabled by default.
+	 * @param convolutionPoolingFusionEnabled Should convolutional and max pool layers be fused.
+	 */
+	public void setConvolutionPoolingFusionEnabled(boolean convolutionPoolingFusionEnabled)
+	{
+		m_convolutionPoolingFusionEnabled = convolutionPoolingFusionEnabled;
+		++m_layersVersion;
+	}
+
+	/**
+	 * Checks whether convolutional layers are propagated together with max pool layers after them.
+	 */
+	public boolean isConvolutionPoolingFusionEnabled()
+	{
+		return m_convolutionPoolingFusionEnabled;
 	}
 
     /**
-     * Adds layer to the network.
+     * Adds layer to the network, which takes activations of the previous layer in the network as its input.
      * @param layer Layer to add.
      */
 	public void addLayer(@NonNull LayerRS layer)
     {
         m_layers.add(layer);
+        ++m_layersVersion;
+    }
+
+    /**
+     * Adds layer to the network, which takes activations of given layers as its inputs.
+     * Used for networks which are not plain chains of layers, like residual, inception-style or multi-branch networks.
+     * @param layer Layer to add.
+     * @param inputLayers Layers whose activations are taken as inputs, in order expected by the layer. They have to be already added to the network.
+     */
+    public void addLayer(@NonNull LayerRS layer, @NonNull LayerRS... inputLayers)
+    {
+        if (inputLayers.length != layer.getNumInputs())
+        {
+            throw new IllegalArgumentException("Layer takes " + layer.getNumInputs() + " inputs, but " + inputLayers.length + " are given.");
+        }
+        for (LayerRS inputLayer : inputLayers)
+        {
+            if (!m_layers.contains(inputLayer))
+            {
+                throw new IllegalArgumentException("Input layers have to be added to the network before layers which take them as inputs.");
+            }
+        }
+
+        m_layers.add(layer);
+        m_layerInputs.put(layer, inputLayers.clone());
+        ++m_layersVersion;
+    }
+
+    /**
+     * Gets indices of layers whose activations are taken as inputs by the layer with given index.
+     * @param layerIndex Layer index.
+     * @return Indices of input layers, in order expected by the layer.
+     */
+    @NonNull
+    public int[] getLayerInputs(int layerIndex)
+    {
+        LayerRS[] inputLayers = m_layerInputs.get(m_layers.get(layerIndex));
+        if (inputLayers == null)
+        {
+            return layerIndex > 0 ? new int[] { layerIndex - 1 } : new int[0];
+        }
+
+        int[] inputLayerIndices = new int[inputLayers.length];
+        for (int i = 0; i < inputLayers.length; ++i)
+        {
+            inputLayerIndices[i] = m_layers.indexOf(inputLayers[i]);
+        }
+
+        return inputLayerIndices;
+    }
+
+    /**
+     * Gets indices of layers which take activations of the layer with given index as inputs.
+     * @param layerIndex Layer index.
+     * @return Indices of reader layers, in order of the network.
+     */
+    @NonNull
+    List<Integer> getLayerReaders(int layerIndex)
+    {
+        List<Integer> readers = new ArrayList<>();
+        for (int readerIndex = layerIndex + 1; readerIndex < m_layers.size(); ++readerIndex)
+        {
+            for (int inputLayerIndex : getLayerInputs(readerIndex))
+            {
+                if (inputLayerIndex == layerIndex)
+                {
+                    readers.add(readerIndex);
+                    break;
+                }
+            }
+        }
+
+        return readers;
     }
 
     /**
      * Removes layer from the network.
      * @param layerIndex Index of the layer in the network.
-     * @return Returns true if layer was successfully deleted, false otherwise.
+     * @return Returns true if layer was successfully deleted, false otherwise (also when other layers take it as explicit input).
      */
     public boolean removeLayer(int layerIndex)
     {
@@ -64,10 +229,144 @@ public class NeuralNetRS
             return false;
         }
 
+        LayerRS layer = m_layers.get(layerIndex);
+        for (LayerRS[] inputLayers : m_layerInputs.values())
+        {
+            for (LayerRS inputLayer : inputLayers)
+            {
+                if (inputLayer == layer)
+                {
+                    return false;
+                }
+            }
+        }
+
         m_layers.remove(layerIndex);
+        m_layerInputs.remove(layer);
+        ++m_layersVersion;
         return true;
     }
 
+    /**
+     * Removes layer which takes single input, so that its readers take that input instead. Used by optimization passes
+     * for layers which are folded into other layers.
+     * @param layerIndex Index of the layer in the network.
+     * @return Returns true if layer was successfully removed, false if it doesn't take exactly one input.
+     */
+    boolean bypassLayer(int layerIndex)
+    {
+        int[] inputLayerIndices = getLayerInputs(layerIndex);
+        if (inputLayerIndices.length != 1)
+        {
+            return false;
+        }
+
+        LayerRS layer = m_layers.get(layerIndex);
+        LayerRS inputLayer = m_layers.get(inputLayerIndices[0]);
+        for (LayerRS[] inputLayers : m_layerInputs.values())
+        {
+            for (int i = 0; i < inputLayers.length; ++i)
+            {
+                if (inputLayers[i] == layer)
+                {
+                    inputLayers[i] = inputLayer;
+                }
+            }
+        }
+
+        // Next layer takes previous layer in the network once this one is removed, which is right only if that is the bypassed input.
+        if (layerIndex + 1 < m_layers.size() && inputLayerIndices[0] != layerIndex - 1 && !m_layerInputs.containsKey(m_layers.get(layerIndex + 1)))
+        {
+            m_layerInputs.put(m_layers.get(layerIndex + 1), new LayerRS[] { inputLayer });
+        }
+
+        m_layers.remove(layerIndex);
+        m_layerInputs.remove(layer);
+        ++m_layersVersion;
+        return true;
+    }
+
+    /**
+     * Gets version of the network layers, changed whenever layers are added or removed.
+     */
+    int getLayersVersion()
+    {
+        return m_layersVersion;
+    }
+
+    /**
+     * Optimizes the network for inference with default optimization passes: folding of dropout layers into neighbouring layers,
+     * and folding of input data normalization into the first convolutional layers.
+     * Passes change loaded parameters, so they have to be run after the model is loaded, and model can't be loaded again into optimized network.
+     * @return Returns true if the network was changed.
+     */
+    @WorkerThread
+    public boolean optimize()
+    {
+        return optimize(new DropoutFoldingPass(), new InputNormalizationFoldingPass());
+    }
+
+    /**
+     * Optimizes the network for inference with given optimization passes, run in given order.
+     * Passes change loaded parameters, so they have to be run after the model is loaded, and model can't be loaded again into optimized network.
+     * @param passes Optimization passes to run.
+     * @return Returns true if the network was changed.
+     */
+    @WorkerThread
+    public boolean optimize(@NonNull OptimizationPass... passes)
+    {
+        boolean changed = false;
+        for (OptimizationPass pass : passes)
+        {
+            changed |= pass.run(this);
+        }
+        m_optimized |= changed;
+
+        return changed;
+    }
+
+    /**
+     * Checks whether optimization passes have changed the network, in which case its parameters no longer match the model
+     * and can't be saved into prepared model cache.
+     */
+    public boolean isOptimized()
+    {
+        return m_optimized;
+    }
+
+    /**
+     * Gets Renderscript context of the network.
+     */
+    @NonNull
+    RenderScript getRenderScriptContext()
+    {
+        return m_rsContext;
+    }
+
+    /**
+     * Creates new inference session, which holds its own input data and activation buffers while sharing layer parameters with the network.
+     * Sessions can run inference at the same time, from different threads. Model must be loaded before sessions are used,
+     * and layers must not be changed while sessions are running.
+     * @return New inference session.
+     */
+    @AnyThread
+    @NonNull
+    public InferenceSession createSession()
+    {
+        return new InferenceSession(this, m_rsContext);
+    }
+
+    /**
+     * Gets size in bytes of device memory used by activation buffers of the network, once they are planned before the first inference.
+     * Layers whose buffers are never alive at the same time share device memory.
+     * @return Activation memory size.
+     */
+    @AnyThread
+    public long getActivationMemorySize()
+    {
+        return m_defaultSession.getActivationMemorySize();
+    }
+
     /**
      * Returns network layers.
      * @return Network layers.
@@ -137,38 +436,378 @@ public class NeuralNetRS
     @WorkerThread
 	public void loadModel(@NonNull InputStream modelInputStream, boolean bigEndian) throws IOException
 	{
+		loadModel(ModelReader.fromStream(modelInputStream, bigEndian), null);
+	}
+
+	/**
+	 * Loads trained neural network model from file, by memory mapping it.
+	 * Parameters are decoded directly from mapped memory, without reading the model into intermediate byte buffers.
+	 * File can contain either raw model or model container, in which case byte order is read from the container.
+	 * @param modelFile Model file.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 */
+	@WorkerThread
+	public void loadModel(@NonNull File modelFile, boolean bigEndian) throws IOException
+	{
+		loadModel(modelFile, bigEndian, null, null);
+	}
+
+	/**
+	 * Loads trained neural network model from file channel, by memory mapping the region of it containing the model.
+	 * Useful for loading uncompressed assets, by using offset and length from their AssetFileDescriptor.
+	 * Region can contain either raw model or model container, in which case byte order is read from the container.
+	 * @param modelChannel Channel of the file containing the model.
+	 * @param modelOffset Offset of the model in the file.
+	 * @param modelSize Size of the model in bytes.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 */
+	@WorkerThread
+	public void loadModel(@NonNull FileChannel modelChannel, long modelOffset, long modelSize, boolean bigEndian) throws IOException
+	{
+		loadModel(modelChannel, modelOffset, modelSize, bigEndian, null, null);
+	}
+
+	/**
+	 * Loads trained neural network model from model container.
+	 * Container is first validated against network topology, and then each layer is loaded from its own mapped region of the container.
+	 * @param modelContainer Model container.
+	 */
+	@WorkerThread
+	public void loadModel(@NonNull ModelContainer modelContainer) throws IOException
+	{
+		loadModel(modelContainer, null, null);
+	}
+
+	/**
+	 * Loads trained model of one network layer from model container, allowing layers to be loaded lazily or in any order.
+	 * Layers without parameters are ignored.
+	 * @param modelContainer Model container.
+	 * @param layerIndex Index of the layer to load.
+	 */
+	@WorkerThread
+	public void loadLayerModel(@NonNull ModelContainer modelContainer, int layerIndex) throws IOException
+	{
+		checkNotOptimized();
+
+		LayerRS layer = m_layers.get(layerIndex);
+		if (ModelContainer.getWeightsShape(layer) == null)
+		{
+			return;
+		}
+
+		ModelContainer.TensorInfo weightsTensor = modelContainer.getTensor(layerIndex, ModelContainer.ParameterType.Weights);
+		ModelContainer.TensorInfo biasesTensor = modelContainer.getTensor(layerIndex, ModelContainer.ParameterType.Biases);
+		if (weightsTensor == null || biasesTensor == null)
+		{
+			throw new IOException("Model container doesn't contain parameters for layer " + layerIndex + ".");
+		}
+
+		ModelReader weightsReader = ModelReader.fromBuffer(modelContainer.mapTensor(weightsTensor),
+			weightsTensor.getDataType() == ModelContainer.DataType.Float16);
+		ModelReader biasesReader = ModelReader.fromBuffer(modelContainer.mapTensor(biasesTensor),
+			biasesTensor.getDataType() == ModelContainer.DataType.Float16);
+		loadLayerParameters(layer, weightsReader, biasesReader);
+	}
+
+	/**
+	 * Loads trained neural network model from file by memory mapping it, decoding parameters of multiple layers in parallel.
+	 * Layers are decoded on the given executor and uploaded in network order on the calling thread, so that decoding of next layers
+	 * overlaps with uploading of previous ones. Decoded layers are held in memory until uploaded, so this uses more memory than
+	 * {@link #loadModel(File, boolean)}.
+	 * File can contain either raw model or model container, in which case byte order is read from the container.
+	 * @param modelFile Model file.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 * @param decodeExecutor Executor on which to decode layers.
+	 */
+	@WorkerThread
+	public void loadModel(@NonNull File modelFile, boolean bigEndian, @NonNull ExecutorService decodeExecutor) throws IOException
+	{
+		loadModel(modelFile, bigEndian, decodeExecutor, null);
+	}
+
+	/**
+	 * Loads trained neural network model from model container, decoding parameters of multiple layers in parallel.
+	 * See {@link #loadModel(File, boolean, ExecutorService)} for details.
+	 * @param modelContainer Model container.
+	 * @param decodeExecutor Executor on which to decode layers.
+	 */
+	@WorkerThread
+	public void loadModel(@NonNull ModelContainer modelContainer, @NonNull ExecutorService decodeExecutor) throws IOException
+	{
+		loadModel(modelContainer, decodeExecutor, null);
+	}
+
+	/**
+	 * Starts loading trained neural network model from file in background, see {@link #loadModel(File, boolean)} for details.
+	 * Network must not be used for inference until returned future completes successfully.
+	 * Loading can be cancelled through returned future, in which case network is left partially loaded and model needs to be loaded again.
+	 * @param modelFile Model file.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 * @param loadExecutor Executor on which to load the model.
+	 * @param decodeExecutor Executor on which to decode layers in parallel with uploading of previous ones,
+	 *                       or null to decode and upload layers one by one on the load executor.
+	 * @param loadingListener Listener notified about loading progress on the loading thread, or null.
+	 * @return Future which completes once the model is loaded, or fails with the exception thrown while loading.
+	 */
+	@AnyThread
+	@NonNull
+	public Future<Void> loadModelAsync(@NonNull File modelFile, boolean bigEndian, @NonNull ExecutorService loadExecutor,
+									   @Nullable ExecutorService decodeExecutor, @Nullable ModelLoadingListener loadingListener)
+	{
+		return loadExecutor.submit(() ->
+		{
+			loadModel(modelFile, bigEndian, decodeExecutor, loadingListener);
+			return null;
+		});
+	}
+
+	/**
+	 * Loads trained neural network model from file.
+	 * @param modelFile Model file.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 * @param decodeExecutor Executor on which to decode layers in parallel, or null to load them sequentially.
+	 * @param loadingListener Listener notified about loading progress, or null.
+	 */
+	@WorkerThread
+	private void loadModel(@NonNull File modelFile, boolean bigEndian, @Nullable ExecutorService decodeExecutor,
+						   @Nullable ModelLoadingListener loadingListener) throws IOException
+	{
+		try (FileInputStream modelInputStream = new FileInputStream(modelFile))
+		{
+			FileChannel modelChannel = modelInputStream.getChannel();
+			loadModel(modelChannel, 0, modelChannel.size(), bigEndian, decodeExecutor, loadingListener);
+		}
+	}
+
+	/**
+	 * Loads trained neural network model from file channel, by memory mapping the region of it containing the model.
+	 * @param modelChannel Channel of the file containing the model.
+	 * @param modelOffset Offset of the model in the file.
+	 * @param modelSize Size of the model in bytes.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 * @param decodeExecutor Executor on which to decode layers in parallel, or null to load them sequentially.
+	 * @param loadingListener Listener notified about loading progress, or null.
+	 */
+	@WorkerThread
+	private void loadModel(@NonNull FileChannel modelChannel, long modelOffset, long modelSize, boolean bigEndian,
+						   @Nullable ExecutorService decodeExecutor, @Nullable ModelLoadingListener loadingListener) throws IOException
+	{
+		checkNotOptimized();
+
+		if (modelSize >= ModelContainer.c_fixedHeaderSize &&
+			IOUtils.isModelContainer(IOUtils.readBufferFromChannel(modelChannel, modelOffset, ModelContainer.c_fixedHeaderSize)))
+		{
+			// Not closing the container, since channel belongs to the caller.
+			loadModel(ModelContainer.open(modelChannel, modelOffset, modelSize), decodeExecutor, loadingListener);
+			return;
+		}
+
+		MappedByteBuffer modelBuffer = modelChannel.map(FileChannel.MapMode.READ_ONLY, modelOffset, modelSize);
+		ByteOrder byteOrder = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		modelBuffer.order(byteOrder);
+
+		if (decodeExecutor == null)
+		{
+			loadModel(ModelReader.fromBuffer(modelBuffer), loadingListener);
+			return;
+		}
+
+		// Raw model has no index, so we find layers' parameters from the sizes of the layers before them.
+		ParallelModelLoader modelLoader = new ParallelModelLoader(decodeExecutor, loadingListener);
+		long parametersOffset = 0;
+		for (LayerRS layer : m_layers)
+		{
+			int[] weightsShape = ModelContainer.getWeightsShape(layer);
+			if (weightsShape == null)
+			{
+				continue;
+			}
+
+			long weightsSize = 4L * getNumElements(weightsShape);
+			long biasesSize = 4L * getNumElements(ModelContainer.getBiasesShape(layer));
+			if (parametersOffset + weightsSize + biasesSize > modelBuffer.capacity())
+			{
+				throw new IOException("Model file is smaller than the network parameters.");
+			}
+
+			modelLoader.addLayer(layer, sliceBuffer(modelBuffer, parametersOffset, weightsSize, byteOrder), false,
+				sliceBuffer(modelBuffer, parametersOffset + weightsSize, biasesSize, byteOrder), false);
+			parametersOffset += weightsSize + biasesSize;
+		}
+
+		modelLoader.load();
+	}
+
+	/**
+	 * Loads trained neural network model from model container.
+	 * @param modelContainer Model container.
+	 * @param decodeExecutor Executor on which to decode layers in parallel, or null to load them sequentially.
+	 * @param loadingListener Listener notified about loading progress, or null.
+	 */
+	@WorkerThread
+	private void loadModel(@NonNull ModelContainer modelContainer, @Nullable ExecutorService decodeExecutor,
+						   @Nullable ModelLoadingListener loadingListener) throws IOException
+	{
+		checkNotOptimized();
+		modelContainer.validate(this);
+
+		if (decodeExecutor == null)
+		{
+			final int numLayersToLoad = getNumLayersToLoad();
+			int numLoadedLayers = 0;
+			for (int layerIndex = 0; layerIndex < m_layers.size(); ++layerIndex)
+			{
+				if (ModelContainer.getWeightsShape(m_layers.get(layerIndex)) != null)
+				{
+					IOUtils.checkInterrupted();
+					loadLayerModel(modelContainer, layerIndex);
+					notifyLayerLoaded(loadingListener, ++numLoadedLayers, numLayersToLoad);
+				}
+			}
+			return;
+		}
+
+		ParallelModelLoader modelLoader = new ParallelModelLoader(decodeExecutor, loadingListener);
+		for (int layerIndex = 0; layerIndex < m_layers.size(); ++layerIndex)
+		{
+			LayerRS layer = m_layers.get(layerIndex);
+			if (ModelContainer.getWeightsShape(layer) != null)
+			{
+				ModelContainer.TensorInfo weightsTensor = modelContainer.getTensor(layerIndex, ModelContainer.ParameterType.Weights);
+				ModelContainer.TensorInfo biasesTensor = modelContainer.getTensor(layerIndex, ModelContainer.ParameterType.Biases);
+				modelLoader.addLayer(layer,
+					modelContainer.mapTensor(weightsTensor), weightsTensor.getDataType() == ModelContainer.DataType.Float16,
+					modelContainer.mapTensor(biasesTensor), biasesTensor.getDataType() == ModelContainer.DataType.Float16);
+			}
+		}
+
+		modelLoader.load();
+	}
+
+	/**
+	 * Loads trained neural network model through model reader, which streams parameters into layer buffers in fixed size chunks.
+	 * @param modelReader Model reader.
+	 * @param loadingListener Listener notified about loading progress, or null.
+	 */
+	@WorkerThread
+	private void loadModel(@NonNull ModelReader modelReader, @Nullable ModelLoadingListener loadingListener) throws IOException
+	{
+		checkNotOptimized();
+
+		final int numLayersToLoad = getNumLayersToLoad();
+		int numLoadedLayers = 0;
 		for (LayerRS layer: m_layers)
 		{
-			if (layer instanceof ConvolutionalLayerRS)
+			if (ModelContainer.getWeightsShape(layer) != null)
 			{
-				ConvolutionalLayerRS convLayer = (ConvolutionalLayerRS)layer;
-				convLayer.loadFilters(modelInputStream, bigEndian);
-				convLayer.loadBiases(modelInputStream, bigEndian);
+				IOUtils.checkInterrupted();
+				loadLayerParameters(layer, modelReader, modelReader);
+				notifyLayerLoaded(loadingListener, ++numLoadedLayers, numLayersToLoad);
 			}
-			else if (layer instanceof StandardLayerRS)
-            {
-                StandardLayerRS standardLayer = (StandardLayerRS)layer;
-                standardLayer.loadWeights(modelInputStream, bigEndian);
-                standardLayer.loadBiases(modelInputStream, bigEndian);
-            }
 		}
 	}
 
-    /**
-     * Does forward propagation through the network.
-     */
-    @WorkerThread
-    private void doForwardProp()
-    {
-        for (int i = 1; i < m_layers.size(); ++i)
-        {
-            LayerRS currentLayer = m_layers.get(i);
-            currentLayer.setInputDataBuffer(m_layers.get(i - 1).getActivationDataBuffer());
-            currentLayer.doForwardProp();
+	/**
+	 * Loads parameters of one layer.
+	 * @param layer Layer with parameters.
+	 * @param weightsReader Model reader positioned at layer weights (or filters).
+	 * @param biasesReader Model reader positioned at layer biases, can be the same as weights reader if biases follow the weights.
+	 */
+	@WorkerThread
+	static void loadLayerParameters(@NonNull LayerRS layer, @NonNull ModelReader weightsReader, @NonNull ModelReader biasesReader)
+		throws IOException
+	{
+		if (layer instanceof ConvolutionalLayerRS)
+		{
+			ConvolutionalLayerRS convLayer = (ConvolutionalLayerRS)layer;
+			convLayer.loadFilters(weightsReader);
+			convLayer.loadBiases(biasesReader);
+		}
+		else if (layer instanceof StandardLayerRS)
+		{
+			StandardLayerRS standardLayer = (StandardLayerRS)layer;
+			standardLayer.loadWeights(weightsReader);
+			standardLayer.loadBiases(biasesReader);
+		}
+		else if (layer instanceof QuantizedStandardLayerRS)
+		{
+			QuantizedStandardLayerRS quantizedLayer = (QuantizedStandardLayerRS)layer;
+			quantizedLayer.loadWeights(weightsReader);
+			quantizedLayer.loadBiases(biasesReader);
+		}
+		else if (layer instanceof SparseStandardLayerRS)
+		{
+			SparseStandardLayerRS sparseLayer = (SparseStandardLayerRS)layer;
+			sparseLayer.loadWeights(weightsReader);
+			sparseLayer.loadBiases(biasesReader);
+		}
+	}
 
-            m_rsContext.finish();
-        }
-    }
+	/**
+	 * Checks that optimization passes haven't changed the network, since loaded parameters wouldn't match the changed layers.
+	 */
+	private void checkNotOptimized() throws IOException
+	{
+		if (m_optimized)
+		{
+			throw new IOException("Model has to be loaded before the network is optimized.");
+		}
+	}
+
+	/**
+	 * Gets number of network layers which have parameters to load.
+	 */
+	private int getNumLayersToLoad()
+	{
+		int numLayersToLoad = 0;
+		for (LayerRS layer : m_layers)
+		{
+			if (ModelContainer.getWeightsShape(layer) != null)
+			{
+				++numLayersToLoad;
+			}
+		}
+
+		return numLayersToLoad;
+	}
+
+	/**
+	 * Notifies loading listener that layer is loaded, if there is one.
+	 */
+	static void notifyLayerLoaded(@Nullable ModelLoadingListener loadingListener, int numLoadedLayers, int numLayersToLoad)
+	{
+		if (loadingListener != null)
+		{
+			loadingListener.onLayerLoaded(numLoadedLayers, numLayersToLoad);
+		}
+	}
+
+	/**
+	 * Gets number of elements in tensor of given shape.
+	 */
+	private static long getNumElements(@NonNull int[] shape)
+	{
+		long numElements = 1;
+		for (int dimension : shape)
+		{
+			numElements *= dimension;
+		}
+
+		return numElements;
+	}
+
+	/**
+	 * Slices region of the buffer into separate buffer, so that it can be read independently from other threads.
+	 */
+	@NonNull
+	private static ByteBuffer sliceBuffer(@NonNull ByteBuffer buffer, long offset, long size, @NonNull ByteOrder byteOrder)
+	{
+		ByteBuffer regionBuffer = buffer.duplicate();
+		regionBuffer.position((int)offset);
+		regionBuffer.limit((int)(offset + size));
+
+		return regionBuffer.slice().order(byteOrder);
+	}
 
     /**
      * Classifies image.
@@ -180,23 +819,7 @@ public class NeuralNetRS
     @NonNull
     public ClassificationResult classifyImage(@NonNull final Bitmap image) throws Exception
     {
-        if (!(m_layers.get(0) instanceof ImageInputLayerRS))
-        {
-            throw new Exception("This network doesn't accept images as input data type.");
-        }
-
-        ImageInputLayerRS inputLayer = (ImageInputLayerRS)getInputLayer();
-        if (!inputLayer.loadImage(image))
-        {
-            throw new Exception("Can't load input image.");
-        }
-        inputLayer.doForwardProp();
-
-        doForwardProp();
-
-        OutputLayerRS outputLayer = getOutputLayer();
-
-        return new ClassificationResult(outputLayer.getPredictedClass(), outputLayer.getPredictionProbability());
+        return m_defaultSession.classifyImage(image);
     }
 
     /**
@@ -209,20 +832,35 @@ public class NeuralNetRS
     @NonNull
     public ClassificationResult classifyFeatures(@NonNull final float[] features) throws Exception
     {
-        if (!(m_layers.get(0) instanceof FeaturesInputLayerRS))
-        {
-            throw new Exception("This component doesn't support features as input data type.");
-        }
-
-        FeaturesInputLayerRS inputLayer = (FeaturesInputLayerRS)getInputLayer();
-        inputLayer.loadFeatures(features);
-        inputLayer.doForwardProp();
-
-        doForwardProp();
+        return m_defaultSession.classifyFeatures(features);
+    }
 
-        OutputLayerRS outputLayer = getOutputLayer();
+    /**
+     * Classifies batch of images at once, which is faster than classifying them one by one since layer weights are read once per several images.
+     * Activation buffers are planned again whenever batch size changes, so it is best to classify batches of the same size.
+     * @param images Images to classify.
+     * @return Classification results, in order of images.
+     * @throws Exception Throws generic exception in case when classification fails.
+     */
+    @WorkerThread
+    @NonNull
+    public List<ClassificationResult> classifyImages(@NonNull final List<Bitmap> images) throws Exception
+    {
+        return m_defaultSession.classifyImages(images);
+    }
 
-        return new ClassificationResult(outputLayer.getPredictedClass(), outputLayer.getPredictionProbability());
+    /**
+     * Classifies batch of features at once, which is faster than classifying them one by one since layer weights are read once per several samples.
+     * Activation buffers are planned again whenever batch size changes, so it is best to classify batches of the same size.
+     * @param features Features of each sample to classify.
+     * @return Classification results, in order of samples.
+     * @throws Exception Throws generic exception in case when classification fails.
+     */
+    @WorkerThread
+    @NonNull
+    public List<ClassificationResult> classifyFeatures(@NonNull final float[][] features) throws Exception
+    {
+        return m_defaultSession.classifyFeatures(features);
     }
 
     /**
@@ -235,24 +873,34 @@ public class NeuralNetRS
     @NonNull
     public float[] extractFeatures(@NonNull final Bitmap image) throws Exception
     {
-        if (!(m_layers.get(0) instanceof ImageInputLayerRS))
-        {
-            throw new Exception("This network doesn't accept images as input data type.");
-        }
-
-        ImageInputLayerRS inputLayer = (ImageInputLayerRS)getInputLayer();
-        if (!inputLayer.loadImage(image))
-        {
-            throw new Exception("Can't load input image.");
-        }
-        inputLayer.doForwardProp();
-
-        doForwardProp();
+        return m_defaultSession.extractFeatures(image);
+    }
 
-        LayerRS lastLayer = getLastLayer();
-        float[] featuresBuffer = new float[lastLayer.getActivationDataBufferSize()];
-        lastLayer.getActivationDataBuffer().copyTo(featuresBuffer);
+    /**
+     * Extracts features from the image as activations of the given layer, propagating only layers up to it.
+     * @param image Image to extract features from.
+     * @param layerIndex Index of the layer whose activations are extracted.
+     * @return Extracted features.
+     * @throws Exception Throws generic exception in case when features extraction fails.
+     */
+    @WorkerThread
+    @NonNull
+    public float[] extractFeatures(@NonNull final Bitmap image, int layerIndex) throws Exception
+    {
+        return m_defaultSession.extractFeatures(image, layerIndex);
+    }
 
-        return featuresBuffer;
+    /**
+     * Extracts features from the image as activations of several layers in one propagation, propagating only layers which they depend on.
+     * @param image Image to extract features from.
+     * @param layerIndices Indices of the layers whose activations are extracted.
+     * @return Extracted features, in order of layer indices.
+     * @throws Exception Throws generic exception in case when features extraction fails.
+     */
+    @WorkerThread
+    @NonNull
+    public float[][] extractFeatures(@NonNull final Bitmap image, @NonNull int[] layerIndices) throws Exception
+    {
+        return m_defaultSession.extractFeatures(image, layerIndices);
     }
 }
@@ -0,0 +1,18 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Optimization pass over the network, which rewrites its layers and loaded parameters while keeping its outputs numerically equivalent.
+ */
+public interface OptimizationPass
+{
+	/**
+	 * Runs the pass over the network.
+	 * @param neuralNet Network with loaded model.
+	 * @return True if the network was changed.
+	 */
+	@WorkerThread
+	boolean run(@NonNull NeuralNetRS neuralNet);
+}
@@ -0,0 +1,304 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.ModelReader;
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.QuantizedStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.SparseStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Loads model by decoding parameter blocks of the layers on worker threads, while uploading decoded blocks into layers
+ * in network order on the calling thread.
+ *
+ * Decoded layers are kept in host memory until uploaded, so layers decoded ahead are limited both to the number of processors
+ * and to c_maxDecodedBytesAhead bytes. Layers bigger than that (like fully connected layers of AlexNet) are not decoded ahead,
+ * but streamed into the layer through chunked model reader on the calling thread, keeping memory needed for loading bounded.
+ */
+class ParallelModelLoader
+{
+	/**
+	 * Maximum size of decoded parameters of the layers decoded ahead, in bytes.
+	 */
+	private static final long c_maxDecodedBytesAhead = 32L << 20;
+
+	/**
+	 * Parameter blocks of one layer, to decode.
+	 */
+	private static class LayerBlocks
+	{
+		final LayerRS m_layer;
+
+		final ByteBuffer m_weightsBuffer;
+
+		final boolean m_halfPrecisionWeights;
+
+		final ByteBuffer m_biasesBuffer;
+
+		final boolean m_halfPrecisionBiases;
+
+		LayerBlocks(@NonNull LayerRS layer, @NonNull ByteBuffer weightsBuffer, boolean halfPrecisionWeights, @NonNull ByteBuffer biasesBuffer,
+					boolean halfPrecisionBiases)
+		{
+			m_layer = layer;
+			m_weightsBuffer = weightsBuffer;
+			m_halfPrecisionWeights = halfPrecisionWeights;
+			m_biasesBuffer = biasesBuffer;
+			m_halfPrecisionBiases = halfPrecisionBiases;
+		}
+	}
+
+	/**
+	 * Decoded parameters of one layer, ready for upload.
+	 */
+	private static class DecodedLayer
+	{
+		final float[] m_weights;
+
+		final float[] m_biases;
+
+		DecodedLayer(@NonNull float[] weights, @NonNull float[] biases)
+		{
+			m_weights = weights;
+			m_biases = biases;
+		}
+	}
+
+	/**
+	 * Layers blocks to decode, in network order.
+	 */
+	private final List<LayerBlocks> m_layersBlocks;
+
+	/**
+	 * Executor on which to decode blocks.
+	 */
+	private final ExecutorService m_decodeExecutor;
+
+	/**
+	 * Listener notified about loading progress, or null.
+	 */
+	@Nullable
+	private final ModelLoadingListener m_loadingListener;
+
+	/**
+	 * Constructor.
+	 * @param decodeExecutor Executor on which to decode blocks.
+	 * @param loadingListener Listener notified about loading progress, or null.
+	 */
+	ParallelModelLoader(@NonNull ExecutorService decodeExecutor, @Nullable ModelLoadingListener loadingListener)
+	{
+		m_layersBlocks = new ArrayList<>();
+		m_decodeExecutor = decodeExecutor;
+		m_loadingListener = loadingListener;
+	}
+
+	/**
+	 * Adds layer whose parameters should be loaded.
+	 * @param layer Layer to load.
+	 * @param weightsBuffer Buffer with layer weights (or filters), with byte order already set.
+	 * @param halfPrecisionWeights Are weights stored as half precision floats.
+	 * @param biasesBuffer Buffer with layer biases, with byte order already set.
+	 * @param halfPrecisionBiases Are biases stored as half precision floats.
+	 */
+	void addLayer(@NonNull LayerRS layer, @NonNull ByteBuffer weightsBuffer, boolean halfPrecisionWeights, @NonNull ByteBuffer biasesBuffer,
+				  boolean halfPrecisionBiases)
+	{
+		m_layersBlocks.add(new LayerBlocks(layer, weightsBuffer, halfPrecisionWeights, biasesBuffer, halfPrecisionBiases));
+	}
+
+	/**
+	 * Decodes and uploads all added layers.
+	 */
+	@WorkerThread
+	void load() throws IOException
+	{
+		final int maxLayersAhead = Math.max(1, Runtime.getRuntime().availableProcessors());
+		ArrayDeque<Future<DecodedLayer>> decodingLayers = new ArrayDeque<>();
+		long decodedBytesAhead = 0;
+		int nextLayerToDecode = 0;
+
+		try
+		{
+			for (int layerIndex = 0; layerIndex < m_layersBlocks.size(); ++layerIndex)
+			{
+				IOUtils.checkInterrupted();
+
+				// Layers before streamed layer are all uploaded, and decoding ahead stops at it, so it is the next layer to decode.
+				LayerBlocks layerBlocks = m_layersBlocks.get(layerIndex);
+				final boolean streamLayer = getDecodedSize(layerBlocks) > c_maxDecodedBytesAhead;
+				if (streamLayer)
+				{
+					nextLayerToDecode = layerIndex + 1;
+				}
+
+				while (nextLayerToDecode < m_layersBlocks.size() && decodingLayers.size() < maxLayersAhead)
+				{
+					final LayerBlocks blocksToDecode = m_layersBlocks.get(nextLayerToDecode);
+					final long decodedSize = getDecodedSize(blocksToDecode);
+					if (decodedSize > c_maxDecodedBytesAhead || decodedBytesAhead + decodedSize > c_maxDecodedBytesAhead)
+					{
+						break;
+					}
+					decodingLayers.add(m_decodeExecutor.submit(() -> decodeLayer(blocksToDecode)));
+					decodedBytesAhead += decodedSize;
+					++nextLayerToDecode;
+				}
+
+				if (streamLayer)
+				{
+					NeuralNetRS.loadLayerParameters(layerBlocks.m_layer, ModelReader.fromBuffer(layerBlocks.m_weightsBuffer, layerBlocks.m_halfPrecisionWeights),
+						ModelReader.fromBuffer(layerBlocks.m_biasesBuffer, layerBlocks.m_halfPrecisionBiases));
+				}
+				else
+				{
+					uploadLayer(layerBlocks.m_layer, waitForDecoding(decodingLayers.poll()));
+					decodedBytesAhead -= getDecodedSize(layerBlocks);
+				}
+				NeuralNetRS.notifyLayerLoaded(m_loadingListener, layerIndex + 1, m_layersBlocks.size());
+			}
+		}
+		finally
+		{
+			for (Future<DecodedLayer> decodingLayer : decodingLayers)
+			{
+				decodingLayer.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Gets size of decoded parameters of the layer in bytes, not counting padding of filters.
+	 * @param layerBlocks Layer parameter blocks.
+	 */
+	private static long getDecodedSize(@NonNull LayerBlocks layerBlocks)
+	{
+		long numWeights = layerBlocks.m_weightsBuffer.capacity() / (layerBlocks.m_halfPrecisionWeights ? 2 : 4);
+		long numBiases = layerBlocks.m_biasesBuffer.capacity() / (layerBlocks.m_halfPrecisionBiases ? 2 : 4);
+
+		return 4L * (numWeights + numBiases);
+	}
+
+	/**
+	 * Decodes parameters of the layer into host buffers, in the layout in which they are uploaded.
+	 * @param layerBlocks Layer parameter blocks.
+	 * @return Decoded layer.
+	 */
+	@WorkerThread
+	@NonNull
+	private static DecodedLayer decodeLayer(@NonNull LayerBlocks layerBlocks) throws IOException
+	{
+		ModelReader weightsReader = ModelReader.fromBuffer(layerBlocks.m_weightsBuffer, layerBlocks.m_halfPrecisionWeights);
+		ModelReader biasesReader = ModelReader.fromBuffer(layerBlocks.m_biasesBuffer, layerBlocks.m_halfPrecisionBiases);
+
+		if (layerBlocks.m_layer instanceof ConvolutionalLayerRS)
+		{
+			ConvolutionalLayerRS convLayer = (ConvolutionalLayerRS)layerBlocks.m_layer;
+			int modelFiltersBufferSize = convLayer.getNumFilters() * convLayer.getFilterHeight() * convLayer.getFilterWidth() *
+				convLayer.getModelFiltersNumChannels();
+			// Padding on the worker thread, so that uploading doesn't have to.
+			float[] filters = modelFiltersBufferSize < convLayer.getFiltersBufferSize() ?
+				weightsReader.readPaddedFloatBuffer(convLayer.getFiltersBufferSize()) :
+				weightsReader.readFloatBuffer(convLayer.getFiltersBufferSize());
+
+			return new DecodedLayer(filters, biasesReader.readFloatBuffer(convLayer.getBiasesBufferSize()));
+		}
+		else if (layerBlocks.m_layer instanceof StandardLayerRS)
+		{
+			StandardLayerRS standardLayer = (StandardLayerRS)layerBlocks.m_layer;
+
+			return new DecodedLayer(weightsReader.readFloatBuffer(standardLayer.getWeightsBufferSize()),
+				biasesReader.readFloatBuffer(standardLayer.getBiasesBufferSize()));
+		}
+		else if (layerBlocks.m_layer instanceof QuantizedStandardLayerRS)
+		{
+			QuantizedStandardLayerRS quantizedLayer = (QuantizedStandardLayerRS)layerBlocks.m_layer;
+
+			return new DecodedLayer(weightsReader.readFloatBuffer(quantizedLayer.getWeightsBufferSize()),
+				biasesReader.readFloatBuffer(quantizedLayer.getBiasesBufferSize()));
+		}
+		else
+		{
+			SparseStandardLayerRS sparseLayer = (SparseStandardLayerRS)layerBlocks.m_layer;
+
+			return new DecodedLayer(weightsReader.readFloatBuffer(sparseLayer.getWeightsBufferSize()),
+				biasesReader.readFloatBuffer(sparseLayer.getBiasesBufferSize()));
+		}
+	}
+
+	/**
+	 * Uploads decoded parameters into layer.
+	 * @param layer Layer to upload into.
+	 * @param decodedLayer Decoded layer parameters.
+	 */
+	@WorkerThread
+	private static void uploadLayer(@NonNull LayerRS layer, @NonNull DecodedLayer decodedLayer)
+	{
+		if (layer instanceof ConvolutionalLayerRS)
+		{
+			ConvolutionalLayerRS convLayer = (ConvolutionalLayerRS)layer;
+			convLayer.loadFilters(decodedLayer.m_weights);
+			convLayer.loadBiases(decodedLayer.m_biases);
+		}
+		else if (layer instanceof StandardLayerRS)
+		{
+			StandardLayerRS standardLayer = (StandardLayerRS)layer;
+			standardLayer.loadWeights(decodedLayer.m_weights);
+			standardLayer.loadBiases(decodedLayer.m_biases);
+		}
+		else if (layer instanceof QuantizedStandardLayerRS)
+		{
+			QuantizedStandardLayerRS quantizedLayer = (QuantizedStandardLayerRS)layer;
+			quantizedLayer.loadWeights(decodedLayer.m_weights);
+			quantizedLayer.loadBiases(decodedLayer.m_biases);
+		}
+		else
+		{
+			SparseStandardLayerRS sparseLayer = (SparseStandardLayerRS)layer;
+			sparseLayer.loadWeights(decodedLayer.m_weights);
+			sparseLayer.loadBiases(decodedLayer.m_biases);
+		}
+	}
+
+	/**
+	 * Waits for layer decoding to finish.
+	 * @param decodingLayer Future of the layer decoding.
+	 * @return Decoded layer.
+	 */
+	@NonNull
+	private static DecodedLayer waitForDecoding(@NonNull Future<DecodedLayer> decodingLayer) throws IOException
+	{
+		try
+		{
+			return decodingLayer.get();
+		}
+		catch (InterruptedException exc)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Model loading interrupted.");
+		}
+		catch (ExecutionException exc)
+		{
+			if (exc.getCause() instanceof IOException)
+			{
+				throw (IOException)exc.getCause();
+			}
+
+			throw new IOException("Model decoding failed.", exc.getCause());
+		}
+	}
+}
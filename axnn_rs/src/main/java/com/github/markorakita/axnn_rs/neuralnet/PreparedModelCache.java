@@ -0,0 +1,406 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.layers.ConvolutionalLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.LayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.QuantizedStandardLayerRS;
+import com.github.markorakita.axnn_rs.neuralnet.layers.StandardLayerRS;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Cache of prepared models.
+ *
+ * Prepared model holds parameters of all layers exactly as they are kept in device buffers: in native byte order, already padded,
+ * converted to half precision or quantized. Once the model is loaded and prepared the usual way, it can be saved into app-private
+ * storage, and on later starts loaded with a single memory mapping and a plain copy into device buffers.
+ *
+ * Prepared models are tied to the network topology and the device byte order, so they should never be shipped with the app.
+ * Optimization passes fold parameters and state of other layers (like input data normalization) into prepared parameters, so prepared model
+ * is saved and loaded before the network is optimized, and network is optimized again after each load.
+ *
+ * Cache format (all numbers are in native byte order):
+ *      magic           4 bytes, "AXNP"
+ *      byteOrderMark   int32, 0x01020304
+ *      version         int32
+ *      topologyHash    int64, hash of the network topology and parameter buffer types
+ *      modelVersion    int64, version of the source model, given by the app
+ *      parameter buffers, each aligned to 64 bytes, in network layers order
+ */
+public class PreparedModelCache
+{
+	/**
+	 * Prepared model magic.
+	 */
+	private static final byte[] c_magic = { 'A', 'X', 'N', 'P' };
+
+	/**
+	 * Byte order mark.
+	 */
+	private static final int c_byteOrderMark = 0x01020304;
+
+	/**
+	 * Current prepared model version.
+	 */
+	private static final int c_version = 1;
+
+	/**
+	 * Size of the header in bytes.
+	 */
+	private static final int c_headerSize = 28;
+
+	/**
+	 * Alignment of parameter buffers in bytes.
+	 */
+	private static final int c_alignment = 64;
+
+	/**
+	 * Size of the chunks in which we copy parameter buffers.
+	 */
+	private static final int c_copyChunkSize = 1 << 20;
+
+	/**
+	 * Saves prepared model of the network, whose model is already loaded.
+	 * Cache is written into temporary file first, so that incomplete cache is never left behind.
+	 * @param neuralNet Neural network with loaded model.
+	 * @param modelVersion Version of the source model, so that cache becomes stale when model is updated.
+	 * @param cacheFile File to save prepared model to.
+	 * @throws IOException Throws IOException in case when writing fails, network is already optimized or some of the network layers
+	 * don't support caching.
+	 */
+	@WorkerThread
+	public static void save(@NonNull NeuralNetRS neuralNet, long modelVersion, @NonNull File cacheFile) throws IOException
+	{
+		if (neuralNet.isOptimized())
+		{
+			throw new IOException("Prepared model has to be saved before the network is optimized.");
+		}
+
+		List<Allocation> parameterBuffers = getParameterBuffers(neuralNet);
+		if (parameterBuffers == null)
+		{
+			throw new IOException("Network contains layers which don't support prepared model cache.");
+		}
+
+		File tempFile = new File(cacheFile.getPath() + ".tmp");
+		try (FileOutputStream cacheOutputStream = new FileOutputStream(tempFile))
+		{
+			FileChannel channel = cacheOutputStream.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate(c_headerSize).order(ByteOrder.nativeOrder());
+			header.put(c_magic);
+			header.putInt(c_byteOrderMark);
+			header.putInt(c_version);
+			header.putLong(getTopologyHash(parameterBuffers, neuralNet));
+			header.putLong(modelVersion);
+			header.flip();
+			writeFully(channel, header, 0);
+
+			long position = alignOffset(c_headerSize);
+			ByteBuffer copyChunk = ByteBuffer.allocate(c_copyChunkSize).order(ByteOrder.nativeOrder());
+			for (Allocation parameterBuffer : parameterBuffers)
+			{
+				writeParameterBuffer(channel, parameterBuffer, position, copyChunk);
+				position = alignOffset(position + parameterBuffer.getBytesSize());
+			}
+
+			cacheOutputStream.getFD().sync();
+		}
+		catch (IOException exc)
+		{
+			tempFile.delete();
+			throw exc;
+		}
+
+		if (!tempFile.renameTo(cacheFile))
+		{
+			tempFile.delete();
+			throw new IOException("Failed to write prepared model cache.");
+		}
+	}
+
+	/**
+	 * Loads prepared model into network, if cache exists and matches the network and model version.
+	 * @param neuralNet Neural network to load prepared model into.
+	 * @param modelVersion Version of the source model.
+	 * @param cacheFile File with prepared model.
+	 * @return True if prepared model was loaded, false if cache is missing or stale, in which case model should be loaded
+	 * the usual way and saved again.
+	 * @throws IOException Throws IOException in case when reading fails or network is already optimized.
+	 */
+	@WorkerThread
+	public static boolean load(@NonNull NeuralNetRS neuralNet, long modelVersion, @NonNull File cacheFile) throws IOException
+	{
+		if (neuralNet.isOptimized())
+		{
+			throw new IOException("Prepared model has to be loaded before the network is optimized.");
+		}
+
+		List<Allocation> parameterBuffers = getParameterBuffers(neuralNet);
+		if (parameterBuffers == null || !cacheFile.exists())
+		{
+			return false;
+		}
+
+		try (FileInputStream cacheInputStream = new FileInputStream(cacheFile))
+		{
+			FileChannel channel = cacheInputStream.getChannel();
+			MappedByteBuffer cacheBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			cacheBuffer.order(ByteOrder.nativeOrder());
+			if (!isValidHeader(cacheBuffer, getTopologyHash(parameterBuffers, neuralNet), modelVersion))
+			{
+				return false;
+			}
+
+			long position = alignOffset(c_headerSize);
+			byte[] copyChunk = new byte[c_copyChunkSize];
+			for (Allocation parameterBuffer : parameterBuffers)
+			{
+				if (position + parameterBuffer.getBytesSize() > cacheBuffer.capacity())
+				{
+					return false;
+				}
+				readParameterBuffer(cacheBuffer, (int)position, parameterBuffer, copyChunk);
+				position = alignOffset(position + parameterBuffer.getBytesSize());
+			}
+		}
+
+		for (LayerRS layer : neuralNet.getLayers())
+		{
+			if (layer instanceof ConvolutionalLayerRS)
+			{
+				((ConvolutionalLayerRS)layer).onPreparedParametersLoaded();
+			}
+			else if (layer instanceof StandardLayerRS)
+			{
+				((StandardLayerRS)layer).onPreparedParametersLoaded();
+			}
+			else if (layer instanceof QuantizedStandardLayerRS)
+			{
+				((QuantizedStandardLayerRS)layer).onPreparedParametersLoaded();
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets parameter buffers of all network layers, in layers order.
+	 * @return Parameter buffers, or null if some of the layers don't support caching.
+	 */
+	@Nullable
+	private static List<Allocation> getParameterBuffers(@NonNull NeuralNetRS neuralNet)
+	{
+		List<Allocation> parameterBuffers = new ArrayList<>();
+		for (LayerRS layer : neuralNet.getLayers())
+		{
+			Allocation[] layerParameterBuffers;
+			if (layer instanceof ConvolutionalLayerRS)
+			{
+				layerParameterBuffers = ((ConvolutionalLayerRS)layer).getPreparedParameterBuffers();
+			}
+			else if (layer instanceof StandardLayerRS)
+			{
+				layerParameterBuffers = ((StandardLayerRS)layer).getPreparedParameterBuffers();
+			}
+			else if (layer instanceof QuantizedStandardLayerRS)
+			{
+				layerParameterBuffers = ((QuantizedStandardLayerRS)layer).getPreparedParameterBuffers();
+			}
+			else if (ModelContainer.getWeightsShape(layer) != null)
+			{
+				// Layers whose buffer sizes depend on the model contents (like sparse layers) can't be cached.
+				return null;
+			}
+			else
+			{
+				continue;
+			}
+
+			for (Allocation parameterBuffer : layerParameterBuffers)
+			{
+				parameterBuffers.add(parameterBuffer);
+			}
+		}
+
+		return parameterBuffers;
+	}
+
+	/**
+	 * Calculates hash of the network topology and its parameter buffer types.
+	 */
+	private static long getTopologyHash(@NonNull List<Allocation> parameterBuffers, @NonNull NeuralNetRS neuralNet)
+	{
+		StringBuilder topology = new StringBuilder();
+		for (LayerRS layer : neuralNet.getLayers())
+		{
+			topology.append(layer.getClass().getName()).append(':').append(layer.getActivationNumChannels()).append('x')
+				.append(layer.getActivationDataWidth()).append('x').append(layer.getActivationDataHeight()).append(';');
+		}
+		for (Allocation parameterBuffer : parameterBuffers)
+		{
+			Element element = parameterBuffer.getElement();
+			topology.append(element.getDataType()).append('_').append(element.getVectorSize()).append('[')
+				.append(parameterBuffer.getType().getCount()).append("];");
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(topology.toString().getBytes(StandardCharsets.UTF_8));
+
+		return (crc.getValue() << 32) | topology.length();
+	}
+
+	/**
+	 * Checks whether cache header is valid and matches the network and model version.
+	 */
+	private static boolean isValidHeader(@NonNull ByteBuffer cacheBuffer, long topologyHash, long modelVersion)
+	{
+		if (cacheBuffer.capacity() < c_headerSize)
+		{
+			return false;
+		}
+		for (int i = 0; i < c_magic.length; ++i)
+		{
+			if (cacheBuffer.get(i) != c_magic[i])
+			{
+				return false;
+			}
+		}
+
+		// Byte order mark won't match if cache was copied from device with different byte order.
+		return cacheBuffer.getInt(4) == c_byteOrderMark && cacheBuffer.getInt(8) == c_version && cacheBuffer.getLong(12) == topologyHash &&
+			cacheBuffer.getLong(20) == modelVersion;
+	}
+
+	/**
+	 * Writes contents of the parameter buffer into cache file, in native byte order.
+	 * @param channel Cache file channel.
+	 * @param parameterBuffer Parameter buffer to write.
+	 * @param position Position in the file to write to.
+	 * @param copyChunk Buffer for copying chunks.
+	 */
+	private static void writeParameterBuffer(@NonNull FileChannel channel, @NonNull Allocation parameterBuffer, long position,
+											 @NonNull ByteBuffer copyChunk) throws IOException
+	{
+		final Element element = parameterBuffer.getElement();
+		final int vectorSize = element.getVectorSize();
+		final int elementSize = element.getBytesSize();
+		final int numElements = parameterBuffer.getType().getCount();
+		final int chunkNumElements = c_copyChunkSize / elementSize;
+		final int numValuesPerChunk = chunkNumElements * vectorSize;
+
+		float[] floatValues = null;
+		short[] shortValues = null;
+		byte[] byteValues = null;
+		int[] intValues = null;
+		switch (element.getDataType())
+		{
+			case FLOAT_32:
+				floatValues = new float[numValuesPerChunk];
+				break;
+			case FLOAT_16:
+				shortValues = new short[numValuesPerChunk];
+				break;
+			case SIGNED_8:
+				byteValues = new byte[numValuesPerChunk];
+				break;
+			case SIGNED_32:
+				intValues = new int[numValuesPerChunk];
+				break;
+			default:
+				throw new IOException("Unsupported parameter buffer type: " + element.getDataType());
+		}
+
+		for (int elementsOffset = 0; elementsOffset < numElements; elementsOffset += chunkNumElements)
+		{
+			int count = Math.min(chunkNumElements, numElements - elementsOffset);
+			int numValues = count * vectorSize;
+			copyChunk.clear();
+			if (floatValues != null)
+			{
+				parameterBuffer.copy1DRangeTo(elementsOffset, count, floatValues);
+				copyChunk.asFloatBuffer().put(floatValues, 0, numValues);
+			}
+			else if (shortValues != null)
+			{
+				parameterBuffer.copy1DRangeTo(elementsOffset, count, shortValues);
+				copyChunk.asShortBuffer().put(shortValues, 0, numValues);
+			}
+			else if (byteValues != null)
+			{
+				parameterBuffer.copy1DRangeTo(elementsOffset, count, byteValues);
+				copyChunk.put(byteValues, 0, numValues);
+			}
+			else
+			{
+				parameterBuffer.copy1DRangeTo(elementsOffset, count, intValues);
+				copyChunk.asIntBuffer().put(intValues, 0, numValues);
+			}
+			copyChunk.position(0);
+			copyChunk.limit(count * elementSize);
+
+			writeFully(channel, copyChunk, position);
+			position += count * elementSize;
+		}
+	}
+
+	/**
+	 * Copies contents of the parameter buffer from mapped cache directly into allocation, without any conversion.
+	 * @param cacheBuffer Mapped cache.
+	 * @param position Position of the parameter buffer in the cache.
+	 * @param parameterBuffer Parameter buffer to copy into.
+	 * @param copyChunk Buffer for copying chunks.
+	 */
+	private static void readParameterBuffer(@NonNull ByteBuffer cacheBuffer, int position, @NonNull Allocation parameterBuffer,
+											@NonNull byte[] copyChunk)
+	{
+		final int elementSize = parameterBuffer.getElement().getBytesSize();
+		final int numElements = parameterBuffer.getType().getCount();
+		final int chunkNumElements = copyChunk.length / elementSize;
+
+		ByteBuffer source = cacheBuffer.duplicate();
+		source.position(position);
+		for (int elementsOffset = 0; elementsOffset < numElements; elementsOffset += chunkNumElements)
+		{
+			int count = Math.min(chunkNumElements, numElements - elementsOffset);
+			source.get(copyChunk, 0, count * elementSize);
+			parameterBuffer.copy1DRangeFromUnchecked(elementsOffset, count, copyChunk);
+		}
+	}
+
+	/**
+	 * Writes whole buffer into channel at given position.
+	 */
+	private static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Aligns offset up to the cache alignment.
+	 */
+	private static long alignOffset(long offset)
+	{
+		return (offset + c_alignment - 1) / c_alignment * c_alignment;
+	}
+}
@@ -0,0 +1,63 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+/**
+ * Activation functions applied by CPU layers right after their preactivations are calculated,
+ * same as in epilogues of RenderScript kernels.
+ */
+final class Activations
+{
+	private Activations()
+	{
+	}
+
+	/**
+	 * Applies activation function to one preactivation.
+	 * @param preactivation Preactivation.
+	 * @param activationFunctionType Activation function to apply.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @return Activation.
+	 */
+	static float activate(float preactivation, ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		switch (activationFunctionType)
+		{
+			case ReLU:
+				return Math.max(preactivation, 0.f);
+			case ELU:
+				return preactivation >= 0.f ? preactivation : activationAlpha * (float)Math.expm1(preactivation);
+			case LeakyReLU:
+				return preactivation >= 0.f ? preactivation : activationAlpha * preactivation;
+			case Sigmoid:
+				return (float)(preactivation >= 0.f ?
+					1.0 / (1.0 + Math.exp(-preactivation)) :
+					1.0 - 1.0 / (1.0 + Math.exp(preactivation)));
+			case Tanh:
+				return (float)Math.tanh(preactivation);
+			default:
+				return preactivation;
+		}
+	}
+
+	/**
+	 * Applies activation function to range of preactivations, in place.
+	 * @param buffer Buffer with preactivations.
+	 * @param start Start of the range.
+	 * @param end End of the range (exclusive).
+	 * @param activationFunctionType Activation function to apply.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	static void activate(float[] buffer, int start, int end, ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		if (activationFunctionType == ActivationFunctionType.Linear)
+		{
+			return;
+		}
+
+		for (int i = start; i < end; ++i)
+		{
+			buffer[i] = activate(buffer[i], activationFunctionType, activationAlpha);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Concatenation layer joins activations of multiple layers of the same width and height along channels,
+ * used for inception-style blocks where several branches process the same input.
+ */
+public class ConcatLayerCPU extends LayerCPU
+{
+	/**
+	 * Number of channels of each input.
+	 */
+	private final int[] m_inputsNumChannels;
+
+	/**
+	 * Constructor.
+	 * @param inputsNumChannels Number of channels of each input, in order of layer inputs.
+	 * @param inputDataWidth Width of input data, same for all inputs.
+	 * @param inputDataHeight Height of input data, same for all inputs.
+	 */
+	public ConcatLayerCPU(int[] inputsNumChannels, int inputDataWidth, int inputDataHeight)
+	{
+		m_inputsNumChannels = inputsNumChannels.clone();
+
+		int numChannels = 0;
+		for (int inputNumChannels : inputsNumChannels)
+		{
+			numChannels += inputNumChannels;
+		}
+
+		m_inputDataNumChannels = m_activationNumChannels = numChannels;
+		m_inputDataWidth = m_activationDataWidth = inputDataWidth;
+		m_inputDataHeight = m_activationDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_activationDataBufferSize = numChannels * inputDataWidth * inputDataHeight;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Gets number of inputs which are concatenated.
+	 * @return Number of inputs.
+	 */
+	@Override
+	public int getNumInputs()
+	{
+		return m_inputsNumChannels.length;
+	}
+
+	/**
+	 * Does forward propagation through layer, copying channels of each input into their place, pixel by pixel.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_batchSize * m_activationDataWidth * m_activationDataHeight, (start, end) ->
+		{
+			for (int pixel = start; pixel < end; ++pixel)
+			{
+				int activationOffset = pixel * m_activationNumChannels;
+				for (int input = 0; input < m_inputsNumChannels.length; ++input)
+				{
+					final int inputNumChannels = m_inputsNumChannels[input];
+					System.arraycopy(m_inputDataBuffers[input], pixel * inputNumChannels, m_activationDataBuffer, activationOffset, inputNumChannels);
+					activationOffset += inputNumChannels;
+				}
+			}
+		});
+	}
+}
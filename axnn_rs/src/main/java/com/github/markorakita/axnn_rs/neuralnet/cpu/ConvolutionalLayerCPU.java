@@ -0,0 +1,535 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Convolutional layer, with filters in the same layout as in RS convolutional layer: filter by filter, each in per-pixel data structure.
+ */
+public class ConvolutionalLayerCPU extends LayerCPU
+{
+	/**
+	 * Algorithms which can be used for convolution.
+	 */
+	public enum ConvolutionAlgorithm
+	{
+		// Each patch is convolved with all filters, row by row of the patch, since channels of consecutive pixels in the row
+		// are contiguous both in input data and in filters. Parallelized over patches of all samples in the batch.
+		Direct,
+
+		// Patches are unrolled into matrix which is multiplied with packed filters by cache and register blocked matrix multiplication.
+		Im2colGemm,
+
+		// Winograd F(2x2, 3x3) convolution, with filters transformed when they are loaded. Supported only for 3x3 filters with stride 1.
+		Winograd,
+
+		// Convolution in frequency domain, tile by tile, with filter spectra calculated when filters are loaded.
+		// Its cost doesn't depend on filter size, so it pays off for large filters with stride 1.
+		Fft,
+
+		// Input data is rearranged into blocks of stride x stride pixels stacked into channels, and convolved with stride 1
+		// with filters rearranged the same way when they are loaded. Supported only for stride larger than 1.
+		SpaceToDepth
+	}
+
+	/**
+	 * Filters buffer.
+	 */
+	private float[] m_filtersBuffer;
+
+	/**
+	 * Filters buffer size.
+	 */
+	private final int m_filtersBufferSize;
+
+	/**
+	 * Biases buffer.
+	 */
+	private float[] m_biasesBuffer;
+
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Filters width.
+	 */
+	private final int m_filterWidth;
+
+	/**
+	 * Filters height.
+	 */
+	private final int m_filterHeight;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride for patching.
+	 */
+	private final int m_stride;
+
+	/**
+	 * Convolution lowered to matrix multiplication, holding filters packed for it.
+	 */
+	private final Im2colConvolution m_im2colConvolution;
+
+	/**
+	 * Winograd convolution, holding filters transformed for it. Null if layer shape doesn't support it.
+	 */
+	private final WinogradConvolution m_winogradConvolution;
+
+	/**
+	 * Convolution in frequency domain, holding filter spectra.
+	 */
+	private final FftConvolution m_fftConvolution;
+
+	/**
+	 * Strided convolution rewritten into convolution with stride 1, holding rearranged filters. Null if layer has stride 1.
+	 */
+	private final SpaceToDepthConvolution m_spaceToDepthConvolution;
+
+	/**
+	 * Algorithm used for convolution.
+	 */
+	private ConvolutionAlgorithm m_convolutionAlgorithm;
+
+	/**
+	 * Activation function applied to preactivations.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Alpha parameter of activation function.
+	 */
+	private final float m_activationAlpha;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param activationFunctionType Activation function to use.
+	 */
+	public ConvolutionalLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+								 int paddingX, int paddingY, int stride, ActivationFunctionType activationFunctionType)
+	{
+		this(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight, paddingX, paddingY, stride,
+			activationFunctionType, 0.f);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	public ConvolutionalLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+								 int paddingX, int paddingY, int stride, ActivationFunctionType activationFunctionType,
+								 float activationAlpha)
+	{
+		this(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight, paddingX, paddingY, stride,
+			activationFunctionType, activationAlpha, true);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param allocateActivationBuffer Should activations buffer be allocated. Layers used only to convolve into buffers of other layers don't need it.
+	 */
+	ConvolutionalLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+						  int paddingX, int paddingY, int stride, ActivationFunctionType activationFunctionType,
+						  float activationAlpha, boolean allocateActivationBuffer)
+	{
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_numFilters = numFilters;
+		m_filterWidth = filterWidth;
+		m_filterHeight = filterHeight;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_stride = stride;
+
+		m_activationNumChannels = numFilters;
+		m_activationDataWidth = 1 + (int)Math.ceil((double)(2 * paddingX + m_inputDataWidth - filterWidth) / stride);
+		m_activationDataHeight = 1 + (int)Math.ceil((double)(2 * paddingY + m_inputDataHeight - filterHeight) / stride);
+		m_activationDataBufferSize = numFilters * m_activationDataWidth * m_activationDataHeight;
+
+		m_filtersBufferSize = numFilters * filterWidth * filterHeight * m_inputDataNumChannels;
+
+		m_im2colConvolution = new Im2colConvolution(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
+			paddingX, paddingY, stride, m_activationDataWidth, m_activationDataHeight);
+		m_winogradConvolution = WinogradConvolution.isSupported(filterWidth, filterHeight, stride) ?
+			new WinogradConvolution(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, paddingX, paddingY,
+				m_activationDataWidth, m_activationDataHeight) : null;
+		m_fftConvolution = new FftConvolution(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight,
+			paddingX, paddingY, stride, m_activationDataWidth, m_activationDataHeight);
+		m_spaceToDepthConvolution = SpaceToDepthConvolution.isSupported(stride) ?
+			new SpaceToDepthConvolution(inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight, paddingX, paddingY,
+				stride, m_activationDataWidth, m_activationDataHeight, activationFunctionType, activationAlpha) : null;
+		m_convolutionAlgorithm = chooseConvolutionAlgorithm();
+
+		m_activationFunctionType = activationFunctionType;
+		m_activationAlpha = activationAlpha;
+
+		if (allocateActivationBuffer)
+		{
+			allocateActivationBuffer();
+		}
+	}
+
+	/**
+	 * Gets number of convolutional filters.
+	 */
+	public int getNumFilters()
+	{
+		return m_numFilters;
+	}
+
+	/**
+	 * Gets number of input channels for which filters are stored in the model.
+	 * Models don't contain filters for the 4th input channel of images, since we pad it with zeros.
+	 */
+	public int getModelFiltersNumChannels()
+	{
+		return m_inputDataNumChannels == 4 ? 3 : m_inputDataNumChannels;
+	}
+
+	/**
+	 * Gets size of the filters buffer.
+	 */
+	public int getFiltersBufferSize()
+	{
+		return m_filtersBufferSize;
+	}
+
+	/**
+	 * Gets size of the biases buffer.
+	 */
+	public int getBiasesBufferSize()
+	{
+		return m_numFilters;
+	}
+
+	/**
+	 * Gets algorithm used for convolution.
+	 */
+	public ConvolutionAlgorithm getConvolutionAlgorithm()
+	{
+		return m_convolutionAlgorithm;
+	}
+
+	/**
+	 * Checks whether layer supports convolution algorithm.
+	 * @param convolutionAlgorithm Algorithm to check.
+	 */
+	public boolean supportsConvolutionAlgorithm(ConvolutionAlgorithm convolutionAlgorithm)
+	{
+		switch (convolutionAlgorithm)
+		{
+			case Winograd:
+				return m_winogradConvolution != null;
+			case SpaceToDepth:
+				return m_spaceToDepthConvolution != null;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Sets algorithm used for convolution. By default, the algorithm with the lowest estimated cost for layer shape is used.
+	 * If filters are already loaded, they are prepared for the new algorithm.
+	 * @param convolutionAlgorithm Algorithm to use.
+	 */
+	public void setConvolutionAlgorithm(ConvolutionAlgorithm convolutionAlgorithm)
+	{
+		if (!supportsConvolutionAlgorithm(convolutionAlgorithm))
+		{
+			throw new IllegalArgumentException("Convolution algorithm " + convolutionAlgorithm + " is not supported for this layer!");
+		}
+
+		if (convolutionAlgorithm != m_convolutionAlgorithm)
+		{
+			m_convolutionAlgorithm = convolutionAlgorithm;
+			if (m_filtersBuffer != null)
+			{
+				prepareFilters();
+			}
+		}
+	}
+
+	/**
+	 * Chooses algorithm with the lowest estimated cost. Direct convolution is never chosen, since matrix multiplication
+	 * does the same number of multiply-adds much faster.
+	 */
+	private ConvolutionAlgorithm chooseConvolutionAlgorithm()
+	{
+		ConvolutionAlgorithm convolutionAlgorithm = ConvolutionAlgorithm.Im2colGemm;
+		float lowestCost = estimateConvolutionCost(convolutionAlgorithm);
+		for (ConvolutionAlgorithm candidateAlgorithm : ConvolutionAlgorithm.values())
+		{
+			if (candidateAlgorithm != ConvolutionAlgorithm.Direct && supportsConvolutionAlgorithm(candidateAlgorithm) &&
+				estimateConvolutionCost(candidateAlgorithm) < lowestCost)
+			{
+				convolutionAlgorithm = candidateAlgorithm;
+				lowestCost = estimateConvolutionCost(candidateAlgorithm);
+			}
+		}
+
+		return convolutionAlgorithm;
+	}
+
+	/**
+	 * Estimates cost of convolving one sample by supported algorithm, in multiply-adds of blocked matrix multiplication.
+	 * @param convolutionAlgorithm Algorithm to estimate cost of.
+	 */
+	float estimateConvolutionCost(ConvolutionAlgorithm convolutionAlgorithm)
+	{
+		switch (convolutionAlgorithm)
+		{
+			case Winograd:
+				return m_winogradConvolution.estimateCost();
+			case Fft:
+				return m_fftConvolution.estimateCost();
+			case SpaceToDepth:
+				return m_spaceToDepthConvolution.estimateCost();
+			default:
+				// Direct convolution does the same multiply-adds as matrix multiplication, just not blocked.
+				return m_im2colConvolution.estimateCost();
+		}
+	}
+
+	/**
+	 * Gets activation function applied to preactivations.
+	 */
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Loads filters from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load filters in big endian or small endian.
+	 */
+	public void loadFilters(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		int modelFiltersBufferSize = m_filtersBufferSize / m_inputDataNumChannels * getModelFiltersNumChannels();
+		loadFilters(IOUtils.readFloatBufferFromStream(modelFiltersBufferSize, modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads filters from host buffer.
+	 * @param filtersBuffer Host filters buffer.
+	 */
+	public void loadFilters(float[] filtersBuffer)
+	{
+		if (m_inputDataNumChannels == 4 && filtersBuffer.length < m_filtersBufferSize)
+		{
+			// In this case we need to pad filters buffer with zeros.
+			m_filtersBuffer = new float[m_filtersBufferSize];
+			for (int i = 0, j = 0; i < m_filtersBufferSize; ++i)
+			{
+				m_filtersBuffer[i] = i % 4 == 3 ? 0.f : filtersBuffer[j++];
+			}
+		}
+		else
+		{
+			m_filtersBuffer = filtersBuffer.clone();
+		}
+
+		prepareFilters();
+	}
+
+	/**
+	 * Prepares loaded filters for the algorithm used for convolution. Only filters for that algorithm are kept prepared,
+	 * since spectra of filters for FFT convolution can take several times more memory than filters themselves.
+	 */
+	private void prepareFilters()
+	{
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Im2colGemm)
+		{
+			m_im2colConvolution.packFilters(m_filtersBuffer);
+		}
+		else if (m_convolutionAlgorithm == ConvolutionAlgorithm.Winograd)
+		{
+			m_winogradConvolution.transformFilters(m_filtersBuffer);
+		}
+		else if (m_convolutionAlgorithm == ConvolutionAlgorithm.Fft)
+		{
+			m_fftConvolution.transformFilters(m_filtersBuffer);
+		}
+		else if (m_convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			m_spaceToDepthConvolution.rearrangeFilters(m_filtersBuffer);
+		}
+	}
+
+	/**
+	 * Loads biases from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load biases in big endian or small endian.
+	 */
+	public void loadBiases(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadBiases(IOUtils.readFloatBufferFromStream(m_numFilters, modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from host buffer.
+	 * @param biasesBuffer Host biases buffer.
+	 */
+	public void loadBiases(float[] biasesBuffer)
+	{
+		m_biasesBuffer = biasesBuffer.clone();
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		convolve(pool, m_inputDataBuffers[0], m_biasesBuffer, m_batchSize, m_activationDataBuffer);
+	}
+
+	/**
+	 * Calculates activations of all samples in the batch with the algorithm used for convolution,
+	 * from input data and into buffer which can be different from buffers of this layer.
+	 * @param pool Pool to parallelize convolution on.
+	 * @param inputDataBuffer Input data of all samples.
+	 * @param biasesBuffer Biases of filters.
+	 * @param batchSize Number of samples.
+	 * @param activationDataBuffer Buffer to write activations into.
+	 */
+	void convolve(ForkJoinPool pool, float[] inputDataBuffer, float[] biasesBuffer, int batchSize,
+				  float[] activationDataBuffer)
+	{
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Im2colGemm)
+		{
+			m_im2colConvolution.convolve(pool, inputDataBuffer, biasesBuffer, batchSize, activationDataBuffer, m_activationFunctionType, m_activationAlpha);
+			return;
+		}
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Winograd)
+		{
+			m_winogradConvolution.convolve(pool, inputDataBuffer, biasesBuffer, batchSize, activationDataBuffer, m_activationFunctionType, m_activationAlpha);
+			return;
+		}
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Fft)
+		{
+			m_fftConvolution.convolve(pool, inputDataBuffer, biasesBuffer, batchSize, activationDataBuffer, m_activationFunctionType, m_activationAlpha);
+			return;
+		}
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			m_spaceToDepthConvolution.convolve(pool, inputDataBuffer, biasesBuffer, batchSize, activationDataBuffer);
+			return;
+		}
+
+		final int numSamplePatches = m_activationDataWidth * m_activationDataHeight;
+		ParallelLoop.run(pool, batchSize * numSamplePatches, (start, end) ->
+		{
+			float[] preactivations = new float[m_numFilters];
+			for (int patch = start; patch < end; ++patch)
+			{
+				final int sampleIndex = patch / numSamplePatches;
+				final int samplePatch = patch % numSamplePatches;
+				convolvePatch(inputDataBuffer, biasesBuffer, sampleIndex, samplePatch / m_activationDataWidth, samplePatch % m_activationDataWidth,
+					preactivations);
+
+				final int activationOffset = patch * m_numFilters;
+				for (int filter = 0; filter < m_numFilters; ++filter)
+				{
+					activationDataBuffer[activationOffset + filter] =
+						Activations.activate(preactivations[filter], m_activationFunctionType, m_activationAlpha);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Calculates preactivations of all filters for one patch. Pixels of the patch which fall outside of input data are zero.
+	 * @param inputDataBuffer Input data of all samples.
+	 * @param biasesBuffer Biases of filters.
+	 * @param sampleIndex Index of the sample in the batch.
+	 * @param patchY Patch row.
+	 * @param patchX Patch column.
+	 * @param preactivations Buffer to write preactivations into.
+	 */
+	private void convolvePatch(float[] inputDataBuffer, float[] biasesBuffer, int sampleIndex, int patchY, int patchX,
+							   float[] preactivations)
+	{
+		final int filterSize = m_filtersBufferSize / m_numFilters;
+		final int patchOffsetX = -m_paddingX + patchX * m_stride;
+		final int patchOffsetY = -m_paddingY + patchY * m_stride;
+
+		// Columns of the patch inside of input data, which are the same for each patch row.
+		final int firstFilterX = Math.max(0, -patchOffsetX);
+		final int lastFilterX = Math.min(m_filterWidth, m_inputDataWidth - patchOffsetX);
+		final int rowSegmentLength = (lastFilterX - firstFilterX) * m_inputDataNumChannels;
+
+		System.arraycopy(biasesBuffer, 0, preactivations, 0, m_numFilters);
+		for (int filterY = 0; filterY < m_filterHeight; ++filterY)
+		{
+			final int inputY = patchOffsetY + filterY;
+			if (inputY < 0 || inputY >= m_inputDataHeight || rowSegmentLength <= 0)
+			{
+				continue;
+			}
+
+			final int inputOffset = sampleIndex * m_inputDataBufferSize +
+				(inputY * m_inputDataWidth + patchOffsetX + firstFilterX) * m_inputDataNumChannels;
+			final int filterRowOffset = (filterY * m_filterWidth + firstFilterX) * m_inputDataNumChannels;
+			for (int filter = 0; filter < m_numFilters; ++filter)
+			{
+				final int filterOffset = filter * filterSize + filterRowOffset;
+				float sum = 0.f;
+				for (int i = 0; i < rowSegmentLength; ++i)
+				{
+					sum += inputDataBuffer[inputOffset + i] * m_filtersBuffer[filterOffset + i];
+				}
+				preactivations[filter] += sum;
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Dropout layer, during inference it just scales its input by the probability that it won't be dropped.
+ */
+public class DropoutLayerCPU extends LayerCPU
+{
+	/**
+	 * Probability for dropping each activity.
+	 */
+	private final float m_dropProbability;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param dropProbability Probability for dropping each activity.
+	 */
+	public DropoutLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, float dropProbability)
+	{
+		m_inputDataNumChannels = m_activationNumChannels = inputNumChannels;
+		m_inputDataWidth = m_activationDataWidth = inputDataWidth;
+		m_inputDataHeight = m_activationDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_activationDataBufferSize = inputNumChannels * inputDataWidth * inputDataHeight;
+
+		m_dropProbability = dropProbability;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Gets probability for dropping each activity.
+	 */
+	public float getDropProbability()
+	{
+		return m_dropProbability;
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		final float scale = 1.f - m_dropProbability;
+		ParallelLoop.run(pool, m_batchSize * m_activationDataBufferSize, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int i = start; i < end; ++i)
+			{
+				m_activationDataBuffer[i] = inputDataBuffer[i] * scale;
+			}
+		});
+	}
+}
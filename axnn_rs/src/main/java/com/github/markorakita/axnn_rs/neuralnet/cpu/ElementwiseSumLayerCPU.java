@@ -0,0 +1,64 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Elementwise sum layer adds activations of multiple layers of the same shape, used for residual connections
+ * where output of a block is added to its input.
+ */
+public class ElementwiseSumLayerCPU extends LayerCPU
+{
+	/**
+	 * Number of inputs which are summed.
+	 */
+	private final int m_numInputs;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels, same for all inputs.
+	 * @param inputDataWidth Width of input data, same for all inputs.
+	 * @param inputDataHeight Height of input data, same for all inputs.
+	 * @param numInputs Number of inputs which are summed, at least two.
+	 */
+	public ElementwiseSumLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numInputs)
+	{
+		m_inputDataNumChannels = m_activationNumChannels = inputNumChannels;
+		m_inputDataWidth = m_activationDataWidth = inputDataWidth;
+		m_inputDataHeight = m_activationDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_activationDataBufferSize = inputNumChannels * inputDataWidth * inputDataHeight;
+		m_numInputs = numInputs;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Gets number of inputs which are summed.
+	 * @return Number of inputs.
+	 */
+	@Override
+	public int getNumInputs()
+	{
+		return m_numInputs;
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_batchSize * m_activationDataBufferSize, (start, end) ->
+		{
+			System.arraycopy(m_inputDataBuffers[0], start, m_activationDataBuffer, start, end - start);
+			for (int input = 1; input < m_numInputs; ++input)
+			{
+				final float[] inputDataBuffer = m_inputDataBuffers[input];
+				for (int i = start; i < end; ++i)
+				{
+					m_activationDataBuffer[i] += inputDataBuffer[i];
+				}
+			}
+		});
+	}
+}
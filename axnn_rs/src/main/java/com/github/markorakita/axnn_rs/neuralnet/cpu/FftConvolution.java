@@ -0,0 +1,572 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Convolution calculated in frequency domain, which pays off for large filters since its cost doesn't grow with filter area.
+ *
+ * Output is calculated tile by tile with overlap-save method: each input tile, which is a power of two wide and high, is transformed,
+ * multiplied with spectra of filters, summed over channels and transformed back, and the part of the result which doesn't wrap
+ * around the tile is one output tile. Output tiles don't overlap, so they are calculated in parallel without synchronization.
+ * Strided convolutions are calculated with stride 1 and subsampled.
+ *
+ * Inputs and filters are real, so their spectra are conjugate symmetric and only half of each is calculated and stored.
+ * For the same reason, two channels are transformed at once as real and imaginary parts of one complex tile,
+ * and two filters are transformed back at once.
+ */
+final class FftConvolution
+{
+	/**
+	 * Largest size of transformed tiles.
+	 */
+	private static final int c_maxFftSize = 64;
+
+	/**
+	 * Cost of one multiply-add in frequency domain relative to cost of one multiply-add of blocked matrix multiplication,
+	 * measured on desktop JVM, since loops over complex values are not register blocked.
+	 */
+	private static final float c_relativeMultiplyAddCost = 2.f;
+
+	/**
+	 * Input data number of channels.
+	 */
+	private final int m_inputNumChannels;
+
+	/**
+	 * Width of input data.
+	 */
+	private final int m_inputDataWidth;
+
+	/**
+	 * Height of input data.
+	 */
+	private final int m_inputDataHeight;
+
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Filters width.
+	 */
+	private final int m_filterWidth;
+
+	/**
+	 * Filters height.
+	 */
+	private final int m_filterHeight;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride for patching, applied by subsampling the output calculated with stride 1.
+	 */
+	private final int m_stride;
+
+	/**
+	 * Number of patches in dimension X, which is output width.
+	 */
+	private final int m_numPatchesX;
+
+	/**
+	 * Number of patches in dimension Y, which is output height.
+	 */
+	private final int m_numPatchesY;
+
+	/**
+	 * Width and height of transformed tiles, power of two.
+	 */
+	private final int m_fftSize;
+
+	/**
+	 * Number of FFT stages, log2 of FFT size.
+	 */
+	private final int m_numFftStages;
+
+	/**
+	 * Width of output tile calculated at stride 1.
+	 */
+	private final int m_tileWidth;
+
+	/**
+	 * Height of output tile calculated at stride 1.
+	 */
+	private final int m_tileHeight;
+
+	/**
+	 * Number of tiles in dimension X.
+	 */
+	private final int m_numTilesX;
+
+	/**
+	 * Number of tiles in dimension Y.
+	 */
+	private final int m_numTilesY;
+
+	/**
+	 * Number of stored frequencies of each spectrum: rows [0, fftSize / 2] of frequencies, while the other rows are conjugate symmetric.
+	 */
+	private final int m_numSpectrumFrequencies;
+
+	/**
+	 * Cosines of FFT twiddle factors.
+	 */
+	private final float[] m_twiddlesCos;
+
+	/**
+	 * Sines of FFT twiddle factors.
+	 */
+	private final float[] m_twiddlesSin;
+
+	/**
+	 * Bit reversal permutation of FFT indices.
+	 */
+	private final int[] m_bitReversal;
+
+	/**
+	 * Real parts of filter spectra, frequency by frequency, channel by channel, with values of all filters for each channel.
+	 */
+	private float[] m_filterSpectraRe;
+
+	/**
+	 * Imaginary parts of filter spectra, in the same layout as real parts.
+	 */
+	private float[] m_filterSpectraIm;
+
+	/**
+	 * Scratch buffers of each thread, reused between propagations.
+	 */
+	private final ThreadLocal<ScratchBuffers> m_scratchBuffers;
+
+	/**
+	 * Scratch buffers for calculating one tile.
+	 */
+	private static final class ScratchBuffers
+	{
+		/**
+		 * Complex tile being transformed.
+		 */
+		final float[] tileRe, tileIm;
+
+		/**
+		 * Spectra of input tile channels, channel by channel.
+		 */
+		final float[] inputSpectraRe, inputSpectraIm;
+
+		/**
+		 * Spectra of output tile, frequency by frequency, with values of all filters for each frequency.
+		 */
+		final float[] outputSpectraRe, outputSpectraIm;
+
+		ScratchBuffers(int tileSize, int inputSpectraSize, int outputSpectraSize)
+		{
+			tileRe = new float[tileSize];
+			tileIm = new float[tileSize];
+			inputSpectraRe = new float[inputSpectraSize];
+			inputSpectraIm = new float[inputSpectraSize];
+			outputSpectraRe = new float[outputSpectraSize];
+			outputSpectraIm = new float[outputSpectraSize];
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param numPatchesX Number of patches in dimension X.
+	 * @param numPatchesY Number of patches in dimension Y.
+	 */
+	FftConvolution(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+				   int paddingX, int paddingY, int stride, int numPatchesX, int numPatchesY)
+	{
+		m_inputNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_numFilters = numFilters;
+		m_filterWidth = filterWidth;
+		m_filterHeight = filterHeight;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_stride = stride;
+		m_numPatchesX = numPatchesX;
+		m_numPatchesY = numPatchesY;
+
+		// Transforming tiles twice as large as filters keeps at least half of each tile as output,
+		// but there is no point in transforming tiles larger than whole output.
+		final int fullOutputWidth = (numPatchesX - 1) * stride + 1;
+		final int fullOutputHeight = (numPatchesY - 1) * stride + 1;
+		final int maxFilterSize = Math.max(filterWidth, filterHeight);
+		final int tileSize = Math.min(Math.min(2 * maxFilterSize, c_maxFftSize),
+			Math.max(fullOutputWidth + filterWidth - 1, fullOutputHeight + filterHeight - 1));
+		m_fftSize = Integer.highestOneBit(Math.max(tileSize, maxFilterSize + 1) - 1) << 1;
+		m_numFftStages = Integer.numberOfTrailingZeros(m_fftSize);
+
+		m_tileWidth = m_fftSize - filterWidth + 1;
+		m_tileHeight = m_fftSize - filterHeight + 1;
+		m_numTilesX = (fullOutputWidth + m_tileWidth - 1) / m_tileWidth;
+		m_numTilesY = (fullOutputHeight + m_tileHeight - 1) / m_tileHeight;
+		m_numSpectrumFrequencies = (m_fftSize / 2 + 1) * m_fftSize;
+
+		m_twiddlesCos = new float[m_fftSize / 2];
+		m_twiddlesSin = new float[m_fftSize / 2];
+		for (int i = 0; i < m_fftSize / 2; ++i)
+		{
+			m_twiddlesCos[i] = (float)Math.cos(2.0 * Math.PI * i / m_fftSize);
+			m_twiddlesSin[i] = (float)Math.sin(2.0 * Math.PI * i / m_fftSize);
+		}
+		m_bitReversal = new int[m_fftSize];
+		for (int i = 0; i < m_fftSize; ++i)
+		{
+			m_bitReversal[i] = Integer.reverse(i) >>> (32 - m_numFftStages);
+		}
+
+		m_scratchBuffers = ThreadLocal.withInitial(() -> new ScratchBuffers(m_fftSize * m_fftSize, m_inputNumChannels * m_numSpectrumFrequencies,
+			m_numSpectrumFrequencies * m_numFilters));
+	}
+
+	/**
+	 * Estimates cost of convolving one sample, in multiply-adds of blocked matrix multiplication.
+	 */
+	float estimateCost()
+	{
+		// Each radix-2 butterfly costs about as much as one complex multiply-add, and each tile needs forward transforms
+		// of channels and inverse transforms of filters, two at once.
+		final float numButterflies = (float)m_fftSize * m_fftSize * m_numFftStages;
+		final float numTransforms = (m_inputNumChannels + 1) / 2 + (m_numFilters + 1) / 2;
+		final float numComplexMultiplyAdds = numTransforms * numButterflies + (float)m_numSpectrumFrequencies * m_inputNumChannels * m_numFilters;
+
+		return c_relativeMultiplyAddCost * 4.f * numComplexMultiplyAdds * m_numTilesX * m_numTilesY;
+	}
+
+	/**
+	 * Calculates spectra of filters.
+	 * @param filtersBuffer Filters, filter by filter, each in per-pixel data structure.
+	 */
+	void transformFilters(float[] filtersBuffer)
+	{
+		m_filterSpectraRe = new float[m_numSpectrumFrequencies * m_inputNumChannels * m_numFilters];
+		m_filterSpectraIm = new float[m_filterSpectraRe.length];
+		final float[] tileRe = new float[m_fftSize * m_fftSize];
+		final float[] tileIm = new float[m_fftSize * m_fftSize];
+		final float[] spectrumRe = new float[m_numSpectrumFrequencies];
+		final float[] spectrumIm = new float[m_numSpectrumFrequencies];
+		final float[] secondSpectrumRe = new float[m_numSpectrumFrequencies];
+		final float[] secondSpectrumIm = new float[m_numSpectrumFrequencies];
+
+		final int filterSize = m_filterWidth * m_filterHeight * m_inputNumChannels;
+		for (int filter = 0; filter < m_numFilters; ++filter)
+		{
+			for (int channel = 0; channel < m_inputNumChannels; channel += 2)
+			{
+				final boolean hasSecondChannel = channel + 1 < m_inputNumChannels;
+				Arrays.fill(tileRe, 0.f);
+				Arrays.fill(tileIm, 0.f);
+				for (int y = 0; y < m_filterHeight; ++y)
+				{
+					for (int x = 0; x < m_filterWidth; ++x)
+					{
+						final int valueOffset = filter * filterSize + (y * m_filterWidth + x) * m_inputNumChannels + channel;
+						tileRe[y * m_fftSize + x] = filtersBuffer[valueOffset];
+						tileIm[y * m_fftSize + x] = hasSecondChannel ? filtersBuffer[valueOffset + 1] : 0.f;
+					}
+				}
+
+				transform(tileRe, tileIm, false);
+				separateSpectra(tileRe, tileIm, spectrumRe, spectrumIm, 0, secondSpectrumRe, secondSpectrumIm, 0);
+				for (int frequency = 0; frequency < m_numSpectrumFrequencies; ++frequency)
+				{
+					final int offset = (frequency * m_inputNumChannels + channel) * m_numFilters + filter;
+					m_filterSpectraRe[offset] = spectrumRe[frequency];
+					m_filterSpectraIm[offset] = spectrumIm[frequency];
+					if (hasSecondChannel)
+					{
+						m_filterSpectraRe[offset + m_numFilters] = secondSpectrumRe[frequency];
+						m_filterSpectraIm[offset + m_numFilters] = secondSpectrumIm[frequency];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates activations of all samples in the batch.
+	 * @param pool Pool to parallelize convolution on.
+	 * @param inputDataBuffer Input data of all samples.
+	 * @param biasesBuffer Biases of filters.
+	 * @param batchSize Number of samples.
+	 * @param activationDataBuffer Buffer to write activations into, in per-pixel data structure.
+	 * @param activationFunctionType Activation function to apply.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	void convolve(ForkJoinPool pool, float[] inputDataBuffer, float[] biasesBuffer, int batchSize,
+				  float[] activationDataBuffer, ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		final int numSampleTiles = m_numTilesX * m_numTilesY;
+		ParallelLoop.run(pool, batchSize * numSampleTiles, (start, end) ->
+		{
+			ScratchBuffers scratchBuffers = m_scratchBuffers.get();
+			for (int tile = start; tile < end; ++tile)
+			{
+				final int sampleIndex = tile / numSampleTiles;
+				final int tileX = tile % numSampleTiles % m_numTilesX;
+				final int tileY = tile % numSampleTiles / m_numTilesX;
+				transformInputTile(inputDataBuffer, sampleIndex, tileX, tileY, scratchBuffers);
+				multiplySpectra(scratchBuffers);
+				transformOutputTile(scratchBuffers, biasesBuffer, sampleIndex, tileX, tileY, activationDataBuffer, activationFunctionType, activationAlpha);
+			}
+		});
+	}
+
+	/**
+	 * Calculates spectra of all channels of input tile. Pixels of the tile which fall outside of input data are zero.
+	 */
+	private void transformInputTile(float[] inputDataBuffer, int sampleIndex, int tileX, int tileY, ScratchBuffers scratchBuffers)
+	{
+		final float[] tileRe = scratchBuffers.tileRe;
+		final float[] tileIm = scratchBuffers.tileIm;
+		final int sampleOffset = sampleIndex * m_inputDataWidth * m_inputDataHeight * m_inputNumChannels;
+		final int tileOffsetX = -m_paddingX + tileX * m_tileWidth;
+		final int tileOffsetY = -m_paddingY + tileY * m_tileHeight;
+		for (int channel = 0; channel < m_inputNumChannels; channel += 2)
+		{
+			final boolean hasSecondChannel = channel + 1 < m_inputNumChannels;
+			for (int y = 0; y < m_fftSize; ++y)
+			{
+				final int inputY = tileOffsetY + y;
+				for (int x = 0; x < m_fftSize; ++x)
+				{
+					final int inputX = tileOffsetX + x;
+					if (inputX >= 0 && inputX < m_inputDataWidth && inputY >= 0 && inputY < m_inputDataHeight)
+					{
+						final int inputOffset = sampleOffset + (inputY * m_inputDataWidth + inputX) * m_inputNumChannels + channel;
+						tileRe[y * m_fftSize + x] = inputDataBuffer[inputOffset];
+						tileIm[y * m_fftSize + x] = hasSecondChannel ? inputDataBuffer[inputOffset + 1] : 0.f;
+					}
+					else
+					{
+						tileRe[y * m_fftSize + x] = 0.f;
+						tileIm[y * m_fftSize + x] = 0.f;
+					}
+				}
+			}
+
+			transform(tileRe, tileIm, false);
+			final int spectrumOffset = channel * m_numSpectrumFrequencies;
+			separateSpectra(tileRe, tileIm, scratchBuffers.inputSpectraRe, scratchBuffers.inputSpectraIm, spectrumOffset,
+				scratchBuffers.inputSpectraRe, scratchBuffers.inputSpectraIm, hasSecondChannel ? spectrumOffset + m_numSpectrumFrequencies : -1);
+		}
+	}
+
+	/**
+	 * Multiplies spectra of input tile channels with conjugated spectra of filters, which corresponds to correlation, and sums them over channels.
+	 */
+	private void multiplySpectra(ScratchBuffers scratchBuffers)
+	{
+		final float[] inputSpectraRe = scratchBuffers.inputSpectraRe;
+		final float[] inputSpectraIm = scratchBuffers.inputSpectraIm;
+		final float[] outputSpectraRe = scratchBuffers.outputSpectraRe;
+		final float[] outputSpectraIm = scratchBuffers.outputSpectraIm;
+		for (int frequency = 0; frequency < m_numSpectrumFrequencies; ++frequency)
+		{
+			final int outputOffset = frequency * m_numFilters;
+			for (int filter = 0; filter < m_numFilters; ++filter)
+			{
+				outputSpectraRe[outputOffset + filter] = 0.f;
+				outputSpectraIm[outputOffset + filter] = 0.f;
+			}
+
+			for (int channel = 0; channel < m_inputNumChannels; ++channel)
+			{
+				final float inputRe = inputSpectraRe[channel * m_numSpectrumFrequencies + frequency];
+				final float inputIm = inputSpectraIm[channel * m_numSpectrumFrequencies + frequency];
+				final int filtersOffset = (frequency * m_inputNumChannels + channel) * m_numFilters;
+				for (int filter = 0; filter < m_numFilters; ++filter)
+				{
+					final float filterRe = m_filterSpectraRe[filtersOffset + filter];
+					final float filterIm = m_filterSpectraIm[filtersOffset + filter];
+					outputSpectraRe[outputOffset + filter] += inputRe * filterRe + inputIm * filterIm;
+					outputSpectraIm[outputOffset + filter] += inputIm * filterRe - inputRe * filterIm;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transforms spectra of output tile back, two filters at once, and writes activations of its pixels which are inside of output.
+	 */
+	private void transformOutputTile(ScratchBuffers scratchBuffers, float[] biasesBuffer, int sampleIndex, int tileX, int tileY,
+									 float[] activationDataBuffer, ActivationFunctionType activationFunctionType,
+									 float activationAlpha)
+	{
+		final float[] tileRe = scratchBuffers.tileRe;
+		final float[] tileIm = scratchBuffers.tileIm;
+		final float[] outputSpectraRe = scratchBuffers.outputSpectraRe;
+		final float[] outputSpectraIm = scratchBuffers.outputSpectraIm;
+		final float scale = 1.f / (m_fftSize * m_fftSize);
+		final int halfSize = m_fftSize / 2;
+		final int sampleOffset = sampleIndex * m_numPatchesX * m_numPatchesY * m_numFilters;
+
+		// Outputs of the tile at stride 1 which are on the stride grid.
+		final int firstX = tileX * m_tileWidth;
+		final int firstY = tileY * m_tileHeight;
+		final int firstPatchX = (firstX + m_stride - 1) / m_stride;
+		final int lastPatchX = Math.min(m_numPatchesX, (firstX + m_tileWidth + m_stride - 1) / m_stride);
+		final int firstPatchY = (firstY + m_stride - 1) / m_stride;
+		final int lastPatchY = Math.min(m_numPatchesY, (firstY + m_tileHeight + m_stride - 1) / m_stride);
+
+		for (int filter = 0; filter < m_numFilters; filter += 2)
+		{
+			final boolean hasSecondFilter = filter + 1 < m_numFilters;
+			for (int y = 0; y < m_fftSize; ++y)
+			{
+				for (int x = 0; x < m_fftSize; ++x)
+				{
+					// Frequencies in the other half of spectrum are conjugates of mirrored frequencies.
+					final boolean isMirrored = y > halfSize;
+					final int frequency = isMirrored ? (m_fftSize - y) * m_fftSize + (m_fftSize - x) % m_fftSize : y * m_fftSize + x;
+					final int offset = frequency * m_numFilters + filter;
+					final float firstRe = outputSpectraRe[offset];
+					final float firstIm = isMirrored ? -outputSpectraIm[offset] : outputSpectraIm[offset];
+					final float secondRe = hasSecondFilter ? outputSpectraRe[offset + 1] : 0.f;
+					final float secondIm = hasSecondFilter ? (isMirrored ? -outputSpectraIm[offset + 1] : outputSpectraIm[offset + 1]) : 0.f;
+					tileRe[y * m_fftSize + x] = firstRe - secondIm;
+					tileIm[y * m_fftSize + x] = firstIm + secondRe;
+				}
+			}
+
+			transform(tileRe, tileIm, true);
+			for (int patchY = firstPatchY; patchY < lastPatchY; ++patchY)
+			{
+				final int y = patchY * m_stride - firstY;
+				for (int patchX = firstPatchX; patchX < lastPatchX; ++patchX)
+				{
+					final int x = patchX * m_stride - firstX;
+					final int activationOffset = sampleOffset + (patchY * m_numPatchesX + patchX) * m_numFilters + filter;
+					activationDataBuffer[activationOffset] = Activations.activate(biasesBuffer[filter] + scale * tileRe[y * m_fftSize + x],
+						activationFunctionType, activationAlpha);
+					if (hasSecondFilter)
+					{
+						activationDataBuffer[activationOffset + 1] = Activations.activate(biasesBuffer[filter + 1] + scale * tileIm[y * m_fftSize + x],
+							activationFunctionType, activationAlpha);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Separates stored half of spectra of two real tiles, which were transformed at once as real and imaginary parts of one complex tile.
+	 * @param tileRe Real parts of transformed complex tile.
+	 * @param tileIm Imaginary parts of transformed complex tile.
+	 * @param firstRe Buffer for real parts of spectrum of the first tile.
+	 * @param firstIm Buffer for imaginary parts of spectrum of the first tile.
+	 * @param firstOffset Offset of spectrum of the first tile.
+	 * @param secondRe Buffer for real parts of spectrum of the second tile.
+	 * @param secondIm Buffer for imaginary parts of spectrum of the second tile.
+	 * @param secondOffset Offset of spectrum of the second tile, or -1 if there is no second tile.
+	 */
+	private void separateSpectra(float[] tileRe, float[] tileIm, float[] firstRe, float[] firstIm, int firstOffset,
+								 float[] secondRe, float[] secondIm, int secondOffset)
+	{
+		for (int y = 0; y <= m_fftSize / 2; ++y)
+		{
+			for (int x = 0; x < m_fftSize; ++x)
+			{
+				final int frequency = y * m_fftSize + x;
+				final int mirroredFrequency = (m_fftSize - y) % m_fftSize * m_fftSize + (m_fftSize - x) % m_fftSize;
+				final float re = tileRe[frequency], im = tileIm[frequency];
+				final float mirroredRe = tileRe[mirroredFrequency], mirroredIm = tileIm[mirroredFrequency];
+				firstRe[firstOffset + frequency] = 0.5f * (re + mirroredRe);
+				firstIm[firstOffset + frequency] = 0.5f * (im - mirroredIm);
+				if (secondOffset >= 0)
+				{
+					secondRe[secondOffset + frequency] = 0.5f * (im + mirroredIm);
+					secondIm[secondOffset + frequency] = 0.5f * (mirroredRe - re);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates 2D FFT of complex tile in place, by transforming rows and then columns.
+	 * @param re Real parts.
+	 * @param im Imaginary parts.
+	 * @param inverse Whether to calculate inverse transform, without scaling.
+	 */
+	private void transform(float[] re, float[] im, boolean inverse)
+	{
+		for (int row = 0; row < m_fftSize; ++row)
+		{
+			transform(re, im, row * m_fftSize, 1, inverse);
+		}
+		for (int column = 0; column < m_fftSize; ++column)
+		{
+			transform(re, im, column, m_fftSize, inverse);
+		}
+	}
+
+	/**
+	 * Calculates 1D radix-2 FFT of complex values in place.
+	 * @param re Real parts.
+	 * @param im Imaginary parts.
+	 * @param offset Offset of the first value.
+	 * @param step Distance between consecutive values.
+	 * @param inverse Whether to calculate inverse transform, without scaling.
+	 */
+	private void transform(float[] re, float[] im, int offset, int step, boolean inverse)
+	{
+		for (int i = 0; i < m_fftSize; ++i)
+		{
+			final int j = m_bitReversal[i];
+			if (i < j)
+			{
+				final int a = offset + i * step, b = offset + j * step;
+				final float tempRe = re[a], tempIm = im[a];
+				re[a] = re[b];
+				im[a] = im[b];
+				re[b] = tempRe;
+				im[b] = tempIm;
+			}
+		}
+
+		final float sinSign = inverse ? 1.f : -1.f;
+		for (int halfLength = 1; halfLength < m_fftSize; halfLength *= 2)
+		{
+			final int twiddleStep = m_fftSize / (2 * halfLength);
+			for (int first = 0; first < m_fftSize; first += 2 * halfLength)
+			{
+				for (int k = 0; k < halfLength; ++k)
+				{
+					final float twiddleRe = m_twiddlesCos[k * twiddleStep];
+					final float twiddleIm = sinSign * m_twiddlesSin[k * twiddleStep];
+					final int a = offset + (first + k) * step, b = a + halfLength * step;
+					final float productRe = re[b] * twiddleRe - im[b] * twiddleIm;
+					final float productIm = re[b] * twiddleIm + im[b] * twiddleRe;
+					re[b] = re[a] - productRe;
+					im[b] = im[a] - productIm;
+					re[a] += productRe;
+					im[a] += productIm;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Convolution lowered to matrix multiplication. Patches of input data are unrolled (im2col) into rows of a matrix,
+ * which is multiplied with the matrix of filters, so that each output row holds activations of one patch in per-pixel data structure.
+ *
+ * Multiplication is blocked the same way as in optimized SGEMM libraries:
+ * - filters are packed once into panels of c_panelNumFilters filters, interleaved so that panel values needed at each step are contiguous,
+ * - patches are unrolled in blocks of c_blockNumPatches patches and c_blockDepth filter values into per-thread scratch buffer,
+ *   packed into panels of c_panelNumPatches patches, so one block of unrolled patches stays in cache while it is multiplied with all filters,
+ * - micro-kernel calculates c_panelNumPatches x c_panelNumFilters outputs in registers.
+ */
+final class Im2colConvolution
+{
+	/**
+	 * Number of patches in the panel processed by micro-kernel.
+	 */
+	private static final int c_panelNumPatches = MicroKernel.c_panelNumRows;
+
+	/**
+	 * Number of filters in the panel processed by micro-kernel.
+	 */
+	private static final int c_panelNumFilters = MicroKernel.c_panelNumColumns;
+
+	/**
+	 * Number of patches unrolled at once, in multiples of patch panels.
+	 */
+	private static final int c_blockNumPatches = 64;
+
+	/**
+	 * Number of filter values unrolled at once, chosen so that block of unrolled patches fits in L2 cache
+	 * and filters panel for that depth fits in L1 cache.
+	 */
+	private static final int c_blockDepth = 256;
+
+	/**
+	 * Number of work items per pool thread which we aim for, when splitting work across filter panels.
+	 */
+	private static final int c_numWorkItemsPerThread = 4;
+
+	/**
+	 * Input data number of channels.
+	 */
+	private final int m_inputNumChannels;
+
+	/**
+	 * Width of input data.
+	 */
+	private final int m_inputDataWidth;
+
+	/**
+	 * Height of input data.
+	 */
+	private final int m_inputDataHeight;
+
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Filters width.
+	 */
+	private final int m_filterWidth;
+
+	/**
+	 * Filters height.
+	 */
+	private final int m_filterHeight;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride for patching.
+	 */
+	private final int m_stride;
+
+	/**
+	 * Number of patches in dimension X, which is output width.
+	 */
+	private final int m_numPatchesX;
+
+	/**
+	 * Number of patches in dimension Y, which is output height.
+	 */
+	private final int m_numPatchesY;
+
+	/**
+	 * Number of values in each filter.
+	 */
+	private final int m_filterSize;
+
+	/**
+	 * Number of filter panels, last one padded with zero filters.
+	 */
+	private final int m_numFilterPanels;
+
+	/**
+	 * Filters packed into panels. Each panel holds values of c_panelNumFilters filters interleaved, value by value.
+	 */
+	private float[] m_packedFilters;
+
+	/**
+	 * Scratch buffer for unrolled patches of each thread, reused between propagations.
+	 */
+	private final ThreadLocal<float[]> m_patchesBuffers;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param numPatchesX Number of patches in dimension X.
+	 * @param numPatchesY Number of patches in dimension Y.
+	 */
+	Im2colConvolution(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+					  int paddingX, int paddingY, int stride, int numPatchesX, int numPatchesY)
+	{
+		m_inputNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_numFilters = numFilters;
+		m_filterWidth = filterWidth;
+		m_filterHeight = filterHeight;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_stride = stride;
+		m_numPatchesX = numPatchesX;
+		m_numPatchesY = numPatchesY;
+
+		m_filterSize = filterWidth * filterHeight * inputNumChannels;
+		m_numFilterPanels = (numFilters + c_panelNumFilters - 1) / c_panelNumFilters;
+		m_patchesBuffers = ThreadLocal.withInitial(() -> new float[c_blockNumPatches * c_blockDepth]);
+	}
+
+	/**
+	 * Estimates cost of convolving one sample, in multiply-adds of blocked matrix multiplication.
+	 */
+	float estimateCost()
+	{
+		final int numPaddedPatches = (m_numPatchesX * m_numPatchesY + c_panelNumPatches - 1) / c_panelNumPatches * c_panelNumPatches;
+		return (float)numPaddedPatches * m_numFilterPanels * c_panelNumFilters * m_filterSize;
+	}
+
+	/**
+	 * Packs filters into panels.
+	 * @param filtersBuffer Filters, filter by filter, each in per-pixel data structure.
+	 */
+	void packFilters(float[] filtersBuffer)
+	{
+		m_packedFilters = new float[m_numFilterPanels * m_filterSize * c_panelNumFilters];
+		for (int filter = 0; filter < m_numFilters; ++filter)
+		{
+			final int panelOffset = filter / c_panelNumFilters * m_filterSize * c_panelNumFilters + filter % c_panelNumFilters;
+			for (int i = 0; i < m_filterSize; ++i)
+			{
+				m_packedFilters[panelOffset + i * c_panelNumFilters] = filtersBuffer[filter * m_filterSize + i];
+			}
+		}
+	}
+
+	/**
+	 * Calculates activations of all samples in the batch.
+	 * @param pool Pool to parallelize convolution on.
+	 * @param inputDataBuffer Input data of all samples.
+	 * @param biasesBuffer Biases of filters.
+	 * @param batchSize Number of samples.
+	 * @param activationDataBuffer Buffer to write activations into, in per-pixel data structure.
+	 * @param activationFunctionType Activation function applied to preactivations of each block once they are calculated, while they are still in cache.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	void convolve(ForkJoinPool pool, float[] inputDataBuffer, float[] biasesBuffer, int batchSize,
+				  float[] activationDataBuffer, ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		final int numSamplePatches = m_numPatchesX * m_numPatchesY;
+		final int numSampleBlocks = (numSamplePatches + c_blockNumPatches - 1) / c_blockNumPatches;
+		final int numPatchBlocks = batchSize * numSampleBlocks;
+
+		// Layers with few patches, like last convolutional layers of AlexNet, would keep only few threads busy,
+		// so their filters are split into groups as well, at the cost of unrolling the same patches once per group.
+		final int numWorkItemsPerBlock = (pool.getParallelism() * c_numWorkItemsPerThread + numPatchBlocks - 1) / numPatchBlocks;
+		final int numFilterGroups = Math.max(1, Math.min(m_numFilterPanels, numWorkItemsPerBlock));
+		final int numGroupPanels = (m_numFilterPanels + numFilterGroups - 1) / numFilterGroups;
+
+		ParallelLoop.run(pool, numPatchBlocks * numFilterGroups, (start, end) ->
+		{
+			float[] patchesBuffer = m_patchesBuffers.get();
+			for (int workItem = start; workItem < end; ++workItem)
+			{
+				final int patchBlock = workItem / numFilterGroups;
+				final int filterGroup = workItem % numFilterGroups;
+				final int sampleIndex = patchBlock / numSampleBlocks;
+				final int firstPatch = patchBlock % numSampleBlocks * c_blockNumPatches;
+				final int numPatches = Math.min(c_blockNumPatches, numSamplePatches - firstPatch);
+				final int firstPanel = filterGroup * numGroupPanels;
+				final int lastPanel = Math.min(m_numFilterPanels, firstPanel + numGroupPanels);
+				if (firstPanel >= lastPanel)
+				{
+					continue;
+				}
+
+				convolveBlock(inputDataBuffer, biasesBuffer, sampleIndex, firstPatch, numPatches, firstPanel, lastPanel, patchesBuffer,
+					activationDataBuffer, activationFunctionType, activationAlpha);
+			}
+		});
+	}
+
+	/**
+	 * Calculates activations of block of patches for range of filter panels.
+	 */
+	private void convolveBlock(float[] inputDataBuffer, float[] biasesBuffer, int sampleIndex, int firstPatch, int numPatches,
+							   int firstPanel, int lastPanel, float[] patchesBuffer, float[] preactivationsBuffer,
+							   ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		final int firstFilter = firstPanel * c_panelNumFilters;
+		final int lastFilter = Math.min(m_numFilters, lastPanel * c_panelNumFilters);
+		final int outputOffset = (sampleIndex * m_numPatchesX * m_numPatchesY + firstPatch) * m_numFilters;
+
+		for (int patch = 0; patch < numPatches; ++patch)
+		{
+			System.arraycopy(biasesBuffer, firstFilter, preactivationsBuffer, outputOffset + patch * m_numFilters + firstFilter, lastFilter - firstFilter);
+		}
+
+		for (int depthOffset = 0; depthOffset < m_filterSize; depthOffset += c_blockDepth)
+		{
+			final int depth = Math.min(c_blockDepth, m_filterSize - depthOffset);
+			unrollPatches(inputDataBuffer, sampleIndex, firstPatch, numPatches, depthOffset, depth, patchesBuffer);
+
+			for (int panel = firstPanel; panel < lastPanel; ++panel)
+			{
+				final int filtersOffset = (panel * m_filterSize + depthOffset) * c_panelNumFilters;
+				final int panelFirstFilter = panel * c_panelNumFilters;
+				final int panelNumFilters = Math.min(c_panelNumFilters, m_numFilters - panelFirstFilter);
+				for (int patch = 0; patch < numPatches; patch += c_panelNumPatches)
+				{
+					MicroKernel.multiplyPanels(patchesBuffer, patch * depth, m_packedFilters, filtersOffset, depth, preactivationsBuffer,
+						outputOffset + patch * m_numFilters + panelFirstFilter, m_numFilters, Math.min(c_panelNumPatches, numPatches - patch), panelNumFilters);
+				}
+			}
+		}
+
+		for (int patch = 0; patch < numPatches; ++patch)
+		{
+			final int patchOffset = outputOffset + patch * m_numFilters;
+			Activations.activate(preactivationsBuffer, patchOffset + firstFilter, patchOffset + lastFilter, activationFunctionType, activationAlpha);
+		}
+	}
+
+	/**
+	 * Unrolls range of filter values of block of patches into scratch buffer, packed into panels of c_panelNumPatches patches.
+	 * Values of patch pixels which fall outside of input data are zero, and panel rows past the last patch are zero.
+	 */
+	private void unrollPatches(float[] inputDataBuffer, int sampleIndex, int firstPatch, int numPatches, int depthOffset, int depth,
+							   float[] patchesBuffer)
+	{
+		final int sampleOffset = sampleIndex * m_inputDataWidth * m_inputDataHeight * m_inputNumChannels;
+		final int filterRowSize = m_filterWidth * m_inputNumChannels;
+		final int numPaddedPatches = (numPatches + c_panelNumPatches - 1) / c_panelNumPatches * c_panelNumPatches;
+		for (int patch = 0; patch < numPaddedPatches; ++patch)
+		{
+			final int bufferOffset = patch / c_panelNumPatches * depth * c_panelNumPatches + patch % c_panelNumPatches;
+			if (patch >= numPatches)
+			{
+				for (int i = 0; i < depth; ++i)
+				{
+					patchesBuffer[bufferOffset + i * c_panelNumPatches] = 0.f;
+				}
+				continue;
+			}
+
+			final int patchOffsetX = -m_paddingX + (firstPatch + patch) % m_numPatchesX * m_stride;
+			final int patchOffsetY = -m_paddingY + (firstPatch + patch) / m_numPatchesX * m_stride;
+			int filterY = depthOffset / filterRowSize;
+			int filterX = depthOffset % filterRowSize / m_inputNumChannels;
+			int channel = depthOffset % m_inputNumChannels;
+			for (int i = 0; i < depth; ++i)
+			{
+				final int inputX = patchOffsetX + filterX;
+				final int inputY = patchOffsetY + filterY;
+				patchesBuffer[bufferOffset + i * c_panelNumPatches] =
+					inputX >= 0 && inputX < m_inputDataWidth && inputY >= 0 && inputY < m_inputDataHeight ?
+					inputDataBuffer[sampleOffset + (inputY * m_inputDataWidth + inputX) * m_inputNumChannels + channel] : 0.f;
+
+				if (++channel == m_inputNumChannels)
+				{
+					channel = 0;
+					if (++filterX == m_filterWidth)
+					{
+						filterX = 0;
+						++filterY;
+					}
+				}
+			}
+		}
+	}
+}
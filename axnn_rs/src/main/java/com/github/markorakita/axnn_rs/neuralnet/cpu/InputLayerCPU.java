@@ -0,0 +1,108 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Input layer loads data for the network propagation.
+ *
+ * Input data is given in per-pixel data structure (R1G1B1R2G2B2), images with the 4th channel zero padded like for RS image input layer.
+ */
+public class InputLayerCPU extends LayerCPU
+{
+	/**
+	 * Should input data be normalized.
+	 */
+	private final boolean m_normalizeInputData;
+
+	/**
+	 * Mean per channel on which to normalize input data.
+	 */
+	private final float[] m_inputDataMeans;
+
+	/**
+	 * Standard deviation per channel on which to normalize input data.
+	 */
+	private final float[] m_inputDataStDevs;
+
+	/**
+	 * Constructor.
+	 * @param activationDataWidth Expected width of activation data.
+	 * @param activationDataHeight Expected height of activation data.
+	 * @param activationNumChannels Expected number of channels in activation data.
+	 */
+	public InputLayerCPU(int activationDataWidth, int activationDataHeight, int activationNumChannels)
+	{
+		this(activationDataWidth, activationDataHeight, activationNumChannels, null, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param activationDataWidth Expected width of activation data.
+	 * @param activationDataHeight Expected height of activation data.
+	 * @param activationNumChannels Expected number of channels in activation data.
+	 * @param inputDataMeans Mean per channel on which to normalize input data.
+	 * @param inputDataStDevs Standard deviation per channel on which to normalize input data.
+	 */
+	public InputLayerCPU(int activationDataWidth, int activationDataHeight, int activationNumChannels, float[] inputDataMeans, float[] inputDataStDevs)
+	{
+		m_inputDataWidth = m_activationDataWidth = activationDataWidth;
+		m_inputDataHeight = m_activationDataHeight = activationDataHeight;
+		m_inputDataNumChannels = m_activationNumChannels = activationNumChannels;
+		m_inputDataBufferSize = m_activationDataBufferSize = activationDataWidth * activationDataHeight * activationNumChannels;
+
+		m_normalizeInputData = inputDataMeans != null && inputDataStDevs != null;
+		m_inputDataMeans = inputDataMeans;
+		m_inputDataStDevs = inputDataStDevs;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Input layer loads its data from host, so it doesn't take any layers as inputs.
+	 * @return Number of inputs.
+	 */
+	@Override
+	public int getNumInputs()
+	{
+		return 0;
+	}
+
+	/**
+	 * Loads input data of one sample in the batch, normalizing it if this layer normalizes input data.
+	 * @param inputData Input data of the sample.
+	 * @param sampleIndex Index of the sample in the batch.
+	 */
+	public void loadInputData(float[] inputData, int sampleIndex)
+	{
+		if (inputData.length != m_activationDataBufferSize)
+		{
+			throw new IllegalArgumentException("Input data size " + inputData.length + " doesn't match input layer size " + m_activationDataBufferSize + "!");
+		}
+
+		final int sampleOffset = sampleIndex * m_activationDataBufferSize;
+		System.arraycopy(inputData, 0, m_activationDataBuffer, sampleOffset, m_activationDataBufferSize);
+
+		if (m_normalizeInputData)
+		{
+			// Channels without given mean and standard deviation (like zero padded 4th channel of images) are left as they are.
+			int numNormalizedChannels = Math.min(m_activationNumChannels, m_inputDataMeans.length);
+			int sampleEnd = sampleOffset + m_activationDataBufferSize;
+			for (int pixelOffset = sampleOffset; pixelOffset < sampleEnd; pixelOffset += m_activationNumChannels)
+			{
+				for (int channel = 0; channel < numNormalizedChannels; ++channel)
+				{
+					m_activationDataBuffer[pixelOffset + channel] =
+						(m_activationDataBuffer[pixelOffset + channel] - m_inputDataMeans[channel]) / m_inputDataStDevs[channel];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Input data is already in activations buffer once it is loaded, so there is nothing to propagate.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+	}
+}
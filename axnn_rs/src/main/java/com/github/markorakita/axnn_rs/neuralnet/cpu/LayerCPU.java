@@ -0,0 +1,178 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Abstract neural network layer which runs on CPU, parallelized across threads of fork-join pool.
+ *
+ * CPU layers have the same per-pixel data structure (R1G1B1R2G2B2) and take parameters in the same format as RS layers,
+ * so same models can be loaded into both.
+ */
+public abstract class LayerCPU
+{
+	/**
+	 * Number of input data channels.
+	 */
+	protected int m_inputDataNumChannels;
+
+	/**
+	 * Input data width.
+	 */
+	protected int m_inputDataWidth;
+
+	/**
+	 * Input data height.
+	 */
+	protected int m_inputDataHeight;
+
+	/**
+	 * Input data buffers, one per input layer. They are activation buffers of input layers.
+	 */
+	protected float[][] m_inputDataBuffers;
+
+	/**
+	 * Input data buffer size, per sample.
+	 */
+	protected int m_inputDataBufferSize;
+
+	/**
+	 * Number of activation data channels.
+	 */
+	protected int m_activationNumChannels;
+
+	/**
+	 * Activation data width.
+	 */
+	protected int m_activationDataWidth;
+
+	/**
+	 * Activation data height.
+	 */
+	protected int m_activationDataHeight;
+
+	/**
+	 * Activations buffer.
+	 */
+	protected float[] m_activationDataBuffer;
+
+	/**
+	 * Activations data buffer size, per sample.
+	 */
+	protected int m_activationDataBufferSize;
+
+	/**
+	 * Number of samples propagated through layer at once.
+	 *
+	 * Input and activation buffers hold data of all samples one after another.
+	 */
+	protected int m_batchSize = 1;
+
+	/**
+	 * Allocates activations buffer for all samples in the batch.
+	 */
+	protected void allocateActivationBuffer()
+	{
+		m_activationDataBuffer = new float[m_batchSize * m_activationDataBufferSize];
+	}
+
+	/**
+	 * Sets input data buffer.
+	 * @param inputDataBuffer Input data buffer.
+	 */
+	void setInputDataBuffer(float[] inputDataBuffer)
+	{
+		setInputDataBuffers(new float[][] { inputDataBuffer });
+	}
+
+	/**
+	 * Sets input data buffers, in order of input layers.
+	 * @param inputDataBuffers Input data buffers.
+	 */
+	void setInputDataBuffers(float[][] inputDataBuffers)
+	{
+		m_inputDataBuffers = inputDataBuffers;
+	}
+
+	/**
+	 * Gets number of layers whose activations are inputs to this layer.
+	 */
+	public int getNumInputs()
+	{
+		return 1;
+	}
+
+	/**
+	 * Gets input data buffer size, per sample.
+	 */
+	public int getInputDataBufferSize()
+	{
+		return m_inputDataBufferSize;
+	}
+
+	/**
+	 * Gets number of activation data channels.
+	 */
+	public int getActivationNumChannels()
+	{
+		return m_activationNumChannels;
+	}
+
+	/**
+	 * Gets activation data width.
+	 */
+	public int getActivationDataWidth()
+	{
+		return m_activationDataWidth;
+	}
+
+	/**
+	 * Gets activation data height.
+	 */
+	public int getActivationDataHeight()
+	{
+		return m_activationDataHeight;
+	}
+
+	/**
+	 * Gets activation data buffer, holding activations of all samples in the batch one after another.
+	 */
+	public float[] getActivationDataBuffer()
+	{
+		return m_activationDataBuffer;
+	}
+
+	/**
+	 * Gets activation data buffer size, per sample.
+	 */
+	public int getActivationDataBufferSize()
+	{
+		return m_activationDataBufferSize;
+	}
+
+	/**
+	 * Gets number of samples propagated through layer at once.
+	 */
+	public int getBatchSize()
+	{
+		return m_batchSize;
+	}
+
+	/**
+	 * Sets number of samples propagated through layer at once, reallocating activations buffer if needed.
+	 * @param batchSize Batch size.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize != m_batchSize)
+		{
+			m_batchSize = batchSize;
+			allocateActivationBuffer();
+		}
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	public abstract void doForwardProp(ForkJoinPool pool);
+}
@@ -0,0 +1,106 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Max pool layer, takes maximum of each channel over pooling unit. Pixels of the unit which fall outside of input data are ignored.
+ */
+public class MaxPoolLayerCPU extends LayerCPU
+{
+	/**
+	 * Width of the pooling unit.
+	 */
+	private final int m_unitWidth;
+
+	/**
+	 * Height of the pooling unit.
+	 */
+	private final int m_unitHeight;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride of the pooling unit.
+	 */
+	private final int m_unitStride;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param unitWidth Width of the pooling unit.
+	 * @param unitHeight Height of the pooling unit.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param unitStride Stride of the pooling unit.
+	 */
+	public MaxPoolLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int unitWidth, int unitHeight,
+						   int paddingX, int paddingY, int unitStride)
+	{
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_unitWidth = unitWidth;
+		m_unitHeight = unitHeight;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_unitStride = unitStride;
+
+		m_activationNumChannels = inputNumChannels;
+		m_activationDataWidth = 1 + (int)Math.ceil((double)(paddingX + m_inputDataWidth - unitWidth) / unitStride);
+		m_activationDataHeight = 1 + (int)Math.ceil((double)(paddingY + m_inputDataHeight - unitHeight) / unitStride);
+		m_activationDataBufferSize = m_inputDataNumChannels * m_activationDataWidth * m_activationDataHeight;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		final int numSampleUnits = m_activationDataWidth * m_activationDataHeight;
+		ParallelLoop.run(pool, m_batchSize * numSampleUnits, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int unit = start; unit < end; ++unit)
+			{
+				final int sampleInputOffset = unit / numSampleUnits * m_inputDataBufferSize;
+				final int sampleUnit = unit % numSampleUnits;
+				final int unitOffsetX = -m_paddingX + (sampleUnit % m_activationDataWidth) * m_unitStride;
+				final int unitOffsetY = -m_paddingY + (sampleUnit / m_activationDataWidth) * m_unitStride;
+				final int activationOffset = unit * m_activationNumChannels;
+
+				for (int channel = 0; channel < m_activationNumChannels; ++channel)
+				{
+					m_activationDataBuffer[activationOffset + channel] = -Float.MAX_VALUE;
+				}
+				for (int inputY = Math.max(0, unitOffsetY); inputY < Math.min(m_inputDataHeight, unitOffsetY + m_unitHeight); ++inputY)
+				{
+					for (int inputX = Math.max(0, unitOffsetX); inputX < Math.min(m_inputDataWidth, unitOffsetX + m_unitWidth); ++inputX)
+					{
+						final int inputOffset = sampleInputOffset + (inputY * m_inputDataWidth + inputX) * m_inputDataNumChannels;
+						for (int channel = 0; channel < m_activationNumChannels; ++channel)
+						{
+							m_activationDataBuffer[activationOffset + channel] =
+								Math.max(m_activationDataBuffer[activationOffset + channel], inputDataBuffer[inputOffset + channel]);
+						}
+					}
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,96 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+/**
+ * Register blocked micro-kernel of matrix multiplication, shared by convolution algorithms which lower convolution to it.
+ * It multiplies panel of c_panelNumRows rows of the left matrix with panel of c_panelNumColumns columns of the right matrix,
+ * keeping all results in local variables, so the JIT compiler can hold them in registers.
+ */
+final class MicroKernel
+{
+	/**
+	 * Number of rows of the left matrix in the panel, interleaved value by value.
+	 */
+	static final int c_panelNumRows = 4;
+
+	/**
+	 * Number of columns of the right matrix in the panel, interleaved value by value.
+	 */
+	static final int c_panelNumColumns = 8;
+
+	private MicroKernel()
+	{
+	}
+
+	/**
+	 * Multiplies panels and adds results to the results matrix.
+	 * @param rows Left matrix panel, value by value with c_panelNumRows rows interleaved.
+	 * @param rowsOffset Offset of the left matrix panel.
+	 * @param columns Right matrix panel, value by value with c_panelNumColumns columns interleaved.
+	 * @param columnsOffset Offset of the right matrix panel.
+	 * @param depth Number of values to multiply.
+	 * @param results Results matrix, row by row.
+	 * @param resultsOffset Offset of result of the first row and the first column in the panels.
+	 * @param resultsRowSize Size of one row of results matrix.
+	 * @param numRows Number of valid rows in the panel.
+	 * @param numColumns Number of valid columns in the panel.
+	 */
+	static void multiplyPanels(float[] rows, int rowsOffset, float[] columns, int columnsOffset, int depth,
+							   float[] results, int resultsOffset, int resultsRowSize, int numRows, int numColumns)
+	{
+		float c00 = 0.f, c01 = 0.f, c02 = 0.f, c03 = 0.f, c04 = 0.f, c05 = 0.f, c06 = 0.f, c07 = 0.f;
+		float c10 = 0.f, c11 = 0.f, c12 = 0.f, c13 = 0.f, c14 = 0.f, c15 = 0.f, c16 = 0.f, c17 = 0.f;
+		float c20 = 0.f, c21 = 0.f, c22 = 0.f, c23 = 0.f, c24 = 0.f, c25 = 0.f, c26 = 0.f, c27 = 0.f;
+		float c30 = 0.f, c31 = 0.f, c32 = 0.f, c33 = 0.f, c34 = 0.f, c35 = 0.f, c36 = 0.f, c37 = 0.f;
+
+		for (int i = 0, p = rowsOffset, f = columnsOffset; i < depth; ++i, p += c_panelNumRows, f += c_panelNumColumns)
+		{
+			final float a0 = rows[p], a1 = rows[p + 1], a2 = rows[p + 2], a3 = rows[p + 3];
+			final float b0 = columns[f], b1 = columns[f + 1], b2 = columns[f + 2], b3 = columns[f + 3];
+			final float b4 = columns[f + 4], b5 = columns[f + 5], b6 = columns[f + 6], b7 = columns[f + 7];
+
+			c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3; c04 += a0 * b4; c05 += a0 * b5; c06 += a0 * b6; c07 += a0 * b7;
+			c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3; c14 += a1 * b4; c15 += a1 * b5; c16 += a1 * b6; c17 += a1 * b7;
+			c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3; c24 += a2 * b4; c25 += a2 * b5; c26 += a2 * b6; c27 += a2 * b7;
+			c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3; c34 += a3 * b4; c35 += a3 * b5; c36 += a3 * b6; c37 += a3 * b7;
+		}
+
+		if (numRows == c_panelNumRows && numColumns == c_panelNumColumns)
+		{
+			addRow(results, resultsOffset, c00, c01, c02, c03, c04, c05, c06, c07);
+			addRow(results, resultsOffset + resultsRowSize, c10, c11, c12, c13, c14, c15, c16, c17);
+			addRow(results, resultsOffset + 2 * resultsRowSize, c20, c21, c22, c23, c24, c25, c26, c27);
+			addRow(results, resultsOffset + 3 * resultsRowSize, c30, c31, c32, c33, c34, c35, c36, c37);
+			return;
+		}
+
+		// Panels on the edges have some rows or columns which are just padding, so their results are dropped.
+		final float[] panelResults = {
+			c00, c01, c02, c03, c04, c05, c06, c07,
+			c10, c11, c12, c13, c14, c15, c16, c17,
+			c20, c21, c22, c23, c24, c25, c26, c27,
+			c30, c31, c32, c33, c34, c35, c36, c37
+		};
+		for (int row = 0; row < numRows; ++row)
+		{
+			for (int column = 0; column < numColumns; ++column)
+			{
+				results[resultsOffset + row * resultsRowSize + column] += panelResults[row * c_panelNumColumns + column];
+			}
+		}
+	}
+
+	/**
+	 * Adds results of one row with all columns of the panel to results matrix.
+	 */
+	private static void addRow(float[] results, int offset, float c0, float c1, float c2, float c3, float c4, float c5, float c6, float c7)
+	{
+		results[offset] += c0;
+		results[offset + 1] += c1;
+		results[offset + 2] += c2;
+		results[offset + 3] += c3;
+		results[offset + 4] += c4;
+		results[offset + 5] += c5;
+		results[offset + 6] += c6;
+		results[offset + 7] += c7;
+	}
+}
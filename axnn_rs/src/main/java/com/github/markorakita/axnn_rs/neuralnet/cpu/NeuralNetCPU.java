@@ -0,0 +1,372 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ClassificationResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Neural network which runs inference on CPU, with each layer parallelized across threads of fork-join pool.
+ *
+ * It depends only on the Java standard library, so besides serving as a fallback on devices where RenderScript is not accelerated,
+ * it can also run on desktop JVM, for example to benchmark or validate models on Linux machines. Layers take the same parameters
+ * as RS layers, so same models can be loaded into both networks.
+ */
+public class NeuralNetCPU
+{
+	/**
+	 * Pool on which layers are parallelized.
+	 */
+	private final ForkJoinPool m_pool;
+
+	/**
+	 * Network layers.
+	 */
+	private final ArrayList<LayerCPU> m_layers;
+
+	/**
+	 * Layers whose activations are taken as inputs, for layers added with explicit inputs.
+	 * Other layers take activations of the previous layer in the network.
+	 */
+	private final HashMap<LayerCPU, LayerCPU[]> m_layerInputs;
+
+	/**
+	 * Constructor, network layers are parallelized on common fork-join pool.
+	 */
+	public NeuralNetCPU()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor.
+	 * @param pool Pool on which layers are parallelized. Pool with parallelism of one runs all layers on the calling thread.
+	 */
+	public NeuralNetCPU(ForkJoinPool pool)
+	{
+		m_pool = pool;
+		m_layers = new ArrayList<>();
+		m_layerInputs = new HashMap<>();
+	}
+
+	/**
+	 * Adds layer to the network, which takes activations of the previous layer as its input.
+	 * @param layer Layer to add.
+	 */
+	public synchronized void addLayer(LayerCPU layer)
+	{
+		m_layers.add(layer);
+	}
+
+	/**
+	 * Adds layer to the network, which takes activations of given layers as its inputs.
+	 * Used for networks which are not plain chains of layers, like residual, inception-style or multi-branch networks.
+	 * @param layer Layer to add.
+	 * @param inputLayers Layers whose activations are taken as inputs, in order expected by the layer. They have to be already added to the network.
+	 */
+	public synchronized void addLayer(LayerCPU layer, LayerCPU... inputLayers)
+	{
+		if (inputLayers.length != layer.getNumInputs())
+		{
+			throw new IllegalArgumentException("Layer takes " + layer.getNumInputs() + " inputs, but " + inputLayers.length + " are given.");
+		}
+		for (LayerCPU inputLayer : inputLayers)
+		{
+			if (!m_layers.contains(inputLayer))
+			{
+				throw new IllegalArgumentException("Input layers have to be added to the network before layers which take them as inputs.");
+			}
+		}
+
+		m_layers.add(layer);
+		m_layerInputs.put(layer, inputLayers.clone());
+	}
+
+	/**
+	 * Gets indices of layers whose activations are taken as inputs by the layer with given index.
+	 * @param layerIndex Layer index.
+	 * @return Indices of input layers, in order expected by the layer.
+	 */
+	public synchronized int[] getLayerInputs(int layerIndex)
+	{
+		LayerCPU[] inputLayers = m_layerInputs.get(m_layers.get(layerIndex));
+		if (inputLayers == null)
+		{
+			return layerIndex > 0 ? new int[] { layerIndex - 1 } : new int[0];
+		}
+
+		int[] inputLayerIndices = new int[inputLayers.length];
+		for (int i = 0; i < inputLayers.length; ++i)
+		{
+			inputLayerIndices[i] = m_layers.indexOf(inputLayers[i]);
+		}
+
+		return inputLayerIndices;
+	}
+
+	/**
+	 * Returns network layers.
+	 * @return Network layers.
+	 */
+	public ArrayList<LayerCPU> getLayers()
+	{
+		return m_layers;
+	}
+
+	/**
+	 * Gets layer of the network with given index.
+	 * @param layerIndex Layer index.
+	 * @return Layer of the network with given index.
+	 */
+	public LayerCPU getLayer(int layerIndex)
+	{
+		return m_layers.get(layerIndex);
+	}
+
+	/**
+	 * Gets input layer of the network.
+	 * @return Input layer of the network.
+	 * @throws Exception Throws generic exception in case when this network doesn't have an input layer.
+	 */
+	public InputLayerCPU getInputLayer() throws Exception
+	{
+		if (m_layers.isEmpty() || !(m_layers.get(0) instanceof InputLayerCPU))
+		{
+			throw new Exception("This network doesn't have input layer!");
+		}
+
+		return (InputLayerCPU)m_layers.get(0);
+	}
+
+	/**
+	 * Gets last layer in network.
+	 * @return Last layer in network.
+	 */
+	public LayerCPU getLastLayer()
+	{
+		return m_layers.get(m_layers.size() - 1);
+	}
+
+	/**
+	 * Gets output layer of the network.
+	 * @return Output layer of the network.
+	 * @throws Exception Throws generic exception in case when this network doesn't have an output layer.
+	 */
+	public OutputLayerCPU getOutputLayer() throws Exception
+	{
+		LayerCPU lastLayer = getLastLayer();
+		if (!(lastLayer instanceof OutputLayerCPU))
+		{
+			throw new Exception("This network doesn't have output layer!");
+		}
+
+		return (OutputLayerCPU)lastLayer;
+	}
+
+	/**
+	 * Loads trained neural network model from stream. Model has the same format as for RS network, parameters of layers
+	 * one after another in order of the network, weights before biases.
+	 * @param modelInputStream Model's input stream.
+	 * @param bigEndian Should we load parameters' values in big endian or small endian.
+	 */
+	public synchronized void loadModel(InputStream modelInputStream, boolean bigEndian) throws IOException
+	{
+		for (LayerCPU layer : m_layers)
+		{
+			if (layer instanceof ConvolutionalLayerCPU)
+			{
+				ConvolutionalLayerCPU convLayer = (ConvolutionalLayerCPU)layer;
+				convLayer.loadFilters(modelInputStream, bigEndian);
+				convLayer.loadBiases(modelInputStream, bigEndian);
+			}
+			else if (layer instanceof StandardLayerCPU)
+			{
+				StandardLayerCPU standardLayer = (StandardLayerCPU)layer;
+				standardLayer.loadWeights(modelInputStream, bigEndian);
+				standardLayer.loadBiases(modelInputStream, bigEndian);
+			}
+			else if (layer instanceof QuantizedStandardLayerCPU)
+			{
+				QuantizedStandardLayerCPU quantizedLayer = (QuantizedStandardLayerCPU)layer;
+				quantizedLayer.loadWeights(modelInputStream, bigEndian);
+				quantizedLayer.loadBiases(modelInputStream, bigEndian);
+			}
+			else if (layer instanceof SparseStandardLayerCPU)
+			{
+				SparseStandardLayerCPU sparseLayer = (SparseStandardLayerCPU)layer;
+				sparseLayer.loadWeights(modelInputStream, bigEndian);
+				sparseLayer.loadBiases(modelInputStream, bigEndian);
+			}
+		}
+	}
+
+	/**
+	 * Classifies input data of one sample.
+	 * @param inputData Input data to classify, in per-pixel data structure (R1G1B1R2G2B2).
+	 * @return Classification result.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	public ClassificationResult classifyFeatures(float[] inputData) throws Exception
+	{
+		return classifyFeatures(new float[][] { inputData }).get(0);
+	}
+
+	/**
+	 * Classifies batch of samples at once, which is faster than classifying them one by one since layer weights are read once per several samples.
+	 * @param inputData Input data of each sample to classify, in per-pixel data structure (R1G1B1R2G2B2).
+	 * @return Classification results, in order of samples.
+	 * @throws Exception Throws generic exception in case when classification fails.
+	 */
+	public synchronized List<ClassificationResult> classifyFeatures(float[][] inputData) throws Exception
+	{
+		OutputLayerCPU outputLayer = getOutputLayer();
+		forwardProp(inputData, null);
+
+		List<ClassificationResult> results = new ArrayList<>(inputData.length);
+		for (int sampleIndex = 0; sampleIndex < inputData.length; ++sampleIndex)
+		{
+			results.add(new ClassificationResult(outputLayer.getPredictedClass(sampleIndex), outputLayer.getPredictionProbability(sampleIndex)));
+		}
+
+		return results;
+	}
+
+	/**
+	 * Extracts features from input data as activations of the last layer, used for transfer learning.
+	 * @param inputData Input data to extract features from, in per-pixel data structure (R1G1B1R2G2B2).
+	 * @return Extracted features.
+	 * @throws Exception Throws generic exception in case when features extraction fails.
+	 */
+	public float[] extractFeatures(float[] inputData) throws Exception
+	{
+		return extractFeatures(inputData, m_layers.size() - 1);
+	}
+
+	/**
+	 * Extracts features from input data as activations of the given layer, propagating only layers up to it.
+	 * @param inputData Input data to extract features from, in per-pixel data structure (R1G1B1R2G2B2).
+	 * @param layerIndex Index of the layer whose activations are extracted.
+	 * @return Extracted features.
+	 * @throws Exception Throws generic exception in case when features extraction fails.
+	 */
+	public float[] extractFeatures(float[] inputData, int layerIndex) throws Exception
+	{
+		return extractFeatures(inputData, new int[] { layerIndex })[0];
+	}
+
+	/**
+	 * Extracts features from input data as activations of several layers in one propagation, propagating only layers which they depend on.
+	 * @param inputData Input data to extract features from, in per-pixel data structure (R1G1B1R2G2B2).
+	 * @param layerIndices Indices of the layers whose activations are extracted.
+	 * @return Extracted features, in order of layer indices.
+	 * @throws Exception Throws generic exception in case when features extraction fails.
+	 */
+	public synchronized float[][] extractFeatures(float[] inputData, int[] layerIndices) throws Exception
+	{
+		for (int layerIndex : layerIndices)
+		{
+			if (layerIndex < 0 || layerIndex >= m_layers.size())
+			{
+				throw new IllegalArgumentException("Layer index " + layerIndex + " is out of range [0, " + m_layers.size() + ").");
+			}
+			if (m_layers.get(layerIndex) instanceof OutputLayerCPU)
+			{
+				throw new IllegalArgumentException("Output layer " + layerIndex + " doesn't have activations to extract features from.");
+			}
+		}
+
+		forwardProp(new float[][] { inputData }, layerIndices);
+
+		float[][] features = new float[layerIndices.length][];
+		for (int i = 0; i < layerIndices.length; ++i)
+		{
+			LayerCPU layer = m_layers.get(layerIndices[i]);
+			features[i] = Arrays.copyOf(layer.getActivationDataBuffer(), layer.getActivationDataBufferSize());
+		}
+
+		return features;
+	}
+
+	/**
+	 * Propagates batch of samples through the network.
+	 * @param inputData Input data of each sample.
+	 * @param outputLayers Indices of the layers whose activations are needed, or null to propagate all layers.
+	 * @throws Exception Throws generic exception in case when network doesn't have an input layer.
+	 */
+	private void forwardProp(float[][] inputData, int[] outputLayers) throws Exception
+	{
+		InputLayerCPU inputLayer = getInputLayer();
+		for (LayerCPU layer : m_layers)
+		{
+			layer.setBatchSize(inputData.length);
+		}
+		for (int sampleIndex = 0; sampleIndex < inputData.length; ++sampleIndex)
+		{
+			inputLayer.loadInputData(inputData[sampleIndex], sampleIndex);
+		}
+
+		int[][] layerInputs = new int[m_layers.size()][];
+		for (int layerIndex = 0; layerIndex < m_layers.size(); ++layerIndex)
+		{
+			layerInputs[layerIndex] = getLayerInputs(layerIndex);
+		}
+		boolean[] neededLayers = findNeededLayers(layerInputs, outputLayers);
+
+		for (int layerIndex = 1; layerIndex < m_layers.size(); ++layerIndex)
+		{
+			if (!neededLayers[layerIndex])
+			{
+				continue;
+			}
+
+			float[][] inputDataBuffers = new float[layerInputs[layerIndex].length][];
+			for (int i = 0; i < inputDataBuffers.length; ++i)
+			{
+				inputDataBuffers[i] = m_layers.get(layerInputs[layerIndex][i]).getActivationDataBuffer();
+			}
+
+			LayerCPU layer = m_layers.get(layerIndex);
+			layer.setInputDataBuffers(inputDataBuffers);
+			layer.doForwardProp(m_pool);
+		}
+	}
+
+	/**
+	 * Finds layers which have to be propagated to get activations of the output layers.
+	 * @param layerInputs Indices of input layers of each layer.
+	 * @param outputLayers Indices of the layers whose activations are needed, or null if all layers are needed.
+	 * @return Whether each layer is needed.
+	 */
+	private static boolean[] findNeededLayers(int[][] layerInputs, int[] outputLayers)
+	{
+		boolean[] neededLayers = new boolean[layerInputs.length];
+		if (outputLayers == null)
+		{
+			Arrays.fill(neededLayers, true);
+			return neededLayers;
+		}
+
+		// Input layers always precede their readers, so walking backwards visits each reader before its inputs.
+		for (int outputLayer : outputLayers)
+		{
+			neededLayers[outputLayer] = true;
+		}
+		for (int layerIndex = layerInputs.length - 1; layerIndex >= 0; --layerIndex)
+		{
+			if (neededLayers[layerIndex])
+			{
+				for (int inputLayer : layerInputs[layerIndex])
+				{
+					neededLayers[inputLayer] = true;
+				}
+			}
+		}
+
+		return neededLayers;
+	}
+}
@@ -0,0 +1,157 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.LossFunctionType;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Output layer, outputs predicted class and prediction probabilities.
+ */
+public class OutputLayerCPU extends LayerCPU
+{
+	/**
+	 * Classification threshold used by logistic regression, when it is not given.
+	 */
+	private static final float c_defaultClassificationThreshold = 0.5f;
+
+	/**
+	 * Loss function which network was trained with.
+	 */
+	private final LossFunctionType m_lossFunctionType;
+
+	/**
+	 * Classification threshold used by logistic regression.
+	 */
+	private final float m_classificationThreshold;
+
+	/**
+	 * Predicted class of each sample in the batch.
+	 */
+	private int[] m_predictedClasses;
+
+	/**
+	 * Prediction probability of each sample in the batch.
+	 */
+	private float[] m_predictionProbabilities;
+
+	/**
+	 * Constructor.
+	 * @param inputDataSize Size of the input data buffer.
+	 * @param lossFunctionType Loss function which network was trained with.
+	 */
+	public OutputLayerCPU(int inputDataSize, LossFunctionType lossFunctionType)
+	{
+		this(inputDataSize, lossFunctionType, c_defaultClassificationThreshold);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputDataSize Size of the input data buffer.
+	 * @param lossFunctionType Loss function which network was trained with.
+	 * @param classificationThreshold Classification threshold to use.
+	 */
+	public OutputLayerCPU(int inputDataSize, LossFunctionType lossFunctionType, float classificationThreshold)
+	{
+		m_inputDataNumChannels = m_activationNumChannels = inputDataSize;
+		m_inputDataWidth = m_activationDataWidth = 1;
+		m_inputDataHeight = m_activationDataHeight = 1;
+		m_inputDataBufferSize = m_activationDataBufferSize = inputDataSize;
+
+		m_lossFunctionType = lossFunctionType;
+		m_classificationThreshold = classificationThreshold > 0.f ? classificationThreshold : c_defaultClassificationThreshold;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Output layer doesn't produce activations, so it only allocates buffers for predictions of each sample in the batch.
+	 */
+	@Override
+	protected void allocateActivationBuffer()
+	{
+		m_predictedClasses = new int[m_batchSize];
+		m_predictionProbabilities = new float[m_batchSize];
+	}
+
+	/**
+	 * Gets predicted class of the sample in the batch.
+	 * @param sampleIndex Index of the sample in the batch.
+	 */
+	public int getPredictedClass(int sampleIndex)
+	{
+		return m_predictedClasses[sampleIndex];
+	}
+
+	/**
+	 * Gets prediction probability of the sample in the batch.
+	 * @param sampleIndex Index of the sample in the batch.
+	 */
+	public float getPredictionProbability(int sampleIndex)
+	{
+		return m_predictionProbabilities[sampleIndex];
+	}
+
+	/**
+	 * Calculates predictions of all samples in the batch. There is too little work per sample to parallelize it.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		for (int sampleIndex = 0; sampleIndex < m_batchSize; ++sampleIndex)
+		{
+			if (m_lossFunctionType == LossFunctionType.LogisticRegression)
+			{
+				calculateLogisticRegressionStatistics(sampleIndex);
+			}
+			else if (m_lossFunctionType == LossFunctionType.CrossEntropy)
+			{
+				calculateCrossEntropyStatistics(sampleIndex);
+			}
+		}
+	}
+
+	/**
+	 * Calculates prediction of the sample from its logistic regression input.
+	 */
+	private void calculateLogisticRegressionStatistics(int sampleIndex)
+	{
+		float inputData = m_inputDataBuffers[0][sampleIndex * m_inputDataBufferSize];
+		float sigmoidActivation = (float)(inputData >= 0.f ?
+			(1.0 / (1.0 + Math.exp(-inputData))) :
+			(1.0 - 1.0 / (1.0 + Math.exp(inputData))));
+
+		if (sigmoidActivation < m_classificationThreshold)
+		{
+			m_predictedClasses[sampleIndex] = 0;
+			m_predictionProbabilities[sampleIndex] = 1.0f - sigmoidActivation;
+		}
+		else
+		{
+			m_predictedClasses[sampleIndex] = 1;
+			m_predictionProbabilities[sampleIndex] = sigmoidActivation;
+		}
+	}
+
+	/**
+	 * Calculates prediction of the sample from its soft-max probabilities.
+	 */
+	private void calculateCrossEntropyStatistics(int sampleIndex)
+	{
+		// With Cross Entropy loss we always expect that SoftMax layer is previous to this Output layer,
+		// so that inputs to output layer are soft-max probabilities.
+		final float[] inputDataBuffer = m_inputDataBuffers[0];
+		final int sampleOffset = sampleIndex * m_inputDataBufferSize;
+		int predictedClass = 0;
+		for (int i = 1; i < m_inputDataBufferSize; ++i)
+		{
+			if (inputDataBuffer[sampleOffset + i] > inputDataBuffer[sampleOffset + predictedClass])
+			{
+				predictedClass = i;
+			}
+		}
+
+		m_predictedClasses[sampleIndex] = predictedClass;
+		m_predictionProbabilities[sampleIndex] = inputDataBuffer[sampleOffset + predictedClass];
+	}
+}
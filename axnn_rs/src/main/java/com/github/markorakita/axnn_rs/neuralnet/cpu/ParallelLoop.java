@@ -0,0 +1,90 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs iterations of a loop in parallel on fork-join pool, by recursively splitting range of iterations in halves
+ * until ranges are small enough to be run by one task.
+ */
+final class ParallelLoop
+{
+	/**
+	 * Number of tasks per pool thread which we aim for, so threads which finish early can steal work from the others.
+	 */
+	private static final int c_numTasksPerThread = 4;
+
+	/**
+	 * Body of the loop, which runs range of iterations.
+	 */
+	interface Body
+	{
+		/**
+		 * Runs iterations in range [start, end).
+		 */
+		void run(int start, int end);
+	}
+
+	private ParallelLoop()
+	{
+	}
+
+	/**
+	 * Runs iterations in range [0, numIterations) and waits for them to finish.
+	 * @param pool Pool to run iterations on.
+	 * @param numIterations Number of iterations.
+	 * @param body Loop body.
+	 */
+	static void run(ForkJoinPool pool, int numIterations, Body body)
+	{
+		final int numTasks = pool.getParallelism() * c_numTasksPerThread;
+		final int grainSize = Math.max(1, (numIterations + numTasks - 1) / numTasks);
+		if (numIterations <= grainSize)
+		{
+			if (numIterations > 0)
+			{
+				body.run(0, numIterations);
+			}
+			return;
+		}
+
+		pool.invoke(new RangeTask(body, 0, numIterations, grainSize));
+	}
+
+	/**
+	 * Task which runs range of iterations, splitting it if it is larger than grain size.
+	 */
+	private static final class RangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Body m_body;
+
+		private final int m_start;
+
+		private final int m_end;
+
+		private final int m_grainSize;
+
+		RangeTask(Body body, int start, int end, int grainSize)
+		{
+			m_body = body;
+			m_start = start;
+			m_end = end;
+			m_grainSize = grainSize;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_end - m_start <= m_grainSize)
+			{
+				m_body.run(m_start, m_end);
+				return;
+			}
+
+			final int middle = (m_start + m_end) >>> 1;
+			invokeAll(new RangeTask(m_body, m_start, middle, m_grainSize), new RangeTask(m_body, middle, m_end, m_grainSize));
+		}
+	}
+}
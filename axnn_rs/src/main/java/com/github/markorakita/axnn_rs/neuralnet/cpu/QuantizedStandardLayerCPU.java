@@ -0,0 +1,239 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Standard layer with weights quantized to 8-bit integers when they are loaded, same as in RS quantized standard layer.
+ *
+ * Each neuron has its own scale and zero point, with range covering all its weights and zero, so quantized weight q
+ * represents weight scale * (q - zeroPoint).
+ */
+public class QuantizedStandardLayerCPU extends LayerCPU
+{
+	/**
+	 * Minimal value of quantized weight.
+	 */
+	private static final int c_minQuantizedValue = -128;
+
+	/**
+	 * Maximal value of quantized weight.
+	 */
+	private static final int c_maxQuantizedValue = 127;
+
+	/**
+	 * Quantized weights buffer, neuron by neuron.
+	 */
+	private byte[] m_weightsBuffer;
+
+	/**
+	 * Quantization scale of each neuron.
+	 */
+	private float[] m_scales;
+
+	/**
+	 * Quantization zero point of each neuron.
+	 */
+	private float[] m_zeroPoints;
+
+	/**
+	 * Biases buffer.
+	 */
+	private float[] m_biasesBuffer;
+
+	/**
+	 * Number of neurons.
+	 */
+	private final int m_numNeurons;
+
+	/**
+	 * Activation function applied to preactivations.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Alpha parameter of activation function.
+	 */
+	private final float m_activationAlpha;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 */
+	public QuantizedStandardLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+									 ActivationFunctionType activationFunctionType)
+	{
+		this(inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	public QuantizedStandardLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+									 ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_numNeurons = numNeurons;
+		m_activationNumChannels = numNeurons;
+		m_activationDataWidth = 1;
+		m_activationDataHeight = 1;
+		m_activationDataBufferSize = numNeurons;
+
+		m_activationFunctionType = activationFunctionType;
+		m_activationAlpha = activationAlpha;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Gets size of the weights buffer, in number of weights.
+	 */
+	public int getWeightsBufferSize()
+	{
+		return m_numNeurons * m_inputDataBufferSize;
+	}
+
+	/**
+	 * Gets size of the biases buffer.
+	 */
+	public int getBiasesBufferSize()
+	{
+		return m_numNeurons;
+	}
+
+	/**
+	 * Gets activation function applied to preactivations.
+	 */
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Loads weights from model, quantizing them.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load weights in big endian or small endian.
+	 */
+	public void loadWeights(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadWeights(IOUtils.readFloatBufferFromStream(getWeightsBufferSize(), modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads weights from host buffer, quantizing them.
+	 * @param weightsBuffer Host weights buffer.
+	 */
+	public void loadWeights(float[] weightsBuffer)
+	{
+		m_weightsBuffer = new byte[getWeightsBufferSize()];
+		m_scales = new float[m_numNeurons];
+		m_zeroPoints = new float[m_numNeurons];
+		for (int neuron = 0; neuron < m_numNeurons; ++neuron)
+		{
+			quantizeNeuronWeights(weightsBuffer, neuron);
+		}
+	}
+
+	/**
+	 * Quantizes weights of one neuron, with range covering all neuron weights and zero.
+	 * @param weightsBuffer Host weights buffer.
+	 * @param neuron Neuron index.
+	 */
+	private void quantizeNeuronWeights(float[] weightsBuffer, int neuron)
+	{
+		final int weightsOffset = neuron * m_inputDataBufferSize;
+		float minWeight = 0.f;
+		float maxWeight = 0.f;
+		for (int i = weightsOffset; i < weightsOffset + m_inputDataBufferSize; ++i)
+		{
+			minWeight = Math.min(minWeight, weightsBuffer[i]);
+			maxWeight = Math.max(maxWeight, weightsBuffer[i]);
+		}
+
+		if (maxWeight == minWeight)
+		{
+			// All weights are zero, quantized weights are already zero.
+			m_scales[neuron] = 1.f;
+			m_zeroPoints[neuron] = 0.f;
+			return;
+		}
+
+		float scale = (maxWeight - minWeight) / (c_maxQuantizedValue - c_minQuantizedValue);
+		int zeroPoint = Math.max(c_minQuantizedValue, Math.min(c_maxQuantizedValue, Math.round(c_minQuantizedValue - minWeight / scale)));
+		for (int i = weightsOffset; i < weightsOffset + m_inputDataBufferSize; ++i)
+		{
+			int quantizedWeight = Math.round(weightsBuffer[i] / scale) + zeroPoint;
+			m_weightsBuffer[i] = (byte)Math.max(c_minQuantizedValue, Math.min(c_maxQuantizedValue, quantizedWeight));
+		}
+
+		m_scales[neuron] = scale;
+		m_zeroPoints[neuron] = zeroPoint;
+	}
+
+	/**
+	 * Loads biases from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load biases in big endian or small endian.
+	 */
+	public void loadBiases(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadBiases(IOUtils.readFloatBufferFromStream(m_numNeurons, modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from host buffer.
+	 * @param biasesBuffer Host biases buffer.
+	 */
+	public void loadBiases(float[] biasesBuffer)
+	{
+		m_biasesBuffer = biasesBuffer.clone();
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_numNeurons, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int neuron = start; neuron < end; ++neuron)
+			{
+				final int weightsOffset = neuron * m_inputDataBufferSize;
+				final float zeroPoint = m_zeroPoints[neuron];
+				for (int sampleIndex = 0; sampleIndex < m_batchSize; ++sampleIndex)
+				{
+					// Scale is applied once to the whole sum, instead of dequantizing each weight.
+					final int inputOffset = sampleIndex * m_inputDataBufferSize;
+					float sum = 0.f;
+					for (int i = 0; i < m_inputDataBufferSize; ++i)
+					{
+						sum += inputDataBuffer[inputOffset + i] * (m_weightsBuffer[weightsOffset + i] - zeroPoint);
+					}
+					m_activationDataBuffer[sampleIndex * m_numNeurons + neuron] =
+						Activations.activate(m_scales[neuron] * sum + m_biasesBuffer[neuron], m_activationFunctionType, m_activationAlpha);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,106 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Response normalization layer, normalizes each channel across neighbouring channels of the same pixel:
+ *
+ * activation = input * (bias + (alpha / depth) * sum of squared inputs of neighbouring channels) ^ (-beta)
+ */
+public class ResponseNormalizationLayerCPU extends LayerCPU
+{
+	/**
+	 * Depth of normalization.
+	 */
+	private final int m_depth;
+
+	/**
+	 * Normalization bias.
+	 */
+	private final float m_bias;
+
+	/**
+	 * Normalization alpha coefficient, already divided by depth.
+	 */
+	private final float m_alphaCoeff;
+
+	/**
+	 * Normalization beta coefficient.
+	 */
+	private final float m_betaCoeff;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param depth Depth of normalization.
+	 * @param bias Normalization bias.
+	 * @param alphaCoeff Normalization alpha coefficient.
+	 * @param betaCoeff Normalization beta coefficient.
+	 */
+	public ResponseNormalizationLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int depth, float bias,
+										 float alphaCoeff, float betaCoeff)
+	{
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_depth = depth;
+		m_bias = bias;
+		// Adjusting alpha coefficient upfront, according to the formula.
+		m_alphaCoeff = alphaCoeff / depth;
+		m_betaCoeff = betaCoeff;
+
+		m_activationNumChannels = inputNumChannels;
+		m_activationDataWidth = inputDataWidth;
+		m_activationDataHeight = inputDataHeight;
+		m_activationDataBufferSize = m_inputDataBufferSize;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_batchSize * m_inputDataWidth * m_inputDataHeight, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int pixel = start; pixel < end; ++pixel)
+			{
+				final int pixelOffset = pixel * m_inputDataNumChannels;
+
+				// Cross-channel sum is moved by one channel at a time, subtracting channel which leaves the window and adding the one which enters it.
+				float crossChannelSum = 0.f;
+				for (int channel = 0; channel < Math.min(m_depth - m_depth / 2, m_inputDataNumChannels); ++channel)
+				{
+					crossChannelSum += inputDataBuffer[pixelOffset + channel] * inputDataBuffer[pixelOffset + channel];
+				}
+				for (int channel = 0; channel < m_inputDataNumChannels; ++channel)
+				{
+					if (channel > 0)
+					{
+						final int leavingChannel = channel - 1 - m_depth / 2;
+						if (leavingChannel >= 0)
+						{
+							crossChannelSum -= inputDataBuffer[pixelOffset + leavingChannel] * inputDataBuffer[pixelOffset + leavingChannel];
+						}
+						final int enteringChannel = channel - m_depth / 2 + m_depth - 1;
+						if (enteringChannel < m_inputDataNumChannels)
+						{
+							crossChannelSum += inputDataBuffer[pixelOffset + enteringChannel] * inputDataBuffer[pixelOffset + enteringChannel];
+						}
+					}
+
+					m_activationDataBuffer[pixelOffset + channel] = inputDataBuffer[pixelOffset + channel] *
+						(float)Math.pow(m_bias + m_alphaCoeff * crossChannelSum, -m_betaCoeff);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,60 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Softmax layer, calculates soft-max probabilities of each class.
+ */
+public class SoftMaxLayerCPU extends LayerCPU
+{
+	/**
+	 * Constructor.
+	 * @param inputDataSize Size of the input data buffer.
+	 */
+	public SoftMaxLayerCPU(int inputDataSize)
+	{
+		m_inputDataNumChannels = m_activationNumChannels = inputDataSize;
+		m_inputDataWidth = m_activationDataWidth = 1;
+		m_inputDataHeight = m_activationDataHeight = 1;
+		m_inputDataBufferSize = m_activationDataBufferSize = inputDataSize;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Does forward propagation through layer, sample by sample.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_batchSize, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int sampleIndex = start; sampleIndex < end; ++sampleIndex)
+			{
+				final int sampleOffset = sampleIndex * m_inputDataBufferSize;
+				final int sampleEnd = sampleOffset + m_inputDataBufferSize;
+
+				// Subtracting maximum input, so exponentials can't overflow.
+				float maxInput = inputDataBuffer[sampleOffset];
+				for (int i = sampleOffset + 1; i < sampleEnd; ++i)
+				{
+					maxInput = Math.max(maxInput, inputDataBuffer[i]);
+				}
+
+				float exponentialsSum = 0.f;
+				for (int i = sampleOffset; i < sampleEnd; ++i)
+				{
+					m_activationDataBuffer[i] = (float)Math.exp(inputDataBuffer[i] - maxInput);
+					exponentialsSum += m_activationDataBuffer[i];
+				}
+
+				for (int i = sampleOffset; i < sampleEnd; ++i)
+				{
+					m_activationDataBuffer[i] /= exponentialsSum;
+				}
+			}
+		});
+	}
+}
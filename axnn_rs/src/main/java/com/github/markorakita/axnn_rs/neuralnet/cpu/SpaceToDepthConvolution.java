@@ -0,0 +1,295 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Strided convolution rewritten into space-to-depth rearrangement of input data followed by convolution with stride 1.
+ *
+ * Input data is split into blocks of stride x stride pixels, and each block becomes one pixel with stride * stride times more channels,
+ * so that each patch of the strided convolution covers whole blocks. Filters are rearranged the same way when they are loaded,
+ * padded with zeros to whole blocks, so AlexNet's 11x11 filters with stride 4 become 3x3 filters over 16x more channels.
+ * Convolution with stride 1 reads dense, contiguous input, and can use any algorithm of convolutional layer, like Winograd convolution.
+ */
+final class SpaceToDepthConvolution
+{
+	/**
+	 * Input data number of channels.
+	 */
+	private final int m_inputNumChannels;
+
+	/**
+	 * Width of input data.
+	 */
+	private final int m_inputDataWidth;
+
+	/**
+	 * Height of input data.
+	 */
+	private final int m_inputDataHeight;
+
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Filters width, before rearranging into blocks.
+	 */
+	private final int m_filterWidth;
+
+	/**
+	 * Filters height, before rearranging into blocks.
+	 */
+	private final int m_filterHeight;
+
+	/**
+	 * Padding in dimension X, applied to input data while it is rearranged into blocks.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y, applied to input data while it is rearranged into blocks.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride of the original convolution, which is width and height of the blocks.
+	 */
+	private final int m_stride;
+
+	/**
+	 * Activation function applied to preactivations, passed to the layer with stride 1.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Alpha parameter of activation function, passed to the layer with stride 1.
+	 */
+	private final float m_activationAlpha;
+
+	/**
+	 * Width of filters rearranged into blocks, in blocks.
+	 */
+	private final int m_blockFilterWidth;
+
+	/**
+	 * Height of filters rearranged into blocks, in blocks.
+	 */
+	private final int m_blockFilterHeight;
+
+	/**
+	 * Number of channels of rearranged input data.
+	 */
+	private final int m_blockNumChannels;
+
+	/**
+	 * Width of rearranged input data, in blocks.
+	 */
+	private final int m_blocksDataWidth;
+
+	/**
+	 * Height of rearranged input data, in blocks.
+	 */
+	private final int m_blocksDataHeight;
+
+	/**
+	 * Estimated cost of convolving one sample.
+	 */
+	private final float m_estimatedCost;
+
+	/**
+	 * Convolutional layer with stride 1 over rearranged input data, holding rearranged filters.
+	 * Created only once filters are rearranged, since most layers never use this algorithm.
+	 */
+	private ConvolutionalLayerCPU m_stridelessLayer;
+
+	/**
+	 * Buffer for rearranged input data of all samples in the batch.
+	 */
+	private float[] m_blocksDataBuffer;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param numPatchesX Number of patches in dimension X.
+	 * @param numPatchesY Number of patches in dimension Y.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	SpaceToDepthConvolution(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+							int paddingX, int paddingY, int stride, int numPatchesX, int numPatchesY,
+							ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		m_inputNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_numFilters = numFilters;
+		m_filterWidth = filterWidth;
+		m_filterHeight = filterHeight;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_stride = stride;
+		m_activationFunctionType = activationFunctionType;
+		m_activationAlpha = activationAlpha;
+
+		// Blocks cover padding too, and blocks past input data are zero, since the last patches can overhang input data.
+		m_blockFilterWidth = (filterWidth + stride - 1) / stride;
+		m_blockFilterHeight = (filterHeight + stride - 1) / stride;
+		m_blockNumChannels = stride * stride * inputNumChannels;
+		m_blocksDataWidth = numPatchesX + m_blockFilterWidth - 1;
+		m_blocksDataHeight = numPatchesY + m_blockFilterHeight - 1;
+		m_estimatedCost = estimateStridelessCost(numPatchesX, numPatchesY) + m_blocksDataWidth * m_blocksDataHeight * m_blockNumChannels;
+	}
+
+	/**
+	 * Checks whether convolution with given stride can be rewritten.
+	 * @param stride Stride for patching.
+	 */
+	static boolean isSupported(int stride)
+	{
+		return stride > 1;
+	}
+
+	/**
+	 * Estimates cost of convolving one sample, in multiply-adds of blocked matrix multiplication.
+	 * Rearranging input data costs about as much as one multiply-add per value.
+	 */
+	float estimateCost()
+	{
+		return m_estimatedCost;
+	}
+
+	/**
+	 * Estimates cost of convolution with stride 1 by the cheapest algorithm which layer with stride 1 would choose,
+	 * without creating the layer.
+	 */
+	private float estimateStridelessCost(int numPatchesX, int numPatchesY)
+	{
+		float cost = new Im2colConvolution(m_blockNumChannels, m_blocksDataWidth, m_blocksDataHeight, m_numFilters, m_blockFilterWidth,
+			m_blockFilterHeight, 0, 0, 1, numPatchesX, numPatchesY).estimateCost();
+		if (WinogradConvolution.isSupported(m_blockFilterWidth, m_blockFilterHeight, 1))
+		{
+			cost = Math.min(cost, new WinogradConvolution(m_blockNumChannels, m_blocksDataWidth, m_blocksDataHeight, m_numFilters, 0, 0,
+				numPatchesX, numPatchesY).estimateCost());
+		}
+		cost = Math.min(cost, new FftConvolution(m_blockNumChannels, m_blocksDataWidth, m_blocksDataHeight, m_numFilters, m_blockFilterWidth,
+			m_blockFilterHeight, 0, 0, 1, numPatchesX, numPatchesY).estimateCost());
+
+		return cost;
+	}
+
+	/**
+	 * Rearranges filters into blocks and loads them into convolutional layer with stride 1.
+	 * @param filtersBuffer Filters, filter by filter, each in per-pixel data structure.
+	 */
+	void rearrangeFilters(float[] filtersBuffer)
+	{
+		if (m_stridelessLayer == null)
+		{
+			// Layer is used only to convolve into activations of the strided layer, so it doesn't need activations buffer of its own.
+			m_stridelessLayer = new ConvolutionalLayerCPU(m_blockNumChannels, m_blocksDataWidth, m_blocksDataHeight, m_numFilters,
+				m_blockFilterWidth, m_blockFilterHeight, 0, 0, 1, m_activationFunctionType, m_activationAlpha, false);
+		}
+
+		final int filterSize = m_filterWidth * m_filterHeight * m_inputNumChannels;
+		final int blockFilterSize = m_stridelessLayer.getFiltersBufferSize() / m_numFilters;
+
+		float[] blockFiltersBuffer = new float[m_stridelessLayer.getFiltersBufferSize()];
+		for (int filter = 0; filter < m_numFilters; ++filter)
+		{
+			for (int filterY = 0; filterY < m_filterHeight; ++filterY)
+			{
+				for (int filterX = 0; filterX < m_filterWidth; ++filterX)
+				{
+					final int blockOffset = filter * blockFilterSize + (filterY / m_stride * m_blockFilterWidth + filterX / m_stride) * m_blockNumChannels +
+						(filterY % m_stride * m_stride + filterX % m_stride) * m_inputNumChannels;
+					System.arraycopy(filtersBuffer, filter * filterSize + (filterY * m_filterWidth + filterX) * m_inputNumChannels,
+						blockFiltersBuffer, blockOffset, m_inputNumChannels);
+				}
+			}
+		}
+
+		m_stridelessLayer.loadFilters(blockFiltersBuffer);
+	}
+
+	/**
+	 * Calculates activations of all samples in the batch. Filters have to be rearranged first.
+	 * @param pool Pool to parallelize convolution on.
+	 * @param inputDataBuffer Input data of all samples.
+	 * @param biasesBuffer Biases of filters.
+	 * @param batchSize Number of samples.
+	 * @param activationDataBuffer Buffer to write activations into, in per-pixel data structure.
+	 */
+	void convolve(ForkJoinPool pool, float[] inputDataBuffer, float[] biasesBuffer, int batchSize,
+				  float[] activationDataBuffer)
+	{
+		final int blocksDataSize = m_blocksDataWidth * m_blocksDataHeight * m_blockNumChannels;
+		if (m_blocksDataBuffer == null || m_blocksDataBuffer.length != batchSize * blocksDataSize)
+		{
+			m_blocksDataBuffer = new float[batchSize * blocksDataSize];
+		}
+
+		ParallelLoop.run(pool, batchSize * m_blocksDataHeight, (start, end) ->
+		{
+			for (int blocksRow = start; blocksRow < end; ++blocksRow)
+			{
+				rearrangeBlocksRow(inputDataBuffer, blocksRow / m_blocksDataHeight, blocksRow % m_blocksDataHeight);
+			}
+		});
+
+		m_stridelessLayer.convolve(pool, m_blocksDataBuffer, biasesBuffer, batchSize, activationDataBuffer);
+	}
+
+	/**
+	 * Rearranges one row of blocks of input data. Pixels of blocks which fall outside of input data are zero.
+	 */
+	private void rearrangeBlocksRow(float[] inputDataBuffer, int sampleIndex, int blocksRow)
+	{
+		final int sampleOffset = sampleIndex * m_inputDataWidth * m_inputDataHeight * m_inputNumChannels;
+		final int rowOffset = (sampleIndex * m_blocksDataHeight + blocksRow) * m_blocksDataWidth * m_blockNumChannels;
+		for (int blockY = 0; blockY < m_stride; ++blockY)
+		{
+			final int inputY = -m_paddingY + blocksRow * m_stride + blockY;
+			for (int block = 0; block < m_blocksDataWidth; ++block)
+			{
+				final int blockOffset = rowOffset + block * m_blockNumChannels + blockY * m_stride * m_inputNumChannels;
+				final int firstInputX = -m_paddingX + block * m_stride;
+				if (inputY < 0 || inputY >= m_inputDataHeight)
+				{
+					for (int i = 0; i < m_stride * m_inputNumChannels; ++i)
+					{
+						m_blocksDataBuffer[blockOffset + i] = 0.f;
+					}
+					continue;
+				}
+
+				// Pixels of block row are contiguous both in input data and in the block, so the part inside of input data is copied at once.
+				final int firstBlockX = Math.max(0, -firstInputX);
+				final int lastBlockX = Math.max(firstBlockX, Math.min(m_stride, m_inputDataWidth - firstInputX));
+				for (int i = 0; i < firstBlockX * m_inputNumChannels; ++i)
+				{
+					m_blocksDataBuffer[blockOffset + i] = 0.f;
+				}
+				if (lastBlockX > firstBlockX)
+				{
+					System.arraycopy(inputDataBuffer, sampleOffset + (inputY * m_inputDataWidth + firstInputX + firstBlockX) * m_inputNumChannels,
+						m_blocksDataBuffer, blockOffset + firstBlockX * m_inputNumChannels, (lastBlockX - firstBlockX) * m_inputNumChannels);
+				}
+				for (int i = lastBlockX * m_inputNumChannels; i < m_stride * m_inputNumChannels; ++i)
+				{
+					m_blocksDataBuffer[blockOffset + i] = 0.f;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Standard layer with weights pruned when they are loaded, same as in RS sparse standard layer.
+ *
+ * Kept weights are stored in compressed sparse rows format, neuron by neuron, with input index of each kept weight.
+ */
+public class SparseStandardLayerCPU extends LayerCPU
+{
+	/**
+	 * Offset of the first kept weight of each neuron, with one more offset at the end pointing past the last kept weight.
+	 */
+	private int[] m_weightsOffsets;
+
+	/**
+	 * Values of kept weights.
+	 */
+	private float[] m_weightsValues;
+
+	/**
+	 * Input indices of kept weights.
+	 */
+	private int[] m_weightsInputIndices;
+
+	/**
+	 * Biases buffer.
+	 */
+	private float[] m_biasesBuffer;
+
+	/**
+	 * Number of neurons.
+	 */
+	private final int m_numNeurons;
+
+	/**
+	 * Weights with absolute value not larger than this threshold are pruned.
+	 */
+	private final float m_sparsityThreshold;
+
+	/**
+	 * Activation function applied to preactivations.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Alpha parameter of activation function.
+	 */
+	private final float m_activationAlpha;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param sparsityThreshold Weights with absolute value not larger than this threshold are pruned. Use zero to keep all non-zero weights.
+	 */
+	public SparseStandardLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+								  ActivationFunctionType activationFunctionType, float sparsityThreshold)
+	{
+		this(inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f, sparsityThreshold);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param sparsityThreshold Weights with absolute value not larger than this threshold are pruned. Use zero to keep all non-zero weights.
+	 */
+	public SparseStandardLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+								  ActivationFunctionType activationFunctionType, float activationAlpha, float sparsityThreshold)
+	{
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_numNeurons = numNeurons;
+		m_sparsityThreshold = sparsityThreshold;
+		m_activationNumChannels = numNeurons;
+		m_activationDataWidth = 1;
+		m_activationDataHeight = 1;
+		m_activationDataBufferSize = numNeurons;
+
+		m_activationFunctionType = activationFunctionType;
+		m_activationAlpha = activationAlpha;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Gets size of the weights buffer in the model, before pruning.
+	 */
+	public int getWeightsBufferSize()
+	{
+		return m_numNeurons * m_inputDataBufferSize;
+	}
+
+	/**
+	 * Gets size of the biases buffer.
+	 */
+	public int getBiasesBufferSize()
+	{
+		return m_numNeurons;
+	}
+
+	/**
+	 * Gets fraction of the weights kept after pruning.
+	 */
+	public float getWeightsDensity()
+	{
+		return m_weightsOffsets == null ? 1.f : (float)m_weightsOffsets[m_numNeurons] / getWeightsBufferSize();
+	}
+
+	/**
+	 * Gets activation function applied to preactivations.
+	 */
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Loads weights from model, pruning them.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load weights in big endian or small endian.
+	 */
+	public void loadWeights(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadWeights(IOUtils.readFloatBufferFromStream(getWeightsBufferSize(), modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads weights from host buffer, pruning them.
+	 * @param weightsBuffer Host weights buffer.
+	 */
+	public void loadWeights(float[] weightsBuffer)
+	{
+		int numKeptWeights = 0;
+		for (float weight : weightsBuffer)
+		{
+			if (Math.abs(weight) > m_sparsityThreshold)
+			{
+				++numKeptWeights;
+			}
+		}
+
+		m_weightsOffsets = new int[m_numNeurons + 1];
+		m_weightsValues = new float[numKeptWeights];
+		m_weightsInputIndices = new int[numKeptWeights];
+		int keptWeightIndex = 0;
+		for (int neuron = 0; neuron < m_numNeurons; ++neuron)
+		{
+			m_weightsOffsets[neuron] = keptWeightIndex;
+			for (int i = 0; i < m_inputDataBufferSize; ++i)
+			{
+				float weight = weightsBuffer[neuron * m_inputDataBufferSize + i];
+				if (Math.abs(weight) > m_sparsityThreshold)
+				{
+					m_weightsValues[keptWeightIndex] = weight;
+					m_weightsInputIndices[keptWeightIndex] = i;
+					++keptWeightIndex;
+				}
+			}
+		}
+		m_weightsOffsets[m_numNeurons] = keptWeightIndex;
+	}
+
+	/**
+	 * Loads biases from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load biases in big endian or small endian.
+	 */
+	public void loadBiases(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadBiases(IOUtils.readFloatBufferFromStream(m_numNeurons, modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from host buffer.
+	 * @param biasesBuffer Host biases buffer.
+	 */
+	public void loadBiases(float[] biasesBuffer)
+	{
+		m_biasesBuffer = biasesBuffer.clone();
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_numNeurons, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int neuron = start; neuron < end; ++neuron)
+			{
+				for (int sampleIndex = 0; sampleIndex < m_batchSize; ++sampleIndex)
+				{
+					final int inputOffset = sampleIndex * m_inputDataBufferSize;
+					float preactivation = m_biasesBuffer[neuron];
+					for (int i = m_weightsOffsets[neuron]; i < m_weightsOffsets[neuron + 1]; ++i)
+					{
+						preactivation += inputDataBuffer[inputOffset + m_weightsInputIndices[i]] * m_weightsValues[i];
+					}
+					m_activationDataBuffer[sampleIndex * m_numNeurons + neuron] =
+						Activations.activate(preactivation, m_activationFunctionType, m_activationAlpha);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,175 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Standard neural network layer, with neurons and weights.
+ *
+ * Propagation is parallelized over neurons, and each neuron calculates preactivations of all samples in the batch
+ * while its weights are in cache.
+ */
+public class StandardLayerCPU extends LayerCPU
+{
+	/**
+	 * Weights buffer, neuron by neuron.
+	 */
+	private float[] m_weightsBuffer;
+
+	/**
+	 * Biases buffer.
+	 */
+	private float[] m_biasesBuffer;
+
+	/**
+	 * Number of neurons.
+	 */
+	private final int m_numNeurons;
+
+	/**
+	 * Activation function applied to preactivations.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Alpha parameter of activation function.
+	 */
+	private final float m_activationAlpha;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 */
+	public StandardLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+							ActivationFunctionType activationFunctionType)
+	{
+		this(inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f);
+	}
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	public StandardLayerCPU(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+							ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_numNeurons = numNeurons;
+		m_activationNumChannels = numNeurons;
+		m_activationDataWidth = 1;
+		m_activationDataHeight = 1;
+		m_activationDataBufferSize = numNeurons;
+
+		m_activationFunctionType = activationFunctionType;
+		m_activationAlpha = activationAlpha;
+
+		allocateActivationBuffer();
+	}
+
+	/**
+	 * Gets size of the weights buffer.
+	 */
+	public int getWeightsBufferSize()
+	{
+		return m_numNeurons * m_inputDataBufferSize;
+	}
+
+	/**
+	 * Gets size of the biases buffer.
+	 */
+	public int getBiasesBufferSize()
+	{
+		return m_numNeurons;
+	}
+
+	/**
+	 * Gets activation function applied to preactivations.
+	 */
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Loads weights from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load weights in big endian or small endian.
+	 */
+	public void loadWeights(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadWeights(IOUtils.readFloatBufferFromStream(getWeightsBufferSize(), modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads weights from host buffer.
+	 * @param weightsBuffer Host weights buffer.
+	 */
+	public void loadWeights(float[] weightsBuffer)
+	{
+		m_weightsBuffer = weightsBuffer.clone();
+	}
+
+	/**
+	 * Loads biases from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load biases in big endian or small endian.
+	 */
+	public void loadBiases(InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadBiases(IOUtils.readFloatBufferFromStream(m_numNeurons, modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from host buffer.
+	 * @param biasesBuffer Host biases buffer.
+	 */
+	public void loadBiases(float[] biasesBuffer)
+	{
+		m_biasesBuffer = biasesBuffer.clone();
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 * @param pool Pool to parallelize propagation on.
+	 */
+	@Override
+	public void doForwardProp(ForkJoinPool pool)
+	{
+		ParallelLoop.run(pool, m_numNeurons, (start, end) ->
+		{
+			final float[] inputDataBuffer = m_inputDataBuffers[0];
+			for (int neuron = start; neuron < end; ++neuron)
+			{
+				final int weightsOffset = neuron * m_inputDataBufferSize;
+				for (int sampleIndex = 0; sampleIndex < m_batchSize; ++sampleIndex)
+				{
+					final int inputOffset = sampleIndex * m_inputDataBufferSize;
+					float preactivation = m_biasesBuffer[neuron];
+					for (int i = 0; i < m_inputDataBufferSize; ++i)
+					{
+						preactivation += inputDataBuffer[inputOffset + i] * m_weightsBuffer[weightsOffset + i];
+					}
+					m_activationDataBuffer[sampleIndex * m_numNeurons + neuron] =
+						Activations.activate(preactivation, m_activationFunctionType, m_activationAlpha);
+				}
+			}
+		});
+	}
+}
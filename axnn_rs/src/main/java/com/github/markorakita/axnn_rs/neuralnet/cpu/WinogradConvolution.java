@@ -0,0 +1,434 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Winograd F(2x2, 3x3) convolution, for layers with 3x3 filters and stride 1.
+ *
+ * Output is split into 2x2 tiles, each calculated from 4x4 input tile. Input tiles and filters are transformed so that
+ * convolution becomes elementwise multiplication of 4x4 transformed values summed over channels, which needs 16 multiplications
+ * per tile and channel instead of 36 multiplications of direct convolution. Sum over channels for each of 16 transformed positions
+ * is matrix multiplication of transformed tiles with transformed filters, done by the same micro-kernel as in im2col convolution:
+ * - filters are transformed once when they are loaded, and packed into panels per transformed position,
+ * - input tiles are transformed in blocks of c_blockNumTiles tiles and c_blockNumChannels channels into per-thread scratch buffer,
+ * - products are accumulated into per-thread scratch buffer, and transformed back into 2x2 output tiles once all channels are summed.
+ */
+final class WinogradConvolution
+{
+	/**
+	 * Width and height of output tile.
+	 */
+	private static final int c_outputTileSize = 2;
+
+	/**
+	 * Number of values in transformed tile, 4x4.
+	 */
+	private static final int c_numTransformedValues = 16;
+
+	/**
+	 * Number of tiles in the panel processed by micro-kernel.
+	 */
+	private static final int c_panelNumTiles = MicroKernel.c_panelNumRows;
+
+	/**
+	 * Number of filters in the panel processed by micro-kernel.
+	 */
+	private static final int c_panelNumFilters = MicroKernel.c_panelNumColumns;
+
+	/**
+	 * Number of tiles transformed at once, in multiples of tile panels.
+	 */
+	private static final int c_blockNumTiles = 8;
+
+	/**
+	 * Number of channels transformed at once, chosen so that block of transformed tiles fits in L2 cache.
+	 */
+	private static final int c_blockNumChannels = 128;
+
+	/**
+	 * Number of work items per pool thread which we aim for, when splitting work across filter panels.
+	 */
+	private static final int c_numWorkItemsPerThread = 4;
+
+	/**
+	 * Input data number of channels.
+	 */
+	private final int m_inputNumChannels;
+
+	/**
+	 * Width of input data.
+	 */
+	private final int m_inputDataWidth;
+
+	/**
+	 * Height of input data.
+	 */
+	private final int m_inputDataHeight;
+
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Number of patches in dimension X, which is output width.
+	 */
+	private final int m_numPatchesX;
+
+	/**
+	 * Number of patches in dimension Y, which is output height.
+	 */
+	private final int m_numPatchesY;
+
+	/**
+	 * Number of tiles in dimension X.
+	 */
+	private final int m_numTilesX;
+
+	/**
+	 * Number of tiles in dimension Y.
+	 */
+	private final int m_numTilesY;
+
+	/**
+	 * Number of filter panels, last one padded with zero filters.
+	 */
+	private final int m_numFilterPanels;
+
+	/**
+	 * Transformed filters, for each transformed position packed into panels. Each panel holds transformed values
+	 * of c_panelNumFilters filters interleaved, channel by channel.
+	 */
+	private float[] m_transformedFilters;
+
+	/**
+	 * Scratch buffer for transformed input tiles of each thread, reused between propagations.
+	 */
+	private final ThreadLocal<float[]> m_tilesBuffers;
+
+	/**
+	 * Scratch buffer for products of transformed tiles and filters of each thread, reused between propagations.
+	 */
+	private final ThreadLocal<float[]> m_productsBuffers;
+
+	/**
+	 * Constructor.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param numPatchesX Number of patches in dimension X.
+	 * @param numPatchesY Number of patches in dimension Y.
+	 */
+	WinogradConvolution(int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int paddingX, int paddingY,
+						int numPatchesX, int numPatchesY)
+	{
+		m_inputNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_numFilters = numFilters;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_numPatchesX = numPatchesX;
+		m_numPatchesY = numPatchesY;
+
+		m_numTilesX = (numPatchesX + c_outputTileSize - 1) / c_outputTileSize;
+		m_numTilesY = (numPatchesY + c_outputTileSize - 1) / c_outputTileSize;
+		m_numFilterPanels = (numFilters + c_panelNumFilters - 1) / c_panelNumFilters;
+		m_tilesBuffers = ThreadLocal.withInitial(() -> new float[c_numTransformedValues * c_blockNumTiles * c_blockNumChannels]);
+		m_productsBuffers = ThreadLocal.withInitial(() -> new float[c_numTransformedValues * c_blockNumTiles * m_numFilters]);
+	}
+
+	/**
+	 * Checks whether convolution with given parameters can be calculated by Winograd convolution.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param stride Stride for patching.
+	 */
+	static boolean isSupported(int filterWidth, int filterHeight, int stride)
+	{
+		return filterWidth == 3 && filterHeight == 3 && stride == 1;
+	}
+
+	/**
+	 * Estimates cost of convolving one sample, in multiply-adds of blocked matrix multiplication.
+	 */
+	float estimateCost()
+	{
+		// Transforms of tiles cost about as much as multiplications for a few filters.
+		final int numPaddedTiles = (m_numTilesX * m_numTilesY + c_panelNumTiles - 1) / c_panelNumTiles * c_panelNumTiles;
+		return (float)numPaddedTiles * c_numTransformedValues * m_inputNumChannels * (m_numFilterPanels + 1) * c_panelNumFilters;
+	}
+
+	/**
+	 * Transforms filters and packs them into panels.
+	 * @param filtersBuffer Filters, filter by filter, each in per-pixel data structure.
+	 */
+	void transformFilters(float[] filtersBuffer)
+	{
+		final int panelSize = m_inputNumChannels * c_panelNumFilters;
+		m_transformedFilters = new float[c_numTransformedValues * m_numFilterPanels * panelSize];
+		float[] g = new float[9];
+		float[] gg = new float[12];
+		for (int filter = 0; filter < m_numFilters; ++filter)
+		{
+			final int panelOffset = filter / c_panelNumFilters * panelSize + filter % c_panelNumFilters;
+			for (int channel = 0; channel < m_inputNumChannels; ++channel)
+			{
+				for (int i = 0; i < 9; ++i)
+				{
+					g[i] = filtersBuffer[(filter * 9 + i) * m_inputNumChannels + channel];
+				}
+
+				// G * g, where G = [1 0 0; 1/2 1/2 1/2; 1/2 -1/2 1/2; 0 0 1].
+				for (int x = 0; x < 3; ++x)
+				{
+					gg[x] = g[x];
+					gg[3 + x] = 0.5f * (g[x] + g[3 + x] + g[6 + x]);
+					gg[6 + x] = 0.5f * (g[x] - g[3 + x] + g[6 + x]);
+					gg[9 + x] = g[6 + x];
+				}
+
+				// (G * g) * G^T.
+				for (int y = 0; y < 4; ++y)
+				{
+					final int rowOffset = y * 4;
+					final float g0 = gg[y * 3], g1 = gg[y * 3 + 1], g2 = gg[y * 3 + 2];
+					setTransformedFilterValue(rowOffset, panelOffset, channel, g0);
+					setTransformedFilterValue(rowOffset + 1, panelOffset, channel, 0.5f * (g0 + g1 + g2));
+					setTransformedFilterValue(rowOffset + 2, panelOffset, channel, 0.5f * (g0 - g1 + g2));
+					setTransformedFilterValue(rowOffset + 3, panelOffset, channel, g2);
+				}
+			}
+		}
+	}
+
+	private void setTransformedFilterValue(int position, int panelOffset, int channel, float value)
+	{
+		m_transformedFilters[position * m_numFilterPanels * m_inputNumChannels * c_panelNumFilters + panelOffset + channel * c_panelNumFilters] = value;
+	}
+
+	/**
+	 * Calculates activations of all samples in the batch.
+	 * @param pool Pool to parallelize convolution on.
+	 * @param inputDataBuffer Input data of all samples.
+	 * @param biasesBuffer Biases of filters.
+	 * @param batchSize Number of samples.
+	 * @param activationDataBuffer Buffer to write activations into, in per-pixel data structure.
+	 * @param activationFunctionType Activation function to apply.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	void convolve(ForkJoinPool pool, float[] inputDataBuffer, float[] biasesBuffer, int batchSize,
+				  float[] activationDataBuffer, ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		final int numSampleTiles = m_numTilesX * m_numTilesY;
+		final int numSampleBlocks = (numSampleTiles + c_blockNumTiles - 1) / c_blockNumTiles;
+		final int numTileBlocks = batchSize * numSampleBlocks;
+
+		// Same as in im2col convolution, filters are split into groups for layers with few tiles, at the cost of transforming the same tiles once per group.
+		final int numWorkItemsPerBlock = (pool.getParallelism() * c_numWorkItemsPerThread + numTileBlocks - 1) / numTileBlocks;
+		final int numFilterGroups = Math.max(1, Math.min(m_numFilterPanels, numWorkItemsPerBlock));
+		final int numGroupPanels = (m_numFilterPanels + numFilterGroups - 1) / numFilterGroups;
+
+		ParallelLoop.run(pool, numTileBlocks * numFilterGroups, (start, end) ->
+		{
+			float[] tilesBuffer = m_tilesBuffers.get();
+			float[] productsBuffer = m_productsBuffers.get();
+			for (int workItem = start; workItem < end; ++workItem)
+			{
+				final int tileBlock = workItem / numFilterGroups;
+				final int filterGroup = workItem % numFilterGroups;
+				final int sampleIndex = tileBlock / numSampleBlocks;
+				final int firstTile = tileBlock % numSampleBlocks * c_blockNumTiles;
+				final int numTiles = Math.min(c_blockNumTiles, numSampleTiles - firstTile);
+				final int firstPanel = filterGroup * numGroupPanels;
+				final int lastPanel = Math.min(m_numFilterPanels, firstPanel + numGroupPanels);
+				if (firstPanel >= lastPanel)
+				{
+					continue;
+				}
+
+				multiplyTransformedBlock(inputDataBuffer, sampleIndex, firstTile, numTiles, firstPanel, lastPanel, tilesBuffer, productsBuffer);
+				transformOutputs(productsBuffer, biasesBuffer, sampleIndex, firstTile, numTiles, firstPanel * c_panelNumFilters,
+					Math.min(m_numFilters, lastPanel * c_panelNumFilters), activationDataBuffer, activationFunctionType, activationAlpha);
+			}
+		});
+	}
+
+	/**
+	 * Calculates products of transformed block of tiles with transformed filters from range of filter panels, summed over all channels.
+	 * Products are written for each transformed position, tile by tile, with all filters of each tile.
+	 */
+	private void multiplyTransformedBlock(float[] inputDataBuffer, int sampleIndex, int firstTile, int numTiles, int firstPanel, int lastPanel,
+										  float[] tilesBuffer, float[] productsBuffer)
+	{
+		final int firstFilter = firstPanel * c_panelNumFilters;
+		final int numGroupFilters = Math.min(m_numFilters, lastPanel * c_panelNumFilters) - firstFilter;
+		final int numTilePanels = (numTiles + c_panelNumTiles - 1) / c_panelNumTiles;
+		final int positionFiltersSize = m_numFilterPanels * m_inputNumChannels * c_panelNumFilters;
+
+		for (int position = 0; position < c_numTransformedValues; ++position)
+		{
+			for (int tile = 0; tile < numTiles; ++tile)
+			{
+				final int productsOffset = (position * c_blockNumTiles + tile) * m_numFilters + firstFilter;
+				for (int i = 0; i < numGroupFilters; ++i)
+				{
+					productsBuffer[productsOffset + i] = 0.f;
+				}
+			}
+		}
+
+		for (int firstChannel = 0; firstChannel < m_inputNumChannels; firstChannel += c_blockNumChannels)
+		{
+			final int numChannels = Math.min(c_blockNumChannels, m_inputNumChannels - firstChannel);
+			transformTiles(inputDataBuffer, sampleIndex, firstTile, numTiles, firstChannel, numChannels, tilesBuffer);
+
+			for (int position = 0; position < c_numTransformedValues; ++position)
+			{
+				for (int panel = firstPanel; panel < lastPanel; ++panel)
+				{
+					final int filtersOffset = position * positionFiltersSize + (panel * m_inputNumChannels + firstChannel) * c_panelNumFilters;
+					final int panelFirstFilter = panel * c_panelNumFilters;
+					final int panelNumFilters = Math.min(c_panelNumFilters, m_numFilters - panelFirstFilter);
+					for (int tilePanel = 0; tilePanel < numTilePanels; ++tilePanel)
+					{
+						final int tile = tilePanel * c_panelNumTiles;
+						MicroKernel.multiplyPanels(tilesBuffer, ((position * numTilePanels + tilePanel) * numChannels) * c_panelNumTiles,
+							m_transformedFilters, filtersOffset, numChannels, productsBuffer,
+							(position * c_blockNumTiles + tile) * m_numFilters + panelFirstFilter, m_numFilters,
+							Math.min(c_panelNumTiles, numTiles - tile), panelNumFilters);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transforms input tiles for range of channels into scratch buffer, for each transformed position packed into panels of c_panelNumTiles tiles.
+	 * Pixels of tiles which fall outside of input data are zero, and panel rows past the last tile are zero.
+	 */
+	private void transformTiles(float[] inputDataBuffer, int sampleIndex, int firstTile, int numTiles, int firstChannel, int numChannels,
+								float[] tilesBuffer)
+	{
+		final int sampleOffset = sampleIndex * m_inputDataWidth * m_inputDataHeight * m_inputNumChannels;
+		final int numTilePanels = (numTiles + c_panelNumTiles - 1) / c_panelNumTiles;
+		final int positionSize = numTilePanels * numChannels * c_panelNumTiles;
+		float[] d = new float[c_numTransformedValues];
+		for (int tile = 0; tile < numTilePanels * c_panelNumTiles; ++tile)
+		{
+			final int tileOffset = tile / c_panelNumTiles * numChannels * c_panelNumTiles + tile % c_panelNumTiles;
+			if (tile >= numTiles)
+			{
+				for (int position = 0; position < c_numTransformedValues; ++position)
+				{
+					for (int channel = 0; channel < numChannels; ++channel)
+					{
+						tilesBuffer[position * positionSize + tileOffset + channel * c_panelNumTiles] = 0.f;
+					}
+				}
+				continue;
+			}
+
+			final int tileOffsetX = -m_paddingX + (firstTile + tile) % m_numTilesX * c_outputTileSize;
+			final int tileOffsetY = -m_paddingY + (firstTile + tile) / m_numTilesX * c_outputTileSize;
+			for (int channel = 0; channel < numChannels; ++channel)
+			{
+				for (int y = 0; y < 4; ++y)
+				{
+					final int inputY = tileOffsetY + y;
+					for (int x = 0; x < 4; ++x)
+					{
+						final int inputX = tileOffsetX + x;
+						d[y * 4 + x] = inputX >= 0 && inputX < m_inputDataWidth && inputY >= 0 && inputY < m_inputDataHeight ?
+							inputDataBuffer[sampleOffset + (inputY * m_inputDataWidth + inputX) * m_inputNumChannels + firstChannel + channel] : 0.f;
+					}
+				}
+
+				// B^T * d, where B^T = [1 0 -1 0; 0 1 1 0; 0 -1 1 0; 0 1 0 -1].
+				for (int x = 0; x < 4; ++x)
+				{
+					final float d0 = d[x], d1 = d[4 + x], d2 = d[8 + x], d3 = d[12 + x];
+					d[x] = d0 - d2;
+					d[4 + x] = d1 + d2;
+					d[8 + x] = d2 - d1;
+					d[12 + x] = d1 - d3;
+				}
+
+				// (B^T * d) * B.
+				final int valueOffset = tileOffset + channel * c_panelNumTiles;
+				for (int y = 0; y < 4; ++y)
+				{
+					final float d0 = d[y * 4], d1 = d[y * 4 + 1], d2 = d[y * 4 + 2], d3 = d[y * 4 + 3];
+					tilesBuffer[y * 4 * positionSize + valueOffset] = d0 - d2;
+					tilesBuffer[(y * 4 + 1) * positionSize + valueOffset] = d1 + d2;
+					tilesBuffer[(y * 4 + 2) * positionSize + valueOffset] = d2 - d1;
+					tilesBuffer[(y * 4 + 3) * positionSize + valueOffset] = d1 - d3;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transforms products back into output tiles, and writes activations of their pixels which are inside of output.
+	 */
+	private void transformOutputs(float[] productsBuffer, float[] biasesBuffer, int sampleIndex, int firstTile, int numTiles,
+								  int firstFilter, int lastFilter, float[] activationDataBuffer,
+								  ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		final int sampleOffset = sampleIndex * m_numPatchesX * m_numPatchesY * m_numFilters;
+		final int positionSize = c_blockNumTiles * m_numFilters;
+		float[] m = new float[c_numTransformedValues];
+		for (int tile = 0; tile < numTiles; ++tile)
+		{
+			final int outputX = (firstTile + tile) % m_numTilesX * c_outputTileSize;
+			final int outputY = (firstTile + tile) / m_numTilesX * c_outputTileSize;
+			final boolean hasSecondColumn = outputX + 1 < m_numPatchesX;
+			final boolean hasSecondRow = outputY + 1 < m_numPatchesY;
+			final int outputOffset = sampleOffset + (outputY * m_numPatchesX + outputX) * m_numFilters;
+			for (int filter = firstFilter; filter < lastFilter; ++filter)
+			{
+				final int productsOffset = tile * m_numFilters + filter;
+				for (int position = 0; position < c_numTransformedValues; ++position)
+				{
+					m[position] = productsBuffer[position * positionSize + productsOffset];
+				}
+
+				// A^T * m * A, where A^T = [1 1 1 0; 0 1 -1 -1].
+				final float s00 = m[0] + m[4] + m[8], s01 = m[1] + m[5] + m[9], s02 = m[2] + m[6] + m[10], s03 = m[3] + m[7] + m[11];
+				final float s10 = m[4] - m[8] - m[12], s11 = m[5] - m[9] - m[13], s12 = m[6] - m[10] - m[14], s13 = m[7] - m[11] - m[15];
+				final float bias = biasesBuffer[filter];
+
+				activationDataBuffer[outputOffset + filter] = Activations.activate(bias + s00 + s01 + s02, activationFunctionType, activationAlpha);
+				if (hasSecondColumn)
+				{
+					activationDataBuffer[outputOffset + m_numFilters + filter] =
+						Activations.activate(bias + s01 - s02 - s03, activationFunctionType, activationAlpha);
+				}
+				if (hasSecondRow)
+				{
+					final int rowOffset = outputOffset + m_numPatchesX * m_numFilters + filter;
+					activationDataBuffer[rowOffset] = Activations.activate(bias + s10 + s11 + s12, activationFunctionType, activationAlpha);
+					if (hasSecondColumn)
+					{
+						activationDataBuffer[rowOffset + m_numFilters] = Activations.activate(bias + s11 - s12 - s13, activationFunctionType, activationAlpha);
+					}
+				}
+			}
+		}
+	}
+}
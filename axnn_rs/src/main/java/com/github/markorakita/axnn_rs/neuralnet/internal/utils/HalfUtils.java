@@ -0,0 +1,127 @@
+package com.github.markorakita.axnn_rs.neuralnet.internal.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Conversions between single precision floats and IEEE 754 half precision floats, stored in shorts.
+ * We can't use android.util.Half since it is not available on all supported API levels.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public class HalfUtils
+{
+	/**
+	 * Converts float to half precision float, rounding to nearest even.
+	 * Values too large for half precision are converted to infinity, and values too small to zero.
+	 * @param value Float value.
+	 * @return Half precision float bits.
+	 */
+	public static short floatToHalf(float value)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xff;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent == 0xff)
+		{
+			// Infinity or NaN, keeping NaN quiet.
+			return (short)(sign | 0x7c00 | (mantissa != 0 ? 0x200 | (mantissa >>> 13) : 0));
+		}
+
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent >= 0x1f)
+		{
+			return (short)(sign | 0x7c00);
+		}
+
+		if (halfExponent <= 0)
+		{
+			if (halfExponent < -10)
+			{
+				return (short)sign;
+			}
+
+			// Converting to subnormal half, with implicit leading one made explicit.
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int halfMantissa = mantissa >> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (halfMantissa & 1) != 0))
+			{
+				// Carry into exponent gives correct smallest normal half.
+				++halfMantissa;
+			}
+
+			return (short)(sign | halfMantissa);
+		}
+
+		int half = sign | (halfExponent << 10) | (mantissa >> 13);
+		int remainder = mantissa & 0x1fff;
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0))
+		{
+			// Carry into exponent gives correct rounding, up to infinity.
+			++half;
+		}
+
+		return (short)half;
+	}
+
+	/**
+	 * Converts half precision float to float. Conversion is exact.
+	 * @param half Half precision float bits.
+	 * @return Float value.
+	 */
+	public static float halfToFloat(short half)
+	{
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+
+		int bits;
+		if (exponent == 0x1f)
+		{
+			bits = sign | 0x7f800000 | (mantissa << 13);
+		}
+		else if (exponent == 0)
+		{
+			if (mantissa == 0)
+			{
+				bits = sign;
+			}
+			else
+			{
+				// Normalizing subnormal half.
+				exponent = 1;
+				while ((mantissa & 0x400) == 0)
+				{
+					mantissa <<= 1;
+					--exponent;
+				}
+				mantissa &= 0x3ff;
+				bits = sign | ((exponent - 15 + 127) << 23) | (mantissa << 13);
+			}
+		}
+		else
+		{
+			bits = sign | ((exponent - 15 + 127) << 23) | (mantissa << 13);
+		}
+
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Converts floats to half precision floats.
+	 * @param values Float values.
+	 * @param halfs Buffer to write half precision floats bits into.
+	 * @param count Number of values to convert.
+	 */
+	public static void floatsToHalfs(@NonNull float[] values, @NonNull short[] halfs, int count)
+	{
+		for (int i = 0; i < count; ++i)
+		{
+			halfs[i] = floatToHalf(values[i]);
+		}
+	}
+}
@@ -4,12 +4,26 @@ import androidx.annotation.RestrictTo;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 
 public class IOUtils
 {
+    /**
+     * Model container magic.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final byte[] c_modelContainerMagic = {'A', 'X', 'N', 'M'};
+
+    /**
+     * Model container byte order mark, from which we detect container byte order.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final int c_modelContainerByteOrderMark = 0x01020304;
+
     /**
      * Reads float buffer from stream.
      * @param bufferSize Buffer size to read.
@@ -33,20 +47,108 @@ public class IOUtils
     private static byte[] readByteBufferFromStream(int bufferSize, InputStream stream) throws IOException
     {
         byte[] buffer = new byte[bufferSize];
+        readBytesFromStream(buffer, bufferSize, stream);
+
+        return buffer;
+    }
+
+    /**
+     * Reads exact number of bytes from stream into existing buffer.
+     * @param buffer Buffer to read into.
+     * @param numBytes Number of bytes to read.
+     * @param stream Stream from which to read.
+     * @throws IOException Throws IOException in case when stream read fails or there is not enough bytes in the stream.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void readBytesFromStream(byte[] buffer, int numBytes, InputStream stream) throws IOException
+    {
         int offset = 0;
         int numBytesRead;
         do
         {
-            numBytesRead = stream.read(buffer, offset, bufferSize - offset);
+            numBytesRead = stream.read(buffer, offset, numBytes - offset);
             offset += numBytesRead;
         }
-        while (numBytesRead > 0 && offset < bufferSize);
+        while (numBytesRead > 0 && offset < numBytes);
 
-        if (offset < bufferSize)
+        if (offset < numBytes)
         {
             throw new IOException("Not enough bytes in the stream.");
         }
+    }
+
+    /**
+     * Reads exact number of bytes from file channel, starting at given position.
+     * @param channel Channel from which to read.
+     * @param position Position in the channel from which to read.
+     * @param numBytes Number of bytes to read.
+     * @return Read buffer, rewound.
+     * @throws IOException Throws IOException in case when channel read fails or there is not enough bytes in the channel.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static ByteBuffer readBufferFromChannel(FileChannel channel, long position, int numBytes) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(numBytes);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Not enough bytes in the channel.");
+            }
+        }
+        buffer.rewind();
 
         return buffer;
     }
+
+    /**
+     * Checks whether buffer starts with model container header, rather than with raw model parameters.
+     * @param header Buffer with at least first eight bytes of the model.
+     * @return True if buffer starts with model container header.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static boolean isModelContainer(ByteBuffer header)
+    {
+        if (header.limit() < c_modelContainerMagic.length + 4)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < c_modelContainerMagic.length; ++i)
+        {
+            if (header.get(i) != c_modelContainerMagic[i])
+            {
+                return false;
+            }
+        }
+
+        int byteOrderMark = header.order(ByteOrder.BIG_ENDIAN).getInt(c_modelContainerMagic.length);
+        return byteOrderMark == c_modelContainerByteOrderMark || byteOrderMark == Integer.reverseBytes(c_modelContainerByteOrderMark);
+    }
+
+    /**
+     * Gets model container byte order, from its byte order mark.
+     * @param header Buffer with at least first eight bytes of the model container.
+     * @return Model container byte order.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static ByteOrder getModelContainerByteOrder(ByteBuffer header)
+    {
+        int byteOrderMark = header.order(ByteOrder.BIG_ENDIAN).getInt(c_modelContainerMagic.length);
+        return byteOrderMark == c_modelContainerByteOrderMark ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * Checks whether current thread is interrupted, so that long loading can be cancelled between its steps.
+     * Clears interrupted status of the thread.
+     * @throws InterruptedIOException Throws InterruptedIOException in case when current thread is interrupted.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void checkInterrupted() throws InterruptedIOException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedIOException("Model loading interrupted.");
+        }
+    }
 }
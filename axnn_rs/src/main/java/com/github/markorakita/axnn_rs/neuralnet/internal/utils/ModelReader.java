@@ -0,0 +1,395 @@
+package com.github.markorakita.axnn_rs.neuralnet.internal.utils;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Reads model parameters in fixed size chunks through one reusable buffer, so that memory needed for loading
+ * the model stays constant instead of growing with the size of the largest layer.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public abstract class ModelReader
+{
+	/**
+	 * Default chunk size, in number of floats (1 MB).
+	 */
+	public static final int c_defaultChunkSize = 1 << 18;
+
+	/**
+	 * Reusable chunk buffer.
+	 */
+	private final float[] m_chunkBuffer;
+
+	/**
+	 * Reusable chunk buffer for half precision values, allocated only when reading into half precision allocations.
+	 * Has the same size as float chunk buffer, so that chunks of both precisions cover the same allocation ranges.
+	 */
+	private short[] m_halfChunkBuffer;
+
+	/**
+	 * Constructor.
+	 * @param chunkSize Chunk size, in number of floats. Must be divisible by four.
+	 */
+	protected ModelReader(int chunkSize)
+	{
+		m_chunkBuffer = new float[chunkSize];
+	}
+
+	/**
+	 * Creates model reader which reads from stream.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should stream be read in big endian.
+	 */
+	@NonNull
+	public static ModelReader fromStream(@NonNull InputStream modelStream, boolean bigEndian)
+	{
+		return new StreamModelReader(modelStream, bigEndian, c_defaultChunkSize);
+	}
+
+	/**
+	 * Creates model reader which reads from byte buffer (usually memory mapped model), advancing its position.
+	 * @param modelBuffer Model buffer, with byte order already set.
+	 */
+	@NonNull
+	public static ModelReader fromBuffer(@NonNull ByteBuffer modelBuffer)
+	{
+		// No need for chunk bigger than the buffer itself.
+		int bufferNumFloats = modelBuffer.remaining() / 4;
+		int chunkSize = Math.max(4, Math.min(c_defaultChunkSize, (bufferNumFloats + 3) / 4 * 4));
+
+		return new BufferModelReader(modelBuffer, chunkSize);
+	}
+
+	/**
+	 * Creates model reader which reads from byte buffer (usually memory mapped model), advancing its position.
+	 * @param modelBuffer Model buffer, with byte order already set.
+	 * @param halfPrecision Are values in the buffer stored as half precision floats.
+	 */
+	@NonNull
+	public static ModelReader fromBuffer(@NonNull ByteBuffer modelBuffer, boolean halfPrecision)
+	{
+		if (!halfPrecision)
+		{
+			return fromBuffer(modelBuffer);
+		}
+
+		int bufferNumHalfs = modelBuffer.remaining() / 2;
+		int chunkSize = Math.max(4, Math.min(c_defaultChunkSize, (bufferNumHalfs + 3) / 4 * 4));
+
+		return new HalfBufferModelReader(modelBuffer, chunkSize);
+	}
+
+	/**
+	 * Reads floats from the model into buffer.
+	 * @param buffer Buffer to read into.
+	 * @param offset Offset in the buffer from which to start writing.
+	 * @param count Number of floats to read.
+	 * @throws IOException Throws IOException in case when there is not enough data left in the model.
+	 */
+	public abstract void readFloats(@NonNull float[] buffer, int offset, int count) throws IOException;
+
+	/**
+	 * Reads values from the model into half precision buffer, at its start. Values stored in full precision are read into
+	 * float chunk buffer and narrowed, while readers of half precision values override this to copy them as they are.
+	 * @param buffer Buffer to read into.
+	 * @param count Number of values to read, at most the chunk size.
+	 * @throws IOException Throws IOException in case when there is not enough data left in the model.
+	 */
+	protected void readHalfs(@NonNull short[] buffer, int count) throws IOException
+	{
+		readFloats(m_chunkBuffer, 0, count);
+		HalfUtils.floatsToHalfs(m_chunkBuffer, buffer, count);
+	}
+
+	/**
+	 * Reads float buffer from the model.
+	 * @param bufferSize Buffer size to read.
+	 * @return Read float buffer.
+	 */
+	@NonNull
+	public float[] readFloatBuffer(int bufferSize) throws IOException
+	{
+		float[] buffer = new float[bufferSize];
+		readFloats(buffer, 0, bufferSize);
+
+		return buffer;
+	}
+
+	/**
+	 * Reads float buffer from the model, padding every fourth float with zero.
+	 * Used for data stored in the model with three channels, which we keep in four channels in allocations.
+	 * @param bufferSize Buffer size to read, including padding.
+	 * @return Read float buffer.
+	 */
+	@NonNull
+	public float[] readPaddedFloatBuffer(int bufferSize) throws IOException
+	{
+		float[] buffer = new float[bufferSize];
+		int numPixels = bufferSize / 4;
+		readFloats(buffer, 0, numPixels * 3);
+		padFourthChannel(buffer, numPixels);
+
+		return buffer;
+	}
+
+	/**
+	 * Reads floats from the model directly into allocation, chunk by chunk.
+	 * If allocation holds half precision floats, values are read as half precision, so half precision values stored in the model
+	 * are copied as they are, without widening them to floats and narrowing them back.
+	 * @param allocation Allocation to read into.
+	 * @param numFloats Number of floats to read.
+	 */
+	public void readToAllocation(@NonNull Allocation allocation, int numFloats) throws IOException
+	{
+		final int vectorSize = allocation.getElement().getVectorSize();
+		final boolean halfPrecision = isHalfPrecision(allocation);
+		for (int floatsOffset = 0; floatsOffset < numFloats; floatsOffset += m_chunkBuffer.length)
+		{
+			int chunkSize = Math.min(m_chunkBuffer.length, numFloats - floatsOffset);
+			if (halfPrecision)
+			{
+				readHalfs(getHalfChunkBuffer(), chunkSize);
+				allocation.copy1DRangeFrom(floatsOffset / vectorSize, chunkSize / vectorSize, m_halfChunkBuffer);
+			}
+			else
+			{
+				readFloats(m_chunkBuffer, 0, chunkSize);
+				allocation.copy1DRangeFrom(floatsOffset / vectorSize, chunkSize / vectorSize, m_chunkBuffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads floats from the model directly into allocation, chunk by chunk, padding every fourth float with zero.
+	 * Used for data stored in the model with three channels, which we keep in four channels in allocations.
+	 * If allocation holds half precision floats, values are read as half precision, like in {@link #readToAllocation(Allocation, int)}.
+	 * @param allocation Allocation to read into.
+	 * @param numFloats Number of floats to write into allocation, including padding.
+	 */
+	public void readPaddedToAllocation(@NonNull Allocation allocation, int numFloats) throws IOException
+	{
+		final int vectorSize = allocation.getElement().getVectorSize();
+		final boolean halfPrecision = isHalfPrecision(allocation);
+		for (int floatsOffset = 0; floatsOffset < numFloats; floatsOffset += m_chunkBuffer.length)
+		{
+			int chunkSize = Math.min(m_chunkBuffer.length, numFloats - floatsOffset);
+			int numPixels = chunkSize / 4;
+			if (halfPrecision)
+			{
+				readHalfs(getHalfChunkBuffer(), numPixels * 3);
+				padFourthChannel(m_halfChunkBuffer, numPixels);
+				allocation.copy1DRangeFrom(floatsOffset / vectorSize, chunkSize / vectorSize, m_halfChunkBuffer);
+			}
+			else
+			{
+				readFloats(m_chunkBuffer, 0, numPixels * 3);
+				padFourthChannel(m_chunkBuffer, numPixels);
+				allocation.copy1DRangeFrom(floatsOffset / vectorSize, chunkSize / vectorSize, m_chunkBuffer);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether allocation holds half precision floats.
+	 */
+	private static boolean isHalfPrecision(@NonNull Allocation allocation)
+	{
+		return allocation.getElement().getDataType() == Element.DataType.FLOAT_16;
+	}
+
+	/**
+	 * Gets reusable chunk buffer for half precision values, allocating it on first use.
+	 */
+	@NonNull
+	private short[] getHalfChunkBuffer()
+	{
+		if (m_halfChunkBuffer == null)
+		{
+			m_halfChunkBuffer = new short[m_chunkBuffer.length];
+		}
+
+		return m_halfChunkBuffer;
+	}
+
+	/**
+	 * Expands three channel pixels at the start of the buffer into four channel pixels, with zero in 4th channel.
+	 * @param buffer Buffer to expand in place.
+	 * @param numPixels Number of pixels to expand.
+	 */
+	private static void padFourthChannel(@NonNull float[] buffer, int numPixels)
+	{
+		// Going backwards so that we never overwrite values not yet moved.
+		for (int pixel = numPixels - 1; pixel >= 0; --pixel)
+		{
+			buffer[pixel * 4 + 3] = 0.f;
+			buffer[pixel * 4 + 2] = buffer[pixel * 3 + 2];
+			buffer[pixel * 4 + 1] = buffer[pixel * 3 + 1];
+			buffer[pixel * 4] = buffer[pixel * 3];
+		}
+	}
+
+	/**
+	 * Expands three channel pixels of half precision values at the start of the buffer into four channel pixels, with zero in 4th channel.
+	 * @param buffer Buffer to expand in place.
+	 * @param numPixels Number of pixels to expand.
+	 */
+	private static void padFourthChannel(@NonNull short[] buffer, int numPixels)
+	{
+		// Going backwards so that we never overwrite values not yet moved.
+		for (int pixel = numPixels - 1; pixel >= 0; --pixel)
+		{
+			buffer[pixel * 4 + 3] = 0;
+			buffer[pixel * 4 + 2] = buffer[pixel * 3 + 2];
+			buffer[pixel * 4 + 1] = buffer[pixel * 3 + 1];
+			buffer[pixel * 4] = buffer[pixel * 3];
+		}
+	}
+
+	/**
+	 * Model reader which reads from stream.
+	 */
+	private static class StreamModelReader extends ModelReader
+	{
+		/**
+		 * Model input stream.
+		 */
+		private final InputStream m_modelStream;
+
+		/**
+		 * Reusable buffer for bytes read from stream.
+		 */
+		private final byte[] m_bytesBuffer;
+
+		/**
+		 * Float view of the bytes buffer.
+		 */
+		private final FloatBuffer m_floatsView;
+
+		StreamModelReader(InputStream modelStream, boolean bigEndian, int chunkSize)
+		{
+			super(chunkSize);
+
+			m_modelStream = modelStream;
+			m_bytesBuffer = new byte[chunkSize * 4];
+			m_floatsView = ByteBuffer.wrap(m_bytesBuffer).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		}
+
+		@Override
+		public void readFloats(@NonNull float[] buffer, int offset, int count) throws IOException
+		{
+			final int maxFloatsPerRead = m_bytesBuffer.length / 4;
+			for (int floatsRead = 0; floatsRead < count; )
+			{
+				int floatsToRead = Math.min(maxFloatsPerRead, count - floatsRead);
+				IOUtils.readBytesFromStream(m_bytesBuffer, floatsToRead * 4, m_modelStream);
+
+				m_floatsView.rewind();
+				m_floatsView.get(buffer, offset + floatsRead, floatsToRead);
+				floatsRead += floatsToRead;
+			}
+		}
+	}
+
+	/**
+	 * Model reader which reads from byte buffer.
+	 */
+	private static class BufferModelReader extends ModelReader
+	{
+		/**
+		 * Model buffer.
+		 */
+		private final ByteBuffer m_modelBuffer;
+
+		BufferModelReader(ByteBuffer modelBuffer, int chunkSize)
+		{
+			super(chunkSize);
+
+			m_modelBuffer = modelBuffer;
+		}
+
+		@Override
+		public void readFloats(@NonNull float[] buffer, int offset, int count) throws IOException
+		{
+			try
+			{
+				// Float view shares content and byte order with the byte buffer, so values are decoded directly from mapped memory.
+				m_modelBuffer.asFloatBuffer().get(buffer, offset, count);
+			}
+			catch (BufferUnderflowException exc)
+			{
+				throw new IOException("Not enough bytes in the buffer.");
+			}
+			m_modelBuffer.position(m_modelBuffer.position() + count * 4);
+		}
+	}
+
+	/**
+	 * Model reader which reads half precision floats from byte buffer, widening them to floats only when they are read as floats.
+	 */
+	private static class HalfBufferModelReader extends ModelReader
+	{
+		/**
+		 * Model buffer.
+		 */
+		private final ByteBuffer m_modelBuffer;
+
+		/**
+		 * Reusable buffer for half precision values read from model buffer.
+		 */
+		private final short[] m_halfsBuffer;
+
+		HalfBufferModelReader(ByteBuffer modelBuffer, int chunkSize)
+		{
+			super(chunkSize);
+
+			m_modelBuffer = modelBuffer;
+			m_halfsBuffer = new short[chunkSize];
+		}
+
+		@Override
+		public void readFloats(@NonNull float[] buffer, int offset, int count) throws IOException
+		{
+			if (m_modelBuffer.remaining() < count * 2)
+			{
+				throw new IOException("Not enough bytes in the buffer.");
+			}
+
+			ShortBuffer halfsView = m_modelBuffer.asShortBuffer();
+			for (int floatsRead = 0; floatsRead < count; )
+			{
+				int floatsToRead = Math.min(m_halfsBuffer.length, count - floatsRead);
+				halfsView.get(m_halfsBuffer, 0, floatsToRead);
+				for (int i = 0; i < floatsToRead; ++i)
+				{
+					buffer[offset + floatsRead + i] = HalfUtils.halfToFloat(m_halfsBuffer[i]);
+				}
+				floatsRead += floatsToRead;
+			}
+			m_modelBuffer.position(m_modelBuffer.position() + count * 2);
+		}
+
+		@Override
+		protected void readHalfs(@NonNull short[] buffer, int count) throws IOException
+		{
+			if (m_modelBuffer.remaining() < count * 2)
+			{
+				throw new IOException("Not enough bytes in the buffer.");
+			}
+
+			// Short view shares content and byte order with the byte buffer, so half values are copied directly from mapped memory.
+			m_modelBuffer.asShortBuffer().get(buffer, 0, count);
+			m_modelBuffer.position(m_modelBuffer.position() + count * 2);
+		}
+	}
+}
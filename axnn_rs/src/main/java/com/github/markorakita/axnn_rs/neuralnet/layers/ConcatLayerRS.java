@@ -0,0 +1,97 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.RenderScript;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Concatenation layer joins activations of multiple layers of the same width and height along channels,
+ * used for inception-style blocks where several branches process the same input.
+ */
+public class ConcatLayerRS extends LayerRS
+{
+	/**
+	 * Concatenation layer RS kernel.
+	 */
+	private final ScriptC_concatlayer m_kernel;
+
+	/**
+	 * Number of channels of each input.
+	 */
+	private final int[] m_inputsNumChannels;
+
+	/**
+	 * Input data buffers, in order of layer inputs.
+	 */
+	private Allocation[] m_inputDataBuffers;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputsNumChannels Number of channels of each input, in order of layer inputs. Each has to be divisible by four.
+	 * @param inputDataWidth Width of input data, same for all inputs.
+	 * @param inputDataHeight Height of input data, same for all inputs.
+	 */
+	public ConcatLayerRS(@NonNull RenderScript rsContext, @NonNull int[] inputsNumChannels, int inputDataWidth, int inputDataHeight)
+	{
+		m_kernel = new ScriptC_concatlayer(rsContext);
+		m_inputsNumChannels = inputsNumChannels.clone();
+
+		int numChannels = 0;
+		for (int inputNumChannels : inputsNumChannels)
+		{
+			numChannels += inputNumChannels;
+		}
+
+		m_inputDataNumChannels = m_activationNumChannels = numChannels;
+		m_kernel.set_activationNumChannels(numChannels);
+		m_inputDataWidth = m_activationDataWidth = inputDataWidth;
+		m_inputDataHeight = m_activationDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_activationDataBufferSize = numChannels * inputDataWidth * inputDataHeight;
+
+		allocateActivationBuffers(rsContext);
+	}
+
+	/**
+	 * Gets number of inputs which are concatenated.
+	 * @return Number of inputs.
+	 */
+	@Override
+	public int getNumInputs()
+	{
+		return m_inputsNumChannels.length;
+	}
+
+	/**
+	 * Sets input data buffers, in order of layer inputs.
+	 * @param inputDataBuffers Input data buffers to set.
+	 */
+	@Override
+	public void setInputDataBuffers(@NonNull Allocation[] inputDataBuffers)
+	{
+		super.setInputDataBuffers(inputDataBuffers);
+		m_inputDataBuffers = inputDataBuffers;
+	}
+
+	/**
+	 * Does forward propagation through layer, copying channels of each input into their place.
+	 */
+	@WorkerThread
+	@Override
+	public void doForwardProp()
+	{
+		m_kernel.set_activationDataBuffer(m_activationDataBuffer);
+
+		int activationChannelOffset = 0;
+		for (int inputIndex = 0; inputIndex < m_inputDataBuffers.length; ++inputIndex)
+		{
+			m_kernel.set_inputNumChannels(m_inputsNumChannels[inputIndex]);
+			m_kernel.set_activationChannelOffset(activationChannelOffset);
+			m_kernel.forEach_copyInput(m_inputDataBuffers[inputIndex]);
+
+			activationChannelOffset += m_inputsNumChannels[inputIndex];
+		}
+	}
+}
@@ -6,13 +6,18 @@ import android.renderscript.RenderScript;
 import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
 import androidx.annotation.WorkerThread;
 
-import com.github.markorakita.axnn_rs.neuralnet.ActivationFunction;
-import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.HalfUtils;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.ModelReader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * From Wikipedia:
@@ -25,16 +30,69 @@ import java.io.InputStream;
  */
 public class ConvolutionalLayerRS extends LayerRS
 {
+	/**
+	 * Algorithms which layer can use for convolution.
+	 */
+	public enum ConvolutionAlgorithm
+	{
+		// Each kernel invocation convolves one patch with four filters, reading filters directly from filters buffer.
+		// Convolution fused with max pooling always uses it.
+		Direct,
+
+		// Winograd F(2x2, 3x3) convolution, with filters transformed on device when they are loaded.
+		// Supported only for 3x3 filters with stride 1.
+		Winograd,
+
+		// Input data is rearranged into blocks of stride x stride pixels stacked into channels, and convolved with stride 1
+		// with filters rearranged the same way on device when they are loaded. Supported only for stride larger than 1.
+		SpaceToDepth
+	}
+
 	/**
 	 * Convolutional layer RS kernel.
 	 */
 	private final ScriptC_convolutionallayer m_kernel;
 
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Filters width.
+	 */
+	private final int m_filterWidth;
+
+	/**
+	 * Filters height.
+	 */
+	private final int m_filterHeight;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride for patching.
+	 */
+	private final int m_stride;
+
 	/**
 	 * Filters buffer, in channel-major order.
 	 */
 	private Allocation m_filtersBuffer;
 
+	/**
+	 * Are filters kept in half precision.
+	 */
+	private final boolean m_halfPrecisionFilters;
+
 	/**
 	 * Filters buffer size.
 	 */
@@ -51,14 +109,41 @@ public class ConvolutionalLayerRS extends LayerRS
 	private final int m_biasesBufferSize;
 
 	/**
-	 * Pre-activation data buffer.
+	 * Input padding values buffer, holding value per input channel with which input data is padded instead of zeros.
+	 * Allocated only when input data normalization is folded into the layer.
+	 */
+	private Allocation m_inputPaddingValuesBuffer;
+
+	/**
+	 * Activation function applied in the kernels.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Alpha parameter of activation function.
+	 */
+	private final float m_activationAlpha;
+
+	/**
+	 * Winograd convolution, holding transformed filters. Null if layer doesn't have 3x3 filters with stride 1.
+	 */
+	private final WinogradConvolution m_winogradConvolution;
+
+	/**
+	 * Strided convolution rewritten into convolution with stride 1, holding rearranged filters.
+	 * Created only once the algorithm is used, since it keeps its own copy of the filters.
+	 */
+	private SpaceToDepthConvolution m_spaceToDepthConvolution;
+
+	/**
+	 * Algorithm used for convolution.
 	 */
-	private Allocation m_preactivationDataBuffer;
+	private ConvolutionAlgorithm m_convolutionAlgorithm;
 
 	/**
-	 * Activation function to use.
+	 * Scratch buffers used by convolution algorithm, bound together with activation buffer.
 	 */
-	private final ActivationFunction m_activationFunction;
+	private Allocation[] m_scratchBuffers;
 
 	/**
 	 * Constructor.
@@ -76,7 +161,7 @@ public class ConvolutionalLayerRS extends LayerRS
 	 */
 	public ConvolutionalLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth,
 								int filterHeight, int paddingX, int paddingY, int stride,
-								ActivationFunction.ActivationFunctionType activationFunctionType)
+								ActivationFunctionType activationFunctionType)
 	{
 		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight, paddingX, paddingY, stride,
 				activationFunctionType, 0.f);
@@ -99,7 +184,58 @@ public class ConvolutionalLayerRS extends LayerRS
 	 */
 	public ConvolutionalLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth,
 								int filterHeight, int paddingX, int paddingY, int stride,
-								ActivationFunction.ActivationFunctionType activationFunctionType, float activationAlpha)
+								ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight, paddingX, paddingY, stride,
+				activationFunctionType, activationAlpha, false);
+	}
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param halfPrecisionFilters Should filters be kept in half precision, halving their memory and bandwidth.
+	 *                             Computation is still done in full precision.
+	 */
+	public ConvolutionalLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth,
+								int filterHeight, int paddingX, int paddingY, int stride,
+								ActivationFunctionType activationFunctionType, float activationAlpha, boolean halfPrecisionFilters)
+	{
+		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, filterWidth, filterHeight, paddingX, paddingY, stride,
+				activationFunctionType, activationAlpha, halfPrecisionFilters, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param halfPrecisionFilters Should filters be kept in half precision.
+	 * @param sharedBiasesBuffer Biases buffer of the strided layer, when this is the layer with stride 1 of space-to-depth convolution,
+	 *                           whose activation buffers are bound by the strided layer. Null for standalone layers.
+	 */
+	ConvolutionalLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth,
+						 int filterHeight, int paddingX, int paddingY, int stride, ActivationFunctionType activationFunctionType, float activationAlpha,
+						 boolean halfPrecisionFilters, @Nullable Allocation sharedBiasesBuffer)
 	{
 		m_kernel = new ScriptC_convolutionallayer(rsContext);
 
@@ -111,11 +247,17 @@ public class ConvolutionalLayerRS extends LayerRS
 		m_kernel.set_inputDataHeight(inputDataHeight);
 		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
 
+		m_numFilters = numFilters;
 		m_kernel.set_numFilters(numFilters);
+		m_filterWidth = filterWidth;
 		m_kernel.set_filterWidth(filterWidth);
+		m_filterHeight = filterHeight;
 		m_kernel.set_filterHeight(filterHeight);
+		m_paddingX = paddingX;
 		m_kernel.set_paddingX(paddingX);
+		m_paddingY = paddingY;
 		m_kernel.set_paddingY(paddingY);
+		m_stride = stride;
 		m_kernel.set_stride(stride);
 		int numPatchesX = 1 + (int)Math.ceil((double)(2 * paddingX + m_inputDataWidth - filterWidth) / stride);
 		m_kernel.set_numPatchesX(numPatchesX);
@@ -128,29 +270,211 @@ public class ConvolutionalLayerRS extends LayerRS
 		m_activationDataBufferSize = numFilters * m_activationDataWidth * m_activationDataHeight;
 
 		m_filtersBufferSize = numFilters * filterWidth * filterHeight * m_inputDataNumChannels;
+		m_halfPrecisionFilters = halfPrecisionFilters;
 		m_biasesBufferSize = numFilters;
 
-		m_activationFunction = new ActivationFunction(rsContext, activationFunctionType, activationAlpha);
+		// Activation function is applied in the epilogue of the convolution kernel, so preactivations are never written to memory.
+		m_activationFunctionType = activationFunctionType;
+		m_kernel.set_activationFunctionType(activationFunctionType.ordinal());
+		m_kernel.set_activationAlpha(activationAlpha);
+		m_activationAlpha = activationAlpha;
+
+		allocateBuffers(rsContext, sharedBiasesBuffer);
+
+		m_winogradConvolution = WinogradConvolution.isSupported(filterWidth, filterHeight, stride) ?
+			new WinogradConvolution(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numFilters, paddingX, paddingY,
+				numPatchesX, numPatchesY, m_biasesBuffer, activationFunctionType, activationAlpha, halfPrecisionFilters) : null;
+		m_convolutionAlgorithm = chooseConvolutionAlgorithm();
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			createSpaceToDepthConvolution(rsContext);
+		}
 
-		allocateBuffers(rsContext);
+		if (sharedBiasesBuffer == null)
+		{
+			allocateActivationBuffers(rsContext);
+		}
 	}
 
 	/**
-	 * Allocates local buffers.
+	 * Allocates parameter buffers.
 	 * @param rsContext Renderscript context.
+	 * @param sharedBiasesBuffer Biases buffer of the strided layer to use instead of allocating one, or null.
 	 */
-	private void allocateBuffers(RenderScript rsContext)
+	private void allocateBuffers(RenderScript rsContext, @Nullable Allocation sharedBiasesBuffer)
 	{
-		Type.Builder tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
-		tb.setX(m_filtersBufferSize / 4);
-		m_filtersBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		Type.Builder filtersTb = new Type.Builder(rsContext, m_halfPrecisionFilters ? Element.F16_4(rsContext) : Element.F32_4(rsContext));
+		filtersTb.setX(m_filtersBufferSize / 4);
+		m_filtersBuffer = Allocation.createTyped(rsContext, filtersTb.create(), Allocation.USAGE_SCRIPT);
+
+		if (sharedBiasesBuffer != null)
+		{
+			m_biasesBuffer = sharedBiasesBuffer;
+			m_kernel.set_biasesBuffer(m_biasesBuffer);
+		}
+		else
+		{
+			Type.Builder tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+			tb.setX(m_biasesBufferSize / 4);
+			m_biasesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		}
+	}
+
+	/**
+	 * Creates space-to-depth convolution, binding input padding values to it if input data normalization was already folded into the layer.
+	 * @param rsContext Renderscript context.
+	 */
+	private void createSpaceToDepthConvolution(RenderScript rsContext)
+	{
+		m_spaceToDepthConvolution = new SpaceToDepthConvolution(rsContext, m_inputDataNumChannels, m_inputDataWidth, m_inputDataHeight, m_numFilters,
+			m_filterWidth, m_filterHeight, m_paddingX, m_paddingY, m_stride, m_activationDataWidth, m_activationDataHeight, m_biasesBuffer,
+			m_activationFunctionType, m_activationAlpha, m_halfPrecisionFilters);
+		m_spaceToDepthConvolution.setBatchSize(m_batchSize);
+		if (m_inputPaddingValuesBuffer != null)
+		{
+			m_spaceToDepthConvolution.setInputPaddingValues(m_inputPaddingValuesBuffer);
+		}
+	}
+
+	/**
+	 * Gets number of convolutional filters.
+	 */
+	public int getNumFilters()
+	{
+		return m_numFilters;
+	}
+
+	/**
+	 * Gets filters width.
+	 */
+	public int getFilterWidth()
+	{
+		return m_filterWidth;
+	}
+
+	/**
+	 * Gets filters height.
+	 */
+	public int getFilterHeight()
+	{
+		return m_filterHeight;
+	}
+
+	/**
+	 * Gets padding in dimension X.
+	 */
+	public int getPaddingX()
+	{
+		return m_paddingX;
+	}
+
+	/**
+	 * Gets padding in dimension Y.
+	 */
+	public int getPaddingY()
+	{
+		return m_paddingY;
+	}
+
+	/**
+	 * Gets stride for patching.
+	 */
+	public int getStride()
+	{
+		return m_stride;
+	}
+
+	/**
+	 * Gets algorithm used for convolution.
+	 */
+	@NonNull
+	public ConvolutionAlgorithm getConvolutionAlgorithm()
+	{
+		return m_convolutionAlgorithm;
+	}
+
+	/**
+	 * Checks whether layer supports convolution algorithm.
+	 * @param convolutionAlgorithm Algorithm to check.
+	 */
+	public boolean supportsConvolutionAlgorithm(@NonNull ConvolutionAlgorithm convolutionAlgorithm)
+	{
+		if (convolutionAlgorithm == ConvolutionAlgorithm.Winograd)
+		{
+			return m_winogradConvolution != null;
+		}
+		if (convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			return SpaceToDepthConvolution.isSupported(m_stride);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sets algorithm used for convolution. By default, Winograd convolution is used wherever it is supported, directly or after
+	 * space-to-depth rewrite of strided convolution. Filters are prepared
+	 * for the new algorithm, and activation buffers of the layer are reallocated for its scratch buffers, so it has to be set
+	 * before inference sessions of the network plan their buffers.
+	 * @param rsContext Renderscript context.
+	 * @param convolutionAlgorithm Algorithm to use.
+	 */
+	@WorkerThread
+	public void setConvolutionAlgorithm(@NonNull RenderScript rsContext, @NonNull ConvolutionAlgorithm convolutionAlgorithm)
+	{
+		if (!supportsConvolutionAlgorithm(convolutionAlgorithm))
+		{
+			throw new IllegalArgumentException("Convolution algorithm " + convolutionAlgorithm + " is not supported for this layer!");
+		}
+
+		if (convolutionAlgorithm != m_convolutionAlgorithm)
+		{
+			m_convolutionAlgorithm = convolutionAlgorithm;
+			if (convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth && m_spaceToDepthConvolution == null)
+			{
+				createSpaceToDepthConvolution(rsContext);
+			}
+			prepareFilters();
+			allocateActivationBuffers(rsContext);
+		}
+	}
+
+	/**
+	 * Chooses Winograd convolution wherever it is supported, since it needs 16 multiply-adds per 2x2 tile and channel instead of 36.
+	 * Strided convolution is rewritten by space-to-depth when filters rearranged into blocks are 3x3, like AlexNet's 11x11 filters
+	 * with stride 4, so that convolution with stride 1 uses Winograd convolution too.
+	 */
+	@NonNull
+	private ConvolutionAlgorithm chooseConvolutionAlgorithm()
+	{
+		if (supportsConvolutionAlgorithm(ConvolutionAlgorithm.Winograd))
+		{
+			return ConvolutionAlgorithm.Winograd;
+		}
+		if (SpaceToDepthConvolution.hasWinogradBlockFilters(m_filterWidth, m_filterHeight, m_stride))
+		{
+			return ConvolutionAlgorithm.SpaceToDepth;
+		}
 
-		tb.setX(m_biasesBufferSize / 4);
-		m_biasesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		return ConvolutionAlgorithm.Direct;
+	}
 
-		tb.setX(m_activationDataBufferSize / 4);
-		m_preactivationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
-		m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+	/**
+	 * Gets number of input channels for which filters are stored in the model.
+	 * Models don't contain filters for the 4th input channel of images, since we pad it with zeros.
+	 */
+	public int getModelFiltersNumChannels()
+	{
+		// TODO: revise when we support 4 channel images like ARGB.
+		return m_inputDataNumChannels == 4 ? 3 : m_inputDataNumChannels;
+	}
+
+	/**
+	 * Are filters kept in half precision.
+	 */
+	public boolean isHalfPrecisionFilters()
+	{
+		return m_halfPrecisionFilters;
 	}
 
 	/**
@@ -177,17 +501,38 @@ public class ConvolutionalLayerRS extends LayerRS
 	@WorkerThread
 	public void loadFilters(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
 	{
-		int bufferSizeToLoad = m_filtersBufferSize;
+		loadFilters(ModelReader.fromStream(modelStream, bigEndian));
+	}
 
-		if (m_inputDataNumChannels == 4)
+	/**
+	 * Loads filters from memory mapped model.
+	 * @param modelBuffer Model buffer, positioned at the filters and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadFilters(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadFilters(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads filters from model reader, chunk by chunk directly into allocation.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadFilters(@NonNull ModelReader modelReader) throws IOException
+	{
+		if (getModelFiltersNumChannels() < m_inputDataNumChannels)
+		{
+			// In this case model contains 1/4 smaller buffer, since we pad 4th channel with zeros.
+			modelReader.readPaddedToAllocation(m_filtersBuffer, m_filtersBufferSize);
+		}
+		else
 		{
-			// In this case we need to load 1/4 smaller buffer, since we will pad 4th channel with zeros.
-			// TODO: revise when we support 4 channel images like ARGB.
-			bufferSizeToLoad *= 0.75f;
+			modelReader.readToAllocation(m_filtersBuffer, m_filtersBufferSize);
 		}
 
-		float[] filtersBuffer = IOUtils.readFloatBufferFromStream(bufferSizeToLoad, modelStream, bigEndian);
-		loadFilters(filtersBuffer);
+		prepareFilters();
 	}
 
 	/**
@@ -207,14 +552,48 @@ public class ConvolutionalLayerRS extends LayerRS
 				paddedFiltersBuffer[i] = i % 4 == 3 ? 0.f : filtersBuffer[j++];
 			}
 
-			m_filtersBuffer.copyFrom(paddedFiltersBuffer);
+			copyToFiltersBuffer(paddedFiltersBuffer);
 		}
 		else
 		{
-			m_filtersBuffer.copyFrom(filtersBuffer);
+			copyToFiltersBuffer(filtersBuffer);
 		}
 
+		prepareFilters();
+	}
+
+	/**
+	 * Binds filters buffer to the kernel and prepares filters for the convolution algorithm, whenever filters are loaded or changed.
+	 */
+	private void prepareFilters()
+	{
 		m_kernel.set_filtersBuffer(m_filtersBuffer);
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Winograd)
+		{
+			m_winogradConvolution.transformFilters(m_filtersBuffer);
+		}
+		else if (m_convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			m_spaceToDepthConvolution.rearrangeFilters(m_filtersBuffer);
+		}
+	}
+
+	/**
+	 * Copies host filters into filters buffer, converting them to half precision if needed.
+	 * @param filtersBuffer Host filters buffer.
+	 */
+	private void copyToFiltersBuffer(@NonNull float[] filtersBuffer)
+	{
+		if (m_halfPrecisionFilters)
+		{
+			short[] halfFiltersBuffer = new short[filtersBuffer.length];
+			HalfUtils.floatsToHalfs(filtersBuffer, halfFiltersBuffer, filtersBuffer.length);
+			m_filtersBuffer.copyFrom(halfFiltersBuffer);
+		}
+		else
+		{
+			m_filtersBuffer.copyFrom(filtersBuffer);
+		}
 	}
 
 	/**
@@ -225,8 +604,29 @@ public class ConvolutionalLayerRS extends LayerRS
 	@WorkerThread
 	public void loadBiases(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
 	{
-		float[] biasesBuffer = IOUtils.readFloatBufferFromStream(m_biasesBufferSize, modelStream, bigEndian);
-		loadBiases(biasesBuffer);
+		loadBiases(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from memory mapped model.
+	 * @param modelBuffer Model buffer, positioned at the biases and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadBiases(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads biases from model reader, chunk by chunk directly into allocation.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadBiases(@NonNull ModelReader modelReader) throws IOException
+	{
+		modelReader.readToAllocation(m_biasesBuffer, m_biasesBufferSize);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
 	}
 
 	/**
@@ -241,26 +641,244 @@ public class ConvolutionalLayerRS extends LayerRS
 	}
 
 	/**
-	 * Does forward propagation through layer.
+	 * Gets buffers holding layer parameters in their final device layout, used for caching prepared models.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@NonNull
+	public Allocation[] getPreparedParameterBuffers()
+	{
+		return new Allocation[] { m_filtersBuffer, m_biasesBuffer };
+	}
+
+	/**
+	 * Binds parameter buffers to the kernel, after their contents were loaded directly from prepared model cache,
+	 * and prepares filters for the convolution algorithm.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	public void onPreparedParametersLoaded()
+	{
+		prepareFilters();
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Gets activation function applied by the layer.
+	 */
+	@NonNull
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Scales filters and biases of the layer in place, used for folding other layers into it.
+	 * @param rsContext Renderscript context.
+	 * @param filtersScale Scale of the filters.
+	 * @param biasesScale Scale of the biases.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void scaleParameters(@NonNull RenderScript rsContext, float filtersScale, float biasesScale)
+	{
+		if (filtersScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_filtersBuffer, filtersScale);
+			prepareFilters();
+		}
+		if (biasesScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_biasesBuffer, biasesScale);
+		}
+	}
+
+	/**
+	 * Folds normalization of input data into filters and biases, so that the layer takes unnormalized input data. Filters are divided
+	 * by standard deviations of their channels, and biases take away filtered means. Normalized input data is padded with zeros, which
+	 * are means of unnormalized input data, so input data is padded with means from then on to keep the border patches exact.
+	 * @param rsContext Renderscript context.
+	 * @param channelMeans Mean per input channel.
+	 * @param channelStDevs Standard deviation per input channel.
 	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
 	@WorkerThread
+	public void foldInputNormalization(@NonNull RenderScript rsContext, @NonNull float[] channelMeans, @NonNull float[] channelStDevs)
+	{
+		float[] filtersBuffer = new float[m_filtersBufferSize];
+		if (m_halfPrecisionFilters)
+		{
+			short[] halfFiltersBuffer = new short[m_filtersBufferSize];
+			m_filtersBuffer.copyTo(halfFiltersBuffer);
+			for (int i = 0; i < m_filtersBufferSize; ++i)
+			{
+				filtersBuffer[i] = HalfUtils.halfToFloat(halfFiltersBuffer[i]);
+			}
+		}
+		else
+		{
+			m_filtersBuffer.copyTo(filtersBuffer);
+		}
+		float[] biasesBuffer = new float[m_biasesBufferSize];
+		m_biasesBuffer.copyTo(biasesBuffer);
+
+		int filterSize = m_filtersBufferSize / m_numFilters;
+		for (int filterIndex = 0; filterIndex < m_numFilters; ++filterIndex)
+		{
+			for (int pixelOffset = filterIndex * filterSize; pixelOffset < (filterIndex + 1) * filterSize; pixelOffset += m_inputDataNumChannels)
+			{
+				for (int channel = 0; channel < m_inputDataNumChannels; ++channel)
+				{
+					filtersBuffer[pixelOffset + channel] /= channelStDevs[channel];
+					biasesBuffer[filterIndex] -= filtersBuffer[pixelOffset + channel] * channelMeans[channel];
+				}
+			}
+		}
+
+		copyToFiltersBuffer(filtersBuffer);
+		m_biasesBuffer.copyFrom(biasesBuffer);
+
+		Type.Builder tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+		tb.setX(m_inputDataNumChannels / 4);
+		m_inputPaddingValuesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		m_inputPaddingValuesBuffer.copyFrom(channelMeans);
+		m_kernel.set_inputPaddingValuesBuffer(m_inputPaddingValuesBuffer);
+		m_kernel.set_padWithInputValues(true);
+		if (m_winogradConvolution != null)
+		{
+			m_winogradConvolution.setInputPaddingValues(m_inputPaddingValuesBuffer);
+		}
+		if (m_spaceToDepthConvolution != null)
+		{
+			m_spaceToDepthConvolution.setInputPaddingValues(m_inputPaddingValuesBuffer);
+		}
+
+		prepareFilters();
+	}
+
+	/**
+	 * Gets types of device buffers which layer uses for forward propagation of all samples in the batch,
+	 * with scratch buffers of the convolution algorithm after activation buffer.
+	 * @param rsContext Renderscript context.
+	 * @return Buffer types.
+	 */
+	@NonNull
 	@Override
-	public void doForwardProp()
+	public Type[] getActivationBufferTypes(@NonNull RenderScript rsContext)
 	{
-		calculatePreactivations();
-		calculateActivations();
+		Type[] scratchBufferTypes = null;
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Winograd)
+		{
+			scratchBufferTypes = m_winogradConvolution.getScratchBufferTypes(rsContext, m_batchSize);
+		}
+		else if (m_convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			scratchBufferTypes = m_spaceToDepthConvolution.getScratchBufferTypes(rsContext, m_batchSize);
+		}
+
+		if (scratchBufferTypes != null)
+		{
+			Type[] bufferTypes = new Type[1 + scratchBufferTypes.length];
+			bufferTypes[0] = createActivationBufferType(rsContext);
+			System.arraycopy(scratchBufferTypes, 0, bufferTypes, 1, scratchBufferTypes.length);
+
+			return bufferTypes;
+		}
+
+		return super.getActivationBufferTypes(rsContext);
 	}
 
+	/**
+	 * Binds activation buffer and scratch buffers of the convolution algorithm.
+	 * @param buffers Buffers of types and in order returned by getActivationBufferTypes.
+	 */
+	@Override
+	protected void bindActivationBuffers(@NonNull Allocation[] buffers)
+	{
+		m_activationDataBuffer = buffers[0];
+		m_scratchBuffers = Arrays.copyOfRange(buffers, 1, buffers.length);
+	}
+
+	/**
+	 * Sets number of samples propagated through layer at once, together with the layer with stride 1 of space-to-depth convolution.
+	 * @param batchSize Number of samples.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@Override
+	public void setBatchSize(int batchSize)
+	{
+		super.setBatchSize(batchSize);
+		if (m_spaceToDepthConvolution != null)
+		{
+			m_spaceToDepthConvolution.setBatchSize(batchSize);
+		}
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 */
 	@WorkerThread
-	private void calculatePreactivations()
+	@Override
+	public void doForwardProp()
 	{
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.Winograd)
+		{
+			m_winogradConvolution.convolve(m_inputDataBuffer, m_scratchBuffers, m_activationDataBuffer);
+			return;
+		}
+		if (m_convolutionAlgorithm == ConvolutionAlgorithm.SpaceToDepth)
+		{
+			m_spaceToDepthConvolution.convolve(m_inputDataBuffer, m_scratchBuffers, m_activationDataBuffer);
+			return;
+		}
+
 		m_kernel.set_inputDataBuffer(m_inputDataBuffer);
-		m_kernel.forEach_propagate(m_preactivationDataBuffer);
+		if (m_halfPrecisionFilters)
+		{
+			m_kernel.forEach_propagateHalf(m_activationDataBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_propagate(m_activationDataBuffer);
+		}
 	}
 
+	/**
+	 * Checks whether max pool layer which takes activations of this layer as input can be fused into it.
+	 * @param maxPoolLayer Max pool layer.
+	 * @return True if max pool layer's input has the shape of this layer's activations.
+	 */
+	public boolean canFuseMaxPool(@NonNull MaxPoolLayerRS maxPoolLayer)
+	{
+		return maxPoolLayer.m_inputDataNumChannels == m_activationNumChannels && maxPoolLayer.m_inputDataWidth == m_activationDataWidth &&
+			maxPoolLayer.m_inputDataHeight == m_activationDataHeight;
+	}
+
+	/**
+	 * Does forward propagation through layer and the max pool layer after it, in one pass. Each pooling unit convolves its patches
+	 * and pools them before writing, so full resolution activations of this layer are never written to memory.
+	 * Patches shared by overlapping pooling units are convolved once per unit.
+	 * @param maxPoolLayer Max pool layer which takes activations of this layer as input.
+	 * @param pooledActivationDataBuffer Activation data buffer of the max pool layer.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
 	@WorkerThread
-	private void calculateActivations()
+	public void doForwardPropFusedWithMaxPool(@NonNull MaxPoolLayerRS maxPoolLayer, @NonNull Allocation pooledActivationDataBuffer)
 	{
-		m_activationDataBuffer = m_activationFunction.applyActivation(m_preactivationDataBuffer, m_activationDataBuffer, m_activationDataBufferSize);
+		m_kernel.set_poolUnitWidth(maxPoolLayer.getUnitWidth());
+		m_kernel.set_poolUnitHeight(maxPoolLayer.getUnitHeight());
+		m_kernel.set_poolPaddingX(maxPoolLayer.getPaddingX());
+		m_kernel.set_poolPaddingY(maxPoolLayer.getPaddingY());
+		m_kernel.set_poolUnitStride(maxPoolLayer.getUnitStride());
+		m_kernel.set_numPoolUnitsX(maxPoolLayer.getActivationDataWidth());
+		m_kernel.set_numPoolUnitsY(maxPoolLayer.getActivationDataHeight());
+
+		m_kernel.set_inputDataBuffer(m_inputDataBuffer);
+		if (m_halfPrecisionFilters)
+		{
+			m_kernel.forEach_propagatePooledHalf(pooledActivationDataBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_propagatePooled(pooledActivationDataBuffer);
+		}
 	}
 }
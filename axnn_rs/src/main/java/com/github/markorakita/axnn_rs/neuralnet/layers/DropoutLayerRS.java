@@ -1,9 +1,6 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
-import android.renderscript.Allocation;
-import android.renderscript.Element;
 import android.renderscript.RenderScript;
-import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
@@ -19,6 +16,11 @@ public class DropoutLayerRS extends LayerRS
      */
     private final ScriptC_dropoutlayer m_kernel;
 
+    /**
+     * Probability to drop some neuron activation.
+     */
+    private final float m_dropProbability;
+
     /**
      * Constructor.
      * @param rsContext Renderscript context.
@@ -35,20 +37,18 @@ public class DropoutLayerRS extends LayerRS
         m_inputDataWidth = m_activationDataWidth = inputDataWidth;
         m_inputDataHeight = m_activationDataHeight = inputDataHeight;
         m_inputDataBufferSize = m_activationDataBufferSize = inputNumChannels * inputDataWidth * inputDataHeight;
+        m_dropProbability = dropProbability;
         m_kernel.set_dropProbability(dropProbability);
 
-        allocateBuffers(rsContext);
+        allocateActivationBuffers(rsContext);
     }
 
     /**
-     * Allocates local buffers.
-     * @param rsContext Renderscript context.
+     * Gets probability to drop some neuron activation.
      */
-    private void allocateBuffers(RenderScript rsContext)
+    public float getDropProbability()
     {
-        Type.Builder tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
-        tb.setX(m_activationDataBufferSize / 4);
-        m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+        return m_dropProbability;
     }
 
     /**
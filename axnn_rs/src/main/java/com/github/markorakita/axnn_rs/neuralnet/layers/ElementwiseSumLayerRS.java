@@ -0,0 +1,90 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.RenderScript;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Elementwise sum layer adds activations of multiple layers of the same shape, used for residual connections
+ * where output of a block is added to its input.
+ */
+public class ElementwiseSumLayerRS extends LayerRS
+{
+	/**
+	 * Elementwise sum layer RS kernel.
+	 */
+	private final ScriptC_elementwisesumlayer m_kernel;
+
+	/**
+	 * Number of inputs which are summed.
+	 */
+	private final int m_numInputs;
+
+	/**
+	 * Input data buffers, in order of layer inputs.
+	 */
+	private Allocation[] m_inputDataBuffers;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels, same for all inputs.
+	 * @param inputDataWidth Width of input data, same for all inputs.
+	 * @param inputDataHeight Height of input data, same for all inputs.
+	 * @param numInputs Number of inputs which are summed, at least two.
+	 */
+	public ElementwiseSumLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numInputs)
+	{
+		m_kernel = new ScriptC_elementwisesumlayer(rsContext);
+		m_numInputs = numInputs;
+
+		m_inputDataNumChannels = m_activationNumChannels = inputNumChannels;
+		m_inputDataWidth = m_activationDataWidth = inputDataWidth;
+		m_inputDataHeight = m_activationDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_activationDataBufferSize = inputNumChannels * inputDataWidth * inputDataHeight;
+
+		allocateActivationBuffers(rsContext);
+	}
+
+	/**
+	 * Gets number of inputs which are summed.
+	 * @return Number of inputs.
+	 */
+	@Override
+	public int getNumInputs()
+	{
+		return m_numInputs;
+	}
+
+	/**
+	 * Sets input data buffers, in order of layer inputs.
+	 * @param inputDataBuffers Input data buffers to set.
+	 */
+	@Override
+	public void setInputDataBuffers(@NonNull Allocation[] inputDataBuffers)
+	{
+		super.setInputDataBuffers(inputDataBuffers);
+		m_inputDataBuffers = inputDataBuffers;
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 */
+	@WorkerThread
+	@Override
+	public void doForwardProp()
+	{
+		m_kernel.set_firstInputDataBuffer(m_inputDataBuffers[0]);
+		m_kernel.set_inputDataBuffer(m_inputDataBuffers[1]);
+		m_kernel.forEach_addInputs(m_activationDataBuffer);
+
+		m_kernel.set_activationDataBuffer(m_activationDataBuffer);
+		for (int inputIndex = 2; inputIndex < m_inputDataBuffers.length; ++inputIndex)
+		{
+			m_kernel.set_inputDataBuffer(m_inputDataBuffers[inputIndex]);
+			m_kernel.forEach_accumulateInput(m_activationDataBuffer);
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.github.markorakita.axnn_rs.neuralnet.layers;
 
 import android.renderscript.RenderScript;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 
 public class FeaturesInputLayerRS extends InputLayerRS
@@ -34,6 +35,31 @@ public class FeaturesInputLayerRS extends InputLayerRS
      */
     public void loadFeatures(@NonNull float[] features)
     {
-        m_unnormalizedInputDataBuffer = features;
+        loadFeatures(features, 0);
+    }
+
+    /**
+     * Loads input features as one sample of the batch.
+     * @param features Input features.
+     * @param sampleIndex Index of the sample in the batch.
+     */
+    public void loadFeatures(@NonNull float[] features, int sampleIndex)
+    {
+        System.arraycopy(features, 0, m_unnormalizedInputDataBuffer, sampleIndex * m_activationDataBufferSize, m_activationDataBufferSize);
+    }
+
+    /**
+     * Prepares input features into normalized input data of one sample of the batch, which can later be uploaded by calling loadPreparedInputData.
+     * Doesn't change the layer state, so features can be prepared from any thread while the network is busy with other inference.
+     * @param features Input features.
+     * @param inputData Input data buffer of the batch.
+     * @param sampleIndex Index of the sample in the batch.
+     */
+    @AnyThread
+    public void prepareFeatures(@NonNull float[] features, @NonNull float[] inputData, int sampleIndex)
+    {
+        int sampleOffset = sampleIndex * m_activationDataBufferSize;
+        System.arraycopy(features, 0, inputData, sampleOffset, m_activationDataBufferSize);
+        normalizeInputData(inputData, sampleOffset);
     }
 }
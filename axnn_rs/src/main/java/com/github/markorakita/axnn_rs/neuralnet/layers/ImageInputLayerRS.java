@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.renderscript.RenderScript;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 
 public class ImageInputLayerRS extends InputLayerRS
@@ -44,6 +45,59 @@ public class ImageInputLayerRS extends InputLayerRS
      * @return True if image is successfully loaded, false otherwise.
      */
     public boolean loadImage(@NonNull Bitmap image)
+    {
+        return loadImage(image, 0);
+    }
+
+    /**
+     * Loads input image as one sample of the batch.
+     * @param image Input image.
+     * @param sampleIndex Index of the sample in the batch.
+     * @return True if image is successfully loaded, false otherwise.
+     */
+    public boolean loadImage(@NonNull Bitmap image, int sampleIndex)
+    {
+        return extractImageData(image, m_unnormalizedInputDataBuffer, sampleIndex * m_activationDataBufferSize);
+    }
+
+    /**
+     * Prepares input image into normalized input data, which can later be uploaded by calling loadPreparedInputData.
+     * Doesn't change the layer state, so images can be prepared from any thread while the network is busy with other inference.
+     * @param image Input image.
+     * @param inputData Input data buffer, of at least getActivationDataBufferSize() size.
+     * @return True if image is successfully prepared, false otherwise.
+     */
+    @AnyThread
+    public boolean prepareImage(@NonNull Bitmap image, @NonNull float[] inputData)
+    {
+        return prepareImage(image, inputData, 0);
+    }
+
+    /**
+     * Prepares input image into normalized input data of one sample of the batch.
+     * @param image Input image.
+     * @param inputData Input data buffer of the batch.
+     * @param sampleIndex Index of the sample in the batch.
+     * @return True if image is successfully prepared, false otherwise.
+     */
+    @AnyThread
+    public boolean prepareImage(@NonNull Bitmap image, @NonNull float[] inputData, int sampleIndex)
+    {
+        int sampleOffset = sampleIndex * m_activationDataBufferSize;
+        if (!extractImageData(image, inputData, sampleOffset))
+        {
+            return false;
+        }
+
+        normalizeInputData(inputData, sampleOffset);
+
+        return true;
+    }
+
+    /**
+     * Resizes input image and extracts its center patch into input data buffer, at given offset.
+     */
+    private boolean extractImageData(@NonNull Bitmap image, @NonNull float[] inputData, int sampleOffset)
     {
         // Calculating dimensions for resize, so that resized image fits into rectangle defined by m_inputDataHeight and m_inputDataWidth.
         int resizedWidth, resizedHeight;
@@ -68,22 +122,21 @@ public class ImageInputLayerRS extends InputLayerRS
         resizedImage.recycle();
 
         // Cropping input image center patch from resized image.
-        m_unnormalizedInputDataBuffer = new float[m_activationDataBufferSize];
         int cropX = (resizedWidth - m_inputDataWidth) / 2;
         int cropY = (resizedHeight - m_inputDataHeight) / 2;
         int endRow = cropY + m_inputDataHeight;
         int endCol = cropX + m_inputDataWidth;
         for (int row = cropY; row < endRow; ++row)
         {
-            int rowOffset = (row - cropY) * m_inputDataWidth * m_inputDataNumChannels;
+            int rowOffset = sampleOffset + (row - cropY) * m_inputDataWidth * m_inputDataNumChannels;
             for (int col = cropX; col < endCol; ++col)
             {
                 int colOffset = rowOffset + (col - cropX) * m_inputDataNumChannels;
                 int pixel = resizedImagePixels[row * resizedWidth + col];
-                m_unnormalizedInputDataBuffer[colOffset] = Color.red(pixel);
-                m_unnormalizedInputDataBuffer[colOffset + 1] = Color.green(pixel);
-                m_unnormalizedInputDataBuffer[colOffset + 2] = Color.blue(pixel);
-                m_unnormalizedInputDataBuffer[colOffset + 3] = 0.f;
+                inputData[colOffset] = Color.red(pixel);
+                inputData[colOffset + 1] = Color.green(pixel);
+                inputData[colOffset + 2] = Color.blue(pixel);
+                inputData[colOffset + 3] = 0.f;
             }
         }
 
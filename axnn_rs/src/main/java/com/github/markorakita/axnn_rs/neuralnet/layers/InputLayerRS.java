@@ -1,11 +1,12 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
-import android.renderscript.Allocation;
-import android.renderscript.Element;
 import android.renderscript.RenderScript;
-import android.renderscript.Type;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.WorkerThread;
 
 /**
  * Input layer loads data for the network propagation.
@@ -13,7 +14,7 @@ import androidx.annotation.NonNull;
 public class InputLayerRS extends LayerRS
 {
 	/**
-	 * Input data before normalization.
+	 * Input data before normalization, of all samples in the batch.
 	 */
 	protected float[] m_unnormalizedInputDataBuffer;
 
@@ -48,19 +49,17 @@ public class InputLayerRS extends LayerRS
 
 		m_normalizeInputData = false;
 
-		// Allocating activation data buffer.
-		Type.Builder tb;
-		if (m_activationDataBufferSize % 4 == 0)
-		{
-			tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
-			tb.setX(m_activationDataBufferSize / 4);
-		}
-		else
-		{
-			tb = new Type.Builder(rsContext, Element.F32(rsContext));
-			tb.setX(m_activationDataBufferSize);
-		}
-		m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		allocateHostBuffers();
+		allocateActivationBuffers(rsContext);
+	}
+
+	/**
+	 * Allocates host buffer holding input data of all samples in the batch.
+	 */
+	@Override
+	protected void allocateHostBuffers()
+	{
+		m_unnormalizedInputDataBuffer = new float[m_batchSize * m_activationDataBufferSize];
 	}
 
 	/**
@@ -82,23 +81,101 @@ public class InputLayerRS extends LayerRS
 		m_inputDataStDevs = inputDataStDevs;
 	}
 
+	/**
+	 * Input layer loads its data from host, so it doesn't take any layers as inputs.
+	 * @return Number of inputs.
+	 */
+	@Override
+	public int getNumInputs()
+	{
+		return 0;
+	}
+
 	@Override
 	public void doForwardProp()
 	{
 		if (m_normalizeInputData)
 		{
-			normalizeInputs();
+			for (int sampleOffset = 0; sampleOffset < m_unnormalizedInputDataBuffer.length; sampleOffset += m_activationDataBufferSize)
+			{
+				normalizeInputData(m_unnormalizedInputDataBuffer, sampleOffset);
+			}
 		}
 
 		m_activationDataBuffer.copyFrom(m_unnormalizedInputDataBuffer);
 	}
 
-	private void normalizeInputs()
+	/**
+	 * Normalizes input data of one sample in place, if this layer normalizes input data. Doesn't change the layer state,
+	 * so input data can be prepared from any thread while the network is busy with other inference.
+	 * @param inputData Input data buffer.
+	 * @param sampleOffset Offset of the sample in input data buffer.
+	 */
+	@AnyThread
+	public void normalizeInputData(@NonNull float[] inputData, int sampleOffset)
 	{
-		for (int i = 0; i < m_unnormalizedInputDataBuffer.length; ++i)
+		if (!m_normalizeInputData)
 		{
-			m_unnormalizedInputDataBuffer[i] = (m_unnormalizedInputDataBuffer[i] - m_inputDataMeans[i % m_inputDataMeans.length]) /
-											   m_inputDataStDevs[i % m_inputDataStDevs.length];
+			return;
 		}
+
+		// Channels without given mean and standard deviation (like zero padded 4th channel of images) are left as they are.
+		int numNormalizedChannels = Math.min(m_activationNumChannels, m_inputDataMeans.length);
+		int sampleEnd = sampleOffset + m_activationDataBufferSize;
+		for (int pixelOffset = sampleOffset; pixelOffset < sampleEnd; pixelOffset += m_activationNumChannels)
+		{
+			for (int channel = 0; channel < numNormalizedChannels; ++channel)
+			{
+				inputData[pixelOffset + channel] = (inputData[pixelOffset + channel] - m_inputDataMeans[channel]) / m_inputDataStDevs[channel];
+			}
+		}
+	}
+
+	/**
+	 * Does this layer normalize input data.
+	 */
+	@AnyThread
+	public boolean isNormalizingInputData()
+	{
+		return m_normalizeInputData;
+	}
+
+	/**
+	 * Gets mean per channel on which input data is normalized.
+	 */
+	@Nullable
+	public float[] getInputDataMeans()
+	{
+		return m_inputDataMeans;
+	}
+
+	/**
+	 * Gets standard deviation per channel on which input data is normalized.
+	 */
+	@Nullable
+	public float[] getInputDataStDevs()
+	{
+		return m_inputDataStDevs;
+	}
+
+	/**
+	 * Stops normalizing input data, once normalization is folded into parameters of the layers which read input data,
+	 * so input data is just copied to device.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void removeInputDataNormalization()
+	{
+		m_normalizeInputData = false;
+	}
+
+	/**
+	 * Uploads already normalized input data of all samples in the batch, instead of doing forward propagation.
+	 * @param preparedInputData Normalized input data, of the same size as the batch.
+	 */
+	@WorkerThread
+	public void loadPreparedInputData(@NonNull float[] preparedInputData)
+	{
+		m_activationDataBuffer.copyFrom(preparedInputData);
 	}
 }
@@ -1,8 +1,12 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
 import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
 
 /**
  * Abstract neural network layer.
@@ -57,10 +61,22 @@ public abstract class LayerRS
 	protected Allocation m_activationDataBuffer;
 
 	/**
-	 * Activations data buffer size.
+	 * Activations data buffer size, per sample.
 	 */
 	protected int m_activationDataBufferSize;
 
+	/**
+	 * Number of samples propagated through layer at once.
+	 *
+	 * Input and activation buffers hold data of all samples one after another.
+	 */
+	protected int m_batchSize = 1;
+
+	/**
+	 * Device buffers allocated by the layer itself, null when buffers are assigned by activation memory planner.
+	 */
+	private Allocation[] m_allocatedActivationBuffers;
+
 	/**
 	 * Sets input data buffer.
 	 * @param inputDataBuffer Input data buffer to set.
@@ -70,6 +86,24 @@ public abstract class LayerRS
 		m_inputDataBuffer = inputDataBuffer;
 	}
 
+	/**
+	 * Sets input data buffers, in order of layer inputs. Layers with single input use the first one.
+	 * @param inputDataBuffers Input data buffers to set.
+	 */
+	public void setInputDataBuffers(@NonNull Allocation[] inputDataBuffers)
+	{
+		setInputDataBuffer(inputDataBuffers[0]);
+	}
+
+	/**
+	 * Gets number of layers whose activations this layer takes as inputs.
+	 * @return Number of inputs.
+	 */
+	public int getNumInputs()
+	{
+		return 1;
+	}
+
 	/**
 	 * Gets number of activation channels.
 	 * @return Number of activation channels.
@@ -107,7 +141,7 @@ public abstract class LayerRS
 	}
 
 	/**
-	 * Gets activation buffer size.
+	 * Gets activation buffer size, per sample.
 	 * @return Activation buffer size.
 	 */
 	public int getActivationDataBufferSize()
@@ -115,6 +149,140 @@ public abstract class LayerRS
 		return m_activationDataBufferSize;
 	}
 
+	/**
+	 * Gets number of samples propagated through layer at once.
+	 */
+	public int getBatchSize()
+	{
+		return m_batchSize;
+	}
+
+	/**
+	 * Sets number of samples propagated through layer at once, reallocating activation buffers to hold all of them.
+	 * @param rsContext Renderscript context.
+	 * @param batchSize Number of samples.
+	 */
+	public void setBatchSize(@NonNull RenderScript rsContext, int batchSize)
+	{
+		if (batchSize != m_batchSize)
+		{
+			setBatchSize(batchSize);
+			allocateActivationBuffers(rsContext);
+		}
+	}
+
+	/**
+	 * Sets number of samples propagated through layer at once, without allocating device activation buffers.
+	 * They have to be assigned afterwards through setActivationBuffers, which is done by activation memory planner.
+	 * @param batchSize Number of samples.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize != m_batchSize)
+		{
+			m_batchSize = batchSize;
+			allocateHostBuffers();
+		}
+	}
+
+	/**
+	 * Gets types of device buffers which layer uses for forward propagation of all samples in the batch.
+	 * First one is activation buffer, which is read by the next layer, and others are scratch buffers used only while this layer propagates.
+	 * @param rsContext Renderscript context.
+	 * @return Buffer types.
+	 */
+	@NonNull
+	public Type[] getActivationBufferTypes(@NonNull RenderScript rsContext)
+	{
+		return new Type[] { createActivationBufferType(rsContext) };
+	}
+
+	/**
+	 * Sets device buffers which layer uses for forward propagation, used by activation memory planner to place buffers of
+	 * different layers into shared memory. Buffers allocated by the layer itself are released.
+	 * @param buffers Buffers of types and in order returned by getActivationBufferTypes.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	public void setActivationBuffers(@NonNull Allocation[] buffers)
+	{
+		destroyAllocatedActivationBuffers();
+		bindActivationBuffers(buffers);
+	}
+
+	/**
+	 * Creates type of the activation buffer which holds activations of all samples in the batch,
+	 * vectorized when activations of each sample can be read four by four.
+	 * @param rsContext Renderscript context.
+	 */
+	@NonNull
+	protected Type createActivationBufferType(@NonNull RenderScript rsContext)
+	{
+		Type.Builder tb;
+		if (m_activationDataBufferSize % 4 == 0)
+		{
+			tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+			tb.setX(m_batchSize * m_activationDataBufferSize / 4);
+		}
+		else
+		{
+			tb = new Type.Builder(rsContext, Element.F32(rsContext));
+			tb.setX(m_batchSize * m_activationDataBufferSize);
+		}
+
+		return tb.create();
+	}
+
+	/**
+	 * Allocates host buffers holding data of all samples in the batch. Layers which keep their data only on device don't have any.
+	 */
+	protected void allocateHostBuffers()
+	{
+	}
+
+	/**
+	 * Allocates device buffers holding activations of all samples in the batch.
+	 * @param rsContext Renderscript context.
+	 */
+	protected void allocateActivationBuffers(@NonNull RenderScript rsContext)
+	{
+		destroyAllocatedActivationBuffers();
+
+		Type[] bufferTypes = getActivationBufferTypes(rsContext);
+		Allocation[] buffers = new Allocation[bufferTypes.length];
+		for (int i = 0; i < bufferTypes.length; ++i)
+		{
+			buffers[i] = Allocation.createTyped(rsContext, bufferTypes[i], Allocation.USAGE_SCRIPT);
+		}
+
+		m_allocatedActivationBuffers = buffers;
+		bindActivationBuffers(buffers);
+	}
+
+	/**
+	 * Binds device buffers which layer uses for forward propagation.
+	 * @param buffers Buffers of types and in order returned by getActivationBufferTypes.
+	 */
+	protected void bindActivationBuffers(@NonNull Allocation[] buffers)
+	{
+		m_activationDataBuffer = buffers[0];
+	}
+
+	/**
+	 * Destroys device buffers allocated by the layer itself, if there are any.
+	 */
+	private void destroyAllocatedActivationBuffers()
+	{
+		if (m_allocatedActivationBuffers != null)
+		{
+			for (Allocation buffer : m_allocatedActivationBuffers)
+			{
+				buffer.destroy();
+			}
+			m_allocatedActivationBuffers = null;
+		}
+	}
+
 	/**
 	 * Does forward propagation through layer.
 	 */
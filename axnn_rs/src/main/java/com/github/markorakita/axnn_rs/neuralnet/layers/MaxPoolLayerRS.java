@@ -1,9 +1,6 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
-import android.renderscript.Allocation;
-import android.renderscript.Element;
 import android.renderscript.RenderScript;
-import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
@@ -19,6 +16,31 @@ public class MaxPoolLayerRS extends LayerRS
 	 */
 	private final ScriptC_maxpoollayer m_kernel;
 
+	/**
+	 * Width of the pooling unit.
+	 */
+	private final int m_unitWidth;
+
+	/**
+	 * Height of the pooling unit.
+	 */
+	private final int m_unitHeight;
+
+	/**
+	 * Padding in dimension X.
+	 */
+	private final int m_paddingX;
+
+	/**
+	 * Padding in dimension Y.
+	 */
+	private final int m_paddingY;
+
+	/**
+	 * Stride of the pooling unit.
+	 */
+	private final int m_unitStride;
+
 	/**
 	 * Constructor.
 	 * @param rsContext Renderscript context.
@@ -44,6 +66,11 @@ public class MaxPoolLayerRS extends LayerRS
 		m_kernel.set_inputDataHeight(inputDataHeight);
 		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
 
+		m_unitWidth = unitWidth;
+		m_unitHeight = unitHeight;
+		m_paddingX = paddingX;
+		m_paddingY = paddingY;
+		m_unitStride = unitStride;
 		m_kernel.set_unitWidth(unitWidth);
 		m_kernel.set_unitHeight(unitHeight);
 		m_kernel.set_paddingX(paddingX);
@@ -54,20 +81,50 @@ public class MaxPoolLayerRS extends LayerRS
 		m_activationDataWidth = 1 + (int)Math.ceil((double)(paddingX + m_inputDataWidth - unitWidth) / unitStride);
 		m_kernel.set_numUnitsX(m_activationDataWidth);
 		m_activationDataHeight = 1 + (int)Math.ceil((double)(paddingY + m_inputDataHeight - unitHeight) / unitStride);
+		m_kernel.set_numUnitsY(m_activationDataHeight);
 		m_activationDataBufferSize = m_inputDataNumChannels * m_activationDataWidth * m_activationDataHeight;
 
-		allocateBuffers(rsContext);
+		allocateActivationBuffers(rsContext);
 	}
 
 	/**
-	 * Allocates local buffers.
-	 * @param rsContext Renderscript context.
+	 * Gets width of the pooling unit.
+	 */
+	public int getUnitWidth()
+	{
+		return m_unitWidth;
+	}
+
+	/**
+	 * Gets height of the pooling unit.
+	 */
+	public int getUnitHeight()
+	{
+		return m_unitHeight;
+	}
+
+	/**
+	 * Gets padding in dimension X.
+	 */
+	public int getPaddingX()
+	{
+		return m_paddingX;
+	}
+
+	/**
+	 * Gets padding in dimension Y.
+	 */
+	public int getPaddingY()
+	{
+		return m_paddingY;
+	}
+
+	/**
+	 * Gets stride of the pooling unit.
 	 */
-	private void allocateBuffers(RenderScript rsContext)
+	public int getUnitStride()
 	{
-		Type.Builder tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
-		tb.setX(m_activationDataBufferSize / 4);
-		m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		return m_unitStride;
 	}
 
 	/**
@@ -1,32 +1,35 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
+import android.renderscript.Allocation;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.NonNull;
+
+import com.github.markorakita.axnn_rs.neuralnet.LossFunctionType;
+
 /**
  * Output layer, outputs predicted class and prediction probabilities.
  */
 public class OutputLayerRS extends LayerRS
 {
-    /**
-     * Supported loss function types.
-     */
-    public enum LossFunctionType
-    {
-        LogisticRegression,
-
-        // With Cross Entropy loss we always expect that SoftMax layer is added to the network previous to this Output layer.
-        CrossEntropy;
-    }
-
     private static final float c_defaultClassificationThreshold = 0.5f;
 
     private final LossFunctionType m_lossFunctionType;
 
     private final float m_classificationThreshold;
 
-    private final float[] m_hostInputDataBuffer;
+    private float[] m_hostInputDataBuffer;
 
-    private int m_predictedClass;
+    /**
+     * Predicted class of each sample in the batch.
+     */
+    private int[] m_predictedClasses;
 
-    private float m_predictionProbability;
+    /**
+     * Prediction probability of each sample in the batch.
+     */
+    private float[] m_predictionProbabilities;
 
     /**
      * Constructor.
@@ -51,7 +54,38 @@ public class OutputLayerRS extends LayerRS
         m_lossFunctionType = lossFunctionType;
         m_classificationThreshold = classificationThreshold > 0.f ? classificationThreshold : c_defaultClassificationThreshold;
 
-        m_hostInputDataBuffer = new float[m_inputDataBufferSize];
+        allocateHostBuffers();
+    }
+
+    /**
+     * Output layer keeps activations only on host, so it doesn't use any device buffers.
+     * @param rsContext Renderscript context.
+     */
+    @NonNull
+    @Override
+    public Type[] getActivationBufferTypes(@NonNull RenderScript rsContext)
+    {
+        return new Type[0];
+    }
+
+    /**
+     * Output layer keeps activations only on host, so there are no device buffers to bind.
+     * @param buffers Buffers, none expected.
+     */
+    @Override
+    protected void bindActivationBuffers(@NonNull Allocation[] buffers)
+    {
+    }
+
+    /**
+     * Allocates host buffers for all samples in the batch.
+     */
+    @Override
+    protected void allocateHostBuffers()
+    {
+        m_hostInputDataBuffer = new float[m_batchSize * m_inputDataBufferSize];
+        m_predictedClasses = new int[m_batchSize];
+        m_predictionProbabilities = new float[m_batchSize];
     }
 
     /**
@@ -59,7 +93,16 @@ public class OutputLayerRS extends LayerRS
      */
     public int getPredictedClass()
     {
-        return m_predictedClass;
+        return getPredictedClass(0);
+    }
+
+    /**
+     * Gets predicted class of the sample in the batch.
+     * @param sampleIndex Index of the sample in the batch.
+     */
+    public int getPredictedClass(int sampleIndex)
+    {
+        return m_predictedClasses[sampleIndex];
     }
 
     /**
@@ -67,7 +110,16 @@ public class OutputLayerRS extends LayerRS
      */
     public float getPredictionProbability()
     {
-        return m_predictionProbability;
+        return getPredictionProbability(0);
+    }
+
+    /**
+     * Gets prediction probability of the sample in the batch.
+     * @param sampleIndex Index of the sample in the batch.
+     */
+    public float getPredictionProbability(int sampleIndex)
+    {
+        return m_predictionProbabilities[sampleIndex];
     }
 
     /**
@@ -78,52 +130,57 @@ public class OutputLayerRS extends LayerRS
     {
         m_inputDataBuffer.copyTo(m_hostInputDataBuffer);
 
-        if (m_lossFunctionType == LossFunctionType.LogisticRegression)
-        {
-            calculateLogisticRegressionStatistics();
-        }
-        else if (m_lossFunctionType == LossFunctionType.CrossEntropy)
+        for (int sampleIndex = 0; sampleIndex < m_batchSize; ++sampleIndex)
         {
-            calculateCrossEntropyStatistics();
+            if (m_lossFunctionType == LossFunctionType.LogisticRegression)
+            {
+                calculateLogisticRegressionStatistics(sampleIndex);
+            }
+            else if (m_lossFunctionType == LossFunctionType.CrossEntropy)
+            {
+                calculateCrossEntropyStatistics(sampleIndex);
+            }
         }
     }
 
-    private void calculateLogisticRegressionStatistics()
+    private void calculateLogisticRegressionStatistics(int sampleIndex)
     {
-        float sigmoidActivation = calculateSigmoidActivation();
+        float sigmoidActivation = calculateSigmoidActivation(m_hostInputDataBuffer[sampleIndex * m_inputDataBufferSize]);
 
         if (sigmoidActivation < m_classificationThreshold)
         {
-            m_predictedClass = 0;
-            m_predictionProbability = 1.0f - sigmoidActivation;
+            m_predictedClasses[sampleIndex] = 0;
+            m_predictionProbabilities[sampleIndex] = 1.0f - sigmoidActivation;
         }
         else
         {
-            m_predictedClass = 1;
-            m_predictionProbability = sigmoidActivation;
+            m_predictedClasses[sampleIndex] = 1;
+            m_predictionProbabilities[sampleIndex] = sigmoidActivation;
         }
     }
 
-    private float calculateSigmoidActivation()
+    private float calculateSigmoidActivation(float inputData)
     {
-        return (float)(m_hostInputDataBuffer[0] >= 0.f ?
-                (1.0 / (1.0 + Math.exp(-m_hostInputDataBuffer[0]))) :
-                (1.0 - 1.0 / (1.0 + Math.exp(m_hostInputDataBuffer[0]))));
+        return (float)(inputData >= 0.f ?
+                (1.0 / (1.0 + Math.exp(-inputData))) :
+                (1.0 - 1.0 / (1.0 + Math.exp(inputData))));
     }
 
-    private void calculateCrossEntropyStatistics()
+    private void calculateCrossEntropyStatistics(int sampleIndex)
     {
         // With Cross Entropy loss we always expect that SoftMax layer is previous to this Output layer,
         // so that inputs to output layer are soft-max probabilities.
-        m_predictedClass = 0;
-        m_predictionProbability = m_hostInputDataBuffer[0];
+        final int sampleOffset = sampleIndex * m_inputDataBufferSize;
+        int predictedClass = 0;
         for (int i = 1; i < m_inputDataBufferSize; ++i)
         {
-            if (m_hostInputDataBuffer[i] > m_hostInputDataBuffer[m_predictedClass])
+            if (m_hostInputDataBuffer[sampleOffset + i] > m_hostInputDataBuffer[sampleOffset + predictedClass])
             {
-                m_predictedClass = i;
-                m_predictionProbability = m_hostInputDataBuffer[i];
+                predictedClass = i;
             }
         }
+
+        m_predictedClasses[sampleIndex] = predictedClass;
+        m_predictionProbabilities[sampleIndex] = m_hostInputDataBuffer[sampleOffset + predictedClass];
     }
 }
@@ -0,0 +1,56 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Scales layer parameters in place on device, used when other layers are folded into parameters of a layer.
+ */
+class ParameterScaling
+{
+	/**
+	 * Scales all values of the parameters buffer.
+	 * @param rsContext Renderscript context.
+	 * @param parametersBuffer Parameters buffer, holding floats or halfs, one or four per element.
+	 * @param scale Scale to apply.
+	 */
+	@WorkerThread
+	static void scaleParameters(@NonNull RenderScript rsContext, @NonNull Allocation parametersBuffer, float scale)
+	{
+		ScriptC_parameterscaling kernel = new ScriptC_parameterscaling(rsContext);
+		kernel.set_parametersBuffer(parametersBuffer);
+		kernel.set_parametersScale(scale);
+
+		Element element = parametersBuffer.getElement();
+		boolean halfPrecision = element.getDataType() == Element.DataType.FLOAT_16;
+		if (element.getVectorSize() == 4)
+		{
+			if (halfPrecision)
+			{
+				kernel.forEach_scaleHalfParametersBy4(parametersBuffer);
+			}
+			else
+			{
+				kernel.forEach_scaleParametersBy4(parametersBuffer);
+			}
+		}
+		else
+		{
+			if (halfPrecision)
+			{
+				kernel.forEach_scaleHalfParameters(parametersBuffer);
+			}
+			else
+			{
+				kernel.forEach_scaleParameters(parametersBuffer);
+			}
+		}
+
+		rsContext.finish();
+		kernel.destroy();
+	}
+}
@@ -0,0 +1,463 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.ModelReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Standard neural network layer, with weights quantized to 8 bit integers.
+ *
+ * Each neuron has its own scale and zero point, so its weights are approximated as scale * (quantizedWeight - zeroPoint).
+ * Weights are quantized while loading the model, so it can be loaded from the same model as the {@link StandardLayerRS}.
+ * Weights take 4x less memory and bandwidth than in full precision, while computation is still done in full precision.
+ */
+public class QuantizedStandardLayerRS extends LayerRS
+{
+	/**
+	 * Smallest quantized weight value.
+	 */
+	private static final int c_minQuantizedValue = -128;
+
+	/**
+	 * Largest quantized weight value.
+	 */
+	private static final int c_maxQuantizedValue = 127;
+
+	/**
+	 * Quantized standard layer RS kernel.
+	 */
+	private final ScriptC_quantizedstandardlayer m_kernel;
+
+	/**
+	 * Quantized weights buffer, in channel-major order.
+	 */
+	private Allocation m_weightsBuffer;
+
+	/**
+	 * Weights buffer size.
+	 */
+	private final int m_weightsBufferSize;
+
+	/**
+	 * Weights scales buffer, one scale per neuron.
+	 */
+	private Allocation m_scalesBuffer;
+
+	/**
+	 * Weights zero points buffer, one zero point per neuron.
+	 * Zero points are integers, but we keep them in floats since kernel computes in floats.
+	 */
+	private Allocation m_zeroPointsBuffer;
+
+	/**
+	 * Biases buffer.
+	 */
+	private Allocation m_biasesBuffer;
+
+	/**
+	 * Biases buffer size.
+	 */
+	private final int m_biasesBufferSize;
+
+	/**
+	 * Activation function applied in the kernels.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 */
+	public QuantizedStandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+									ActivationFunctionType activationFunctionType)
+	{
+		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f);
+	}
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 */
+	public QuantizedStandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+									ActivationFunctionType activationFunctionType, float activationAlpha)
+	{
+		m_kernel = new ScriptC_quantizedstandardlayer(rsContext);
+
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+		m_kernel.set_inputDataSize(m_inputDataBufferSize);
+
+		m_activationNumChannels = 1;
+		m_activationDataWidth = numNeurons;
+		m_activationDataHeight = 1;
+		m_activationDataBufferSize = m_activationNumChannels * m_activationDataWidth * m_activationDataHeight;
+		m_kernel.set_numNeurons(numNeurons);
+
+		m_weightsBufferSize = numNeurons * m_inputDataBufferSize;
+		m_biasesBufferSize = numNeurons;
+
+		// Activation function is applied by the kernels right after scaling and biasing the dot products.
+		m_activationFunctionType = activationFunctionType;
+		m_kernel.set_activationFunctionType(activationFunctionType.ordinal());
+		m_kernel.set_activationAlpha(activationAlpha);
+
+		allocateBuffers(rsContext);
+	}
+
+	/**
+	 * Allocates local buffers.
+	 * @param rsContext Renderscript context.
+	 */
+	private void allocateBuffers(RenderScript rsContext)
+	{
+		Type.Builder tb = new Type.Builder(rsContext, Element.F32(rsContext));
+		tb.setX(m_biasesBufferSize);
+		m_biasesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		m_scalesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		m_zeroPointsBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+
+		if (m_inputDataBufferSize % 4 == 0)
+		{
+			Type.Builder tb4 = new Type.Builder(rsContext, Element.I8_4(rsContext));
+			tb4.setX(m_weightsBufferSize / 4);
+			m_weightsBuffer = Allocation.createTyped(rsContext, tb4.create(), Allocation.USAGE_SCRIPT);
+		}
+		else
+		{
+			Type.Builder tb1 = new Type.Builder(rsContext, Element.I8(rsContext));
+			tb1.setX(m_weightsBufferSize);
+			m_weightsBuffer = Allocation.createTyped(rsContext, tb1.create(), Allocation.USAGE_SCRIPT);
+		}
+
+		allocateActivationBuffers(rsContext);
+	}
+
+	/**
+	 * Gets type of activation buffer. Activations are written neuron by neuron, so the buffer holds one float per element.
+	 * @param rsContext Renderscript context.
+	 * @return Buffer types.
+	 */
+	@NonNull
+	@Override
+	public Type[] getActivationBufferTypes(@NonNull RenderScript rsContext)
+	{
+		Type.Builder tb = new Type.Builder(rsContext, Element.F32(rsContext));
+		tb.setX(m_batchSize * m_activationDataBufferSize);
+
+		return new Type[] { tb.create() };
+	}
+
+	/**
+	 * Binds activation buffer and batch size to the kernel.
+	 * @param buffers Buffers of types and in order returned by getActivationBufferTypes.
+	 */
+	@Override
+	protected void bindActivationBuffers(@NonNull Allocation[] buffers)
+	{
+		m_activationDataBuffer = buffers[0];
+		m_kernel.set_activationDataBuffer(m_activationDataBuffer);
+		m_kernel.set_batchSize(m_batchSize);
+	}
+
+	/**
+	 * Gets size of the weights buffer.
+	 */
+	public int getWeightsBufferSize()
+	{
+		return m_weightsBufferSize;
+	}
+
+	/**
+	 * Gets size of the biases buffer.
+	 */
+	public int getBiasesBufferSize()
+	{
+		return m_biasesBufferSize;
+	}
+
+	/**
+	 * Loads weights from model, quantizing them.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load weights in big endian or small endian.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadWeights(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads weights from memory mapped model, quantizing them.
+	 * @param modelBuffer Model buffer, positioned at the weights and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadWeights(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads weights from model reader, quantizing them neuron by neuron and uploading them chunk by chunk,
+	 * so that full precision weights are never held in memory.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadWeights(@NonNull ModelReader modelReader) throws IOException
+	{
+		final int numNeurons = m_biasesBufferSize;
+		final int vectorSize = m_weightsBuffer.getElement().getVectorSize();
+		final int neuronsPerChunk = Math.max(1, ModelReader.c_defaultChunkSize * 4 / m_inputDataBufferSize);
+
+		float[] neuronWeights = new float[m_inputDataBufferSize];
+		byte[] quantizedChunk = new byte[Math.min(neuronsPerChunk, numNeurons) * m_inputDataBufferSize];
+		float[] scales = new float[numNeurons];
+		float[] zeroPoints = new float[numNeurons];
+		for (int chunkStart = 0; chunkStart < numNeurons; chunkStart += neuronsPerChunk)
+		{
+			int chunkNumNeurons = Math.min(neuronsPerChunk, numNeurons - chunkStart);
+			for (int i = 0; i < chunkNumNeurons; ++i)
+			{
+				modelReader.readFloats(neuronWeights, 0, m_inputDataBufferSize);
+				quantizeNeuronWeights(neuronWeights, quantizedChunk, i * m_inputDataBufferSize, scales, zeroPoints, chunkStart + i);
+			}
+
+			m_weightsBuffer.copy1DRangeFrom(chunkStart * m_inputDataBufferSize / vectorSize, chunkNumNeurons * m_inputDataBufferSize / vectorSize,
+				quantizedChunk);
+		}
+
+		setQuantizationParameters(scales, zeroPoints);
+	}
+
+	/**
+	 * Loads weights from host buffer, quantizing them.
+	 * @param weightsBuffer Host weights buffer.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull float[] weightsBuffer)
+	{
+		final int numNeurons = m_biasesBufferSize;
+		float[] neuronWeights = new float[m_inputDataBufferSize];
+		byte[] quantizedWeights = new byte[m_weightsBufferSize];
+		float[] scales = new float[numNeurons];
+		float[] zeroPoints = new float[numNeurons];
+		for (int neuron = 0; neuron < numNeurons; ++neuron)
+		{
+			System.arraycopy(weightsBuffer, neuron * m_inputDataBufferSize, neuronWeights, 0, m_inputDataBufferSize);
+			quantizeNeuronWeights(neuronWeights, quantizedWeights, neuron * m_inputDataBufferSize, scales, zeroPoints, neuron);
+		}
+
+		m_weightsBuffer.copyFrom(quantizedWeights);
+		setQuantizationParameters(scales, zeroPoints);
+	}
+
+	/**
+	 * Quantizes weights of one neuron, with range covering all neuron weights and zero.
+	 * @param neuronWeights Neuron weights.
+	 * @param quantizedWeights Buffer to write quantized weights into.
+	 * @param quantizedWeightsOffset Offset in the quantized weights buffer from which to start writing.
+	 * @param scales Buffer to write neuron scale into.
+	 * @param zeroPoints Buffer to write neuron zero point into.
+	 * @param neuron Neuron index.
+	 */
+	private void quantizeNeuronWeights(@NonNull float[] neuronWeights, @NonNull byte[] quantizedWeights, int quantizedWeightsOffset,
+									   @NonNull float[] scales, @NonNull float[] zeroPoints, int neuron)
+	{
+		float minWeight = 0.f;
+		float maxWeight = 0.f;
+		for (int i = 0; i < m_inputDataBufferSize; ++i)
+		{
+			minWeight = Math.min(minWeight, neuronWeights[i]);
+			maxWeight = Math.max(maxWeight, neuronWeights[i]);
+		}
+
+		if (maxWeight == minWeight)
+		{
+			// All weights are zero.
+			scales[neuron] = 1.f;
+			zeroPoints[neuron] = 0.f;
+			for (int i = 0; i < m_inputDataBufferSize; ++i)
+			{
+				quantizedWeights[quantizedWeightsOffset + i] = 0;
+			}
+			return;
+		}
+
+		float scale = (maxWeight - minWeight) / (c_maxQuantizedValue - c_minQuantizedValue);
+		int zeroPoint = Math.max(c_minQuantizedValue, Math.min(c_maxQuantizedValue, Math.round(c_minQuantizedValue - minWeight / scale)));
+		for (int i = 0; i < m_inputDataBufferSize; ++i)
+		{
+			int quantizedWeight = Math.round(neuronWeights[i] / scale) + zeroPoint;
+			quantizedWeights[quantizedWeightsOffset + i] = (byte)Math.max(c_minQuantizedValue, Math.min(c_maxQuantizedValue, quantizedWeight));
+		}
+
+		scales[neuron] = scale;
+		zeroPoints[neuron] = zeroPoint;
+	}
+
+	/**
+	 * Uploads quantization parameters and quantized weights to the kernel.
+	 * @param scales Neurons scales.
+	 * @param zeroPoints Neurons zero points.
+	 */
+	private void setQuantizationParameters(@NonNull float[] scales, @NonNull float[] zeroPoints)
+	{
+		m_scalesBuffer.copyFrom(scales);
+		m_zeroPointsBuffer.copyFrom(zeroPoints);
+
+		m_kernel.set_weightsBuffer(m_weightsBuffer);
+		m_kernel.set_scalesBuffer(m_scalesBuffer);
+		m_kernel.set_zeroPointsBuffer(m_zeroPointsBuffer);
+	}
+
+	/**
+	 * Loads biases from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load biases in big endian or small endian.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadBiases(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from memory mapped model.
+	 * @param modelBuffer Model buffer, positioned at the biases and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadBiases(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads biases from model reader, chunk by chunk directly into allocation.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadBiases(@NonNull ModelReader modelReader) throws IOException
+	{
+		modelReader.readToAllocation(m_biasesBuffer, m_biasesBufferSize);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Loads biases from host buffer.
+	 * @param biasesBuffer Host biases buffer.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull float[] biasesBuffer)
+	{
+		m_biasesBuffer.copyFrom(biasesBuffer);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Gets buffers holding layer parameters in their final device layout, used for caching prepared models.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@NonNull
+	public Allocation[] getPreparedParameterBuffers()
+	{
+		return new Allocation[] { m_weightsBuffer, m_scalesBuffer, m_zeroPointsBuffer, m_biasesBuffer };
+	}
+
+	/**
+	 * Binds parameter buffers to the kernel, after their contents were loaded directly from prepared model cache.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	public void onPreparedParametersLoaded()
+	{
+		m_kernel.set_weightsBuffer(m_weightsBuffer);
+		m_kernel.set_scalesBuffer(m_scalesBuffer);
+		m_kernel.set_zeroPointsBuffer(m_zeroPointsBuffer);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Gets activation function applied by the layer.
+	 */
+	@NonNull
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Scales weights and biases of the layer in place, used for folding other layers into it.
+	 * Weights are scaled through their per neuron scales, so quantized values stay the same.
+	 * @param rsContext Renderscript context.
+	 * @param weightsScale Scale of the weights.
+	 * @param biasesScale Scale of the biases.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void scaleParameters(@NonNull RenderScript rsContext, float weightsScale, float biasesScale)
+	{
+		if (weightsScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_scalesBuffer, weightsScale);
+		}
+		if (biasesScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_biasesBuffer, biasesScale);
+		}
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 */
+	@WorkerThread
+	@Override
+	public void doForwardProp()
+	{
+		m_kernel.set_inputDataBuffer(m_inputDataBuffer);
+		if (m_batchSize > 1)
+		{
+			// Launching one kernel per neuron, so that weights are read once per several samples.
+			if (m_inputDataBufferSize % 4 == 0)
+			{
+				m_kernel.forEach_calculateBatchActivationsBy4(m_biasesBuffer);
+			}
+			else
+			{
+				m_kernel.forEach_calculateBatchActivations(m_biasesBuffer);
+			}
+		}
+		else if (m_inputDataBufferSize % 4 == 0)
+		{
+			m_kernel.forEach_calculateActivationsBy4(m_activationDataBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_calculateActivations(m_activationDataBuffer);
+		}
+	}
+}
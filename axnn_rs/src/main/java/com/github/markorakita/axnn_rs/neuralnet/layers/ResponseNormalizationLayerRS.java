@@ -1,9 +1,6 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
-import android.renderscript.Allocation;
-import android.renderscript.Element;
 import android.renderscript.RenderScript;
-import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
@@ -57,18 +54,7 @@ public class ResponseNormalizationLayerRS extends LayerRS
 		m_activationDataHeight = inputDataHeight;
 		m_activationDataBufferSize = m_inputDataNumChannels * m_activationDataWidth * m_activationDataHeight;
 
-		allocateBuffers(rsContext);
-	}
-
-	/**
-	 * Allocates local buffers.
-	 * @param rsContext Renderscript context.
-	 */
-	private void allocateBuffers(RenderScript rsContext)
-	{
-		Type.Builder tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
-		tb.setX(m_activationDataBufferSize / 4);
-		m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		allocateActivationBuffers(rsContext);
 	}
 
 	/**
@@ -1,9 +1,6 @@
 package com.github.markorakita.axnn_rs.neuralnet.layers;
 
-import android.renderscript.Allocation;
-import android.renderscript.Element;
 import android.renderscript.RenderScript;
-import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
 
@@ -25,31 +22,19 @@ public class SoftMaxLayerRS extends LayerRS
     {
         m_inputDataBufferSize = m_activationDataBufferSize = inputDataSize;
 
-        allocateBuffers(rsContext);
+        allocateHostBuffers();
+        allocateActivationBuffers(rsContext);
     }
 
     /**
-     * Allocates local buffers.
-     * @param rsContext Renderscript context.
+     * Allocates host buffers holding inputs and activations of all samples in the batch.
      */
-    private void allocateBuffers(RenderScript rsContext)
+    @Override
+    protected void allocateHostBuffers()
     {
-        m_hostInputDataBuffer = new float[m_inputDataBufferSize];
-
-        m_hostActivationDataBuffer = new float[m_activationDataBufferSize];
+        m_hostInputDataBuffer = new float[m_batchSize * m_inputDataBufferSize];
 
-        Type.Builder tb;
-        if (m_activationDataBufferSize % 4 == 0)
-        {
-            tb = new Type.Builder(rsContext, Element.F32_4(rsContext));
-            tb.setX(m_activationDataBufferSize / 4);
-        }
-        else
-        {
-            tb = new Type.Builder(rsContext, Element.F32(rsContext));
-            tb.setX(m_activationDataBufferSize);
-        }
-        m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+        m_hostActivationDataBuffer = new float[m_batchSize * m_activationDataBufferSize];
     }
 
     /**
@@ -60,36 +45,41 @@ public class SoftMaxLayerRS extends LayerRS
     {
         m_inputDataBuffer.copyTo(m_hostInputDataBuffer);
 
-        stabilizeInputs();
-        calculateSoftMaximums();
+        for (int sampleOffset = 0; sampleOffset < m_hostInputDataBuffer.length; sampleOffset += m_inputDataBufferSize)
+        {
+            stabilizeInputs(sampleOffset);
+            calculateSoftMaximums(sampleOffset);
+        }
 
         m_activationDataBuffer.copyFrom(m_hostActivationDataBuffer);
     }
 
-    private void stabilizeInputs()
+    private void stabilizeInputs(int sampleOffset)
     {
-        float inputActivationsMaximum = m_hostInputDataBuffer[0];
-        for (float inputData : m_hostInputDataBuffer)
+        final int sampleEnd = sampleOffset + m_inputDataBufferSize;
+        float inputActivationsMaximum = m_hostInputDataBuffer[sampleOffset];
+        for (int i = sampleOffset; i < sampleEnd; ++i)
         {
-            inputActivationsMaximum = Math.max(inputActivationsMaximum, inputData);
+            inputActivationsMaximum = Math.max(inputActivationsMaximum, m_hostInputDataBuffer[i]);
         }
 
-        for (int i = 0; i < m_inputDataBufferSize; ++i)
+        for (int i = sampleOffset; i < sampleEnd; ++i)
         {
             m_hostActivationDataBuffer[i] = m_hostInputDataBuffer[i] - inputActivationsMaximum;
         }
     }
 
-    private void calculateSoftMaximums()
+    private void calculateSoftMaximums(int sampleOffset)
     {
+        final int sampleEnd = sampleOffset + m_activationDataBufferSize;
         float exponentialsSum = 0.f;
-        for (int i = 0; i < m_activationDataBufferSize; ++i)
+        for (int i = sampleOffset; i < sampleEnd; ++i)
         {
             m_hostActivationDataBuffer[i] = (float)Math.exp(m_hostActivationDataBuffer[i]);
             exponentialsSum += m_hostActivationDataBuffer[i];
         }
 
-        for (int i = 0; i < m_activationDataBufferSize; ++i)
+        for (int i = sampleOffset; i < sampleEnd; ++i)
         {
             m_hostActivationDataBuffer[i] /= exponentialsSum;
         }
@@ -0,0 +1,215 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+/**
+ * Strided convolution on device rewritten into space-to-depth rearrangement of input data followed by convolution with stride 1.
+ *
+ * Input data is split into blocks of stride x stride pixels, and each block becomes one pixel with stride * stride times more channels,
+ * so that each patch of the strided convolution covers whole blocks. Filters are rearranged the same way on device whenever they are loaded
+ * or changed, padded with zeros to whole blocks, so AlexNet's 11x11 filters with stride 4 become 3x3 filters over 16x more channels,
+ * which convolutional layer with stride 1 convolves by Winograd convolution. Rearranged input data is kept in scratch buffer of the layer.
+ */
+final class SpaceToDepthConvolution
+{
+	/**
+	 * Space-to-depth rearrangement RS kernel.
+	 */
+	private final ScriptC_spacetodepthconvolution m_kernel;
+
+	/**
+	 * Are filters kept in half precision.
+	 */
+	private final boolean m_halfPrecisionFilters;
+
+	/**
+	 * Number of channels of rearranged input data.
+	 */
+	private final int m_blockNumChannels;
+
+	/**
+	 * Width of rearranged input data, in blocks.
+	 */
+	private final int m_blocksDataWidth;
+
+	/**
+	 * Height of rearranged input data, in blocks.
+	 */
+	private final int m_blocksDataHeight;
+
+	/**
+	 * Convolutional layer with stride 1 over rearranged input data, holding rearranged filters. It shares biases of the strided layer,
+	 * and convolves into its activation buffer.
+	 */
+	private final ConvolutionalLayerRS m_stridelessLayer;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param stride Stride for patching.
+	 * @param numPatchesX Number of patches in dimension X.
+	 * @param numPatchesY Number of patches in dimension Y.
+	 * @param biasesBuffer Biases buffer of the strided layer.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param halfPrecisionFilters Are filters kept in half precision.
+	 */
+	SpaceToDepthConvolution(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters,
+							int filterWidth, int filterHeight, int paddingX, int paddingY, int stride, int numPatchesX, int numPatchesY,
+							@NonNull Allocation biasesBuffer, @NonNull ActivationFunctionType activationFunctionType, float activationAlpha,
+							boolean halfPrecisionFilters)
+	{
+		m_kernel = new ScriptC_spacetodepthconvolution(rsContext);
+
+		m_kernel.set_inputNumChannels(inputNumChannels);
+		m_kernel.set_inputDataWidth(inputDataWidth);
+		m_kernel.set_inputDataHeight(inputDataHeight);
+		m_kernel.set_filterWidth(filterWidth);
+		m_kernel.set_filterHeight(filterHeight);
+		m_kernel.set_paddingX(paddingX);
+		m_kernel.set_paddingY(paddingY);
+		m_kernel.set_stride(stride);
+		m_halfPrecisionFilters = halfPrecisionFilters;
+
+		// Blocks cover padding too, and blocks past input data are zero, since the last patches can overhang input data.
+		int blockFilterWidth = getBlockFilterSize(filterWidth, stride);
+		m_kernel.set_blockFilterWidth(blockFilterWidth);
+		int blockFilterHeight = getBlockFilterSize(filterHeight, stride);
+		m_kernel.set_blockFilterHeight(blockFilterHeight);
+		m_blockNumChannels = stride * stride * inputNumChannels;
+		m_blocksDataWidth = numPatchesX + blockFilterWidth - 1;
+		m_kernel.set_blocksDataWidth(m_blocksDataWidth);
+		m_blocksDataHeight = numPatchesY + blockFilterHeight - 1;
+		m_kernel.set_blocksDataHeight(m_blocksDataHeight);
+
+		m_stridelessLayer = new ConvolutionalLayerRS(rsContext, m_blockNumChannels, m_blocksDataWidth, m_blocksDataHeight, numFilters,
+			blockFilterWidth, blockFilterHeight, 0, 0, 1, activationFunctionType, activationAlpha, halfPrecisionFilters, biasesBuffer);
+	}
+
+	/**
+	 * Checks whether convolution with given stride can be rewritten.
+	 * @param stride Stride for patching.
+	 */
+	static boolean isSupported(int stride)
+	{
+		return stride > 1;
+	}
+
+	/**
+	 * Checks whether filters rearranged into blocks can be convolved by Winograd convolution. Only then the rewrite pays off,
+	 * since zeros which pad filters to whole blocks add multiply-adds to the convolution with stride 1.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param stride Stride for patching.
+	 */
+	static boolean hasWinogradBlockFilters(int filterWidth, int filterHeight, int stride)
+	{
+		return isSupported(stride) && WinogradConvolution.isSupported(getBlockFilterSize(filterWidth, stride), getBlockFilterSize(filterHeight, stride), 1);
+	}
+
+	/**
+	 * Gets width or height of filters rearranged into blocks, in blocks.
+	 * @param filterSize Filters width or height.
+	 * @param stride Stride for patching.
+	 */
+	private static int getBlockFilterSize(int filterSize, int stride)
+	{
+		return (filterSize + stride - 1) / stride;
+	}
+
+	/**
+	 * Sets number of samples propagated at once, which the layer with stride 1 needs for types of its scratch buffers.
+	 * @param batchSize Number of samples.
+	 */
+	void setBatchSize(int batchSize)
+	{
+		m_stridelessLayer.setBatchSize(batchSize);
+	}
+
+	/**
+	 * Gets types of scratch buffers for rearranged input data, followed by scratch buffers of the layer with stride 1, for all samples in the batch.
+	 * @param rsContext Renderscript context.
+	 * @param batchSize Number of samples.
+	 */
+	@NonNull
+	Type[] getScratchBufferTypes(@NonNull RenderScript rsContext, int batchSize)
+	{
+		Type.Builder blocksDataTb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+		blocksDataTb.setX(batchSize * m_blocksDataWidth * m_blocksDataHeight * m_blockNumChannels / 4);
+
+		// The first buffer of the layer with stride 1 is its activation buffer, for which activation buffer of the strided layer is used.
+		Type[] stridelessBufferTypes = m_stridelessLayer.getActivationBufferTypes(rsContext);
+		Type[] bufferTypes = new Type[stridelessBufferTypes.length];
+		bufferTypes[0] = blocksDataTb.create();
+		System.arraycopy(stridelessBufferTypes, 1, bufferTypes, 1, stridelessBufferTypes.length - 1);
+
+		return bufferTypes;
+	}
+
+	/**
+	 * Sets values per input channel with which input data is padded instead of zeros, used when input data normalization is folded into the layer.
+	 * @param inputPaddingValuesBuffer Input padding values buffer.
+	 */
+	void setInputPaddingValues(@NonNull Allocation inputPaddingValuesBuffer)
+	{
+		m_kernel.set_inputPaddingValuesBuffer(inputPaddingValuesBuffer);
+		m_kernel.set_padWithInputValues(true);
+	}
+
+	/**
+	 * Rearranges filters into blocks on device, directly into filters buffer of the layer with stride 1, whenever they are loaded or changed.
+	 * @param filtersBuffer Filters buffer of the strided layer.
+	 */
+	@WorkerThread
+	void rearrangeFilters(@NonNull Allocation filtersBuffer)
+	{
+		m_kernel.set_filtersBuffer(filtersBuffer);
+		Allocation blockFiltersBuffer = m_stridelessLayer.getPreparedParameterBuffers()[0];
+		if (m_halfPrecisionFilters)
+		{
+			m_kernel.forEach_rearrangeFiltersHalf(blockFiltersBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_rearrangeFilters(blockFiltersBuffer);
+		}
+
+		m_stridelessLayer.onPreparedParametersLoaded();
+	}
+
+	/**
+	 * Convolves input data of all samples in the batch.
+	 * @param inputDataBuffer Input data buffer.
+	 * @param scratchBuffers Scratch buffers of types returned by getScratchBufferTypes.
+	 * @param activationDataBuffer Buffer to write activations into.
+	 */
+	@WorkerThread
+	void convolve(@NonNull Allocation inputDataBuffer, @NonNull Allocation[] scratchBuffers, @NonNull Allocation activationDataBuffer)
+	{
+		Allocation blocksDataBuffer = scratchBuffers[0];
+		m_kernel.set_inputDataBuffer(inputDataBuffer);
+		m_kernel.forEach_rearrangeInput(blocksDataBuffer);
+
+		Allocation[] stridelessBuffers = scratchBuffers.clone();
+		stridelessBuffers[0] = activationDataBuffer;
+		m_stridelessLayer.setActivationBuffers(stridelessBuffers);
+		m_stridelessLayer.setInputDataBuffer(blocksDataBuffer);
+		m_stridelessLayer.doForwardProp();
+	}
+}
@@ -0,0 +1,453 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.ModelReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Standard neural network layer for pruned models, which keeps only non-zero weights.
+ *
+ * Weights are kept in compressed sparse row (CSR) format: for each neuron we keep offset of its weights, and for each kept weight
+ * its value and index of the input it multiplies. Weights are sparsified while loading the model, so it can be loaded from the same
+ * dense model as the {@link StandardLayerRS}. Memory and computation scale with the density of the weights.
+ */
+public class SparseStandardLayerRS extends LayerRS
+{
+	/**
+	 * Sparse standard layer RS kernel.
+	 */
+	private final ScriptC_sparsestandardlayer m_kernel;
+
+	/**
+	 * Renderscript context, needed to allocate weights buffers once we know how many weights are kept.
+	 */
+	private final RenderScript m_rsContext;
+
+	/**
+	 * Weights with absolute value not larger than this threshold are pruned.
+	 */
+	private final float m_sparsityThreshold;
+
+	/**
+	 * Offsets of each neuron's weights in the weights buffers, with one extra offset at the end.
+	 */
+	private Allocation m_weightsOffsetsBuffer;
+
+	/**
+	 * Input indices of the kept weights.
+	 */
+	private Allocation m_weightsInputIndicesBuffer;
+
+	/**
+	 * Values of the kept weights.
+	 */
+	private Allocation m_weightsValuesBuffer;
+
+	/**
+	 * Number of kept weights.
+	 */
+	private int m_numKeptWeights;
+
+	/**
+	 * Dense weights buffer size.
+	 */
+	private final int m_weightsBufferSize;
+
+	/**
+	 * Biases buffer.
+	 */
+	private Allocation m_biasesBuffer;
+
+	/**
+	 * Biases buffer size.
+	 */
+	private final int m_biasesBufferSize;
+
+	/**
+	 * Activation function applied in the kernels.
+	 */
+	private final ActivationFunctionType m_activationFunctionType;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param sparsityThreshold Weights with absolute value not larger than this threshold are pruned. Use zero to keep all non-zero weights.
+	 */
+	public SparseStandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+								 ActivationFunctionType activationFunctionType, float sparsityThreshold)
+	{
+		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f, sparsityThreshold);
+	}
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param sparsityThreshold Weights with absolute value not larger than this threshold are pruned. Use zero to keep all non-zero weights.
+	 */
+	public SparseStandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+								 ActivationFunctionType activationFunctionType, float activationAlpha, float sparsityThreshold)
+	{
+		m_kernel = new ScriptC_sparsestandardlayer(rsContext);
+		m_rsContext = rsContext;
+		m_sparsityThreshold = sparsityThreshold;
+
+		m_inputDataNumChannels = inputNumChannels;
+		m_inputDataWidth = inputDataWidth;
+		m_inputDataHeight = inputDataHeight;
+		m_inputDataBufferSize = m_inputDataNumChannels * m_inputDataWidth * m_inputDataHeight;
+
+		m_activationNumChannels = 1;
+		m_activationDataWidth = numNeurons;
+		m_activationDataHeight = 1;
+		m_activationDataBufferSize = m_activationNumChannels * m_activationDataWidth * m_activationDataHeight;
+		m_kernel.set_inputDataSize(m_inputDataBufferSize);
+		m_kernel.set_inputDataVectorized(m_inputDataBufferSize % 4 == 0);
+		m_kernel.set_numNeurons(numNeurons);
+
+		m_weightsBufferSize = numNeurons * m_inputDataBufferSize;
+		m_biasesBufferSize = numNeurons;
+
+		m_activationFunctionType = activationFunctionType;
+		m_kernel.set_activationFunctionType(activationFunctionType.ordinal());
+		m_kernel.set_activationAlpha(activationAlpha);
+
+		allocateBuffers(rsContext);
+	}
+
+	/**
+	 * Allocates local buffers. Weights buffers are allocated when loading the weights.
+	 * @param rsContext Renderscript context.
+	 */
+	private void allocateBuffers(RenderScript rsContext)
+	{
+		Type.Builder tb = new Type.Builder(rsContext, Element.F32(rsContext));
+		tb.setX(m_biasesBufferSize);
+		m_biasesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+
+		Type.Builder offsetsTb = new Type.Builder(rsContext, Element.I32(rsContext));
+		offsetsTb.setX(m_biasesBufferSize + 1);
+		m_weightsOffsetsBuffer = Allocation.createTyped(rsContext, offsetsTb.create(), Allocation.USAGE_SCRIPT);
+
+		allocateActivationBuffers(rsContext);
+	}
+
+	/**
+	 * Gets type of activation buffer. Activations are written neuron by neuron, so the buffer holds one float per element.
+	 * @param rsContext Renderscript context.
+	 * @return Buffer types.
+	 */
+	@NonNull
+	@Override
+	public Type[] getActivationBufferTypes(@NonNull RenderScript rsContext)
+	{
+		Type.Builder tb = new Type.Builder(rsContext, Element.F32(rsContext));
+		tb.setX(m_batchSize * m_activationDataBufferSize);
+
+		return new Type[] { tb.create() };
+	}
+
+	/**
+	 * Binds activation buffer and batch size to the kernel.
+	 * @param buffers Buffers of types and in order returned by getActivationBufferTypes.
+	 */
+	@Override
+	protected void bindActivationBuffers(@NonNull Allocation[] buffers)
+	{
+		m_activationDataBuffer = buffers[0];
+		m_kernel.set_activationDataBuffer(m_activationDataBuffer);
+		m_kernel.set_batchSize(m_batchSize);
+	}
+
+	/**
+	 * Gets size of the dense weights buffer, as stored in the model.
+	 */
+	public int getWeightsBufferSize()
+	{
+		return m_weightsBufferSize;
+	}
+
+	/**
+	 * Gets size of the biases buffer.
+	 */
+	public int getBiasesBufferSize()
+	{
+		return m_biasesBufferSize;
+	}
+
+	/**
+	 * Gets fraction of the weights kept after pruning, or zero if weights are not loaded yet.
+	 */
+	public float getWeightsDensity()
+	{
+		return (float)m_numKeptWeights / m_weightsBufferSize;
+	}
+
+	/**
+	 * Loads weights from model, pruning them.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load weights in big endian or small endian.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadWeights(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads weights from memory mapped model, pruning them.
+	 * @param modelBuffer Model buffer, positioned at the weights and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadWeights(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads weights from model reader, pruning them neuron by neuron, so that dense weights are never held in memory.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadWeights(@NonNull ModelReader modelReader) throws IOException
+	{
+		SparseWeightsBuilder weightsBuilder = new SparseWeightsBuilder(m_biasesBufferSize);
+		float[] neuronWeights = new float[m_inputDataBufferSize];
+		for (int neuron = 0; neuron < m_biasesBufferSize; ++neuron)
+		{
+			modelReader.readFloats(neuronWeights, 0, m_inputDataBufferSize);
+			weightsBuilder.addNeuronWeights(neuronWeights, 0);
+		}
+
+		uploadWeights(weightsBuilder);
+	}
+
+	/**
+	 * Loads weights from host buffer, pruning them.
+	 * @param weightsBuffer Host weights buffer.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull float[] weightsBuffer)
+	{
+		SparseWeightsBuilder weightsBuilder = new SparseWeightsBuilder(m_biasesBufferSize);
+		for (int neuron = 0; neuron < m_biasesBufferSize; ++neuron)
+		{
+			weightsBuilder.addNeuronWeights(weightsBuffer, neuron * m_inputDataBufferSize);
+		}
+
+		uploadWeights(weightsBuilder);
+	}
+
+	/**
+	 * Allocates weights buffers for kept weights, and uploads them.
+	 * @param weightsBuilder Builder with pruned weights of all neurons.
+	 */
+	private void uploadWeights(@NonNull SparseWeightsBuilder weightsBuilder)
+	{
+		m_numKeptWeights = weightsBuilder.m_numKeptWeights;
+
+		// Allocations can't be empty, so we keep at least one unused weight in case when all weights are pruned.
+		int weightsBuffersSize = Math.max(1, m_numKeptWeights);
+		if (m_weightsValuesBuffer != null)
+		{
+			m_weightsValuesBuffer.destroy();
+			m_weightsInputIndicesBuffer.destroy();
+		}
+		m_weightsValuesBuffer = Allocation.createSized(m_rsContext, Element.F32(m_rsContext), weightsBuffersSize, Allocation.USAGE_SCRIPT);
+		m_weightsInputIndicesBuffer = Allocation.createSized(m_rsContext, Element.I32(m_rsContext), weightsBuffersSize, Allocation.USAGE_SCRIPT);
+
+		m_weightsOffsetsBuffer.copyFrom(weightsBuilder.m_weightsOffsets);
+		m_weightsValuesBuffer.copyFrom(Arrays.copyOf(weightsBuilder.m_weightsValues, weightsBuffersSize));
+		m_weightsInputIndicesBuffer.copyFrom(Arrays.copyOf(weightsBuilder.m_weightsInputIndices, weightsBuffersSize));
+
+		m_kernel.set_weightsOffsetsBuffer(m_weightsOffsetsBuffer);
+		m_kernel.set_weightsValuesBuffer(m_weightsValuesBuffer);
+		m_kernel.set_weightsInputIndicesBuffer(m_weightsInputIndicesBuffer);
+	}
+
+	/**
+	 * Loads biases from model.
+	 * @param modelStream Model input stream.
+	 * @param bigEndian Should we load biases in big endian or small endian.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
+	{
+		loadBiases(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from memory mapped model.
+	 * @param modelBuffer Model buffer, positioned at the biases and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadBiases(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads biases from model reader, chunk by chunk directly into allocation.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadBiases(@NonNull ModelReader modelReader) throws IOException
+	{
+		modelReader.readToAllocation(m_biasesBuffer, m_biasesBufferSize);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Loads biases from host buffer.
+	 * @param biasesBuffer Host biases buffer.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull float[] biasesBuffer)
+	{
+		m_biasesBuffer.copyFrom(biasesBuffer);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Gets activation function applied by the layer.
+	 */
+	@NonNull
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Scales weights and biases of the layer in place, used for folding other layers into it.
+	 * @param rsContext Renderscript context.
+	 * @param weightsScale Scale of the weights.
+	 * @param biasesScale Scale of the biases.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void scaleParameters(@NonNull RenderScript rsContext, float weightsScale, float biasesScale)
+	{
+		if (weightsScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_weightsValuesBuffer, weightsScale);
+		}
+		if (biasesScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_biasesBuffer, biasesScale);
+		}
+	}
+
+	/**
+	 * Does forward propagation through layer.
+	 */
+	@WorkerThread
+	@Override
+	public void doForwardProp()
+	{
+		m_kernel.set_inputDataBuffer(m_inputDataBuffer);
+		if (m_batchSize > 1)
+		{
+			// Launching one kernel per neuron, so that weights are read once per several samples.
+			m_kernel.forEach_calculateBatchActivations(m_biasesBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_calculateActivations(m_activationDataBuffer);
+		}
+	}
+
+	/**
+	 * Builds sparse weights neuron by neuron, growing its buffers as needed.
+	 */
+	private class SparseWeightsBuilder
+	{
+		/**
+		 * Offsets of each neuron's weights, with one extra offset at the end.
+		 */
+		final int[] m_weightsOffsets;
+
+		/**
+		 * Values of the kept weights.
+		 */
+		float[] m_weightsValues;
+
+		/**
+		 * Input indices of the kept weights.
+		 */
+		int[] m_weightsInputIndices;
+
+		/**
+		 * Number of kept weights.
+		 */
+		int m_numKeptWeights;
+
+		/**
+		 * Number of neurons added.
+		 */
+		private int m_numNeurons;
+
+		SparseWeightsBuilder(int numNeurons)
+		{
+			m_weightsOffsets = new int[numNeurons + 1];
+
+			// Starting with capacity for tenth of the weights, since pruned models are usually that sparse.
+			int initialCapacity = Math.max(16, m_weightsBufferSize / 10);
+			m_weightsValues = new float[initialCapacity];
+			m_weightsInputIndices = new int[initialCapacity];
+		}
+
+		/**
+		 * Adds weights of the next neuron, keeping only those above sparsity threshold.
+		 * @param weights Buffer with neuron weights.
+		 * @param offset Offset of neuron weights in the buffer.
+		 */
+		void addNeuronWeights(@NonNull float[] weights, int offset)
+		{
+			for (int inputIndex = 0; inputIndex < m_inputDataBufferSize; ++inputIndex)
+			{
+				float weight = weights[offset + inputIndex];
+				if (Math.abs(weight) > m_sparsityThreshold)
+				{
+					if (m_numKeptWeights == m_weightsValues.length)
+					{
+						int capacity = m_weightsValues.length * 2;
+						m_weightsValues = Arrays.copyOf(m_weightsValues, capacity);
+						m_weightsInputIndices = Arrays.copyOf(m_weightsInputIndices, capacity);
+					}
+
+					m_weightsValues[m_numKeptWeights] = weight;
+					m_weightsInputIndices[m_numKeptWeights] = inputIndex;
+					++m_numKeptWeights;
+				}
+			}
+
+			++m_numNeurons;
+			m_weightsOffsets[m_numNeurons] = m_numKeptWeights;
+		}
+	}
+}
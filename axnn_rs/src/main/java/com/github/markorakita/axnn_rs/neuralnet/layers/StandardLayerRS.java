@@ -6,13 +6,16 @@ import android.renderscript.RenderScript;
 import android.renderscript.Type;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
 import androidx.annotation.WorkerThread;
 
-import com.github.markorakita.axnn_rs.neuralnet.ActivationFunction;
-import com.github.markorakita.axnn_rs.neuralnet.internal.utils.IOUtils;
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.HalfUtils;
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.ModelReader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Standard neural network layer, with neurons and weights.
@@ -29,6 +32,11 @@ public class StandardLayerRS extends LayerRS
 	 */
 	private Allocation m_weightsBuffer;
 
+	/**
+	 * Are weights kept in half precision.
+	 */
+	private final boolean m_halfPrecisionWeights;
+
 	/**
 	 * Weights buffer size.
 	 */
@@ -45,14 +53,24 @@ public class StandardLayerRS extends LayerRS
 	private final int m_biasesBufferSize;
 
 	/**
-	 * Pre-activation data buffer.
+	 * Activation function applied in the kernels.
 	 */
-	private Allocation m_preactivationDataBuffer;
+	private final ActivationFunctionType m_activationFunctionType;
 
 	/**
-	 * Activation function to use.
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numNeurons Number of neurons.
+	 * @param activationFunctionType Activation function to use.
 	 */
-	private final ActivationFunction m_activationFunction;
+	public StandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
+						   ActivationFunctionType activationFunctionType)
+	{
+		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f);
+	}
 
 	/**
 	 * Constructor.
@@ -62,11 +80,12 @@ public class StandardLayerRS extends LayerRS
 	 * @param inputDataHeight Height of input data.
 	 * @param numNeurons Number of neurons.
 	 * @param activationFunctionType Activation function to use.
+	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
 	 */
 	public StandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
-						   ActivationFunction.ActivationFunctionType activationFunctionType)
+						   ActivationFunctionType activationFunctionType, float activationAlpha)
 	{
-		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, 0.f);
+		this(rsContext, inputNumChannels, inputDataWidth, inputDataHeight, numNeurons, activationFunctionType, activationAlpha, false);
 	}
 
 	/**
@@ -78,9 +97,11 @@ public class StandardLayerRS extends LayerRS
 	 * @param numNeurons Number of neurons.
 	 * @param activationFunctionType Activation function to use.
 	 * @param activationAlpha Alpha parameter of activation function, if it uses one.
+	 * @param halfPrecisionWeights Should weights be kept in half precision, halving their memory and bandwidth.
+	 *                             Computation is still done in full precision.
 	 */
 	public StandardLayerRS(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numNeurons,
-						   ActivationFunction.ActivationFunctionType activationFunctionType, float activationAlpha)
+						   ActivationFunctionType activationFunctionType, float activationAlpha, boolean halfPrecisionWeights)
 	{
 		m_kernel = new ScriptC_standardlayer(rsContext);
 
@@ -94,11 +115,16 @@ public class StandardLayerRS extends LayerRS
 		m_activationDataWidth = numNeurons;
 		m_activationDataHeight = 1;
 		m_activationDataBufferSize = m_activationNumChannels * m_activationDataWidth * m_activationDataHeight;
+		m_kernel.set_numNeurons(numNeurons);
 
 		m_weightsBufferSize = numNeurons * m_inputDataBufferSize;
 		m_biasesBufferSize = numNeurons;
+		m_halfPrecisionWeights = halfPrecisionWeights;
 
-		m_activationFunction = new ActivationFunction(rsContext, activationFunctionType, activationAlpha);
+		// Activation function is applied in the epilogue of the kernels which calculate preactivations, so preactivations are never written to memory.
+		m_activationFunctionType = activationFunctionType;
+		m_kernel.set_activationFunctionType(activationFunctionType.ordinal());
+		m_kernel.set_activationAlpha(activationAlpha);
 
 		allocateBuffers(rsContext);
 	}
@@ -113,32 +139,55 @@ public class StandardLayerRS extends LayerRS
 		tb.setX(m_biasesBufferSize);
 		m_biasesBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
 
-		tb.setX(m_activationDataBufferSize);
-		m_preactivationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
-
 		if (m_inputDataBufferSize % 4 == 0)
 		{
-			Type.Builder tb4 = new Type.Builder(rsContext, Element.F32_4(rsContext));
+			Type.Builder tb4 = new Type.Builder(rsContext, m_halfPrecisionWeights ? Element.F16_4(rsContext) : Element.F32_4(rsContext));
 			tb4.setX(m_weightsBufferSize / 4);
 			m_weightsBuffer = Allocation.createTyped(rsContext, tb4.create(), Allocation.USAGE_SCRIPT);
 		}
 		else
 		{
-			tb.setX(m_weightsBufferSize);
-			m_weightsBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+			Type.Builder tb1 = new Type.Builder(rsContext, m_halfPrecisionWeights ? Element.F16(rsContext) : Element.F32(rsContext));
+			tb1.setX(m_weightsBufferSize);
+			m_weightsBuffer = Allocation.createTyped(rsContext, tb1.create(), Allocation.USAGE_SCRIPT);
 		}
 
-		if (m_activationDataBufferSize % 4 == 0)
-		{
-			Type.Builder tb4 = new Type.Builder(rsContext, Element.F32_4(rsContext));
-			tb4.setX(m_activationDataBufferSize / 4);
-			m_activationDataBuffer = Allocation.createTyped(rsContext, tb4.create(), Allocation.USAGE_SCRIPT);
-		}
-		else
-		{
-			tb.setX(m_activationDataBufferSize);
-			m_activationDataBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
-		}
+		allocateActivationBuffers(rsContext);
+	}
+
+	/**
+	 * Gets type of activation buffer. Activations are written neuron by neuron, so the buffer holds one float per element.
+	 * @param rsContext Renderscript context.
+	 * @return Buffer types.
+	 */
+	@NonNull
+	@Override
+	public Type[] getActivationBufferTypes(@NonNull RenderScript rsContext)
+	{
+		Type.Builder tb = new Type.Builder(rsContext, Element.F32(rsContext));
+		tb.setX(m_batchSize * m_activationDataBufferSize);
+
+		return new Type[] { tb.create() };
+	}
+
+	/**
+	 * Binds activation buffer and batch size to the kernel.
+	 * @param buffers Buffers of types and in order returned by getActivationBufferTypes.
+	 */
+	@Override
+	protected void bindActivationBuffers(@NonNull Allocation[] buffers)
+	{
+		m_activationDataBuffer = buffers[0];
+		m_kernel.set_activationDataBuffer(m_activationDataBuffer);
+		m_kernel.set_batchSize(m_batchSize);
+	}
+
+	/**
+	 * Are weights kept in half precision.
+	 */
+	public boolean isHalfPrecisionWeights()
+	{
+		return m_halfPrecisionWeights;
 	}
 
 	/**
@@ -165,8 +214,29 @@ public class StandardLayerRS extends LayerRS
 	@WorkerThread
 	public void loadWeights(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
 	{
-		float[] weightsBuffer = IOUtils.readFloatBufferFromStream(m_weightsBufferSize, modelStream, bigEndian);
-		loadWeights(weightsBuffer);
+		loadWeights(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads weights from memory mapped model.
+	 * @param modelBuffer Model buffer, positioned at the weights and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadWeights(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadWeights(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads weights from model reader, chunk by chunk directly into allocation.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadWeights(@NonNull ModelReader modelReader) throws IOException
+	{
+		modelReader.readToAllocation(m_weightsBuffer, m_weightsBufferSize);
+		m_kernel.set_weightsBuffer(m_weightsBuffer);
 	}
 
 	/**
@@ -176,7 +246,16 @@ public class StandardLayerRS extends LayerRS
 	@WorkerThread
 	public void loadWeights(@NonNull float[] weightsBuffer)
 	{
-		m_weightsBuffer.copyFrom(weightsBuffer);
+		if (m_halfPrecisionWeights)
+		{
+			short[] halfWeightsBuffer = new short[weightsBuffer.length];
+			HalfUtils.floatsToHalfs(weightsBuffer, halfWeightsBuffer, weightsBuffer.length);
+			m_weightsBuffer.copyFrom(halfWeightsBuffer);
+		}
+		else
+		{
+			m_weightsBuffer.copyFrom(weightsBuffer);
+		}
 		m_kernel.set_weightsBuffer(m_weightsBuffer);
 	}
 
@@ -188,8 +267,29 @@ public class StandardLayerRS extends LayerRS
 	@WorkerThread
 	public void loadBiases(@NonNull InputStream modelStream, boolean bigEndian) throws IOException
 	{
-		float[] biasesBuffer = IOUtils.readFloatBufferFromStream(m_biasesBufferSize, modelStream, bigEndian);
-		loadBiases(biasesBuffer);
+		loadBiases(ModelReader.fromStream(modelStream, bigEndian));
+	}
+
+	/**
+	 * Loads biases from memory mapped model.
+	 * @param modelBuffer Model buffer, positioned at the biases and with byte order already set.
+	 */
+	@WorkerThread
+	public void loadBiases(@NonNull ByteBuffer modelBuffer) throws IOException
+	{
+		loadBiases(ModelReader.fromBuffer(modelBuffer));
+	}
+
+	/**
+	 * Loads biases from model reader, chunk by chunk directly into allocation.
+	 * @param modelReader Model reader.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@WorkerThread
+	public void loadBiases(@NonNull ModelReader modelReader) throws IOException
+	{
+		modelReader.readToAllocation(m_biasesBuffer, m_biasesBufferSize);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
 	}
 
 	/**
@@ -204,33 +304,117 @@ public class StandardLayerRS extends LayerRS
 	}
 
 	/**
-	 * Does forward propagation through layer.
+	 * Gets buffers holding layer parameters in their final device layout, used for caching prepared models.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	@NonNull
+	public Allocation[] getPreparedParameterBuffers()
+	{
+		return new Allocation[] { m_weightsBuffer, m_biasesBuffer };
+	}
+
+	/**
+	 * Binds parameter buffers to the kernel, after their contents were loaded directly from prepared model cache.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
+	public void onPreparedParametersLoaded()
+	{
+		m_kernel.set_weightsBuffer(m_weightsBuffer);
+		m_kernel.set_biasesBuffer(m_biasesBuffer);
+	}
+
+	/**
+	 * Gets activation function applied by the layer.
 	 */
+	@NonNull
+	public ActivationFunctionType getActivationFunctionType()
+	{
+		return m_activationFunctionType;
+	}
+
+	/**
+	 * Scales weights and biases of the layer in place, used for folding other layers into it.
+	 * @param rsContext Renderscript context.
+	 * @param weightsScale Scale of the weights.
+	 * @param biasesScale Scale of the biases.
+	 */
+	@RestrictTo(RestrictTo.Scope.LIBRARY)
 	@WorkerThread
-	@Override
-	public void doForwardProp()
+	public void scaleParameters(@NonNull RenderScript rsContext, float weightsScale, float biasesScale)
 	{
-		calculatePreactivations();
-		calculateActivations();
+		if (weightsScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_weightsBuffer, weightsScale);
+		}
+		if (biasesScale != 1.f)
+		{
+			ParameterScaling.scaleParameters(rsContext, m_biasesBuffer, biasesScale);
+		}
 	}
 
+	/**
+	 * Does forward propagation through layer.
+	 */
 	@WorkerThread
-	private void calculatePreactivations()
+	@Override
+	public void doForwardProp()
 	{
 		m_kernel.set_inputDataBuffer(m_inputDataBuffer);
-		if (m_inputDataBufferSize % 4 == 0)
+		if (m_batchSize > 1)
 		{
-			m_kernel.forEach_calculatePreactivationsBy4(m_preactivationDataBuffer);
+			calculateBatchActivations();
+		}
+		else if (m_inputDataBufferSize % 4 == 0)
+		{
+			if (m_halfPrecisionWeights)
+			{
+				m_kernel.forEach_calculateActivationsBy4Half(m_activationDataBuffer);
+			}
+			else
+			{
+				m_kernel.forEach_calculateActivationsBy4(m_activationDataBuffer);
+			}
 		}
 		else
 		{
-			m_kernel.forEach_calculatePreactivations(m_preactivationDataBuffer);
+			if (m_halfPrecisionWeights)
+			{
+				m_kernel.forEach_calculateActivationsHalf(m_activationDataBuffer);
+			}
+			else
+			{
+				m_kernel.forEach_calculateActivations(m_activationDataBuffer);
+			}
 		}
 	}
 
+	/**
+	 * Calculates activations of all samples in the batch, launching one kernel per neuron so that weights are read once per several samples.
+	 */
 	@WorkerThread
-	private void calculateActivations()
+	private void calculateBatchActivations()
 	{
-		m_activationDataBuffer = m_activationFunction.applyActivation(m_preactivationDataBuffer, m_activationDataBuffer, m_activationDataBufferSize);
+		if (m_inputDataBufferSize % 4 == 0)
+		{
+			if (m_halfPrecisionWeights)
+			{
+				m_kernel.forEach_calculateBatchActivationsBy4Half(m_biasesBuffer);
+			}
+			else
+			{
+				m_kernel.forEach_calculateBatchActivationsBy4(m_biasesBuffer);
+			}
+		}
+		else
+		{
+			if (m_halfPrecisionWeights)
+			{
+				m_kernel.forEach_calculateBatchActivationsHalf(m_biasesBuffer);
+			}
+			else
+			{
+				m_kernel.forEach_calculateBatchActivations(m_biasesBuffer);
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.github.markorakita.axnn_rs.neuralnet.layers;
+
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.Type;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+/**
+ * Winograd F(2x2, 3x3) convolution on device, for layers with 3x3 filters and stride 1.
+ *
+ * Output is split into 2x2 tiles, each calculated from 4x4 input tile. Input tiles and filters are transformed so that
+ * convolution becomes elementwise multiplication of 4x4 transformed values summed over channels, which needs 16 multiply-adds
+ * per tile and channel instead of 36 multiply-adds of direct convolution. Propagation runs three kernels:
+ * - input tiles are transformed into transformed input scratch buffer,
+ * - transformed tiles are multiplied with transformed filters and summed over channels into products scratch buffer,
+ * - products are transformed back into 2x2 output tiles, with biases and activation function applied.
+ * Filters are transformed on device whenever they are loaded or changed, and kept beside the filters of the layer.
+ */
+final class WinogradConvolution
+{
+	/**
+	 * Width and height of output tile.
+	 */
+	private static final int c_outputTileSize = 2;
+
+	/**
+	 * Number of values in transformed tile, 4x4.
+	 */
+	private static final int c_numTransformedValues = 16;
+
+	/**
+	 * Winograd convolution RS kernel.
+	 */
+	private final ScriptC_winogradconvolution m_kernel;
+
+	/**
+	 * Input data number of channels.
+	 */
+	private final int m_inputNumChannels;
+
+	/**
+	 * Number of convolutional filters.
+	 */
+	private final int m_numFilters;
+
+	/**
+	 * Number of output tiles of one sample.
+	 */
+	private final int m_numSampleTiles;
+
+	/**
+	 * Are filters kept in half precision, in which case transformed filters are kept in half precision too.
+	 */
+	private final boolean m_halfPrecisionFilters;
+
+	/**
+	 * Transformed filters buffer, ordered by transformed position, then by filter, then by channel.
+	 */
+	private final Allocation m_transformedFiltersBuffer;
+
+	/**
+	 * Constructor.
+	 * @param rsContext Renderscript context.
+	 * @param inputNumChannels Input data number of channels.
+	 * @param inputDataWidth Width of input data.
+	 * @param inputDataHeight Height of input data.
+	 * @param numFilters Number of convolutional filters.
+	 * @param paddingX Padding in dimension X.
+	 * @param paddingY Padding in dimension Y.
+	 * @param numPatchesX Number of patches in dimension X.
+	 * @param numPatchesY Number of patches in dimension Y.
+	 * @param biasesBuffer Biases buffer of the layer.
+	 * @param activationFunctionType Activation function applied to preactivations.
+	 * @param activationAlpha Alpha parameter of activation function.
+	 * @param halfPrecisionFilters Are filters kept in half precision.
+	 */
+	WinogradConvolution(@NonNull RenderScript rsContext, int inputNumChannels, int inputDataWidth, int inputDataHeight, int numFilters,
+						int paddingX, int paddingY, int numPatchesX, int numPatchesY, @NonNull Allocation biasesBuffer,
+						@NonNull ActivationFunctionType activationFunctionType, float activationAlpha, boolean halfPrecisionFilters)
+	{
+		m_kernel = new ScriptC_winogradconvolution(rsContext);
+
+		m_inputNumChannels = inputNumChannels;
+		m_kernel.set_inputNumChannels(inputNumChannels);
+		m_kernel.set_inputDataWidth(inputDataWidth);
+		m_kernel.set_inputDataHeight(inputDataHeight);
+		m_numFilters = numFilters;
+		m_kernel.set_numFilters(numFilters);
+		m_kernel.set_paddingX(paddingX);
+		m_kernel.set_paddingY(paddingY);
+		m_kernel.set_numPatchesX(numPatchesX);
+		m_kernel.set_numPatchesY(numPatchesY);
+
+		int numTilesX = (numPatchesX + c_outputTileSize - 1) / c_outputTileSize;
+		m_kernel.set_numTilesX(numTilesX);
+		int numTilesY = (numPatchesY + c_outputTileSize - 1) / c_outputTileSize;
+		m_kernel.set_numTilesY(numTilesY);
+		m_numSampleTiles = numTilesX * numTilesY;
+
+		m_kernel.set_biasesBuffer(biasesBuffer);
+		m_kernel.set_activationFunctionType(activationFunctionType.ordinal());
+		m_kernel.set_activationAlpha(activationAlpha);
+
+		m_halfPrecisionFilters = halfPrecisionFilters;
+		Type.Builder tb = new Type.Builder(rsContext, halfPrecisionFilters ? Element.F16_4(rsContext) : Element.F32_4(rsContext));
+		tb.setX(c_numTransformedValues * numFilters * inputNumChannels / 4);
+		m_transformedFiltersBuffer = Allocation.createTyped(rsContext, tb.create(), Allocation.USAGE_SCRIPT);
+		m_kernel.set_transformedFiltersBuffer(m_transformedFiltersBuffer);
+	}
+
+	/**
+	 * Checks whether convolution with given parameters can be calculated by Winograd convolution.
+	 * @param filterWidth Filters width.
+	 * @param filterHeight Filters height.
+	 * @param stride Stride for patching.
+	 */
+	static boolean isSupported(int filterWidth, int filterHeight, int stride)
+	{
+		return filterWidth == 3 && filterHeight == 3 && stride == 1;
+	}
+
+	/**
+	 * Gets types of scratch buffers for transformed input tiles and their products with transformed filters, for all samples in the batch.
+	 * @param rsContext Renderscript context.
+	 * @param batchSize Number of samples.
+	 */
+	@NonNull
+	Type[] getScratchBufferTypes(@NonNull RenderScript rsContext, int batchSize)
+	{
+		Type.Builder transformedInputTb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+		transformedInputTb.setX(batchSize * m_numSampleTiles * c_numTransformedValues * m_inputNumChannels / 4);
+
+		Type.Builder productsTb = new Type.Builder(rsContext, Element.F32_4(rsContext));
+		productsTb.setX(batchSize * m_numSampleTiles * c_numTransformedValues * m_numFilters / 4);
+
+		return new Type[] { transformedInputTb.create(), productsTb.create() };
+	}
+
+	/**
+	 * Sets values per input channel with which input data is padded instead of zeros, used when input data normalization is folded into the layer.
+	 * @param inputPaddingValuesBuffer Input padding values buffer.
+	 */
+	void setInputPaddingValues(@NonNull Allocation inputPaddingValuesBuffer)
+	{
+		m_kernel.set_inputPaddingValuesBuffer(inputPaddingValuesBuffer);
+		m_kernel.set_padWithInputValues(true);
+	}
+
+	/**
+	 * Transforms filters on device, whenever they are loaded or changed.
+	 * @param filtersBuffer Filters buffer of the layer.
+	 */
+	@WorkerThread
+	void transformFilters(@NonNull Allocation filtersBuffer)
+	{
+		m_kernel.set_filtersBuffer(filtersBuffer);
+		if (m_halfPrecisionFilters)
+		{
+			m_kernel.forEach_transformFiltersHalf(m_transformedFiltersBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_transformFilters(m_transformedFiltersBuffer);
+		}
+	}
+
+	/**
+	 * Convolves input data of all samples in the batch.
+	 * @param inputDataBuffer Input data buffer.
+	 * @param scratchBuffers Scratch buffers of types returned by getScratchBufferTypes.
+	 * @param activationDataBuffer Buffer to write activations into.
+	 */
+	@WorkerThread
+	void convolve(@NonNull Allocation inputDataBuffer, @NonNull Allocation[] scratchBuffers, @NonNull Allocation activationDataBuffer)
+	{
+		Allocation transformedInputBuffer = scratchBuffers[0];
+		Allocation productsBuffer = scratchBuffers[1];
+
+		m_kernel.set_inputDataBuffer(inputDataBuffer);
+		m_kernel.forEach_transformInputTiles(transformedInputBuffer);
+
+		m_kernel.set_transformedInputBuffer(transformedInputBuffer);
+		if (m_halfPrecisionFilters)
+		{
+			m_kernel.forEach_multiplyTilesHalf(productsBuffer);
+		}
+		else
+		{
+			m_kernel.forEach_multiplyTiles(productsBuffer);
+		}
+
+		m_kernel.set_productsBuffer(productsBuffer);
+		m_kernel.forEach_transformOutputTiles(activationDataBuffer);
+	}
+}
@@ -0,0 +1,30 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+// Number of elements that we are packing per vector.
+const int32_t c_numElPerVec = 4;
+
+// Activation data buffer.
+rs_allocation activationDataBuffer;
+
+// Number of channels of the input which is copied.
+int32_t inputNumChannels;
+
+// Number of activation channels.
+int32_t activationNumChannels;
+
+// Channel of the activations from which input channels are copied.
+int32_t activationChannelOffset;
+
+// Copies channels of one input into their place among activation channels, pixel by pixel.
+// Optimized to process four floats at a time.
+void __attribute__((kernel)) copyInput(float4 inputData, uint32_t x)
+{
+	const int32_t c_inputNumChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_pixelIndex = x / c_inputNumChannelVecs;
+	const int32_t c_channelVec = x % c_inputNumChannelVecs;
+	const int32_t c_activationIndex = c_pixelIndex * (activationNumChannels / c_numElPerVec) + activationChannelOffset / c_numElPerVec + c_channelVec;
+
+	rsSetElementAt_float4(activationDataBuffer, inputData, c_activationIndex);
+}
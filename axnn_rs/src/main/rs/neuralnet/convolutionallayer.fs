@@ -2,6 +2,8 @@
 #pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
 #pragma rs_fp_relaxed
 
+#include "activations.rsh"
+
 // Number of elements that we are packing per vector.
 const int32_t c_numElPerVec = 4;
 
@@ -32,6 +34,12 @@ rs_allocation filtersBuffer;
 // Biases buffer.
 rs_allocation biasesBuffer;
 
+// Activation function type, one of ACTIVATION_FUNCTION_* values.
+int32_t activationFunctionType;
+
+// Activation alpha parameter.
+float activationAlpha;
+
 // Padding in dimension X.
 int32_t paddingX;
 
@@ -47,8 +55,50 @@ int32_t numPatchesX;
 // Number of patches to apply filters on in dimension Y.
 int32_t numPatchesY;
 
-// Does forward propagation through the layer.
-float4 __attribute__((kernel)) propagate(uint32_t x)
+// Should input data be padded with values per channel from input padding values buffer, instead of with zeros.
+bool padWithInputValues;
+
+// Input padding values buffer, used when input data normalization is folded into the filters,
+// since zeros of normalized input data are means of unnormalized input data.
+rs_allocation inputPaddingValuesBuffer;
+
+// Width of the pooling unit, when activations are max pooled before they are written.
+int32_t poolUnitWidth;
+
+// Height of the pooling unit, when activations are max pooled before they are written.
+int32_t poolUnitHeight;
+
+// Pooling padding in dimension X.
+int32_t poolPaddingX;
+
+// Pooling padding in dimension Y.
+int32_t poolPaddingY;
+
+// Stride of the pooling unit.
+int32_t poolUnitStride;
+
+// Number of pooling units in dimension X.
+int32_t numPoolUnitsX;
+
+// Number of pooling units in dimension Y.
+int32_t numPoolUnitsY;
+
+// Reads four filter values, widening them from half precision if filters are kept in half precision.
+static inline float4 getFilterPixels(int32_t index, bool halfPrecisionFilters)
+{
+	if (halfPrecisionFilters)
+	{
+		// Widening element by element, since vector half conversions are not available on all API levels.
+		half4 halfFilterPixels = rsGetElementAt_half4(filtersBuffer, index);
+		float4 filterPixels = {halfFilterPixels.x, halfFilterPixels.y, halfFilterPixels.z, halfFilterPixels.w};
+		return filterPixels;
+	}
+
+	return rsGetElementAt_float4(filtersBuffer, index);
+}
+
+// Calculates convolution for one patch and four filters, applying biases and activation function to it.
+static inline float4 convolvePatch(int32_t sampleInputOffset, int32_t patchX, int32_t patchY, int32_t filterOffset, bool halfPrecisionFilters)
 {
     // Initializing output  activations array.
 	float activations[c_numElPerVec];
@@ -57,36 +107,38 @@ float4 __attribute__((kernel)) propagate(uint32_t x)
 	    activations[i] = 0.f;
 	}
 
-	// Positioning kernel.
+	// Positioning kernel, on the patch.
 	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
 	const int32_t c_numFilterPixels = filterWidth * filterHeight * c_numChannelVecs;
-	int32_t patchIndex = c_numElPerVec * x / numFilters;
-	int32_t patchOffsetX = -paddingX + (patchIndex % numPatchesX) * stride;
-	int32_t patchOffsetY = -paddingY + (patchIndex / numPatchesX) * stride;
-	int32_t filterOffset = x % (numFilters / c_numElPerVec);
+	int32_t patchOffsetX = -paddingX + patchX * stride;
+	int32_t patchOffsetY = -paddingY + patchY * stride;
 
     // Calculating convolution for one patch and number of filters.
 	for (int32_t filterPixelY = 0; filterPixelY < filterHeight; ++filterPixelY)
 	{
 		int32_t imagePixelY = patchOffsetY + filterPixelY;
-		if (imagePixelY >= 0 && imagePixelY < inputDataHeight)
+		bool imageRowInside = imagePixelY >= 0 && imagePixelY < inputDataHeight;
+		if (imageRowInside || padWithInputValues)
 		{
-			int32_t imagePixelYOffset = imagePixelY * inputDataWidth * c_numChannelVecs;
+			int32_t imagePixelYOffset = sampleInputOffset + imagePixelY * inputDataWidth * c_numChannelVecs;
 			int32_t filterPixelYOffset = filterPixelY * filterWidth * c_numChannelVecs;
 			for (int32_t filterPixelX = 0; filterPixelX < filterWidth; ++filterPixelX)
 			{
 				int32_t imagePixelX = patchOffsetX + filterPixelX;
-				if (imagePixelX >= 0 && imagePixelX < inputDataWidth)
+				bool imagePixelInside = imageRowInside && imagePixelX >= 0 && imagePixelX < inputDataWidth;
+				if (imagePixelInside || padWithInputValues)
 				{
 					int32_t imagePixelXOffset = imagePixelYOffset + imagePixelX * c_numChannelVecs;
 					int32_t filterPixelXOffset = filterPixelYOffset + filterPixelX * c_numChannelVecs;
 					for (int32_t channelIndex = 0; channelIndex < c_numChannelVecs; ++channelIndex)
 					{
-						float4 imagePixels = rsGetElementAt_float4(inputDataBuffer, imagePixelXOffset + channelIndex);
+						float4 imagePixels = imagePixelInside ?
+							rsGetElementAt_float4(inputDataBuffer, imagePixelXOffset + channelIndex) :
+							rsGetElementAt_float4(inputPaddingValuesBuffer, channelIndex);
 						for (int32_t filterIndex = 0; filterIndex < c_numElPerVec; ++filterIndex)
 						{
-							float4 filterPixels = rsGetElementAt_float4(filtersBuffer, (filterOffset * c_numElPerVec + filterIndex) * c_numFilterPixels +
-								filterPixelXOffset + channelIndex);
+							float4 filterPixels = getFilterPixels((filterOffset * c_numElPerVec + filterIndex) * c_numFilterPixels +
+								filterPixelXOffset + channelIndex, halfPrecisionFilters);
 							activations[filterIndex] += dot(imagePixels, filterPixels);
 						}
 					}
@@ -98,5 +150,81 @@ float4 __attribute__((kernel)) propagate(uint32_t x)
 	float4 outputActivations = {activations[0], activations[1], activations[2], activations[3]};
 	float4 biases = rsGetElementAt_float4(biasesBuffer, filterOffset);
 
-	return outputActivations + biases;
-}
\ No newline at end of file
+	return activate4(outputActivations + biases, activationFunctionType, activationAlpha);
+}
+
+// Calculates convolution for one patch and four filters.
+static inline float4 convolve(uint32_t x, bool halfPrecisionFilters)
+{
+	// Positioning kernel, on the sample of the batch and the patch within it.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_numSampleActivationVecs = numPatchesX * numPatchesY * numFilters / c_numElPerVec;
+	int32_t sampleIndex = x / c_numSampleActivationVecs;
+	int32_t sampleInputOffset = sampleIndex * inputDataHeight * inputDataWidth * c_numChannelVecs;
+	int32_t sampleActivationIndex = x % c_numSampleActivationVecs;
+	int32_t patchIndex = c_numElPerVec * sampleActivationIndex / numFilters;
+	int32_t filterOffset = sampleActivationIndex % (numFilters / c_numElPerVec);
+
+	return convolvePatch(sampleInputOffset, patchIndex % numPatchesX, patchIndex / numPatchesX, filterOffset, halfPrecisionFilters);
+}
+
+// Calculates max pooled convolution for one pooling unit and four filters. Convolutions of the patches within the pooling unit
+// are kept in registers, so full resolution activations are never written to memory.
+static inline float4 convolvePooled(uint32_t x, bool halfPrecisionFilters)
+{
+	float4 activations = {-FLT_MAX, -FLT_MAX, -FLT_MAX, -FLT_MAX};
+
+	// Positioning kernel, on the sample of the batch and the pooling unit within it.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_numFilterVecs = numFilters / c_numElPerVec;
+	const int32_t c_numSampleUnits = numPoolUnitsX * numPoolUnitsY;
+	const int32_t c_sampleIndex = x / c_numFilterVecs / c_numSampleUnits;
+	const int32_t c_sampleInputOffset = c_sampleIndex * inputDataHeight * inputDataWidth * c_numChannelVecs;
+	const int32_t c_unitIndex = x / c_numFilterVecs % c_numSampleUnits;
+	const int32_t c_filterOffset = x % c_numFilterVecs;
+	const int32_t c_unitOffsetX = -poolPaddingX + (c_unitIndex % numPoolUnitsX) * poolUnitStride;
+	const int32_t c_unitOffsetY = -poolPaddingY + (c_unitIndex / numPoolUnitsX) * poolUnitStride;
+
+	// Calculating max over patches of the pooling unit.
+	for (int32_t unitPixelY = 0; unitPixelY < poolUnitHeight; ++unitPixelY)
+	{
+		int32_t patchY = c_unitOffsetY + unitPixelY;
+		if (patchY >= 0 && patchY < numPatchesY)
+		{
+			for (int32_t unitPixelX = 0; unitPixelX < poolUnitWidth; ++unitPixelX)
+			{
+				int32_t patchX = c_unitOffsetX + unitPixelX;
+				if (patchX >= 0 && patchX < numPatchesX)
+				{
+					activations = max(activations, convolvePatch(c_sampleInputOffset, patchX, patchY, c_filterOffset, halfPrecisionFilters));
+				}
+			}
+		}
+	}
+
+	return activations;
+}
+
+// Does forward propagation through the layer.
+float4 __attribute__((kernel)) propagate(uint32_t x)
+{
+	return convolve(x, false);
+}
+
+// Does forward propagation through the layer, with filters kept in half precision.
+float4 __attribute__((kernel)) propagateHalf(uint32_t x)
+{
+	return convolve(x, true);
+}
+
+// Does forward propagation through the layer and the max pool layer after it.
+float4 __attribute__((kernel)) propagatePooled(uint32_t x)
+{
+	return convolvePooled(x, false);
+}
+
+// Does forward propagation through the layer and the max pool layer after it, with filters kept in half precision.
+float4 __attribute__((kernel)) propagatePooledHalf(uint32_t x)
+{
+	return convolvePooled(x, true);
+}
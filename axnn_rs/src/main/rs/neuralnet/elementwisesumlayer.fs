@@ -0,0 +1,26 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+// First input data buffer.
+rs_allocation firstInputDataBuffer;
+
+// Input data buffer which is added to the activations.
+rs_allocation inputDataBuffer;
+
+// Activation data buffer.
+rs_allocation activationDataBuffer;
+
+// Adds first two inputs.
+// Optimized to process four floats at a time.
+float4 __attribute__((kernel)) addInputs(uint32_t x)
+{
+	return rsGetElementAt_float4(firstInputDataBuffer, x) + rsGetElementAt_float4(inputDataBuffer, x);
+}
+
+// Adds another input to already summed inputs.
+// Optimized to process four floats at a time.
+float4 __attribute__((kernel)) accumulateInput(uint32_t x)
+{
+	return rsGetElementAt_float4(activationDataBuffer, x) + rsGetElementAt_float4(inputDataBuffer, x);
+}
@@ -38,6 +38,9 @@ int unitStride;
 // Number of pooling units in dimension X.
 int numUnitsX;
 
+// Number of pooling units in dimension Y.
+int numUnitsY;
+
 // Does forward propagation through the layer.
 float4 __attribute__((kernel)) propagate(uint32_t x)
 {
@@ -46,7 +49,10 @@ float4 __attribute__((kernel)) propagate(uint32_t x)
 
 	// Positioning kernel.
 	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
-	const int32_t c_unitIndex = x / c_numChannelVecs;
+	const int32_t c_numSampleUnits = numUnitsX * numUnitsY;
+	const int32_t c_sampleIndex = x / c_numChannelVecs / c_numSampleUnits;
+	const int32_t c_sampleInputOffset = c_sampleIndex * inputDataHeight * inputDataWidth * c_numChannelVecs;
+	const int32_t c_unitIndex = x / c_numChannelVecs % c_numSampleUnits;
 	const int32_t c_channelVec = x % c_numChannelVecs;
 	const int32_t c_unitOffsetX = -paddingX + (c_unitIndex % numUnitsX) * unitStride;
     const int32_t c_unitOffsetY = -paddingY + (c_unitIndex / numUnitsX) * unitStride;
@@ -57,7 +63,7 @@ float4 __attribute__((kernel)) propagate(uint32_t x)
 		int32_t imagePixelY = c_unitOffsetY + unitPixelY;
 		if (imagePixelY >= 0 && imagePixelY < inputDataHeight)
 		{
-			int32_t imagePixelYOffset = imagePixelY * inputDataWidth * c_numChannelVecs;
+			int32_t imagePixelYOffset = c_sampleInputOffset + imagePixelY * inputDataWidth * c_numChannelVecs;
 			for (int32_t unitPixelX = 0; unitPixelX < unitWidth; ++unitPixelX)
 			{
 				int32_t imagePixelX = c_unitOffsetX + unitPixelX;
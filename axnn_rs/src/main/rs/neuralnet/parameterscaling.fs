@@ -0,0 +1,43 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+// Parameters buffer whose values are scaled in place.
+rs_allocation parametersBuffer;
+
+// Scale applied to the parameters.
+float parametersScale;
+
+// Scales parameters.
+float __attribute__((kernel)) scaleParameters(uint32_t x)
+{
+	return rsGetElementAt_float(parametersBuffer, x) * parametersScale;
+}
+
+// Scales parameters.
+// Optimized to process four floats at a time.
+float4 __attribute__((kernel)) scaleParametersBy4(uint32_t x)
+{
+	return rsGetElementAt_float4(parametersBuffer, x) * parametersScale;
+}
+
+// Scales parameters kept in half precision.
+half __attribute__((kernel)) scaleHalfParameters(uint32_t x)
+{
+	float parameter = rsGetElementAt_half(parametersBuffer, x);
+
+	return parameter * parametersScale;
+}
+
+// Scales parameters kept in half precision.
+// Optimized to process four halfs at a time.
+half4 __attribute__((kernel)) scaleHalfParametersBy4(uint32_t x)
+{
+	// Widening element by element, since vector half conversions are not available on all API levels.
+	half4 halfParameters = rsGetElementAt_half4(parametersBuffer, x);
+	float4 parameters = {halfParameters.x, halfParameters.y, halfParameters.z, halfParameters.w};
+	parameters *= parametersScale;
+	half4 scaledParameters = {parameters.x, parameters.y, parameters.z, parameters.w};
+
+	return scaledParameters;
+}
@@ -0,0 +1,179 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+#include "activations.rsh"
+
+// Number of elements that we are packing per vector.
+const int32_t c_numElPerVec = 4;
+
+// Input data buffer.
+rs_allocation inputDataBuffer;
+
+// Input data size.
+uint32_t inputDataSize;
+
+// Quantized weights buffer.
+rs_allocation weightsBuffer;
+
+// Weights scales buffer, one scale per neuron.
+rs_allocation scalesBuffer;
+
+// Weights zero points buffer, one zero point per neuron.
+rs_allocation zeroPointsBuffer;
+
+// Biases buffer.
+rs_allocation biasesBuffer;
+
+// Activation function type, one of ACTIVATION_FUNCTION_* values.
+int32_t activationFunctionType;
+
+// Activation alpha parameter.
+float activationAlpha;
+
+// Number of samples whose activations are calculated in one pass over the weights, when propagating batch of samples.
+const uint32_t c_numSamplesPerPass = 4;
+
+// Activation data buffer, written directly when propagating batch of samples.
+rs_allocation activationDataBuffer;
+
+// Number of neurons.
+uint32_t numNeurons;
+
+// Number of samples in the batch.
+uint32_t batchSize;
+
+// Calculates quantized standard layer activations.
+float __attribute__((kernel)) calculateActivations(uint32_t x)
+{
+	float preactivation = 0.f;
+
+	// Positioning kernel.
+	const uint32_t weightsOffset = x * inputDataSize;
+	const float zeroPoint = rsGetElementAt_float(zeroPointsBuffer, x);
+
+	// Calculating preactivations, in quantized weights scale.
+	for (uint32_t inputIndex = 0; inputIndex < inputDataSize; ++inputIndex)
+	{
+        float inputData = rsGetElementAt_float(inputDataBuffer, inputIndex);
+        float weight = (float)rsGetElementAt_char(weightsBuffer, weightsOffset + inputIndex) - zeroPoint;
+
+        preactivation += inputData * weight;
+	}
+
+    float scale = rsGetElementAt_float(scalesBuffer, x);
+    float bias = rsGetElementAt_float(biasesBuffer, x);
+
+	return activate(scale * preactivation + bias, activationFunctionType, activationAlpha);
+}
+
+// Calculates quantized standard layer activations.
+// Optimized to multiply four floats at a time.
+float __attribute__((kernel)) calculateActivationsBy4(uint32_t x)
+{
+	float preactivation = 0.f;
+
+	// Positioning kernel.
+	const uint32_t numInputVecs = inputDataSize / c_numElPerVec;
+	const uint32_t weightsOffset = x * numInputVecs;
+	const float zeroPoint = rsGetElementAt_float(zeroPointsBuffer, x);
+
+	// Calculating preactivations, in quantized weights scale.
+	for (uint32_t inputIndex = 0; inputIndex < numInputVecs; ++inputIndex)
+	{
+        float4 inputVec = rsGetElementAt_float4(inputDataBuffer, inputIndex);
+        float4 weightsVec = convert_float4(rsGetElementAt_char4(weightsBuffer, weightsOffset + inputIndex)) - zeroPoint;
+
+        preactivation += dot(inputVec, weightsVec);
+	}
+
+    float scale = rsGetElementAt_float(scalesBuffer, x);
+    float bias = rsGetElementAt_float(biasesBuffer, x);
+
+	return activate(scale * preactivation + bias, activationFunctionType, activationAlpha);
+}
+
+// Calculates activations of one neuron for all samples in the batch.
+// Samples are processed four at a time, so that each weight is read and dequantized once per four samples instead of once per sample.
+static inline void calculateNeuronBatchActivations(float bias, uint32_t x, bool by4)
+{
+	// Positioning kernel.
+	const uint32_t numInputElements = by4 ? inputDataSize / c_numElPerVec : inputDataSize;
+	const uint32_t weightsOffset = x * numInputElements;
+	const float zeroPoint = rsGetElementAt_float(zeroPointsBuffer, x);
+	const float scale = rsGetElementAt_float(scalesBuffer, x);
+
+	uint32_t sampleIndex = 0;
+	for (; sampleIndex + c_numSamplesPerPass <= batchSize; sampleIndex += c_numSamplesPerPass)
+	{
+		float4 preactivations = {0.f, 0.f, 0.f, 0.f};
+		const uint32_t inputOffset = sampleIndex * numInputElements;
+
+		// Calculating preactivations of four samples, in quantized weights scale.
+		for (uint32_t inputIndex = 0; inputIndex < numInputElements; ++inputIndex)
+		{
+			const uint32_t sampleInputIndex = inputOffset + inputIndex;
+			if (by4)
+			{
+				float4 weightsVec = convert_float4(rsGetElementAt_char4(weightsBuffer, weightsOffset + inputIndex)) - zeroPoint;
+
+				preactivations.x += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex), weightsVec);
+				preactivations.y += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex + numInputElements), weightsVec);
+				preactivations.z += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex + 2 * numInputElements), weightsVec);
+				preactivations.w += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex + 3 * numInputElements), weightsVec);
+			}
+			else
+			{
+				float weight = (float)rsGetElementAt_char(weightsBuffer, weightsOffset + inputIndex) - zeroPoint;
+				float4 inputData = {rsGetElementAt_float(inputDataBuffer, sampleInputIndex),
+					rsGetElementAt_float(inputDataBuffer, sampleInputIndex + numInputElements),
+					rsGetElementAt_float(inputDataBuffer, sampleInputIndex + 2 * numInputElements),
+					rsGetElementAt_float(inputDataBuffer, sampleInputIndex + 3 * numInputElements)};
+
+				preactivations += inputData * weight;
+			}
+		}
+
+		float4 activations = activate4(scale * preactivations + bias, activationFunctionType, activationAlpha);
+		rsSetElementAt_float(activationDataBuffer, activations.x, sampleIndex * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.y, (sampleIndex + 1) * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.z, (sampleIndex + 2) * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.w, (sampleIndex + 3) * numNeurons + x);
+	}
+
+	// Calculating preactivations of remaining samples one by one.
+	for (; sampleIndex < batchSize; ++sampleIndex)
+	{
+		float preactivation = 0.f;
+		const uint32_t inputOffset = sampleIndex * numInputElements;
+
+		for (uint32_t inputIndex = 0; inputIndex < numInputElements; ++inputIndex)
+		{
+			if (by4)
+			{
+				float4 weightsVec = convert_float4(rsGetElementAt_char4(weightsBuffer, weightsOffset + inputIndex)) - zeroPoint;
+				preactivation += dot(rsGetElementAt_float4(inputDataBuffer, inputOffset + inputIndex), weightsVec);
+			}
+			else
+			{
+				float weight = (float)rsGetElementAt_char(weightsBuffer, weightsOffset + inputIndex) - zeroPoint;
+				preactivation += rsGetElementAt_float(inputDataBuffer, inputOffset + inputIndex) * weight;
+			}
+		}
+
+		rsSetElementAt_float(activationDataBuffer, activate(scale * preactivation + bias, activationFunctionType, activationAlpha), sampleIndex * numNeurons + x);
+	}
+}
+
+// Calculates quantized standard layer activations for batch of samples.
+void __attribute__((kernel)) calculateBatchActivations(float bias, uint32_t x)
+{
+	calculateNeuronBatchActivations(bias, x, false);
+}
+
+// Calculates quantized standard layer activations for batch of samples.
+// Optimized to multiply four floats at a time.
+void __attribute__((kernel)) calculateBatchActivationsBy4(float bias, uint32_t x)
+{
+	calculateNeuronBatchActivations(bias, x, true);
+}
@@ -0,0 +1,136 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+// Space-to-depth rearrangement of strided convolution. Input data is split into blocks of stride x stride pixels, and each block becomes
+// one pixel whose channels are pixels of the block, row by row, each with all input channels. Filters are rearranged the same way,
+// padded with zeros to whole blocks, so that convolution with stride 1 over the blocks gives activations of the strided convolution.
+
+// Number of elements that we are packing per vector.
+const int32_t c_numElPerVec = 4;
+
+// Number of input data channels.
+int32_t inputNumChannels;
+
+// Input data width.
+int32_t inputDataWidth;
+
+// Input data height.
+int32_t inputDataHeight;
+
+// Input data buffer.
+rs_allocation inputDataBuffer;
+
+// Width of a filter, before rearranging into blocks.
+int32_t filterWidth;
+
+// Height of a filter, before rearranging into blocks.
+int32_t filterHeight;
+
+// Filters buffer, in channel-major order, before rearranging into blocks.
+rs_allocation filtersBuffer;
+
+// Padding in dimension X, applied to input data while it is rearranged into blocks.
+int32_t paddingX;
+
+// Padding in dimension Y, applied to input data while it is rearranged into blocks.
+int32_t paddingY;
+
+// Stride of the original convolution, which is width and height of the blocks.
+int32_t stride;
+
+// Width of input data rearranged into blocks, in blocks.
+int32_t blocksDataWidth;
+
+// Height of input data rearranged into blocks, in blocks.
+int32_t blocksDataHeight;
+
+// Width of filters rearranged into blocks, in blocks.
+int32_t blockFilterWidth;
+
+// Height of filters rearranged into blocks, in blocks.
+int32_t blockFilterHeight;
+
+// Should input data be padded with values per channel from input padding values buffer, instead of with zeros.
+bool padWithInputValues;
+
+// Input padding values buffer, used when input data normalization is folded into the filters,
+// since zeros of normalized input data are means of unnormalized input data.
+rs_allocation inputPaddingValuesBuffer;
+
+// Gets index of four filter values which go to given index of rearranged filters, or -1 if they pad the filter to whole blocks.
+static inline int32_t getFilterPixelsIndex(uint32_t x)
+{
+	// Positioning kernel, on the filter, the block within it and the channels of the block.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_numBlockChannelVecs = stride * stride * c_numChannelVecs;
+	const int32_t c_numFilterBlocks = blockFilterWidth * blockFilterHeight;
+	const int32_t c_blockChannelIndex = x % c_numBlockChannelVecs;
+	const int32_t c_filterBlockIndex = x / c_numBlockChannelVecs % c_numFilterBlocks;
+	const int32_t c_filterIndex = x / c_numBlockChannelVecs / c_numFilterBlocks;
+	const int32_t c_blockPixel = c_blockChannelIndex / c_numChannelVecs;
+	const int32_t c_filterPixelX = (c_filterBlockIndex % blockFilterWidth) * stride + c_blockPixel % stride;
+	const int32_t c_filterPixelY = (c_filterBlockIndex / blockFilterWidth) * stride + c_blockPixel / stride;
+
+	if (c_filterPixelX >= filterWidth || c_filterPixelY >= filterHeight)
+	{
+		return -1;
+	}
+
+	return ((c_filterIndex * filterHeight + c_filterPixelY) * filterWidth + c_filterPixelX) * c_numChannelVecs + c_blockChannelIndex % c_numChannelVecs;
+}
+
+// Rearranges filters into blocks, used whenever filters are loaded or changed.
+float4 __attribute__((kernel)) rearrangeFilters(uint32_t x)
+{
+	int32_t filterPixelsIndex = getFilterPixelsIndex(x);
+	if (filterPixelsIndex < 0)
+	{
+		float4 zeros = {0.f, 0.f, 0.f, 0.f};
+		return zeros;
+	}
+
+	return rsGetElementAt_float4(filtersBuffer, filterPixelsIndex);
+}
+
+// Rearranges filters kept in half precision into blocks.
+half4 __attribute__((kernel)) rearrangeFiltersHalf(uint32_t x)
+{
+	int32_t filterPixelsIndex = getFilterPixelsIndex(x);
+	if (filterPixelsIndex < 0)
+	{
+		half4 zeros = {0.f, 0.f, 0.f, 0.f};
+		return zeros;
+	}
+
+	return rsGetElementAt_half4(filtersBuffer, filterPixelsIndex);
+}
+
+// Rearranges input data into blocks, padding it on the way.
+float4 __attribute__((kernel)) rearrangeInput(uint32_t x)
+{
+	// Positioning kernel, on the sample of the batch, the block within it and the channels of the block.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_numBlockChannelVecs = stride * stride * c_numChannelVecs;
+	const int32_t c_numSampleBlocks = blocksDataWidth * blocksDataHeight;
+	const int32_t c_blockChannelIndex = x % c_numBlockChannelVecs;
+	const int32_t c_blockIndex = x / c_numBlockChannelVecs % c_numSampleBlocks;
+	const int32_t c_sampleIndex = x / c_numBlockChannelVecs / c_numSampleBlocks;
+	const int32_t c_blockPixel = c_blockChannelIndex / c_numChannelVecs;
+	const int32_t c_channelIndex = c_blockChannelIndex % c_numChannelVecs;
+	const int32_t c_imagePixelX = -paddingX + (c_blockIndex % blocksDataWidth) * stride + c_blockPixel % stride;
+	const int32_t c_imagePixelY = -paddingY + (c_blockIndex / blocksDataWidth) * stride + c_blockPixel / stride;
+
+	if (c_imagePixelX >= 0 && c_imagePixelX < inputDataWidth && c_imagePixelY >= 0 && c_imagePixelY < inputDataHeight)
+	{
+		return rsGetElementAt_float4(inputDataBuffer,
+			((c_sampleIndex * inputDataHeight + c_imagePixelY) * inputDataWidth + c_imagePixelX) * c_numChannelVecs + c_channelIndex);
+	}
+	if (padWithInputValues)
+	{
+		return rsGetElementAt_float4(inputPaddingValuesBuffer, c_channelIndex);
+	}
+
+	float4 zeros = {0.f, 0.f, 0.f, 0.f};
+	return zeros;
+}
@@ -0,0 +1,129 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+#include "activations.rsh"
+
+// Input data buffer.
+rs_allocation inputDataBuffer;
+
+// Is input data buffer vectorized, holding four floats per element.
+bool inputDataVectorized;
+
+// Offsets of each neuron's weights in the weights buffers, with one extra offset at the end (CSR row pointers).
+rs_allocation weightsOffsetsBuffer;
+
+// Input indices of non-zero weights (CSR column indices).
+rs_allocation weightsInputIndicesBuffer;
+
+// Non-zero weights values.
+rs_allocation weightsValuesBuffer;
+
+// Biases buffer.
+rs_allocation biasesBuffer;
+
+// Activation function type, one of ACTIVATION_FUNCTION_* values.
+int32_t activationFunctionType;
+
+// Activation alpha parameter.
+float activationAlpha;
+
+// Number of samples whose activations are calculated in one pass over the weights, when propagating batch of samples.
+const uint32_t c_numSamplesPerPass = 4;
+
+// Activation data buffer, written directly when propagating batch of samples.
+rs_allocation activationDataBuffer;
+
+// Input data size.
+uint32_t inputDataSize;
+
+// Number of neurons.
+uint32_t numNeurons;
+
+// Number of samples in the batch.
+uint32_t batchSize;
+
+// Reads one input value, regardless of whether input data buffer is vectorized.
+static inline float getInputData(uint32_t index)
+{
+	if (inputDataVectorized)
+	{
+		float4 inputVec = rsGetElementAt_float4(inputDataBuffer, index / 4);
+		const uint32_t channel = index % 4;
+		return channel == 0 ? inputVec.x : (channel == 1 ? inputVec.y : (channel == 2 ? inputVec.z : inputVec.w));
+	}
+
+	return rsGetElementAt_float(inputDataBuffer, index);
+}
+
+// Calculates sparse standard layer activations, touching only non-zero weights.
+float __attribute__((kernel)) calculateActivations(uint32_t x)
+{
+	float preactivation = 0.f;
+
+	// Positioning kernel.
+	const int32_t weightsStart = rsGetElementAt_int(weightsOffsetsBuffer, x);
+	const int32_t weightsEnd = rsGetElementAt_int(weightsOffsetsBuffer, x + 1);
+
+	// Calculating preactivations.
+	for (int32_t weightIndex = weightsStart; weightIndex < weightsEnd; ++weightIndex)
+	{
+        int32_t inputIndex = rsGetElementAt_int(weightsInputIndicesBuffer, weightIndex);
+        float inputData = getInputData(inputIndex);
+        float weight = rsGetElementAt_float(weightsValuesBuffer, weightIndex);
+
+        preactivation += inputData * weight;
+	}
+
+    float bias = rsGetElementAt_float(biasesBuffer, x);
+
+	return activate(preactivation + bias, activationFunctionType, activationAlpha);
+}
+
+// Calculates sparse standard layer activations for batch of samples.
+// Samples are processed four at a time, so that each non-zero weight and its input index are read once per four samples.
+void __attribute__((kernel)) calculateBatchActivations(float bias, uint32_t x)
+{
+	// Positioning kernel.
+	const int32_t weightsStart = rsGetElementAt_int(weightsOffsetsBuffer, x);
+	const int32_t weightsEnd = rsGetElementAt_int(weightsOffsetsBuffer, x + 1);
+
+	uint32_t sampleIndex = 0;
+	for (; sampleIndex + c_numSamplesPerPass <= batchSize; sampleIndex += c_numSamplesPerPass)
+	{
+		float4 preactivations = {0.f, 0.f, 0.f, 0.f};
+		const uint32_t inputOffset = sampleIndex * inputDataSize;
+
+		// Calculating preactivations of four samples.
+		for (int32_t weightIndex = weightsStart; weightIndex < weightsEnd; ++weightIndex)
+		{
+			uint32_t sampleInputIndex = inputOffset + rsGetElementAt_int(weightsInputIndicesBuffer, weightIndex);
+			float weight = rsGetElementAt_float(weightsValuesBuffer, weightIndex);
+			float4 inputData = {getInputData(sampleInputIndex), getInputData(sampleInputIndex + inputDataSize),
+				getInputData(sampleInputIndex + 2 * inputDataSize), getInputData(sampleInputIndex + 3 * inputDataSize)};
+
+			preactivations += inputData * weight;
+		}
+
+		float4 activations = activate4(preactivations + bias, activationFunctionType, activationAlpha);
+		rsSetElementAt_float(activationDataBuffer, activations.x, sampleIndex * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.y, (sampleIndex + 1) * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.z, (sampleIndex + 2) * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.w, (sampleIndex + 3) * numNeurons + x);
+	}
+
+	// Calculating preactivations of remaining samples one by one.
+	for (; sampleIndex < batchSize; ++sampleIndex)
+	{
+		float preactivation = 0.f;
+		const uint32_t inputOffset = sampleIndex * inputDataSize;
+
+		for (int32_t weightIndex = weightsStart; weightIndex < weightsEnd; ++weightIndex)
+		{
+			int32_t inputIndex = rsGetElementAt_int(weightsInputIndicesBuffer, weightIndex);
+			preactivation += getInputData(inputOffset + inputIndex) * rsGetElementAt_float(weightsValuesBuffer, weightIndex);
+		}
+
+		rsSetElementAt_float(activationDataBuffer, activate(preactivation + bias, activationFunctionType, activationAlpha), sampleIndex * numNeurons + x);
+	}
+}
@@ -2,6 +2,8 @@
 #pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
 #pragma rs_fp_relaxed
 
+#include "activations.rsh"
+
 // Number of elements that we are packing per vector.
 const int32_t c_numElPerVec = 4;
 
@@ -17,8 +19,26 @@ rs_allocation weightsBuffer;
 // Biases buffer.
 rs_allocation biasesBuffer;
 
-// Calculates standard layer preactivations.
-float __attribute__((kernel)) calculatePreactivations(uint32_t x)
+// Activation function type, one of ACTIVATION_FUNCTION_* values.
+int32_t activationFunctionType;
+
+// Activation alpha parameter.
+float activationAlpha;
+
+// Number of samples whose activations are calculated in one pass over the weights, when propagating batch of samples.
+const uint32_t c_numSamplesPerPass = 4;
+
+// Activation data buffer, written directly when propagating batch of samples.
+rs_allocation activationDataBuffer;
+
+// Number of neurons.
+uint32_t numNeurons;
+
+// Number of samples in the batch.
+uint32_t batchSize;
+
+// Calculates standard layer activations.
+float __attribute__((kernel)) calculateActivations(uint32_t x)
 {
 	float preactivation = 0.f;
 
@@ -36,12 +56,12 @@ float __attribute__((kernel)) calculatePreactivations(uint32_t x)
 
     float bias = rsGetElementAt_float(biasesBuffer, x);
 
-	return preactivation + bias;
+	return activate(preactivation + bias, activationFunctionType, activationAlpha);
 }
 
-// Calculates standard layer preactivations.
+// Calculates standard layer activations.
 // Optimized to multiply four floats at a time.
-float __attribute__((kernel)) calculatePreactivationsBy4(uint32_t x)
+float __attribute__((kernel)) calculateActivationsBy4(uint32_t x)
 {
 	float preactivation = 0.f;
 
@@ -60,5 +80,174 @@ float __attribute__((kernel)) calculatePreactivationsBy4(uint32_t x)
 
     float bias = rsGetElementAt_float(biasesBuffer, x);
 
-	return preactivation + bias;
-}
\ No newline at end of file
+	return activate(preactivation + bias, activationFunctionType, activationAlpha);
+}
+
+// Calculates standard layer activations, with weights kept in half precision.
+float __attribute__((kernel)) calculateActivationsHalf(uint32_t x)
+{
+	float preactivation = 0.f;
+
+	// Positioning kernel.
+	const uint32_t weightsOffset = x * inputDataSize;
+
+	// Calculating preactivations.
+	for (uint32_t inputIndex = 0; inputIndex < inputDataSize; ++inputIndex)
+	{
+        float inputData = rsGetElementAt_float(inputDataBuffer, inputIndex);
+        float weight = rsGetElementAt_half(weightsBuffer, weightsOffset + inputIndex);
+
+        preactivation += inputData * weight;
+	}
+
+    float bias = rsGetElementAt_float(biasesBuffer, x);
+
+	return activate(preactivation + bias, activationFunctionType, activationAlpha);
+}
+
+// Calculates standard layer activations, with weights kept in half precision.
+// Optimized to multiply four floats at a time.
+float __attribute__((kernel)) calculateActivationsBy4Half(uint32_t x)
+{
+	float preactivation = 0.f;
+
+	// Positioning kernel.
+	const uint32_t numInputVecs = inputDataSize / c_numElPerVec;
+	const uint32_t weightsOffset = x * numInputVecs;
+
+	// Calculating preactivations.
+	for (uint32_t inputIndex = 0; inputIndex < numInputVecs; ++inputIndex)
+	{
+        float4 inputVec = rsGetElementAt_float4(inputDataBuffer, inputIndex);
+        // Widening element by element, since vector half conversions are not available on all API levels.
+        half4 halfWeightsVec = rsGetElementAt_half4(weightsBuffer, weightsOffset + inputIndex);
+        float4 weightsVec = {halfWeightsVec.x, halfWeightsVec.y, halfWeightsVec.z, halfWeightsVec.w};
+
+        preactivation += dot(inputVec, weightsVec);
+	}
+
+    float bias = rsGetElementAt_float(biasesBuffer, x);
+
+	return activate(preactivation + bias, activationFunctionType, activationAlpha);
+}
+
+// Reads one weight, widening it from half precision if weights are kept in half precision.
+static inline float getWeight(uint32_t index, bool halfPrecisionWeights)
+{
+	if (halfPrecisionWeights)
+	{
+		return rsGetElementAt_half(weightsBuffer, index);
+	}
+
+	return rsGetElementAt_float(weightsBuffer, index);
+}
+
+// Reads four weights, widening them from half precision if weights are kept in half precision.
+static inline float4 getWeightsVec(uint32_t index, bool halfPrecisionWeights)
+{
+	if (halfPrecisionWeights)
+	{
+		// Widening element by element, since vector half conversions are not available on all API levels.
+		half4 halfWeightsVec = rsGetElementAt_half4(weightsBuffer, index);
+		float4 weightsVec = {halfWeightsVec.x, halfWeightsVec.y, halfWeightsVec.z, halfWeightsVec.w};
+		return weightsVec;
+	}
+
+	return rsGetElementAt_float4(weightsBuffer, index);
+}
+
+// Calculates activations of one neuron for all samples in the batch.
+// Samples are processed four at a time, so that each weight is read once per four samples instead of once per sample.
+static inline void calculateNeuronBatchActivations(float bias, uint32_t x, bool by4, bool halfPrecisionWeights)
+{
+	// Positioning kernel.
+	const uint32_t numInputElements = by4 ? inputDataSize / c_numElPerVec : inputDataSize;
+	const uint32_t weightsOffset = x * numInputElements;
+
+	uint32_t sampleIndex = 0;
+	for (; sampleIndex + c_numSamplesPerPass <= batchSize; sampleIndex += c_numSamplesPerPass)
+	{
+		float4 preactivations = {0.f, 0.f, 0.f, 0.f};
+		const uint32_t inputOffset = sampleIndex * numInputElements;
+
+		// Calculating preactivations of four samples.
+		for (uint32_t inputIndex = 0; inputIndex < numInputElements; ++inputIndex)
+		{
+			const uint32_t sampleInputIndex = inputOffset + inputIndex;
+			if (by4)
+			{
+				float4 weightsVec = getWeightsVec(weightsOffset + inputIndex, halfPrecisionWeights);
+
+				preactivations.x += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex), weightsVec);
+				preactivations.y += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex + numInputElements), weightsVec);
+				preactivations.z += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex + 2 * numInputElements), weightsVec);
+				preactivations.w += dot(rsGetElementAt_float4(inputDataBuffer, sampleInputIndex + 3 * numInputElements), weightsVec);
+			}
+			else
+			{
+				float weight = getWeight(weightsOffset + inputIndex, halfPrecisionWeights);
+				float4 inputData = {rsGetElementAt_float(inputDataBuffer, sampleInputIndex),
+					rsGetElementAt_float(inputDataBuffer, sampleInputIndex + numInputElements),
+					rsGetElementAt_float(inputDataBuffer, sampleInputIndex + 2 * numInputElements),
+					rsGetElementAt_float(inputDataBuffer, sampleInputIndex + 3 * numInputElements)};
+
+				preactivations += inputData * weight;
+			}
+		}
+
+		float4 activations = activate4(preactivations + bias, activationFunctionType, activationAlpha);
+		rsSetElementAt_float(activationDataBuffer, activations.x, sampleIndex * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.y, (sampleIndex + 1) * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.z, (sampleIndex + 2) * numNeurons + x);
+		rsSetElementAt_float(activationDataBuffer, activations.w, (sampleIndex + 3) * numNeurons + x);
+	}
+
+	// Calculating preactivations of remaining samples one by one.
+	for (; sampleIndex < batchSize; ++sampleIndex)
+	{
+		float preactivation = 0.f;
+		const uint32_t inputOffset = sampleIndex * numInputElements;
+
+		for (uint32_t inputIndex = 0; inputIndex < numInputElements; ++inputIndex)
+		{
+			if (by4)
+			{
+				preactivation += dot(rsGetElementAt_float4(inputDataBuffer, inputOffset + inputIndex),
+					getWeightsVec(weightsOffset + inputIndex, halfPrecisionWeights));
+			}
+			else
+			{
+				preactivation += rsGetElementAt_float(inputDataBuffer, inputOffset + inputIndex) *
+					getWeight(weightsOffset + inputIndex, halfPrecisionWeights);
+			}
+		}
+
+		rsSetElementAt_float(activationDataBuffer, activate(preactivation + bias, activationFunctionType, activationAlpha), sampleIndex * numNeurons + x);
+	}
+}
+
+// Calculates standard layer activations for batch of samples.
+void __attribute__((kernel)) calculateBatchActivations(float bias, uint32_t x)
+{
+	calculateNeuronBatchActivations(bias, x, false, false);
+}
+
+// Calculates standard layer activations for batch of samples.
+// Optimized to multiply four floats at a time.
+void __attribute__((kernel)) calculateBatchActivationsBy4(float bias, uint32_t x)
+{
+	calculateNeuronBatchActivations(bias, x, true, false);
+}
+
+// Calculates standard layer activations for batch of samples, with weights kept in half precision.
+void __attribute__((kernel)) calculateBatchActivationsHalf(float bias, uint32_t x)
+{
+	calculateNeuronBatchActivations(bias, x, false, true);
+}
+
+// Calculates standard layer activations for batch of samples, with weights kept in half precision.
+// Optimized to multiply four floats at a time.
+void __attribute__((kernel)) calculateBatchActivationsBy4Half(float bias, uint32_t x)
+{
+	calculateNeuronBatchActivations(bias, x, true, true);
+}
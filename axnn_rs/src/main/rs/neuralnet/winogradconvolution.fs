@@ -0,0 +1,300 @@
+#pragma version(1)
+#pragma rs java_package_name(com.github.markorakita.axnn_rs.neuralnet.layers)
+#pragma rs_fp_relaxed
+
+#include "activations.rsh"
+
+// Winograd F(2x2, 3x3) convolution. Each 2x2 tile of activations is calculated from 4x4 tile of input data as A^T [(G g G^T) .* (B^T d B)] A,
+// so that elementwise products of transformed input tiles and transformed filters, summed over channels, replace the convolution.
+
+// Number of elements that we are packing per vector.
+const int32_t c_numElPerVec = 4;
+
+// Width and height of the filters.
+const int32_t c_filterSize = 3;
+
+// Width and height of the input tile.
+const int32_t c_inputTileSize = 4;
+
+// Width and height of the output tile.
+const int32_t c_outputTileSize = 2;
+
+// Number of positions in transformed tiles.
+const int32_t c_numTilePositions = 16;
+
+// Input tile transform B^T.
+static const float c_inputTransform[4][4] =
+{
+	{ 1.f,  0.f, -1.f,  0.f },
+	{ 0.f,  1.f,  1.f,  0.f },
+	{ 0.f, -1.f,  1.f,  0.f },
+	{ 0.f,  1.f,  0.f, -1.f }
+};
+
+// Filter transform G.
+static const float c_filterTransform[4][3] =
+{
+	{ 1.f,   0.f,  0.f  },
+	{ 0.5f,  0.5f, 0.5f },
+	{ 0.5f, -0.5f, 0.5f },
+	{ 0.f,   0.f,  1.f  }
+};
+
+// Output tile transform A^T.
+static const float c_outputTransform[2][4] =
+{
+	{ 1.f, 1.f,  1.f,  0.f },
+	{ 0.f, 1.f, -1.f, -1.f }
+};
+
+// Number of input data channels.
+int32_t inputNumChannels;
+
+// Input data width.
+int32_t inputDataWidth;
+
+// Input data height.
+int32_t inputDataHeight;
+
+// Input data buffer.
+rs_allocation inputDataBuffer;
+
+// Number of convolutional filters.
+int32_t numFilters;
+
+// Filters buffer, in channel-major order.
+rs_allocation filtersBuffer;
+
+// Transformed filters buffer, ordered by position in the transformed tile, then by filter, then by channel.
+rs_allocation transformedFiltersBuffer;
+
+// Biases buffer.
+rs_allocation biasesBuffer;
+
+// Activation function type, one of ACTIVATION_FUNCTION_* values.
+int32_t activationFunctionType;
+
+// Activation alpha parameter.
+float activationAlpha;
+
+// Padding in dimension X.
+int32_t paddingX;
+
+// Padding in dimension Y.
+int32_t paddingY;
+
+// Number of patches to apply filters on in dimension X.
+int32_t numPatchesX;
+
+// Number of patches to apply filters on in dimension Y.
+int32_t numPatchesY;
+
+// Number of output tiles in dimension X.
+int32_t numTilesX;
+
+// Number of output tiles in dimension Y.
+int32_t numTilesY;
+
+// Should input data be padded with values per channel from input padding values buffer, instead of with zeros.
+bool padWithInputValues;
+
+// Input padding values buffer, used when input data normalization is folded into the filters,
+// since zeros of normalized input data are means of unnormalized input data.
+rs_allocation inputPaddingValuesBuffer;
+
+// Transformed input tiles buffer, ordered by sample, then by tile, then by position in the tile, then by channel.
+rs_allocation transformedInputBuffer;
+
+// Products of transformed input tiles and transformed filters, ordered by sample, then by tile, then by position in the tile, then by filter.
+rs_allocation productsBuffer;
+
+// Reads four filter values, widening them from half precision if filters are kept in half precision.
+static inline float4 getFilterPixels(rs_allocation buffer, int32_t index, bool halfPrecisionFilters)
+{
+	if (halfPrecisionFilters)
+	{
+		// Widening element by element, since vector half conversions are not available on all API levels.
+		half4 halfFilterPixels = rsGetElementAt_half4(buffer, index);
+		float4 filterPixels = {halfFilterPixels.x, halfFilterPixels.y, halfFilterPixels.z, halfFilterPixels.w};
+		return filterPixels;
+	}
+
+	return rsGetElementAt_float4(buffer, index);
+}
+
+// Calculates one position of the transformed filter G g G^T, for four channels.
+static inline float4 transformFilter(uint32_t x, bool halfPrecisionFilters)
+{
+	// Positioning kernel, on the position in the transformed filter, the filter and the channels within it.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_channelIndex = x % c_numChannelVecs;
+	const int32_t c_filterIndex = x / c_numChannelVecs % numFilters;
+	const int32_t c_position = x / c_numChannelVecs / numFilters;
+	const int32_t c_positionX = c_position % c_inputTileSize;
+	const int32_t c_positionY = c_position / c_inputTileSize;
+	const int32_t c_filterOffset = c_filterIndex * c_filterSize * c_filterSize * c_numChannelVecs + c_channelIndex;
+
+	float4 transformedPixels = {0.f, 0.f, 0.f, 0.f};
+	for (int32_t filterPixelY = 0; filterPixelY < c_filterSize; ++filterPixelY)
+	{
+		for (int32_t filterPixelX = 0; filterPixelX < c_filterSize; ++filterPixelX)
+		{
+			float weight = c_filterTransform[c_positionY][filterPixelY] * c_filterTransform[c_positionX][filterPixelX];
+			if (weight != 0.f)
+			{
+				transformedPixels += weight * getFilterPixels(filtersBuffer,
+					c_filterOffset + (filterPixelY * c_filterSize + filterPixelX) * c_numChannelVecs, halfPrecisionFilters);
+			}
+		}
+	}
+
+	return transformedPixels;
+}
+
+// Sums products of one position of the transformed input tile with the same position of four transformed filters, over all channels.
+static inline float4 multiplyTile(uint32_t x, bool halfPrecisionFilters)
+{
+	float products[c_numElPerVec];
+	for (int32_t i = 0; i < c_numElPerVec; ++i)
+	{
+		products[i] = 0.f;
+	}
+
+	// Positioning kernel, on the position in the tile and the filters, since products are ordered as transformed input tiles.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_numFilterVecs = numFilters / c_numElPerVec;
+	const int32_t c_filterOffset = x % c_numFilterVecs;
+	const int32_t c_position = x / c_numFilterVecs % c_numTilePositions;
+	const int32_t c_tileInputOffset = x / c_numFilterVecs * c_numChannelVecs;
+
+	for (int32_t channelIndex = 0; channelIndex < c_numChannelVecs; ++channelIndex)
+	{
+		float4 inputPixels = rsGetElementAt_float4(transformedInputBuffer, c_tileInputOffset + channelIndex);
+		for (int32_t filterIndex = 0; filterIndex < c_numElPerVec; ++filterIndex)
+		{
+			float4 filterPixels = getFilterPixels(transformedFiltersBuffer,
+				(c_position * numFilters + c_filterOffset * c_numElPerVec + filterIndex) * c_numChannelVecs + channelIndex, halfPrecisionFilters);
+			products[filterIndex] += dot(inputPixels, filterPixels);
+		}
+	}
+
+	float4 outputProducts = {products[0], products[1], products[2], products[3]};
+
+	return outputProducts;
+}
+
+// Transforms filters, used whenever filters are loaded or changed.
+float4 __attribute__((kernel)) transformFilters(uint32_t x)
+{
+	return transformFilter(x, false);
+}
+
+// Transforms filters kept in half precision, keeping transformed filters in half precision too.
+half4 __attribute__((kernel)) transformFiltersHalf(uint32_t x)
+{
+	// Narrowing element by element, since vector half conversions are not available on all API levels.
+	float4 transformedPixels = transformFilter(x, true);
+	half4 halfTransformedPixels = {transformedPixels.x, transformedPixels.y, transformedPixels.z, transformedPixels.w};
+
+	return halfTransformedPixels;
+}
+
+// Calculates one position of the transformed input tile B^T d B, for four channels.
+float4 __attribute__((kernel)) transformInputTiles(uint32_t x)
+{
+	// Positioning kernel, on the sample of the batch, the tile within it, the position in the tile and the channels.
+	const int32_t c_numChannelVecs = inputNumChannels / c_numElPerVec;
+	const int32_t c_numSampleTiles = numTilesX * numTilesY;
+	const int32_t c_channelIndex = x % c_numChannelVecs;
+	const int32_t c_position = x / c_numChannelVecs % c_numTilePositions;
+	const int32_t c_tileIndex = x / c_numChannelVecs / c_numTilePositions % c_numSampleTiles;
+	const int32_t c_sampleIndex = x / c_numChannelVecs / c_numTilePositions / c_numSampleTiles;
+	const int32_t c_sampleInputOffset = c_sampleIndex * inputDataHeight * inputDataWidth * c_numChannelVecs;
+	const int32_t c_positionX = c_position % c_inputTileSize;
+	const int32_t c_positionY = c_position / c_inputTileSize;
+	const int32_t c_tileOffsetX = -paddingX + (c_tileIndex % numTilesX) * c_outputTileSize;
+	const int32_t c_tileOffsetY = -paddingY + (c_tileIndex / numTilesX) * c_outputTileSize;
+
+	// Each row of B^T has two nonzero elements, so four pixels of the input tile are read.
+	float4 transformedPixels = {0.f, 0.f, 0.f, 0.f};
+	for (int32_t tilePixelY = 0; tilePixelY < c_inputTileSize; ++tilePixelY)
+	{
+		float weightY = c_inputTransform[c_positionY][tilePixelY];
+		if (weightY != 0.f)
+		{
+			int32_t imagePixelY = c_tileOffsetY + tilePixelY;
+			bool imageRowInside = imagePixelY >= 0 && imagePixelY < inputDataHeight;
+			for (int32_t tilePixelX = 0; tilePixelX < c_inputTileSize; ++tilePixelX)
+			{
+				float weight = weightY * c_inputTransform[c_positionX][tilePixelX];
+				if (weight != 0.f)
+				{
+					int32_t imagePixelX = c_tileOffsetX + tilePixelX;
+					if (imageRowInside && imagePixelX >= 0 && imagePixelX < inputDataWidth)
+					{
+						transformedPixels += weight * rsGetElementAt_float4(inputDataBuffer,
+							c_sampleInputOffset + (imagePixelY * inputDataWidth + imagePixelX) * c_numChannelVecs + c_channelIndex);
+					}
+					else if (padWithInputValues)
+					{
+						transformedPixels += weight * rsGetElementAt_float4(inputPaddingValuesBuffer, c_channelIndex);
+					}
+				}
+			}
+		}
+	}
+
+	return transformedPixels;
+}
+
+// Multiplies transformed input tiles with transformed filters.
+float4 __attribute__((kernel)) multiplyTiles(uint32_t x)
+{
+	return multiplyTile(x, false);
+}
+
+// Multiplies transformed input tiles with transformed filters kept in half precision.
+float4 __attribute__((kernel)) multiplyTilesHalf(uint32_t x)
+{
+	return multiplyTile(x, true);
+}
+
+// Calculates activations of one patch and four filters from products of its tile, as A^T M A, applying biases and activation function to them.
+float4 __attribute__((kernel)) transformOutputTiles(uint32_t x)
+{
+	// Positioning kernel, on the sample of the batch and the patch within it, the same way as direct convolution.
+	const int32_t c_numFilterVecs = numFilters / c_numElPerVec;
+	const int32_t c_numSampleActivationVecs = numPatchesX * numPatchesY * c_numFilterVecs;
+	const int32_t c_sampleIndex = x / c_numSampleActivationVecs;
+	const int32_t c_sampleActivationIndex = x % c_numSampleActivationVecs;
+	const int32_t c_patchIndex = c_sampleActivationIndex / c_numFilterVecs;
+	const int32_t c_filterOffset = c_sampleActivationIndex % c_numFilterVecs;
+	const int32_t c_patchX = c_patchIndex % numPatchesX;
+	const int32_t c_patchY = c_patchIndex / numPatchesX;
+	const int32_t c_tileIndex = (c_sampleIndex * numTilesY + c_patchY / c_outputTileSize) * numTilesX + c_patchX / c_outputTileSize;
+	const int32_t c_tilePixelX = c_patchX % c_outputTileSize;
+	const int32_t c_tilePixelY = c_patchY % c_outputTileSize;
+
+	// Each row of A^T has three nonzero elements, so nine products of the tile are read.
+	float4 preactivations = {0.f, 0.f, 0.f, 0.f};
+	for (int32_t positionY = 0; positionY < c_inputTileSize; ++positionY)
+	{
+		float weightY = c_outputTransform[c_tilePixelY][positionY];
+		if (weightY != 0.f)
+		{
+			for (int32_t positionX = 0; positionX < c_inputTileSize; ++positionX)
+			{
+				float weight = weightY * c_outputTransform[c_tilePixelX][positionX];
+				if (weight != 0.f)
+				{
+					preactivations += weight * rsGetElementAt_float4(productsBuffer,
+						(c_tileIndex * c_numTilePositions + positionY * c_inputTileSize + positionX) * c_numFilterVecs + c_filterOffset);
+				}
+			}
+		}
+	}
+
+	float4 biases = rsGetElementAt_float4(biasesBuffer, c_filterOffset);
+
+	return activate4(preactivations + biases, activationFunctionType, activationAlpha);
+}
@@ -0,0 +1,57 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Test;
+
+public class LayerSchedulerTest
+{
+	@Test
+	public void testChainKeepsOrder()
+	{
+		int[][] layerInputs = { {}, { 0 }, { 1 }, { 2 }, { 3 } };
+		boolean[] hostLayers = { false, false, false, true, true };
+
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, LayerScheduler.scheduleLayers(layerInputs, hostLayers));
+	}
+
+	@Test
+	public void testDiamond()
+	{
+		// Two branches joined by a layer which takes both of them.
+		int[][] layerInputs = { {}, { 0 }, { 0 }, { 1, 2 }, { 3 } };
+		boolean[] hostLayers = { false, false, false, false, true };
+
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, LayerScheduler.scheduleLayers(layerInputs, hostLayers));
+	}
+
+	@Test
+	public void testDiamondSchedulesDeviceLayersBeforeHostLayers()
+	{
+		// First branch ends with a host layer, which has to wait until device layers of the second branch are queued.
+		int[][] layerInputs = { {}, { 0 }, { 1 }, { 0 }, { 3 }, { 2, 4 } };
+		boolean[] hostLayers = { false, false, true, false, false, true };
+
+		assertArrayEquals(new int[] { 0, 1, 3, 4, 2, 5 }, LayerScheduler.scheduleLayers(layerInputs, hostLayers));
+	}
+
+	@Test
+	public void testSameInputTwice()
+	{
+		// Layer which takes the same layer twice, like elementwise sum of the layer with itself.
+		int[][] layerInputs = { {}, { 0 }, { 1, 1 }, { 2 } };
+		boolean[] hostLayers = { false, false, false, true };
+
+		assertArrayEquals(new int[] { 0, 1, 2, 3 }, LayerScheduler.scheduleLayers(layerInputs, hostLayers));
+	}
+
+	@Test
+	public void testCycleRejected()
+	{
+		int[][] layerInputs = { {}, { 0, 2 }, { 1 }, { 2 } };
+		boolean[] hostLayers = { false, false, false, true };
+
+		assertThrows(IllegalStateException.class, () -> LayerScheduler.scheduleLayers(layerInputs, hostLayers));
+	}
+}
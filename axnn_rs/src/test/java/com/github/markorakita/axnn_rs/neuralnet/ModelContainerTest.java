@@ -0,0 +1,243 @@
+package com.github.markorakita.axnn_rs.neuralnet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import com.github.markorakita.axnn_rs.neuralnet.internal.utils.HalfUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ModelContainerTest
+{
+	/**
+	 * Offset of the first tensor entry in the header.
+	 */
+	private static final int c_firstEntryOffset = ModelContainer.c_fixedHeaderSize;
+
+	/**
+	 * Size of the entry of two-dimensional tensor in the header.
+	 */
+	private static final int c_matrixEntrySize = 4 * (4 + 2) + 8 + 8;
+
+	/**
+	 * Size of the entry of one-dimensional tensor in the header.
+	 */
+	private static final int c_vectorEntrySize = 4 * (4 + 1) + 8 + 8;
+
+	private File m_containerFile;
+
+	private float[] m_rawModel;
+
+	@Before
+	public void writeContainer() throws IOException
+	{
+		List<ModelContainer.TensorInfo> tensors = new ArrayList<>();
+		tensors.add(new ModelContainer.TensorInfo(1, ModelContainer.ParameterType.Weights, ModelContainer.DataType.Float32, new int[] { 4, 3 }, 0, 0));
+		tensors.add(new ModelContainer.TensorInfo(1, ModelContainer.ParameterType.Biases, ModelContainer.DataType.Float32, new int[] { 4 }, 0, 0));
+		tensors.add(new ModelContainer.TensorInfo(3, ModelContainer.ParameterType.Weights, ModelContainer.DataType.Float16, new int[] { 2, 6 }, 0, 0));
+		tensors.add(new ModelContainer.TensorInfo(3, ModelContainer.ParameterType.Biases, ModelContainer.DataType.Float32, new int[] { 2 }, 0, 0));
+
+		Random random = new Random(0);
+		m_rawModel = new float[4 * 3 + 4 + 2 * 6 + 2];
+		for (int i = 0; i < m_rawModel.length; ++i)
+		{
+			m_rawModel[i] = random.nextFloat() * 2.f - 1.f;
+		}
+		ByteBuffer rawModelBuffer = ByteBuffer.allocate(4 * m_rawModel.length).order(ByteOrder.BIG_ENDIAN);
+		rawModelBuffer.asFloatBuffer().put(m_rawModel);
+
+		m_containerFile = File.createTempFile("model", ".axnm");
+		ModelContainerWriter.writeContainer(tensors, new ByteArrayInputStream(rawModelBuffer.array()), ByteOrder.BIG_ENDIAN, m_containerFile);
+	}
+
+	@After
+	public void deleteContainer()
+	{
+		m_containerFile.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		try (ModelContainer container = ModelContainer.open(m_containerFile))
+		{
+			assertEquals(ByteOrder.BIG_ENDIAN, container.getByteOrder());
+			assertEquals(4, container.getTensors().size());
+			assertNull(container.getTensor(0, ModelContainer.ParameterType.Weights));
+
+			ModelContainer.TensorInfo weightsTensor = container.getTensor(1, ModelContainer.ParameterType.Weights);
+			assertArrayEquals(new int[] { 4, 3 }, weightsTensor.getDimensions());
+			assertEquals(0, weightsTensor.getDataOffset() % 64);
+			float[] weights = new float[12];
+			container.mapTensor(weightsTensor).asFloatBuffer().get(weights);
+			assertArrayEquals(subBuffer(0, 12), weights, 0.f);
+
+			float[] biases = new float[4];
+			container.mapTensor(container.getTensor(1, ModelContainer.ParameterType.Biases)).asFloatBuffer().get(biases);
+			assertArrayEquals(subBuffer(12, 4), biases, 0.f);
+
+			ModelContainer.TensorInfo halfWeightsTensor = container.getTensor(3, ModelContainer.ParameterType.Weights);
+			assertEquals(ModelContainer.DataType.Float16, halfWeightsTensor.getDataType());
+			assertEquals(2 * 12, halfWeightsTensor.getDataSize());
+			ByteBuffer halfWeightsBuffer = container.mapTensor(halfWeightsTensor);
+			float[] halfWeights = new float[12];
+			for (int i = 0; i < halfWeights.length; ++i)
+			{
+				halfWeights[i] = HalfUtils.halfToFloat(halfWeightsBuffer.getShort());
+			}
+			assertArrayEquals(subBuffer(16, 12), halfWeights, 0.001f);
+
+			float[] halfLayerBiases = new float[2];
+			container.mapTensor(container.getTensor(3, ModelContainer.ParameterType.Biases)).asFloatBuffer().get(halfLayerBiases);
+			assertArrayEquals(subBuffer(28, 2), halfLayerBiases, 0.f);
+
+			container.validateTensor(3, ModelContainer.ParameterType.Weights, new int[] { 2, 6 });
+		}
+	}
+
+	@Test
+	public void testRoundTripAtOffset() throws IOException
+	{
+		// Container embedded in larger file, like asset inside of the APK, with unrelated data after it.
+		final int containerOffset = 100;
+		byte[] containerBytes = readContainerBytes();
+		File embeddingFile = File.createTempFile("embedding", ".bin");
+		try (RandomAccessFile embeddingAccessFile = new RandomAccessFile(embeddingFile, "rw"))
+		{
+			embeddingAccessFile.seek(containerOffset);
+			embeddingAccessFile.write(containerBytes);
+			embeddingAccessFile.write(new byte[1000]);
+		}
+
+		try (FileInputStream embeddingStream = new FileInputStream(embeddingFile);
+			 ModelContainer container = ModelContainer.open(embeddingStream.getChannel(), containerOffset, containerBytes.length))
+		{
+			float[] biases = new float[4];
+			container.mapTensor(container.getTensor(1, ModelContainer.ParameterType.Biases)).asFloatBuffer().get(biases);
+			assertArrayEquals(subBuffer(12, 4), biases, 0.f);
+		}
+
+		// Region which cuts off the last tensor.
+		try (FileInputStream embeddingStream = new FileInputStream(embeddingFile))
+		{
+			FileChannel channel = embeddingStream.getChannel();
+			assertThrows(IOException.class, () -> ModelContainer.open(channel, containerOffset, containerBytes.length - 4));
+		}
+		finally
+		{
+			embeddingFile.delete();
+		}
+	}
+
+	@Test
+	public void testBadMagicRejected() throws IOException
+	{
+		patchInt(0, 0x12345678);
+
+		assertThrows(IOException.class, () -> ModelContainer.open(m_containerFile));
+	}
+
+	@Test
+	public void testBadVersionRejected() throws IOException
+	{
+		patchInt(8, ModelContainer.c_version + 1);
+
+		assertThrows(IOException.class, () -> ModelContainer.open(m_containerFile));
+	}
+
+	@Test
+	public void testOverlappingTensorsRejected() throws IOException
+	{
+		// Pointing biases of the first layer to the start of its weights.
+		long weightsOffset = readLong(c_firstEntryOffset + c_matrixEntrySize - 16);
+		patchLong(c_firstEntryOffset + c_matrixEntrySize + c_vectorEntrySize - 16, weightsOffset);
+
+		assertThrows(IOException.class, () -> ModelContainer.open(m_containerFile));
+	}
+
+	@Test
+	public void testOutOfRangeTensorRejected() throws IOException
+	{
+		// Aligned offset past the end of the container.
+		patchLong(c_firstEntryOffset + c_matrixEntrySize - 16, (m_containerFile.length() / 64 + 1) * 64);
+
+		assertThrows(IOException.class, () -> ModelContainer.open(m_containerFile));
+	}
+
+	@Test
+	public void testShapeMismatchRejected() throws IOException
+	{
+		try (ModelContainer container = ModelContainer.open(m_containerFile))
+		{
+			assertThrows(IOException.class, () -> container.validateTensor(1, ModelContainer.ParameterType.Weights, new int[] { 3, 4 }));
+			assertThrows(IOException.class, () -> container.validateTensor(2, ModelContainer.ParameterType.Weights, new int[] { 4, 3 }));
+		}
+
+		// Tensor dimensions which don't match its data size.
+		patchInt(c_firstEntryOffset + 16, 5);
+
+		assertThrows(IOException.class, () -> ModelContainer.open(m_containerFile));
+	}
+
+	private float[] subBuffer(int offset, int size)
+	{
+		float[] buffer = new float[size];
+		System.arraycopy(m_rawModel, offset, buffer, 0, size);
+
+		return buffer;
+	}
+
+	private byte[] readContainerBytes() throws IOException
+	{
+		byte[] containerBytes = new byte[(int)m_containerFile.length()];
+		try (RandomAccessFile containerAccessFile = new RandomAccessFile(m_containerFile, "r"))
+		{
+			containerAccessFile.readFully(containerBytes);
+		}
+
+		return containerBytes;
+	}
+
+	private long readLong(long position) throws IOException
+	{
+		try (RandomAccessFile containerAccessFile = new RandomAccessFile(m_containerFile, "r"))
+		{
+			containerAccessFile.seek(position);
+			return containerAccessFile.readLong();
+		}
+	}
+
+	private void patchInt(long position, int value) throws IOException
+	{
+		try (RandomAccessFile containerAccessFile = new RandomAccessFile(m_containerFile, "rw"))
+		{
+			containerAccessFile.seek(position);
+			containerAccessFile.writeInt(value);
+		}
+	}
+
+	private void patchLong(long position, long value) throws IOException
+	{
+		try (RandomAccessFile containerAccessFile = new RandomAccessFile(m_containerFile, "rw"))
+		{
+			containerAccessFile.seek(position);
+			containerAccessFile.writeLong(value);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ConvolutionalLayerCPUTest
+{
+	@Test
+	public void testForwardPropCorrectness()
+	{
+		// Patches overhang input data on the right and bottom, since stride doesn't fit exactly.
+		for (ConvolutionalLayerCPU.ConvolutionAlgorithm algorithm : ConvolutionalLayerCPU.ConvolutionAlgorithm.values())
+		{
+			if (algorithm != ConvolutionalLayerCPU.ConvolutionAlgorithm.Winograd)
+			{
+				checkForwardPropCorrectness(algorithm, 8, 8, 9, 7, 6, 3, 3, 1, 1, 2);
+			}
+		}
+	}
+
+	@Test
+	public void testPaddedFiltersForwardPropCorrectness()
+	{
+		// Model contains filters only for three channels of four channel images.
+		for (ConvolutionalLayerCPU.ConvolutionAlgorithm algorithm : ConvolutionalLayerCPU.ConvolutionAlgorithm.values())
+		{
+			if (algorithm != ConvolutionalLayerCPU.ConvolutionAlgorithm.Winograd && algorithm != ConvolutionalLayerCPU.ConvolutionAlgorithm.SpaceToDepth)
+			{
+				checkForwardPropCorrectness(algorithm, 4, 3, 13, 11, 5, 5, 3, 2, 1, 1);
+			}
+		}
+	}
+
+	@Test
+	public void testIm2colGemmForwardPropCorrectness()
+	{
+		// Filters are larger than one block of unrolled patch values, number of filters is not divisible by filter panel size,
+		// and number of patches is divisible neither by patch panel size nor by block size.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.Im2colGemm, 48, 48, 11, 9, 21, 3, 3, 1, 1, 1);
+	}
+
+	@Test
+	public void testWinogradForwardPropCorrectness()
+	{
+		// Output has odd size so the last tiles are cut, and channels don't fit into one block of transformed tiles.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.Winograd, 136, 136, 9, 7, 21, 3, 3, 1, 1, 1);
+		// Without padding, with four channel images.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.Winograd, 4, 3, 12, 10, 8, 3, 3, 0, 0, 1);
+	}
+
+	@Test
+	public void testFftForwardPropCorrectness()
+	{
+		// Odd numbers of channels and filters, which are transformed in pairs, and output spread over several tiles.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.Fft, 5, 5, 23, 19, 7, 7, 7, 3, 3, 1);
+		// Strided convolution of four channel images, with patches overhanging input data.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.Fft, 4, 3, 30, 27, 8, 11, 11, 0, 0, 4);
+	}
+
+	@Test
+	public void testSpaceToDepthForwardPropCorrectness()
+	{
+		// Filters which don't cover whole blocks, with patches overhanging input data, like in the first layer of AlexNet.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.SpaceToDepth, 4, 3, 30, 27, 8, 11, 11, 0, 0, 4);
+		// Padding which isn't a multiple of stride.
+		checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm.SpaceToDepth, 6, 6, 15, 12, 10, 5, 5, 3, 2, 2);
+	}
+
+	@Test
+	public void testConvolutionAlgorithmSelection()
+	{
+		ConvolutionalLayerCPU winogradLayer = new ConvolutionalLayerCPU(16, 13, 13, 32, 3, 3, 1, 1, 1, ActivationFunctionType.ReLU);
+		assertEquals(ConvolutionalLayerCPU.ConvolutionAlgorithm.Winograd, winogradLayer.getConvolutionAlgorithm());
+
+		ConvolutionalLayerCPU stridedLayer = new ConvolutionalLayerCPU(16, 13, 13, 32, 3, 3, 1, 1, 2, ActivationFunctionType.ReLU);
+		assertEquals(ConvolutionalLayerCPU.ConvolutionAlgorithm.Im2colGemm, stridedLayer.getConvolutionAlgorithm());
+		assertThrows(IllegalArgumentException.class, () -> winogradLayer.setConvolutionAlgorithm(ConvolutionalLayerCPU.ConvolutionAlgorithm.SpaceToDepth));
+		assertThrows(IllegalArgumentException.class, () -> stridedLayer.setConvolutionAlgorithm(ConvolutionalLayerCPU.ConvolutionAlgorithm.Winograd));
+
+		ConvolutionalLayerCPU largeFiltersLayer = new ConvolutionalLayerCPU(16, 56, 56, 16, 15, 15, 7, 7, 1, ActivationFunctionType.ReLU);
+		assertEquals(ConvolutionalLayerCPU.ConvolutionAlgorithm.Fft, largeFiltersLayer.getConvolutionAlgorithm());
+	}
+
+	@Test
+	public void testSerialAndParallelPropagationMatch()
+	{
+		final int inputNumChannels = 16;
+		final int inputDataWidth = 15;
+		final int inputDataHeight = 15;
+		Random random = new Random(1);
+		float[] inputData = TestUtils.generateBuffer(random, 2 * inputNumChannels * inputDataWidth * inputDataHeight, 1.f);
+
+		ConvolutionalLayerCPU convolutionalLayer = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, 32, 3, 3, 1, 1, 1,
+			ActivationFunctionType.ELU, 1.f);
+		convolutionalLayer.loadFilters(TestUtils.generateBuffer(random, convolutionalLayer.getFiltersBufferSize(), 0.1f));
+		convolutionalLayer.loadBiases(TestUtils.generateBuffer(random, convolutionalLayer.getBiasesBufferSize(), 0.1f));
+		convolutionalLayer.setBatchSize(2);
+		convolutionalLayer.setInputDataBuffer(inputData);
+
+		for (ConvolutionalLayerCPU.ConvolutionAlgorithm algorithm : ConvolutionalLayerCPU.ConvolutionAlgorithm.values())
+		{
+			if (!convolutionalLayer.supportsConvolutionAlgorithm(algorithm))
+			{
+				continue;
+			}
+			convolutionalLayer.setConvolutionAlgorithm(algorithm);
+			convolutionalLayer.doForwardProp(TestUtils.c_serialPool);
+			float[] serialActivations = convolutionalLayer.getActivationDataBuffer().clone();
+			convolutionalLayer.doForwardProp(TestUtils.c_parallelPool);
+
+			assertArrayEquals(serialActivations, convolutionalLayer.getActivationDataBuffer(), 0.f);
+		}
+	}
+
+	private static void checkForwardPropCorrectness(ConvolutionalLayerCPU.ConvolutionAlgorithm algorithm, int inputNumChannels, int modelFiltersNumChannels,
+													int inputDataWidth, int inputDataHeight, int numFilters, int filterWidth, int filterHeight,
+													int paddingX, int paddingY, int stride)
+	{
+		final int batchSize = 2;
+		Random random = new Random(0);
+		float[] inputData = TestUtils.generateBuffer(random, batchSize * inputNumChannels * inputDataWidth * inputDataHeight, 1.f);
+		float[] filters = TestUtils.generateBuffer(random, numFilters * filterWidth * filterHeight * modelFiltersNumChannels, 0.1f);
+		float[] biases = TestUtils.generateBuffer(random, numFilters, 0.1f);
+
+		ConvolutionalLayerCPU convolutionalLayer = new ConvolutionalLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, numFilters,
+			filterWidth, filterHeight, paddingX, paddingY, stride, ActivationFunctionType.ReLU);
+		convolutionalLayer.setConvolutionAlgorithm(algorithm);
+		convolutionalLayer.loadFilters(filters);
+		convolutionalLayer.loadBiases(biases);
+		convolutionalLayer.setBatchSize(batchSize);
+		convolutionalLayer.setInputDataBuffer(inputData);
+		convolutionalLayer.doForwardProp(TestUtils.c_parallelPool);
+
+		// Straightforward convolution, with pixels outside of input data being zero.
+		final int numPatchesX = convolutionalLayer.getActivationDataWidth();
+		final int numPatchesY = convolutionalLayer.getActivationDataHeight();
+		float[] expectedActivations = new float[batchSize * numPatchesX * numPatchesY * numFilters];
+		for (int sample = 0; sample < batchSize; ++sample)
+		{
+			for (int patchY = 0; patchY < numPatchesY; ++patchY)
+			{
+				for (int patchX = 0; patchX < numPatchesX; ++patchX)
+				{
+					for (int filter = 0; filter < numFilters; ++filter)
+					{
+						float preactivation = biases[filter];
+						for (int filterY = 0; filterY < filterHeight; ++filterY)
+						{
+							for (int filterX = 0; filterX < filterWidth; ++filterX)
+							{
+								int inputX = -paddingX + patchX * stride + filterX;
+								int inputY = -paddingY + patchY * stride + filterY;
+								if (inputX < 0 || inputX >= inputDataWidth || inputY < 0 || inputY >= inputDataHeight)
+								{
+									continue;
+								}
+								for (int channel = 0; channel < modelFiltersNumChannels; ++channel)
+								{
+									preactivation += inputData[((sample * inputDataHeight + inputY) * inputDataWidth + inputX) * inputNumChannels + channel] *
+										filters[((filter * filterHeight + filterY) * filterWidth + filterX) * modelFiltersNumChannels + channel];
+								}
+							}
+						}
+						expectedActivations[((sample * numPatchesY + patchY) * numPatchesX + patchX) * numFilters + filter] = Math.max(preactivation, 0.f);
+					}
+				}
+			}
+		}
+
+		TestUtils.checkCorrectness(expectedActivations, convolutionalLayer.getActivationDataBuffer(), 0.0001f);
+	}
+}
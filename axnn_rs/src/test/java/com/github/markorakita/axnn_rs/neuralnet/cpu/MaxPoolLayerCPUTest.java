@@ -0,0 +1,62 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class MaxPoolLayerCPUTest
+{
+	@Test
+	public void testForwardPropCorrectness()
+	{
+		final int batchSize = 3;
+		final int inputNumChannels = 12;
+		final int inputDataWidth = 14;
+		final int inputDataHeight = 13;
+		final int unitWidth = 3;
+		final int unitHeight = 3;
+		final int paddingX = 1;
+		final int paddingY = 1;
+		final int unitStride = 2;
+
+		Random random = new Random(0);
+		float[] inputData = TestUtils.generateBuffer(random, batchSize * inputNumChannels * inputDataWidth * inputDataHeight, 1.f);
+
+		MaxPoolLayerCPU maxPoolLayer = new MaxPoolLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight, unitWidth, unitHeight,
+			paddingX, paddingY, unitStride);
+		maxPoolLayer.setBatchSize(batchSize);
+		maxPoolLayer.setInputDataBuffer(inputData);
+		maxPoolLayer.doForwardProp(TestUtils.c_parallelPool);
+
+		final int numUnitsX = maxPoolLayer.getActivationDataWidth();
+		final int numUnitsY = maxPoolLayer.getActivationDataHeight();
+		float[] expectedActivations = new float[batchSize * numUnitsX * numUnitsY * inputNumChannels];
+		for (int sample = 0; sample < batchSize; ++sample)
+		{
+			for (int unitY = 0; unitY < numUnitsY; ++unitY)
+			{
+				for (int unitX = 0; unitX < numUnitsX; ++unitX)
+				{
+					for (int channel = 0; channel < inputNumChannels; ++channel)
+					{
+						float maxActivation = -Float.MAX_VALUE;
+						for (int y = -paddingY + unitY * unitStride; y < -paddingY + unitY * unitStride + unitHeight; ++y)
+						{
+							for (int x = -paddingX + unitX * unitStride; x < -paddingX + unitX * unitStride + unitWidth; ++x)
+							{
+								if (x >= 0 && x < inputDataWidth && y >= 0 && y < inputDataHeight)
+								{
+									maxActivation = Math.max(maxActivation,
+										inputData[((sample * inputDataHeight + y) * inputDataWidth + x) * inputNumChannels + channel]);
+								}
+							}
+						}
+						expectedActivations[((sample * numUnitsY + unitY) * numUnitsX + unitX) * inputNumChannels + channel] = maxActivation;
+					}
+				}
+			}
+		}
+
+		TestUtils.checkCorrectness(expectedActivations, maxPoolLayer.getActivationDataBuffer(), 0.f);
+	}
+}
@@ -0,0 +1,202 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+import com.github.markorakita.axnn_rs.neuralnet.ClassificationResult;
+import com.github.markorakita.axnn_rs.neuralnet.LossFunctionType;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class NeuralNetCPUTest
+{
+	private static final int c_numClasses = 3;
+
+	@Test
+	public void testModelLoading() throws Exception
+	{
+		Random random = new Random(0);
+		float[] filters = TestUtils.generateBuffer(random, 8 * 3 * 3 * 3, 0.2f);
+		float[] filterBiases = TestUtils.generateBuffer(random, 8, 0.1f);
+		float[] weights1 = TestUtils.generateBuffer(random, 10 * 8 * 3 * 3, 0.2f);
+		float[] biases1 = TestUtils.generateBuffer(random, 10, 0.1f);
+		float[] weights2 = TestUtils.generateBuffer(random, c_numClasses * 10, 0.2f);
+		float[] biases2 = TestUtils.generateBuffer(random, c_numClasses, 0.1f);
+
+		ByteArrayOutputStream modelBytes = new ByteArrayOutputStream();
+		try (DataOutputStream modelStream = new DataOutputStream(modelBytes))
+		{
+			for (float[] parameters : new float[][] { filters, filterBiases, weights1, biases1, weights2, biases2 })
+			{
+				for (float parameter : parameters)
+				{
+					modelStream.writeFloat(parameter);
+				}
+			}
+		}
+
+		NeuralNetCPU loadedNeuralNet = createClassificationNeuralNet();
+		loadedNeuralNet.loadModel(new ByteArrayInputStream(modelBytes.toByteArray()), true);
+
+		NeuralNetCPU neuralNet = createClassificationNeuralNet();
+		((ConvolutionalLayerCPU)neuralNet.getLayer(1)).loadFilters(filters);
+		((ConvolutionalLayerCPU)neuralNet.getLayer(1)).loadBiases(filterBiases);
+		((StandardLayerCPU)neuralNet.getLayer(3)).loadWeights(weights1);
+		((StandardLayerCPU)neuralNet.getLayer(3)).loadBiases(biases1);
+		((StandardLayerCPU)neuralNet.getLayer(5)).loadWeights(weights2);
+		((StandardLayerCPU)neuralNet.getLayer(5)).loadBiases(biases2);
+
+		float[] inputData = generateImage(random);
+		TestUtils.checkCorrectness(neuralNet.extractFeatures(inputData, 6), loadedNeuralNet.extractFeatures(inputData, 6), 0.f);
+	}
+
+	@Test
+	public void testClassification() throws Exception
+	{
+		Random random = new Random(1);
+		NeuralNetCPU neuralNet = createClassificationNeuralNet();
+		loadRandomModel(neuralNet, random);
+
+		float[][] inputData = new float[4][];
+		for (int sample = 0; sample < inputData.length; ++sample)
+		{
+			inputData[sample] = generateImage(random);
+		}
+
+		List<ClassificationResult> results = neuralNet.classifyFeatures(inputData);
+		assertEquals(inputData.length, results.size());
+		for (int sample = 0; sample < inputData.length; ++sample)
+		{
+			float[] probabilities = neuralNet.extractFeatures(inputData[sample], 6);
+			int predictedClass = 0;
+			float probabilitiesSum = 0.f;
+			for (int i = 0; i < c_numClasses; ++i)
+			{
+				probabilitiesSum += probabilities[i];
+				if (probabilities[i] > probabilities[predictedClass])
+				{
+					predictedClass = i;
+				}
+			}
+
+			assertEquals(1.f, probabilitiesSum, 0.0001f);
+			assertEquals(predictedClass, results.get(sample).getPredictedClass());
+			assertEquals(probabilities[predictedClass], results.get(sample).getPredictionProbability(), 0.0001f);
+
+			ClassificationResult result = neuralNet.classifyFeatures(inputData[sample]);
+			assertEquals(results.get(sample).getPredictedClass(), result.getPredictedClass());
+			assertEquals(results.get(sample).getPredictionProbability(), result.getPredictionProbability(), 0.0001f);
+		}
+	}
+
+	@Test
+	public void testBranchingNetwork() throws Exception
+	{
+		final int numChannels = 8;
+		final int width = 5;
+		final int height = 4;
+		Random random = new Random(2);
+
+		NeuralNetCPU neuralNet = new NeuralNetCPU(TestUtils.c_parallelPool);
+		InputLayerCPU inputLayer = new InputLayerCPU(width, height, numChannels);
+		neuralNet.addLayer(inputLayer);
+		ConvolutionalLayerCPU branch1 = new ConvolutionalLayerCPU(numChannels, width, height, numChannels, 3, 3, 1, 1, 1,
+			ActivationFunctionType.ReLU);
+		neuralNet.addLayer(branch1, inputLayer);
+		ConvolutionalLayerCPU branch2 = new ConvolutionalLayerCPU(numChannels, width, height, numChannels, 1, 1, 0, 0, 1,
+			ActivationFunctionType.Tanh);
+		neuralNet.addLayer(branch2, inputLayer);
+		ElementwiseSumLayerCPU sumLayer = new ElementwiseSumLayerCPU(numChannels, width, height, 2);
+		neuralNet.addLayer(sumLayer, branch1, branch2);
+		ConcatLayerCPU concatLayer = new ConcatLayerCPU(new int[] { numChannels, numChannels }, width, height);
+		neuralNet.addLayer(concatLayer, sumLayer, inputLayer);
+		loadRandomModel(neuralNet, random);
+
+		float[] inputData = TestUtils.generateBuffer(random, width * height * numChannels, 1.f);
+
+		// Propagating only the first branch.
+		float[] branch1Activations = neuralNet.extractFeatures(inputData, 1);
+		assertArrayEquals(new float[branch2.getActivationDataBufferSize()], branch2.getActivationDataBuffer(), 0.f);
+
+		float[][] features = neuralNet.extractFeatures(inputData, new int[] { 2, 4 });
+		float[] expectedActivations = new float[concatLayer.getActivationDataBufferSize()];
+		for (int pixel = 0; pixel < width * height; ++pixel)
+		{
+			for (int channel = 0; channel < numChannels; ++channel)
+			{
+				expectedActivations[pixel * 2 * numChannels + channel] =
+					branch1Activations[pixel * numChannels + channel] + features[0][pixel * numChannels + channel];
+				expectedActivations[pixel * 2 * numChannels + numChannels + channel] = inputData[pixel * numChannels + channel];
+			}
+		}
+
+		TestUtils.checkCorrectness(expectedActivations, features[1], 0.0001f);
+	}
+
+	@Test
+	public void testAddingLayerWithWrongInputs()
+	{
+		NeuralNetCPU neuralNet = new NeuralNetCPU();
+		InputLayerCPU inputLayer = new InputLayerCPU(4, 4, 4);
+		ElementwiseSumLayerCPU sumLayer = new ElementwiseSumLayerCPU(4, 4, 4, 2);
+
+		assertThrows(IllegalArgumentException.class, () -> neuralNet.addLayer(sumLayer, inputLayer, inputLayer));
+		neuralNet.addLayer(inputLayer);
+		assertThrows(IllegalArgumentException.class, () -> neuralNet.addLayer(sumLayer, inputLayer));
+	}
+
+	/**
+	 * Creates network which classifies four channel 6x6 images, with the last channel zero padded.
+	 */
+	private static NeuralNetCPU createClassificationNeuralNet()
+	{
+		NeuralNetCPU neuralNet = new NeuralNetCPU(TestUtils.c_parallelPool);
+		neuralNet.addLayer(new InputLayerCPU(6, 6, 4, new float[] { 0.5f, 0.4f, 0.3f }, new float[] { 0.2f, 0.25f, 0.3f }));
+		neuralNet.addLayer(new ConvolutionalLayerCPU(4, 6, 6, 8, 3, 3, 1, 1, 1, ActivationFunctionType.ReLU));
+		neuralNet.addLayer(new MaxPoolLayerCPU(8, 6, 6, 2, 2, 0, 0, 2));
+		neuralNet.addLayer(new StandardLayerCPU(8, 3, 3, 10, ActivationFunctionType.ReLU));
+		neuralNet.addLayer(new DropoutLayerCPU(10, 1, 1, 0.5f));
+		neuralNet.addLayer(new StandardLayerCPU(10, 1, 1, c_numClasses, ActivationFunctionType.Linear));
+		neuralNet.addLayer(new SoftMaxLayerCPU(c_numClasses));
+		neuralNet.addLayer(new OutputLayerCPU(c_numClasses, LossFunctionType.CrossEntropy));
+
+		return neuralNet;
+	}
+
+	/**
+	 * Loads model with random parameters, writing more of them than network needs.
+	 */
+	private static void loadRandomModel(NeuralNetCPU neuralNet, Random random) throws IOException
+	{
+		ByteArrayOutputStream modelBytes = new ByteArrayOutputStream();
+		try (DataOutputStream modelStream = new DataOutputStream(modelBytes))
+		{
+			for (float parameter : TestUtils.generateBuffer(random, 10000, 0.2f))
+			{
+				modelStream.writeFloat(parameter);
+			}
+		}
+
+		neuralNet.loadModel(new ByteArrayInputStream(modelBytes.toByteArray()), true);
+	}
+
+	private static float[] generateImage(Random random)
+	{
+		float[] image = new float[6 * 6 * 4];
+		for (int i = 0; i < image.length; ++i)
+		{
+			image[i] = i % 4 == 3 ? 0.f : random.nextFloat();
+		}
+
+		return image;
+	}
+}
@@ -0,0 +1,47 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ResponseNormalizationLayerCPUTest
+{
+	@Test
+	public void testForwardPropCorrectness()
+	{
+		final int batchSize = 2;
+		final int inputNumChannels = 20;
+		final int inputDataWidth = 9;
+		final int inputDataHeight = 8;
+		final int depth = 5;
+		final float bias = 2.f;
+		final float alphaCoeff = 0.0001f;
+		final float betaCoeff = 0.75f;
+
+		Random random = new Random(0);
+		float[] inputData = TestUtils.generateBuffer(random, batchSize * inputNumChannels * inputDataWidth * inputDataHeight, 10.f);
+
+		ResponseNormalizationLayerCPU responseNormalizationLayer = new ResponseNormalizationLayerCPU(inputNumChannels, inputDataWidth, inputDataHeight,
+			depth, bias, alphaCoeff, betaCoeff);
+		responseNormalizationLayer.setBatchSize(batchSize);
+		responseNormalizationLayer.setInputDataBuffer(inputData);
+		responseNormalizationLayer.doForwardProp(TestUtils.c_parallelPool);
+
+		float[] expectedActivations = new float[inputData.length];
+		for (int pixelOffset = 0; pixelOffset < inputData.length; pixelOffset += inputNumChannels)
+		{
+			for (int channel = 0; channel < inputNumChannels; ++channel)
+			{
+				float crossChannelSum = 0.f;
+				for (int otherChannel = Math.max(0, channel - depth / 2); otherChannel < Math.min(inputNumChannels, channel - depth / 2 + depth); ++otherChannel)
+				{
+					crossChannelSum += inputData[pixelOffset + otherChannel] * inputData[pixelOffset + otherChannel];
+				}
+				expectedActivations[pixelOffset + channel] = inputData[pixelOffset + channel] *
+					(float)Math.pow(bias + alphaCoeff / depth * crossChannelSum, -betaCoeff);
+			}
+		}
+
+		TestUtils.checkCorrectness(expectedActivations, responseNormalizationLayer.getActivationDataBuffer(), 0.0001f);
+	}
+}
@@ -0,0 +1,115 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.markorakita.axnn_rs.neuralnet.ActivationFunctionType;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class StandardLayerCPUTest
+{
+	private static final int c_batchSize = 3;
+
+	private static final int c_inputNumChannels = 16;
+
+	private static final int c_inputDataWidth = 5;
+
+	private static final int c_inputDataHeight = 4;
+
+	private static final int c_inputDataSize = c_inputNumChannels * c_inputDataWidth * c_inputDataHeight;
+
+	private static final int c_numNeurons = 50;
+
+	@Test
+	public void testForwardPropCorrectness()
+	{
+		Random random = new Random(0);
+		float[] inputData = TestUtils.generateBuffer(random, c_batchSize * c_inputDataSize, 1.f);
+		float[] weights = TestUtils.generateBuffer(random, c_numNeurons * c_inputDataSize, 0.05f);
+		float[] biases = TestUtils.generateBuffer(random, c_numNeurons, 0.1f);
+
+		StandardLayerCPU standardLayer = new StandardLayerCPU(c_inputNumChannels, c_inputDataWidth, c_inputDataHeight, c_numNeurons,
+			ActivationFunctionType.LeakyReLU, 0.1f);
+		standardLayer.loadWeights(weights);
+		standardLayer.loadBiases(biases);
+		propagate(standardLayer, inputData);
+
+		TestUtils.checkCorrectness(calculateExpectedActivations(inputData, weights, biases), standardLayer.getActivationDataBuffer(), 0.0001f);
+	}
+
+	@Test
+	public void testQuantizedForwardPropCorrectness()
+	{
+		Random random = new Random(1);
+		float[] inputData = TestUtils.generateBuffer(random, c_batchSize * c_inputDataSize, 1.f);
+		float[] weights = TestUtils.generateBuffer(random, c_numNeurons * c_inputDataSize, 0.05f);
+		float[] biases = TestUtils.generateBuffer(random, c_numNeurons, 0.1f);
+
+		QuantizedStandardLayerCPU quantizedLayer = new QuantizedStandardLayerCPU(c_inputNumChannels, c_inputDataWidth, c_inputDataHeight, c_numNeurons,
+			ActivationFunctionType.LeakyReLU, 0.1f);
+		quantizedLayer.loadWeights(weights);
+		quantizedLayer.loadBiases(biases);
+		propagate(quantizedLayer, inputData);
+
+		// Each weight is off by at most half of the quantization step, which is about 0.001 for these weights.
+		TestUtils.checkCorrectness(calculateExpectedActivations(inputData, weights, biases), quantizedLayer.getActivationDataBuffer(), 0.05f);
+	}
+
+	@Test
+	public void testSparseForwardPropCorrectness()
+	{
+		final float sparsityThreshold = 0.05f;
+		Random random = new Random(2);
+		float[] inputData = TestUtils.generateBuffer(random, c_batchSize * c_inputDataSize, 1.f);
+		float[] weights = TestUtils.generateBuffer(random, c_numNeurons * c_inputDataSize, 0.05f);
+		float[] biases = TestUtils.generateBuffer(random, c_numNeurons, 0.1f);
+
+		SparseStandardLayerCPU sparseLayer = new SparseStandardLayerCPU(c_inputNumChannels, c_inputDataWidth, c_inputDataHeight, c_numNeurons,
+			ActivationFunctionType.LeakyReLU, 0.1f, sparsityThreshold);
+		sparseLayer.loadWeights(weights);
+		sparseLayer.loadBiases(biases);
+		propagate(sparseLayer, inputData);
+
+		float[] prunedWeights = new float[weights.length];
+		int numKeptWeights = 0;
+		for (int i = 0; i < weights.length; ++i)
+		{
+			if (Math.abs(weights[i]) > sparsityThreshold)
+			{
+				prunedWeights[i] = weights[i];
+				++numKeptWeights;
+			}
+		}
+
+		assertEquals((float)numKeptWeights / weights.length, sparseLayer.getWeightsDensity(), 0.f);
+		TestUtils.checkCorrectness(calculateExpectedActivations(inputData, prunedWeights, biases), sparseLayer.getActivationDataBuffer(), 0.0001f);
+	}
+
+	private static void propagate(LayerCPU layer, float[] inputData)
+	{
+		layer.setBatchSize(c_batchSize);
+		layer.setInputDataBuffer(inputData);
+		layer.doForwardProp(TestUtils.c_parallelPool);
+	}
+
+	private static float[] calculateExpectedActivations(float[] inputData, float[] weights, float[] biases)
+	{
+		float[] expectedActivations = new float[c_batchSize * c_numNeurons];
+		for (int sample = 0; sample < c_batchSize; ++sample)
+		{
+			for (int neuron = 0; neuron < c_numNeurons; ++neuron)
+			{
+				float preactivation = biases[neuron];
+				for (int i = 0; i < c_inputDataSize; ++i)
+				{
+					preactivation += inputData[sample * c_inputDataSize + i] * weights[neuron * c_inputDataSize + i];
+				}
+				expectedActivations[sample * c_numNeurons + neuron] = preactivation >= 0.f ? preactivation : 0.1f * preactivation;
+			}
+		}
+
+		return expectedActivations;
+	}
+}
@@ -0,0 +1,48 @@
+package com.github.markorakita.axnn_rs.neuralnet.cpu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+class TestUtils
+{
+	/**
+	 * Pool with several threads, so layers are really propagated in parallel even on machines with few cores.
+	 */
+	static final ForkJoinPool c_parallelPool = new ForkJoinPool(4);
+
+	/**
+	 * Pool with one thread, which runs layers serially on the calling thread.
+	 */
+	static final ForkJoinPool c_serialPool = new ForkJoinPool(1);
+
+	static float[] generateBuffer(Random random, int size, float stDev)
+	{
+		float[] buffer = new float[size];
+		for (int i = 0; i < size; ++i)
+		{
+			buffer[i] = stDev * (float)random.nextGaussian();
+		}
+
+		return buffer;
+	}
+
+	static void checkCorrectness(float[] expectedActivations, float[] activations, float threshold)
+	{
+		assertArrayEquals(expectedActivations, activations, threshold);
+
+		boolean foundValueDifferentFromZero = false;
+		for (float value : expectedActivations)
+		{
+			if (value != 0.f)
+			{
+				foundValueDifferentFromZero = true;
+				break;
+			}
+		}
+
+		assertTrue(foundValueDifferentFromZero);
+	}
+}
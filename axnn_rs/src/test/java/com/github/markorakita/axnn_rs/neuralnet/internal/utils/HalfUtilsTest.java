@@ -0,0 +1,138 @@
+package com.github.markorakita.axnn_rs.neuralnet.internal.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class HalfUtilsTest
+{
+	@Test
+	public void testRoundTripExact()
+	{
+		// Every half except NaNs must survive conversion to float and back.
+		for (int half = 0; half <= 0xffff; ++half)
+		{
+			if ((half & 0x7c00) == 0x7c00 && (half & 0x3ff) != 0)
+			{
+				continue;
+			}
+
+			assertEquals(half, HalfUtils.floatToHalf(HalfUtils.halfToFloat((short)half)) & 0xffff);
+		}
+	}
+
+	@Test
+	public void testRoundToNearestEven()
+	{
+		final float ulpAtOne = (float)Math.pow(2, -10);
+
+		// Halfway between 1 and next half rounds down to even mantissa, halfway between next two halfs rounds up to even.
+		assertHalf(0x3c00, 1.f + ulpAtOne / 2);
+		assertHalf(0x3c02, 1.f + 3 * ulpAtOne / 2);
+		assertHalf(0xbc00, -1.f - ulpAtOne / 2);
+
+		// Just above and below halfway rounds to nearest.
+		assertHalf(0x3c01, Math.nextUp(1.f + ulpAtOne / 2));
+		assertHalf(0x3c01, Math.nextDown(1.f + 3 * ulpAtOne / 2));
+
+		// Rounding up carries into exponent.
+		assertHalf(0x4000, Math.nextDown(2.f));
+	}
+
+	@Test
+	public void testRoundToNearest()
+	{
+		// Converted value must be the nearest half, checked against neighbouring halfs on the grid of random floats.
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; ++i)
+		{
+			float value = (random.nextFloat() * 2.f - 1.f) * (float)Math.pow(2, random.nextInt(40) - 25);
+			short half = HalfUtils.floatToHalf(value);
+			float error = Math.abs(HalfUtils.halfToFloat(half) - value);
+
+			assertTrue(error <= Math.abs(HalfUtils.halfToFloat((short)(half + 1)) - value));
+			if ((half & 0x7fff) != 0)
+			{
+				assertTrue(error <= Math.abs(HalfUtils.halfToFloat((short)(half - 1)) - value));
+			}
+		}
+	}
+
+	@Test
+	public void testSubnormals()
+	{
+		final float smallestSubnormal = (float)Math.pow(2, -24);
+
+		assertHalf(0x0001, smallestSubnormal);
+		assertHalf(0x8001, -smallestSubnormal);
+		assertHalf(0x03ff, 1023 * smallestSubnormal);
+		assertEquals(1023 * smallestSubnormal, HalfUtils.halfToFloat((short)0x03ff), 0.f);
+
+		// Halfway cases round to even, so half of the smallest subnormal goes to zero.
+		assertHalf(0x0000, smallestSubnormal / 2);
+		assertHalf(0x8000, -smallestSubnormal / 2);
+		assertHalf(0x0002, 3 * smallestSubnormal / 2);
+		assertHalf(0x0001, Math.nextUp(smallestSubnormal / 2));
+
+		// Largest subnormal rounds up into the smallest normal half.
+		assertHalf(0x0400, 1023.5f * smallestSubnormal);
+
+		// Values far below the smallest subnormal flush to zero, keeping the sign.
+		assertHalf(0x0000, 1e-10f);
+		assertHalf(0x8000, -1e-10f);
+		assertHalf(0x0000, Float.MIN_VALUE);
+	}
+
+	@Test
+	public void testOverflow()
+	{
+		assertHalf(0x7bff, 65504.f);
+		assertHalf(0x7bff, 65519.f);
+
+		// Halfway between largest half and next power of two rounds to infinity.
+		assertHalf(0x7c00, 65520.f);
+		assertHalf(0xfc00, -65520.f);
+		assertHalf(0x7c00, 1e10f);
+		assertHalf(0x7c00, Float.MAX_VALUE);
+	}
+
+	@Test
+	public void testInfinityAndNaN()
+	{
+		assertHalf(0x7c00, Float.POSITIVE_INFINITY);
+		assertHalf(0xfc00, Float.NEGATIVE_INFINITY);
+		assertEquals(Float.POSITIVE_INFINITY, HalfUtils.halfToFloat((short)0x7c00), 0.f);
+		assertEquals(Float.NEGATIVE_INFINITY, HalfUtils.halfToFloat((short)0xfc00), 0.f);
+
+		short nanHalf = HalfUtils.floatToHalf(Float.NaN);
+		assertEquals(0x7c00, nanHalf & 0x7c00);
+		assertTrue((nanHalf & 0x3ff) != 0);
+		assertTrue(Float.isNaN(HalfUtils.halfToFloat(nanHalf)));
+
+		// NaN with payload only in the low bits, lost by shifting, must not turn into infinity.
+		short lowPayloadNanHalf = HalfUtils.floatToHalf(Float.intBitsToFloat(0x7f800001));
+		assertTrue(Float.isNaN(HalfUtils.halfToFloat(lowPayloadNanHalf)));
+	}
+
+	@Test
+	public void testFloatsToHalfs()
+	{
+		float[] values = { 0.f, -2.f, 0.5f, 65504.f, 123.f };
+		short[] halfs = new short[values.length];
+		HalfUtils.floatsToHalfs(values, halfs, 4);
+
+		assertEquals(0x0000, halfs[0] & 0xffff);
+		assertEquals(0xc000, halfs[1] & 0xffff);
+		assertEquals(0x3800, halfs[2] & 0xffff);
+		assertEquals(0x7bff, halfs[3] & 0xffff);
+		assertEquals(0, halfs[4]);
+	}
+
+	private static void assertHalf(int expectedHalf, float value)
+	{
+		assertEquals(expectedHalf, HalfUtils.floatToHalf(value) & 0xffff);
+	}
+}